@@ -0,0 +1,50 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import com.google.api.client.util.DateTime;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+
+/**
+ * JSON serialization of Asana models, as used for checkpoints and snapshots of an export.
+ */
+final class AsanaJson {
+    static final Gson GSON = new GsonBuilder()
+        .registerTypeAdapter(DateTime.class, new DateTimeTypeAdapter().nullSafe())
+        .create();
+
+    private AsanaJson() { }
+
+    private static final class DateTimeTypeAdapter extends TypeAdapter<DateTime> {
+        @Override
+        public void write(JsonWriter out, DateTime dateTime) throws IOException {
+            out.value(dateTime.toStringRfc3339());
+        }
+
+        @Override
+        public DateTime read(JsonReader in) throws IOException {
+            if (in.peek() != JsonToken.STRING) {
+                throw new JsonParseException("Expected RFC 3339 date-time string.");
+            }
+            return DateTime.parseRfc3339(in.nextString());
+        }
+    }
+
+    /**
+     * Returns the object represented by the given line, or {@code null} if the line is not valid JSON.
+     */
+    static <T> @Nullable T parseOrNull(String line, Class<T> clazz) {
+        try {
+            return GSON.fromJson(line, clazz);
+        } catch (JsonParseException ignored) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import com.asana.Client;
+import com.asana.models.Attachment;
+import com.asana.models.Project;
+import com.asana.models.Story;
+import com.asana.models.Task;
+import com.asana.models.User;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Asana requests made by {@link Export}.
+ *
+ * Each method corresponds to one Asana API endpoint, and the given fields are passed as {@code opt_fields}. Methods
+ * may be called concurrently.
+ */
+interface AsanaSource {
+    Project project(String projectId, String optFields) throws IOException;
+
+    Iterable<User> usersOfWorkspace(String workspaceId, String optFields);
+
+    Iterable<Task> tasksOfProject(String projectId, String optFields);
+
+    Iterable<Task> subtasks(String taskId, String optFields);
+
+    Iterable<Attachment> attachments(String taskId, String optFields);
+
+    Iterable<Story> stories(String taskId, String optFields);
+
+    /**
+     * Returns a source that makes its requests with the given Asana client.
+     */
+    static AsanaSource of(Client asanaClient) {
+        return new ClientSource(asanaClient);
+    }
+
+    final class ClientSource implements AsanaSource {
+        private final Client asanaClient;
+
+        private ClientSource(Client asanaClient) {
+            this.asanaClient = Objects.requireNonNull(asanaClient);
+        }
+
+        @Override
+        public Project project(String projectId, String optFields) throws IOException {
+            return asanaClient.projects.findById(projectId).query("opt_fields", optFields).execute();
+        }
+
+        @Override
+        public Iterable<User> usersOfWorkspace(String workspaceId, String optFields) {
+            return asanaClient.users.findByWorkspace(workspaceId).query("opt_fields", optFields);
+        }
+
+        @Override
+        public Iterable<Task> tasksOfProject(String projectId, String optFields) {
+            return asanaClient.tasks.findByProject(projectId).query("opt_fields", optFields);
+        }
+
+        @Override
+        public Iterable<Task> subtasks(String taskId, String optFields) {
+            return asanaClient.tasks.subtasks(taskId).query("opt_fields", optFields);
+        }
+
+        @Override
+        public Iterable<Attachment> attachments(String taskId, String optFields) {
+            return asanaClient.attachments.findByTask(taskId).query("opt_fields", optFields);
+        }
+
+        @Override
+        public Iterable<Story> stories(String taskId, String optFields) {
+            return asanaClient.stories.findByTask(taskId).query("opt_fields", optFields);
+        }
+    }
+}
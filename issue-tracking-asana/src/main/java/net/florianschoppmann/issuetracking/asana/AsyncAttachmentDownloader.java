@@ -6,52 +6,410 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
 import java.util.Objects;
+import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
 
+/**
+ * Attachment downloader that streams into a partial file and resumes interrupted downloads.
+ *
+ * <p>Each download is written to {@code <name>.part}, next to a sidecar manifest {@code <name>.part.properties} that
+ * records the expected length and the validators (ETag, Last-Modified) of the response. If a previous run left a
+ * partial file, only the missing bytes are requested with a {@code Range} request, guarded by {@code If-Range}. Once
+ * complete, the partial file is atomically moved to its final name. If the server responds with 416 (Range Not
+ * Satisfiable) and the partial file is not already complete, it is discarded and the download starts over.
+ *
+ * <p>If a {@link BlobStore} is given, the content is hashed while streaming, and the final file is a link to the blob
+ * in the store. Attachments that are already in the store are not requested at all.
+ */
 public final class AsyncAttachmentDownloader implements AttachmentDownloader {
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final String MANIFEST_SUFFIX = ".part.properties";
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final HttpClient httpClient;
+    private final DownloadScheduler downloadScheduler;
+    private final @Nullable BlobStore blobStore;
+
+    public AsyncAttachmentDownloader(HttpClient httpClient, DownloadScheduler downloadScheduler) {
+        this(httpClient, downloadScheduler, null);
+    }
 
-    public AsyncAttachmentDownloader(HttpClient httpClient) {
+    public AsyncAttachmentDownloader(HttpClient httpClient, DownloadScheduler downloadScheduler,
+            @Nullable BlobStore blobStore) {
         this.httpClient = Objects.requireNonNull(httpClient);
+        this.downloadScheduler = Objects.requireNonNull(downloadScheduler);
+        this.blobStore = blobStore;
     }
 
-    private CompletableFuture<Path> downloadUriToPath(String taskId, String attachmentName, URI uri, Path path) {
-        HttpRequest httpRequest = HttpRequest.newBuilder(uri).build();
-        CompletableFuture<Path> downloadFuture = httpClient.sendAsync(httpRequest, BodyHandlers.ofFile(path))
-            .thenApply(HttpResponse::body);
-
-        // In case the download fails, we want to remove the file. Of course, this could itself fail with a checked
-        // exception, which are not really supported well by CompletableFuture. We therefore need to do a workaround
-        // to get these exceptions across.
-        CompletableFuture<Path> returnFuture = new CompletableFuture<>();
-        downloadFuture.handle((@Nullable Path ignoredPath, @Nullable Throwable downloadException) -> {
-            if (downloadException != null) {
-                Throwable unwrappedOriginalException = Futures.unwrapCompletionException(downloadException);
-                try {
-                    Files.deleteIfExists(path);
-                    returnFuture.completeExceptionally(downloadException);
-                } catch (IOException exception) {
-                    unwrappedOriginalException.addSuppressed(exception);
+    /**
+     * Body subscriber that aborts the download right away, with result null.
+     */
+    private static final class AbortingBodySubscriber implements BodySubscriber<@Nullable Path> {
+        @Override
+        public CompletionStage<@Nullable Path> getBody() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.cancel();
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) { }
+
+        @Override
+        public void onError(Throwable throwable) { }
+
+        @Override
+        public void onComplete() { }
+    }
+
+    /**
+     * Body subscriber that updates a message digest before passing the received buffers on.
+     */
+    private static final class DigestingBodySubscriber implements BodySubscriber<@Nullable Path> {
+        private final BodySubscriber<Path> delegate;
+        private final MessageDigest messageDigest;
+
+        DigestingBodySubscriber(BodySubscriber<Path> delegate, MessageDigest messageDigest) {
+            this.delegate = delegate;
+            this.messageDigest = messageDigest;
+        }
+
+        @Override
+        public CompletionStage<@Nullable Path> getBody() {
+            return delegate.getBody().thenApply(path -> path);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            for (ByteBuffer buffer : item) {
+                // Use a duplicate, so that the position of the buffer passed to the delegate remains unchanged.
+                messageDigest.update(buffer.duplicate());
+            }
+            delegate.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
+        }
+    }
+
+    private static MessageDigest messageDigestOf(Path file) throws IOException {
+        MessageDigest messageDigest = BlobStore.newMessageDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) > 0) {
+                messageDigest.update(buffer, 0, bytesRead);
+            }
+        }
+        return messageDigest;
+    }
+
+    /**
+     * Sidecar manifest of a partial download.
+     */
+    private static final class Manifest {
+        private static final String LENGTH = "length";
+        private static final String ENTITY_TAG = "etag";
+        private static final String LAST_MODIFIED = "lastModified";
+
+        /** Total length of the attachment, or -1 if the server did not send a Content-Length. */
+        private final long length;
+        private final @Nullable String entityTag;
+        private final @Nullable String lastModified;
+
+        private Manifest(long length, @Nullable String entityTag, @Nullable String lastModified) {
+            this.length = length;
+            this.entityTag = entityTag;
+            this.lastModified = lastModified;
+        }
+
+        static Manifest fromHeaders(HttpHeaders headers) {
+            return new Manifest(
+                headers.firstValueAsLong("Content-Length").orElse(-1),
+                headers.firstValue("ETag").filter(entityTag -> !entityTag.startsWith("W/")).orElse(null),
+                headers.firstValue("Last-Modified").orElse(null)
+            );
+        }
+
+        static @Nullable Manifest read(Path manifestFile) throws IOException {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (NoSuchFileException ignored) {
+                return null;
+            }
+            try {
+                return new Manifest(Long.parseLong(properties.getProperty(LENGTH, "-1")),
+                    properties.getProperty(ENTITY_TAG), properties.getProperty(LAST_MODIFIED));
+            } catch (NumberFormatException ignored) {
+                return null;
+            }
+        }
+
+        void write(Path manifestFile) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty(LENGTH, Long.toString(length));
+            if (entityTag != null) {
+                properties.setProperty(ENTITY_TAG, entityTag);
+            }
+            if (lastModified != null) {
+                properties.setProperty(LAST_MODIFIED, lastModified);
+            }
+            try (Writer writer = Files.newBufferedWriter(manifestFile, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+        }
+
+        /**
+         * Returns the validator for an {@code If-Range} header, or null if the response cannot be resumed safely.
+         */
+        @Nullable String validator() {
+            return entityTag != null
+                ? entityTag
+                : lastModified;
+        }
+    }
+
+    /**
+     * State of an attachment download, as found on disk when the download was submitted.
+     */
+    private final class Download {
+        private final String taskId;
+        private final String attachmentName;
+        private final String attachmentId;
+        private final URI uri;
+        private final Path targetFile;
+        private final Path partialFile;
+        private final Path manifestFile;
+        private final @Nullable Manifest manifest;
+        private final long existingLength;
+        private @Nullable MessageDigest messageDigest;
+        private boolean discardedPartialFile = false;
+
+        Download(String taskId, String attachmentName, String attachmentId, URI uri, Path targetFile)
+                throws IOException {
+            this.taskId = taskId;
+            this.attachmentName = attachmentName;
+            this.attachmentId = attachmentId;
+            this.uri = uri;
+            this.targetFile = targetFile;
+            partialFile = targetFile.resolveSibling(targetFile.getFileName() + PARTIAL_SUFFIX);
+            manifestFile = targetFile.resolveSibling(targetFile.getFileName() + MANIFEST_SUFFIX);
+
+            @Nullable Manifest existingManifest = Manifest.read(manifestFile);
+            if (existingManifest != null && existingManifest.validator() != null && Files.exists(partialFile)) {
+                manifest = existingManifest;
+                existingLength = Files.size(partialFile);
+            } else {
+                manifest = null;
+                existingLength = 0;
+            }
+        }
+
+        /**
+         * Returns the number of bytes that still need to be transferred, or 0 if unknown.
+         */
+        long remainingLength() {
+            return manifest == null || manifest.length < 0
+                ? 0
+                : Math.max(manifest.length - existingLength, 0);
+        }
+
+        private boolean isResumable() {
+            return manifest != null && existingLength > 0;
+        }
+
+        private BodySubscriber<@Nullable Path> fileSubscriber(boolean append) throws IOException {
+            BodySubscriber<Path> fileSubscriber = append
+                ? BodySubscribers.ofFile(partialFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : BodySubscribers.ofFile(partialFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            if (blobStore == null) {
+                return BodySubscribers.mapping(fileSubscriber, path -> path);
+            }
+            MessageDigest newMessageDigest = append
+                ? messageDigestOf(partialFile)
+                : BlobStore.newMessageDigest();
+            messageDigest = newMessageDigest;
+            return new DigestingBodySubscriber(fileSubscriber, newMessageDigest);
+        }
+
+        private BodySubscriber<@Nullable Path> bodySubscriber(HttpResponse.ResponseInfo responseInfo,
+                DownloadScheduler.ScheduledDownload scheduledDownload) throws IOException {
+            HttpHeaders headers = responseInfo.headers();
+            long contentLength = headers.firstValueAsLong("Content-Length").orElse(-1);
+            int statusCode = responseInfo.statusCode();
+            if (statusCode == HTTP_PARTIAL_CONTENT && isResumable()) {
+                String expectedRangePrefix = "bytes " + existingLength + '-';
+                if (!headers.firstValue("Content-Range").orElse("").startsWith(expectedRangePrefix)) {
+                    throw new IOException(String.format(
+                        "Expected Content-Range starting with \"%s\" when resuming download of %s.",
+                        expectedRangePrefix, uri));
+                }
+                return scheduledDownload.deferIfLarge(contentLength)
+                    ? new AbortingBodySubscriber()
+                    : fileSubscriber(true);
+            } else if (statusCode == HTTP_OK) {
+                if (scheduledDownload.deferIfLarge(contentLength)) {
+                    return new AbortingBodySubscriber();
+                }
+                // The server sent the complete attachment. Any partial file from a previous run is stale.
+                Manifest.fromHeaders(headers).write(manifestFile);
+                return fileSubscriber(false);
+            } else if (statusCode == HTTP_RANGE_NOT_SATISFIABLE && isResumable()) {
+                if (Objects.requireNonNull(manifest).length == existingLength) {
+                    // A previous run transferred all bytes, but did not get to move the file into place.
+                    if (blobStore != null) {
+                        messageDigest = messageDigestOf(partialFile);
+                    }
+                    return BodySubscribers.replacing(partialFile);
                 }
-                returnFuture.completeExceptionally(Futures.wrapInCompletionException(unwrappedOriginalException));
+                // The partial file cannot be completed: Its length is unknown, or the attachment changed without the
+                // validator changing. The download has to start over.
+                log.warn("Discarding partial download of attachment \"{}\" (Asana task ID {}) because the server "
+                    + "rejected the range request.", attachmentName, taskId);
+                Files.deleteIfExists(partialFile);
+                Files.deleteIfExists(manifestFile);
+                discardedPartialFile = true;
+                return new AbortingBodySubscriber();
             } else {
-                returnFuture.complete(path);
-                log.info("Finished downloading of attachment \"{}\" (Asana task ID {}).", attachmentName, taskId);
+                throw new IOException(String.format("Unexpected HTTP status code %d for %s.", statusCode, uri));
             }
-            return path;
-        });
-        return returnFuture;
+        }
+
+        private void moveIntoPlace() throws IOException {
+            @Nullable Manifest finalManifest = Manifest.read(manifestFile);
+            long actualLength = Files.size(partialFile);
+            if (finalManifest != null && finalManifest.length >= 0 && finalManifest.length != actualLength) {
+                throw new IOException(String.format(
+                    "Download of %s is incomplete: Expected %d bytes, but got %d. Keeping partial file %s.",
+                    uri, finalManifest.length, actualLength, partialFile));
+            }
+            if (blobStore == null) {
+                Files.move(partialFile, targetFile, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Path blob = blobStore.add(partialFile, Objects.requireNonNull(messageDigest).digest(), attachmentId);
+                BlobStore.link(blob, targetFile);
+            }
+            Files.deleteIfExists(manifestFile);
+        }
+
+        /**
+         * Starts the download again from the beginning, once the partial file has been deleted.
+         */
+        private void restart(DownloadScheduler.ScheduledDownload scheduledDownload,
+                CompletableFuture<Path> returnFuture) {
+            try {
+                new Download(taskId, attachmentName, attachmentId, uri, targetFile).start(scheduledDownload)
+                    .whenComplete((@Nullable Path path, @Nullable Throwable exception) -> {
+                        if (exception != null) {
+                            returnFuture.completeExceptionally(exception);
+                        } else {
+                            returnFuture.complete(path);
+                        }
+                    });
+            } catch (IOException exception) {
+                returnFuture.completeExceptionally(exception);
+            }
+        }
+
+        CompletableFuture<Path> start(DownloadScheduler.ScheduledDownload scheduledDownload) {
+            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(uri);
+            if (isResumable()) {
+                log.info("Resuming download of attachment \"{}\" (Asana task ID {}) at byte {}.", attachmentName,
+                    taskId, existingLength);
+                requestBuilder
+                    .header("Range", "bytes=" + existingLength + '-')
+                    .header("If-Range", Objects.requireNonNull(Objects.requireNonNull(manifest).validator()));
+            } else {
+                log.info("Starting download of attachment \"{}\" (Asana task ID {}).", attachmentName, taskId);
+            }
+            BodyHandler<@Nullable Path> bodyHandler = responseInfo -> {
+                try {
+                    return bodySubscriber(responseInfo, scheduledDownload);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            };
+            CompletableFuture<@Nullable Path> downloadFuture = httpClient.sendAsync(requestBuilder.build(), bodyHandler)
+                .thenApply(HttpResponse::body);
+
+            // In case the download fails, we keep the partial file and its manifest, so that the next run can resume.
+            // Moving the file into place could itself fail with a checked exception, which are not really supported
+            // well by CompletableFuture. We therefore need to do a workaround to get these exceptions across.
+            CompletableFuture<Path> returnFuture = new CompletableFuture<>();
+            downloadFuture.handle((@Nullable Path downloadedPath, @Nullable Throwable downloadException) -> {
+                if (downloadException != null) {
+                    Throwable unwrappedException = Futures.unwrapCompletionException(downloadException);
+                    if (unwrappedException instanceof UncheckedIOException) {
+                        unwrappedException = unwrappedException.getCause();
+                    }
+                    returnFuture.completeExceptionally(Futures.wrapInCompletionException(unwrappedException));
+                } else if (downloadedPath == null && discardedPartialFile) {
+                    restart(scheduledDownload, returnFuture);
+                } else if (downloadedPath == null) {
+                    // The download was deferred, and the scheduler is going to start it again later.
+                    log.info("Deferring download of large attachment \"{}\" (Asana task ID {}).", attachmentName,
+                        taskId);
+                    returnFuture.complete(null);
+                } else {
+                    try {
+                        moveIntoPlace();
+                        log.info("Finished downloading of attachment \"{}\" (Asana task ID {}).", attachmentName,
+                            taskId);
+                        returnFuture.complete(targetFile);
+                    } catch (IOException exception) {
+                        returnFuture.completeExceptionally(exception);
+                    }
+                }
+                return null;
+            });
+            return returnFuture;
+        }
     }
 
     @Override
@@ -60,19 +418,27 @@ public final class AsyncAttachmentDownloader implements AttachmentDownloader {
     }
 
     @Override
-    public CompletableFuture<Path> download(Path basePath, String taskId, String attachmentName, URL url) {
+    public CompletableFuture<Path> download(Path basePath, String taskId, String attachmentName, String attachmentId,
+            URL url) {
         Path targetFile = downloadPath(basePath, taskId, attachmentName);
         if (Files.exists(targetFile)) {
             log.info("Skipping attachment \"{}\" (Asana task ID {}) because it was already downloaded.",
                 attachmentName, taskId);
             return CompletableFuture.completedFuture(targetFile);
         } else {
-            URI uri;
             try {
                 Files.createDirectories(targetFile.getParent());
-                uri = url.toURI();
-                log.info("Starting download of attachment \"{}\" (Asana task ID {}).", attachmentName, taskId);
-                return downloadUriToPath(taskId, attachmentName, uri, targetFile);
+                @Nullable Path knownBlob = blobStore == null
+                    ? null
+                    : blobStore.blobForAttachment(attachmentId);
+                if (knownBlob != null) {
+                    BlobStore.link(knownBlob, targetFile);
+                    log.info("Skipping download of attachment \"{}\" (Asana task ID {}) because it is already in the "
+                        + "blob store.", attachmentName, taskId);
+                    return CompletableFuture.completedFuture(targetFile);
+                }
+                Download download = new Download(taskId, attachmentName, attachmentId, url.toURI(), targetFile);
+                return downloadScheduler.submit(download.uri, download.remainingLength(), download::start);
             } catch (URISyntaxException | IOException exception) {
                 return CompletableFuture.failedFuture(exception);
             }
@@ -6,5 +6,6 @@ import java.util.concurrent.CompletableFuture;
 
 public interface AttachmentDownloader {
     Path downloadPath(Path basePath, String taskId, String attachmentName);
-    CompletableFuture<Path> download(Path basePath, String taskId, String attachmentName, URL url);
+    CompletableFuture<Path> download(Path basePath, String taskId, String attachmentName, String attachmentId,
+        URL url);
 }
@@ -0,0 +1,152 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed store for attachments.
+ *
+ * <p>Each distinct file content is stored once, as {@code <root>/<first two hex digits>/<SHA-256 hex digest>}.
+ * Attachment paths are hard links to these blobs (or copies, if the file system does not support hard links).
+ *
+ * <p>The store also keeps an index from Asana attachment IDs to digests, so that an attachment that is already known
+ * need not be downloaded again. The download URLs of Asana attachments are presigned and differ between requests, so
+ * they cannot serve as key. The content of an attachment, on the other hand, never changes.
+ */
+public final class BlobStore implements Closeable {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String INDEX_FILE_NAME = "digests-by-attachment-id.txt";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Path root;
+    private final ConcurrentHashMap<String, String> digestByAttachmentId;
+    private final BufferedWriter indexWriter;
+
+    private BlobStore(Path root, ConcurrentHashMap<String, String> digestByAttachmentId, BufferedWriter indexWriter) {
+        this.root = root;
+        this.digestByAttachmentId = digestByAttachmentId;
+        this.indexWriter = indexWriter;
+    }
+
+    /**
+     * Opens the blob store at the given path, creating it if necessary.
+     */
+    public static BlobStore open(Path root) throws IOException {
+        Files.createDirectories(root);
+        Path indexFile = root.resolve(INDEX_FILE_NAME);
+        var digestByAttachmentId = new ConcurrentHashMap<String, String>();
+        if (Files.exists(indexFile)) {
+            String index = Files.readString(indexFile, StandardCharsets.UTF_8);
+            // Lines have the form "<digest> <attachment ID>\n". A truncated last line (without line terminator) might
+            // contain a truncated attachment ID, so it is discarded.
+            int start = 0;
+            int end;
+            while ((end = index.indexOf('\n', start)) >= 0) {
+                int separator = index.indexOf(' ', start);
+                if (separator > start && separator < end - 1) {
+                    digestByAttachmentId.put(index.substring(separator + 1, end), index.substring(start, separator));
+                }
+                start = end + 1;
+            }
+            try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+                channel.truncate(index.substring(0, start).getBytes(StandardCharsets.UTF_8).length);
+            }
+        }
+        BufferedWriter indexWriter = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new BlobStore(root, digestByAttachmentId, indexWriter);
+    }
+
+    static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(String.format(
+                "Every Java platform is required to support %s.", DIGEST_ALGORITHM), exception);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        var stringBuilder = new StringBuilder(2 * bytes.length);
+        for (byte currentByte : bytes) {
+            stringBuilder.append(HEX_DIGITS[(currentByte >> 4) & 0xf]).append(HEX_DIGITS[currentByte & 0xf]);
+        }
+        return stringBuilder.toString();
+    }
+
+    private Path blobPath(String hexDigest) {
+        return root.resolve(hexDigest.substring(0, 2)).resolve(hexDigest);
+    }
+
+    /**
+     * Returns the blob previously stored for the given Asana attachment, or null if there is none.
+     */
+    public @Nullable Path blobForAttachment(String attachmentId) {
+        @Nullable String hexDigest = digestByAttachmentId.get(attachmentId);
+        if (hexDigest == null) {
+            return null;
+        }
+        Path blob = blobPath(hexDigest);
+        return Files.exists(blob)
+            ? blob
+            : null;
+    }
+
+    /**
+     * Moves the given file into the store, or deletes it if the store already contains a blob with the same content.
+     *
+     * @param file file to add to the store
+     * @param digest SHA-256 digest of the file content
+     * @param attachmentId ID of the Asana attachment that the file was downloaded for
+     * @return path of the blob
+     */
+    public Path add(Path file, byte[] digest, String attachmentId) throws IOException {
+        String hexDigest = toHex(digest);
+        Path blob = blobPath(hexDigest);
+        if (Files.exists(blob)) {
+            Files.delete(file);
+        } else {
+            Files.createDirectories(blob.getParent());
+            Files.move(file, blob, StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (digestByAttachmentId.putIfAbsent(attachmentId, hexDigest) == null) {
+            synchronized (indexWriter) {
+                indexWriter.write(hexDigest + ' ' + attachmentId + '\n');
+                indexWriter.flush();
+            }
+        }
+        return blob;
+    }
+
+    /**
+     * Creates a hard link to the given blob, or a copy if hard links are not supported.
+     */
+    public static void link(Path blob, Path target) throws IOException {
+        try {
+            Files.createLink(target, blob);
+        } catch (UnsupportedOperationException | FileSystemException ignored) {
+            // For instance, the blob store could be on a different file system.
+            Files.copy(blob, target);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (indexWriter) {
+            indexWriter.close();
+        }
+    }
+}
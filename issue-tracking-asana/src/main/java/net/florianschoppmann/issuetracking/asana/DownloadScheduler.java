@@ -0,0 +1,197 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Scheduler that limits the number of concurrent downloads, both in total and per host.
+ *
+ * Downloads waiting for capacity are kept in a priority queue, where smaller (expected) sizes come first. The size of
+ * a download is often not known when it is submitted; it is then assumed to be small. Once the response headers
+ * reveal that a download is large while smaller ones are waiting, it can be deferred once (see
+ * {@link ScheduledDownload#deferIfLarge(long)}).
+ *
+ * The total number of downloads that are either queued or in flight is bounded, too. Once this bound is reached,
+ * {@link #submit(URI, long, Function)} blocks, which provides backpressure to the producer of downloads.
+ */
+public final class DownloadScheduler {
+    /**
+     * Downloads of at most this size are never deferred, because aborting them would not save much.
+     */
+    private static final long MIN_DEFERRED_SIZE = 1024 * 1024;
+
+    private final int maxInFlight;
+    private final int maxInFlightPerHost;
+    private final Semaphore pendingPermits;
+
+    private final Object lock = new Object();
+    private final PriorityQueue<ScheduledDownload> queue = new PriorityQueue<>();
+    private final Map<String, Integer> inFlightPerHost = new HashMap<>();
+    private int inFlight = 0;
+    private long nextSequenceNumber = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param maxInFlight maximum number of concurrent downloads
+     * @param maxInFlightPerHost maximum number of concurrent downloads from the same host
+     * @param maxPending maximum number of downloads that are queued or in flight
+     */
+    public DownloadScheduler(int maxInFlight, int maxInFlightPerHost, int maxPending) {
+        if (maxInFlight < 1 || maxInFlightPerHost < 1 || maxPending < maxInFlight) {
+            throw new IllegalArgumentException(String.format(
+                "Invalid limits (in flight: %d, per host: %d, pending: %d).",
+                maxInFlight, maxInFlightPerHost, maxPending));
+        }
+        this.maxInFlight = maxInFlight;
+        this.maxInFlightPerHost = maxInFlightPerHost;
+        pendingPermits = new Semaphore(maxPending);
+    }
+
+    /**
+     * Download that has been submitted to the scheduler.
+     */
+    final class ScheduledDownload implements Comparable<ScheduledDownload> {
+        private final String host;
+        private final long sequenceNumber;
+        private final Function<ScheduledDownload, CompletableFuture<Path>> action;
+        private final CompletableFuture<Path> future = new CompletableFuture<>();
+        private long sizeHint;
+        private boolean deferred = false;
+        private boolean requeue = false;
+
+        private ScheduledDownload(String host, long sequenceNumber, long sizeHint,
+                Function<ScheduledDownload, CompletableFuture<Path>> action) {
+            this.host = host;
+            this.sequenceNumber = sequenceNumber;
+            this.sizeHint = sizeHint;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(ScheduledDownload other) {
+            int result = Long.compare(sizeHint, other.sizeHint);
+            return result != 0
+                ? result
+                : Long.compare(sequenceNumber, other.sequenceNumber);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object otherObject) {
+            return this == otherObject;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(sequenceNumber);
+        }
+
+        /**
+         * Returns whether this download should be aborted and queued again, because it turned out to be large while
+         * smaller downloads are waiting.
+         *
+         * If this method returns {@code true}, the action must abort the download and complete its future normally.
+         * The scheduler then starts the action again later. A download is deferred at most once.
+         *
+         * @param size size of the download in bytes, or -1 if unknown
+         */
+        boolean deferIfLarge(long size) {
+            synchronized (lock) {
+                if (deferred || size <= MIN_DEFERRED_SIZE) {
+                    return false;
+                }
+                @Nullable ScheduledDownload next = queue.peek();
+                if (next == null || next.sizeHint >= size) {
+                    return false;
+                }
+                deferred = true;
+                requeue = true;
+                sizeHint = size;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Submits a download, blocking while the maximum number of pending downloads is reached.
+     *
+     * @param uri URI of the download, used to determine the host
+     * @param sizeHint expected size in bytes, or 0 if unknown
+     * @param action function that starts the download once capacity permits and returns a future that completes once
+     *     the download has finished
+     * @return future that will be completed with the result of the action
+     */
+    CompletableFuture<Path> submit(URI uri, long sizeHint,
+            Function<ScheduledDownload, CompletableFuture<Path>> action) {
+        pendingPermits.acquireUninterruptibly();
+        @Nullable String host = uri.getHost();
+        ScheduledDownload download;
+        synchronized (lock) {
+            download = new ScheduledDownload(host == null ? "" : host, nextSequenceNumber, sizeHint, action);
+            ++nextSequenceNumber;
+            queue.add(download);
+        }
+        dispatch();
+        return download.future;
+    }
+
+    private void dispatch() {
+        List<ScheduledDownload> startable = new ArrayList<>();
+        synchronized (lock) {
+            List<ScheduledDownload> skipped = new ArrayList<>();
+            while (inFlight < maxInFlight && !queue.isEmpty()) {
+                ScheduledDownload download = queue.poll();
+                int inFlightForHost = inFlightPerHost.getOrDefault(download.host, 0);
+                if (inFlightForHost >= maxInFlightPerHost) {
+                    skipped.add(download);
+                } else {
+                    inFlightPerHost.put(download.host, inFlightForHost + 1);
+                    ++inFlight;
+                    startable.add(download);
+                }
+            }
+            queue.addAll(skipped);
+        }
+        startable.forEach(this::start);
+    }
+
+    private void start(ScheduledDownload download) {
+        CompletableFuture<Path> actionFuture;
+        try {
+            actionFuture = download.action.apply(download);
+        } catch (RuntimeException exception) {
+            actionFuture = CompletableFuture.failedFuture(exception);
+        }
+        actionFuture.whenComplete((@Nullable Path path, @Nullable Throwable exception) -> {
+            boolean requeue;
+            synchronized (lock) {
+                --inFlight;
+                inFlightPerHost.merge(download.host, -1, Integer::sum);
+                requeue = exception == null && download.requeue;
+                if (requeue) {
+                    download.requeue = false;
+                    queue.add(download);
+                }
+            }
+            if (!requeue) {
+                pendingPermits.release();
+                if (exception != null) {
+                    download.future.completeExceptionally(exception);
+                } else {
+                    download.future.complete(path);
+                }
+            }
+            dispatch();
+        });
+    }
+}
@@ -6,7 +6,6 @@ import com.asana.models.Project;
 import com.asana.models.Story;
 import com.asana.models.Task;
 import com.asana.models.User;
-import com.asana.requests.CollectionRequest;
 import net.florianschoppmann.issuetracking.util.ReferencingIssue;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
@@ -14,24 +13,34 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public final class Export {
     private final Logger log = LoggerFactory.getLogger(getClass());
-    private final Client asanaClient;
+    private final AsanaSource asanaSource;
     private final AttachmentDownloader attachmentDownloader;
 
     /**
@@ -42,8 +51,17 @@ public final class Export {
      */
     private static final Pattern ATTACHMENT_ID_PATTERN = Pattern.compile("asset_id=(\\d+)");
 
+    /**
+     * Maximum number of tasks per thread whose details are fetched ahead of the task that is currently processed.
+     */
+    private static final int PREFETCHED_TASKS_PER_THREAD = 4;
+
     public Export(Client asanaClient, AttachmentDownloader attachmentDownloader) {
-        this.asanaClient = Objects.requireNonNull(asanaClient);
+        this(AsanaSource.of(asanaClient), attachmentDownloader);
+    }
+
+    Export(AsanaSource asanaSource, AttachmentDownloader attachmentDownloader) {
+        this.asanaSource = Objects.requireNonNull(asanaSource);
         this.attachmentDownloader = Objects.requireNonNull(attachmentDownloader);
     }
 
@@ -59,6 +77,16 @@ public final class Export {
         private final SortedMap<String, SortedSet<WrappedTask>> userIdToOccurrenceMap = new TreeMap<>();
         private final SortedMap<String, SortedSet<WrappedTask>> taskIdToOccurrenceMap = new TreeMap<>();
         private final List<CompletableFuture<Path>> downloads = new ArrayList<>();
+        private final Map<String, CompletableFuture<TaskDetails>> prefetchedDetails = new ConcurrentHashMap<>();
+        private final Set<String> consumedTaskIds = ConcurrentHashMap.newKeySet();
+        private final Deque<Task> tasksToPrefetch = new ArrayDeque<>();
+        private int numPrefetchedTasks;
+        private @Nullable ExecutorService executorService;
+        private @Nullable ExportCheckpoint checkpoint;
+        private @Nullable ExportSnapshot previousSnapshot;
+        private final Map<String, Task> previousTasks = new HashMap<>();
+        private final Map<String, TaskDetails> exportedTaskDetails = new HashMap<>();
+        private final Set<String> updatedTaskIds = new HashSet<>();
 
         private ExportRequest(String projectId, Path attachmentsBasePath, Options options) {
             this.projectId = projectId;
@@ -69,7 +97,8 @@ public final class Export {
             // The "created_by" field is not yet documented as of 2019-03-07. But:
             // https://forum.asana.com/t/tasks-created-by-field/34433
             taskOptFieldsSet.addAll(Arrays.asList("created_at", "created_by.email", "assignee.email", "followers.email",
-                "html_notes", "likes.user.email", "name", "parent", "resource_type", "resource_subtype"));
+                "html_notes", "likes.user.email", "modified_at", "name", "parent", "resource_type",
+                "resource_subtype"));
             taskOptFields = String.join(",", taskOptFieldsSet);
 
             SortedSet<String> storyOptFieldsSet = new TreeSet<>(options.requestedStoryFields);
@@ -82,18 +111,6 @@ public final class Export {
             attachmentOptFields = String.join(",", attachmentFieldsSet);
         }
 
-        CollectionRequest<Task> queryTasks(CollectionRequest<Task> request) {
-            return request.query("opt_fields", taskOptFields);
-        }
-
-        CollectionRequest<Story> queryStories(CollectionRequest<Story> request) {
-            return request.query("opt_fields", storyOptFields);
-        }
-
-        CollectionRequest<Attachment> queryAttachments(CollectionRequest<Attachment> request) {
-            return request.query("opt_fields", attachmentOptFields);
-        }
-
         private void addPotentiallyMissing(SortedMap<String, SortedSet<WrappedTask>> map, String id,
                 WrappedTask referencesByTask) {
             map.computeIfAbsent(id, ignoredUserId -> new TreeSet<>()).add(referencesByTask);
@@ -139,7 +156,7 @@ public final class Export {
             if (attachment.downloadUrl != null) {
                 Path downloadPath = attachmentDownloader.downloadPath(attachmentsBasePath, taskId, attachment.name);
                 CompletableFuture<Path> download = attachmentDownloader.download(
-                    attachmentsBasePath, taskId, attachment.name, attachment.downloadUrl);
+                    attachmentsBasePath, taskId, attachment.name, attachment.id, attachment.downloadUrl);
                 downloads.add(download);
                 wrappedAttachment.setDownload(downloadPath, download);
             }
@@ -182,34 +199,189 @@ public final class Export {
             }
         }
 
-        private void processTaskAttachmentsAndStories(WrappedTask wrappedTask, ReferenceFactory referenceFactory) {
+        /**
+         * Fetches the details of the given task.
+         *
+         * <p>If the task is unmodified since the previous snapshot, only its subtasks are fetched again, because the
+         * subtasks may have been modified, added, or deleted without modifying the parent task.
+         */
+        private TaskDetails fetchTaskDetails(Task task) {
+            var details = new TaskDetails();
+            @Nullable TaskDetails previousDetails = unmodifiedSnapshotTaskDetails(task);
+            if (previousDetails == null) {
+                asanaSource.attachments(task.id, attachmentOptFields).forEach(details.attachments::add);
+                asanaSource.stories(task.id, storyOptFields).forEach(details.stories::add);
+            } else {
+                details.attachments.addAll(previousDetails.attachments);
+                details.stories.addAll(previousDetails.stories);
+            }
+            asanaSource.subtasks(task.id, taskOptFields).forEach(details.subtasks::add);
+            return details;
+        }
+
+        /**
+         * Queues the given tasks for fetching their details in the background, either after all tasks queued so far
+         * or, for subtasks, before them.
+         *
+         * <p>Subtasks are processed right after their parent task, so they are queued first. This keeps the order of
+         * the prefetched tasks close to the depth-first order of {@link #processTasks(List)}.
+         */
+        private void prefetchTaskDetails(List<Task> tasks, boolean first) {
+            assert executorService != null;
+            synchronized (tasksToPrefetch) {
+                if (first) {
+                    for (int i = tasks.size() - 1; i >= 0; --i) {
+                        tasksToPrefetch.addFirst(tasks.get(i));
+                    }
+                } else {
+                    tasks.forEach(tasksToPrefetch::addLast);
+                }
+            }
+            startPrefetches();
+        }
+
+        /**
+         * Starts fetching the details of queued tasks, as long as fewer than {@link #PREFETCHED_TASKS_PER_THREAD}
+         * times {@link Options#parallelism} prefetched tasks are waiting to be processed.
+         *
+         * <p>Only the network requests happen concurrently. All processing of the fetched data happens in
+         * {@link #processTasks(List)}, in the same order as without prefetching. Bounding the number of prefetched
+         * tasks bounds the memory used for details that have not yet been processed.
+         */
+        private void startPrefetches() {
+            assert executorService != null;
+            synchronized (tasksToPrefetch) {
+                @Nullable Task task;
+                while (numPrefetchedTasks < PREFETCHED_TASKS_PER_THREAD * options.parallelism
+                        && (task = tasksToPrefetch.pollFirst()) != null) {
+                    if (consumedTaskIds.contains(task.id)) {
+                        continue;
+                    }
+                    @Nullable TaskDetails checkpointedDetails = checkpointedTaskDetails(task.id);
+                    if (checkpointedDetails != null) {
+                        for (int i = checkpointedDetails.subtasks.size() - 1; i >= 0; --i) {
+                            tasksToPrefetch.addFirst(checkpointedDetails.subtasks.get(i));
+                        }
+                        continue;
+                    }
+
+                    var future = new CompletableFuture<TaskDetails>();
+                    if (prefetchedDetails.putIfAbsent(task.id, future) != null) {
+                        continue;
+                    }
+                    ++numPrefetchedTasks;
+                    Task prefetchedTask = task;
+                    executorService.execute(() -> {
+                        try {
+                            TaskDetails details = fetchTaskDetails(prefetchedTask);
+                            future.complete(details);
+                            prefetchTaskDetails(details.subtasks, true);
+                        } catch (RuntimeException | Error exception) {
+                            future.completeExceptionally(exception);
+                        }
+                    });
+                }
+            }
+        }
+
+        private @Nullable TaskDetails checkpointedTaskDetails(String taskId) {
+            return checkpoint != null
+                ? checkpoint.get(taskId)
+                : null;
+        }
+
+        /**
+         * Returns the details of the given task from the previous snapshot, or {@code null} if there is no snapshot
+         * or the task is new or was modified since.
+         *
+         * A task counts as unmodified if the previous snapshot contains the same modification time. The subtasks of
+         * an unmodified task are out of date, however (see {@link #fetchTaskDetails(Task)}).
+         */
+        private @Nullable TaskDetails unmodifiedSnapshotTaskDetails(Task task) {
+            if (previousSnapshot == null) {
+                return null;
+            }
+            @Nullable Task previousTask = previousTasks.get(task.id);
+            return previousTask != null && previousTask.modifiedAt != null && task.modifiedAt != null
+                    && previousTask.modifiedAt.getValue() == task.modifiedAt.getValue()
+                ? previousSnapshot.get(task.id)
+                : null;
+        }
+
+        private TaskDetails taskDetails(Task task) {
+            @Nullable TaskDetails checkpointedDetails = checkpointedTaskDetails(task.id);
+            if (checkpointedDetails != null) {
+                return checkpointedDetails;
+            }
+
+            if (executorService == null) {
+                return fetchTaskDetails(task);
+            }
+
+            @Nullable CompletableFuture<TaskDetails> future;
+            synchronized (tasksToPrefetch) {
+                consumedTaskIds.add(task.id);
+                future = prefetchedDetails.remove(task.id);
+                if (future != null) {
+                    --numPrefetchedTasks;
+                }
+            }
+            if (future == null) {
+                // The task has not been prefetched yet. Fetch it directly, but prefetch its subtasks.
+                TaskDetails details = fetchTaskDetails(task);
+                prefetchTaskDetails(details.subtasks, true);
+                return details;
+            }
+            startPrefetches();
+
+            try {
+                return future.join();
+            } catch (CompletionException exception) {
+                Throwable cause = exception.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw exception;
+            }
+        }
+
+        private List<Task> topLevelTasks(Iterable<Task> tasks) {
+            List<Task> list = new ArrayList<>();
+            for (Task task : tasks) {
+                if (task.parent != null) {
+                    // A project can also contain subtasks. However, the canonical location is the one defined by the
+                    // parent relationship. We therefore ignore all subtasks here (that have a parent task).
+                    continue;
+                }
+                list.add(task);
+            }
+            if (executorService != null) {
+                prefetchTaskDetails(list, false);
+            }
+            return list;
+        }
+
+        private void processTaskAttachmentsAndStories(WrappedTask wrappedTask, TaskDetails details,
+                ReferenceFactory referenceFactory) {
             SortedMap<String, WrappedAttachment> idToAttachmentMap = new TreeMap<>();
-            CollectionRequest<Attachment> attachmentsRequest
-                = queryAttachments(asanaClient.attachments.findByTask(wrappedTask.getTaskId()));
-            for (Attachment attachment : attachmentsRequest) {
+            for (Attachment attachment : details.attachments) {
                 WrappedAttachment wrappedAttachment = createWrappedAttachment(attachment, wrappedTask);
                 wrappedTask.addAttachment(wrappedAttachment);
                 idToAttachmentMap.put(attachment.id, wrappedAttachment);
             }
 
-            CollectionRequest<Story> storiesRequest
-                = queryStories(asanaClient.stories.findByTask(wrappedTask.getTaskId()));
-            for (Story story : storiesRequest) {
+            for (Story story : details.stories) {
                 WrappedComment wrappedComment = createWrappedCommentAndTrackReferences(story, wrappedTask);
                 wrappedTask.addComment(wrappedComment);
                 processStorySubtype(wrappedComment, referenceFactory, idToAttachmentMap);
             }
         }
 
-        private void processTasks(CollectionRequest<Task> request, int level) {
+        private void processTasks(List<Task> tasks) throws IOException {
             @Nullable WrappedTask sectionTitle = null;
-            for (Task task : request) {
-                if (level == 0 && task.parent != null) {
-                    // A project can also contain subtasks. However, the canonical location is the one defined by the
-                    // parent relationship. We therefore ignore all subtasks here (that have a parent task).
-                    continue;
-                }
-
+            for (Task task : tasks) {
                 WrappedTask wrappedTask;
                 if (task.name.endsWith(":")) {
                     wrappedTask = createWrappedTaskAndTrackReferences(task, null);
@@ -228,11 +400,19 @@ public final class Export {
                 wrappedTask.setMarkdownDescription(MarkdownBuilder.htmlToMarkdown(task.htmlNotes, referenceFactory));
                 idToTaskMap.put(task.id, wrappedTask);
 
-                processTaskAttachmentsAndStories(wrappedTask, referenceFactory);
+                TaskDetails details = taskDetails(task);
+                if (unmodifiedSnapshotTaskDetails(task) == null) {
+                    updatedTaskIds.add(task.id);
+                }
+                exportedTaskDetails.put(task.id, details);
+                processTaskAttachmentsAndStories(wrappedTask, details, referenceFactory);
                 assignStoryAndAttachmentNumbers(wrappedTask);
+                if (checkpoint != null && checkpointedTaskDetails(task.id) == null) {
+                    checkpoint.add(task.id, details);
+                }
 
                 // Recursion happens here...
-                processTasks(queryTasks(asanaClient.tasks.subtasks(wrappedTask.getTaskId())), level + 1);
+                processTasks(details.subtasks);
                 log.info("Finished \"{}\" (ID {}).", task.name, wrappedTask.getTaskId());
             }
         }
@@ -274,12 +454,44 @@ public final class Export {
             // email. That is, we may miss certain referenced users otherwise.
             // See: https://asana.com/developers/documentation/getting-started/rich-text
             // Note that as of 2019-03-02, Asana returns an empty list for the "Personal Projects" workspace
-            Project project = asanaClient.projects.findById(projectId).query("opt_fields", "workspace").execute();
-            for (User user : asanaClient.users.findByWorkspace(project.workspace.id).query("opt_fields", "email")) {
+            Project project = asanaSource.project(projectId, "workspace");
+            for (User user : asanaSource.usersOfWorkspace(project.workspace.id, "email")) {
                 idToUserMap.put(user.id, new WrappedUser(user));
             }
 
-            processTasks(queryTasks(asanaClient.tasks.findByProject(projectId)), 0);
+            String startedAt = Instant.now().toString();
+            var header = new ExportCheckpoint.Header(projectId, taskOptFields, storyOptFields, attachmentOptFields);
+            if (options.snapshotPath != null) {
+                previousSnapshot = ExportSnapshot.load(options.snapshotPath, header);
+                if (previousSnapshot != null) {
+                    previousTasks.putAll(previousSnapshot.getTasks());
+                }
+            }
+            if (options.checkpointPath != null) {
+                checkpoint = ExportCheckpoint.open(options.checkpointPath, header);
+            }
+            if (options.parallelism > 1) {
+                executorService = Executors.newFixedThreadPool(options.parallelism);
+            }
+            List<Task> topLevelTasks;
+            try {
+                // Even in an incremental export, all tasks of the project are listed. Otherwise, deleted or moved tasks
+                // would not be noticed.
+                topLevelTasks = topLevelTasks(asanaSource.tasksOfProject(projectId, taskOptFields));
+                processTasks(topLevelTasks);
+            } finally {
+                if (executorService != null) {
+                    executorService.shutdownNow();
+                }
+                if (checkpoint != null) {
+                    checkpoint.close();
+                }
+            }
+
+            if (previousSnapshot != null) {
+                log.info("Found {} tasks that are new or were modified since {}.", updatedTaskIds.size(),
+                    previousSnapshot.getStartedAt());
+            }
 
             // Finally, prepare the result.
             List<WrappedTask> sortedTasks = new ArrayList<>(idToTaskMap.values());
@@ -304,7 +516,20 @@ public final class Export {
             verifyEmpty(userIdToOccurrenceMap, exportWarnings.missingUsers);
             verifyAttachmentsHaveCreators(sortedTasks, exportWarnings.taskWithIncompleteAttachments);
 
-            return new Result(sortedTasks, idToTaskMap, idToUserMap, emailToOccurrenceMap, exportWarnings, downloads);
+            List<WrappedTask> updatedTasks = new ArrayList<>();
+            for (WrappedTask task : sortedTasks) {
+                if (updatedTaskIds.contains(task.getTaskId())) {
+                    updatedTasks.add(task);
+                }
+            }
+            Set<String> previousAttachmentIds = previousSnapshot != null
+                ? previousSnapshot.attachmentIds()
+                : Collections.emptySet();
+            @Nullable ExportSnapshot snapshot = options.snapshotPath != null
+                ? new ExportSnapshot(header, startedAt, topLevelTasks, exportedTaskDetails)
+                : null;
+            return new Result(sortedTasks, idToTaskMap, idToUserMap, emailToOccurrenceMap, exportWarnings, downloads,
+                updatedTasks, previousAttachmentIds, snapshot, options.snapshotPath);
         }
     }
 
@@ -317,11 +542,38 @@ public final class Export {
         private final TreeSet<String> requestedTaskFields;
         private final TreeSet<String> requestedStoryFields;
         private final int startId;
-
-        public Options(Collection<String> requestedTaskFields, Collection<String> requestedStoryFields, int startId) {
+        private final int parallelism;
+        private final @Nullable Path checkpointPath;
+        private final @Nullable Path snapshotPath;
+
+        /**
+         * Constructor.
+         *
+         * @param requestedTaskFields task fields to request in addition to those required by the export
+         * @param requestedStoryFields story fields to request in addition to those required by the export
+         * @param startId first number in project
+         * @param parallelism Maximum number of tasks whose attachments, stories, and subtasks are fetched concurrently.
+         *     At most 4 times as many tasks are fetched ahead of the task currently processed. If 1, all requests are
+         *     made sequentially. The result of the export does not depend on this value.
+         * @param checkpointPath File in which to record the tasks that have been processed, or {@code null} if no
+         *     checkpoint should be kept. If the file already contains records from a previous (interrupted) export of
+         *     the same project, these tasks are not fetched again.
+         * @param snapshotPath File with the data of the previous export, or {@code null} if the export should not be
+         *     incremental. If the file exists, only the subtasks of tasks unmodified since the previous export are
+         *     fetched from Asana, whereas their attachments and stories are taken from the file.
+         *     Once {@link Result#saveSnapshot()} is called, the file is replaced by the data of the current export.
+         */
+        public Options(Collection<String> requestedTaskFields, Collection<String> requestedStoryFields, int startId,
+                int parallelism, @Nullable Path checkpointPath, @Nullable Path snapshotPath) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be at least 1.");
+            }
             this.requestedTaskFields = new TreeSet<>(requestedTaskFields);
             this.requestedStoryFields = new TreeSet<>(requestedStoryFields);
             this.startId = startId;
+            this.parallelism = parallelism;
+            this.checkpointPath = checkpointPath;
+            this.snapshotPath = snapshotPath;
         }
     }
 
@@ -332,17 +584,26 @@ public final class Export {
         private final SortedMap<String, WrappedUser> idToUserMap;
         private final AsanaExportWarnings exportWarnings;
         private final List<CompletableFuture<Path>> downloads;
+        private final List<WrappedTask> updatedTasks;
+        private final Set<String> previousAttachmentIds;
+        private final @Nullable ExportSnapshot snapshot;
+        private final @Nullable Path snapshotPath;
 
         private Result(List<WrappedTask> tasks, SortedMap<String, WrappedTask> idToTaskMap,
                 SortedMap<String, WrappedUser> idToUserMap, SortedMap<String,
                 SortedSet<WrappedTask>> emailToOccurrenceMap, AsanaExportWarnings exportWarnings,
-                List<CompletableFuture<Path>> downloads) {
+                List<CompletableFuture<Path>> downloads, List<WrappedTask> updatedTasks,
+                Set<String> previousAttachmentIds, @Nullable ExportSnapshot snapshot, @Nullable Path snapshotPath) {
             this.tasks = tasks;
             this.idToUserMap = idToUserMap;
             this.idToTaskMap = idToTaskMap;
             this.emailToOccurrenceMap = emailToOccurrenceMap;
             this.exportWarnings = exportWarnings;
             this.downloads = downloads;
+            this.updatedTasks = updatedTasks;
+            this.previousAttachmentIds = previousAttachmentIds;
+            this.snapshot = snapshot;
+            this.snapshotPath = snapshotPath;
         }
 
         public List<WrappedTask> getTasks() {
@@ -368,5 +629,34 @@ public final class Export {
         public List<CompletableFuture<Path>> getDownloads() {
             return Collections.unmodifiableList(downloads);
         }
+
+        /**
+         * Returns the tasks that are new or were modified since the previous snapshot.
+         *
+         * If the export was not incremental, this list is equal to {@link #getTasks()}.
+         */
+        public List<WrappedTask> getUpdatedTasks() {
+            return Collections.unmodifiableList(updatedTasks);
+        }
+
+        /**
+         * Returns whether the given attachment was not yet contained in the previous snapshot.
+         */
+        public boolean isNewAttachment(WrappedAttachment attachment) {
+            return !previousAttachmentIds.contains(attachment.getAttachment().id);
+        }
+
+        /**
+         * Stores the data of this export as snapshot, so that the next export can be incremental.
+         *
+         * This method should only be called once the result of this export has been persisted, because the next
+         * incremental export will only contain the changes made after this export. It does nothing if no snapshot
+         * path was given in the {@link Options}.
+         */
+        public void saveSnapshot() throws IOException {
+            if (snapshot != null && snapshotPath != null) {
+                snapshot.save(snapshotPath);
+            }
+        }
     }
 }
@@ -0,0 +1,159 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Persistent record of the Asana tasks whose details an export has already retrieved and processed.
+ *
+ * The checkpoint is an append-only file with one JSON object per line. The first line identifies the export (project
+ * and requested fields). Each further line contains the attachments, stories, and subtasks of one task. Since the
+ * processing in {@link Export} is deterministic, replaying these records yields the same {@link WrappedTask} instances
+ * (including comments, attachments, and references) as fetching them again.
+ *
+ * A truncated last line (for instance, because the process was killed while writing it) is discarded when the
+ * checkpoint is opened.
+ */
+final class ExportCheckpoint implements Closeable {
+    private final Map<String, TaskDetails> taskDetailsMap;
+    private final BufferedWriter writer;
+
+    private ExportCheckpoint(Map<String, TaskDetails> taskDetailsMap, BufferedWriter writer) {
+        this.taskDetailsMap = taskDetailsMap;
+        this.writer = writer;
+    }
+
+    /**
+     * Identifies the export that a checkpoint belongs to. Records are only reused if the header matches.
+     */
+    static final class Header {
+        private final String projectId;
+        private final String taskOptFields;
+        private final String storyOptFields;
+        private final String attachmentOptFields;
+
+        Header(String projectId, String taskOptFields, String storyOptFields, String attachmentOptFields) {
+            this.projectId = Objects.requireNonNull(projectId);
+            this.taskOptFields = Objects.requireNonNull(taskOptFields);
+            this.storyOptFields = Objects.requireNonNull(storyOptFields);
+            this.attachmentOptFields = Objects.requireNonNull(attachmentOptFields);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object otherObject) {
+            if (this == otherObject) {
+                return true;
+            } else if (otherObject == null || getClass() != otherObject.getClass()) {
+                return false;
+            }
+
+            Header other = (Header) otherObject;
+            return projectId.equals(other.projectId)
+                && taskOptFields.equals(other.taskOptFields)
+                && storyOptFields.equals(other.storyOptFields)
+                && attachmentOptFields.equals(other.attachmentOptFields);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(projectId, taskOptFields, storyOptFields, attachmentOptFields);
+        }
+    }
+
+    private static final class Record {
+        private @Nullable String taskId;
+        private @Nullable TaskDetails details;
+    }
+
+    /**
+     * Opens the checkpoint at the given path, creating it if it does not yet exist.
+     *
+     * If the file exists but was created for a different export (as determined by the header), its content is
+     * discarded.
+     */
+    static ExportCheckpoint open(Path path, Header header) throws IOException {
+        final Logger log = LoggerFactory.getLogger(ExportCheckpoint.class);
+        Map<String, TaskDetails> taskDetailsMap = new HashMap<>();
+        long validLength = 0;
+        if (Files.exists(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                @Nullable String line = reader.readLine();
+                if (line != null && header.equals(AsanaJson.parseOrNull(line, Header.class))) {
+                    validLength = lineLength(line);
+                    while ((line = reader.readLine()) != null) {
+                        @Nullable Record record = AsanaJson.parseOrNull(line, Record.class);
+                        if (record == null || record.taskId == null || record.details == null) {
+                            log.warn("Discarding incomplete record at the end of checkpoint {}.", path);
+                            break;
+                        }
+                        taskDetailsMap.put(record.taskId, record.details);
+                        validLength += lineLength(line);
+                    }
+                } else if (line != null) {
+                    log.warn("Ignoring checkpoint {} because it was created for a different export.", path);
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(validLength);
+        }
+        BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        if (validLength == 0) {
+            writeLine(writer, AsanaJson.GSON.toJson(header));
+        } else {
+            log.info("Resuming from checkpoint {} with {} previously exported tasks.", path, taskDetailsMap.size());
+        }
+        return new ExportCheckpoint(Collections.unmodifiableMap(taskDetailsMap), writer);
+    }
+
+    private static long lineLength(String line) {
+        return line.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    private static void writeLine(BufferedWriter writer, String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+        writer.flush();
+    }
+
+    /**
+     * Returns the details of the given task if they are contained in this checkpoint, or {@code null} otherwise.
+     *
+     * This method only returns records that were present when the checkpoint was opened. It is safe to call it
+     * concurrently.
+     */
+    @Nullable TaskDetails get(String taskId) {
+        return taskDetailsMap.get(taskId);
+    }
+
+    /**
+     * Appends the details of a fully processed task.
+     */
+    void add(String taskId, TaskDetails details) throws IOException {
+        Record record = new Record();
+        record.taskId = taskId;
+        record.details = details;
+        writeLine(writer, AsanaJson.GSON.toJson(record));
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,166 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import com.asana.models.Attachment;
+import com.asana.models.Task;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Raw Asana data of a completed export, used as the baseline for an incremental export.
+ *
+ * The file format is similar to the one of {@link ExportCheckpoint}: One JSON object per line, where the first line
+ * identifies the export and contains the time at which it started. The remaining lines contain the top-level tasks of
+ * the project (in project order) and the details of all exported tasks.
+ */
+final class ExportSnapshot {
+    private final ExportCheckpoint.Header header;
+    private final String startedAt;
+    private final List<Task> topLevelTasks;
+    private final Map<String, TaskDetails> taskDetailsMap;
+
+    ExportSnapshot(ExportCheckpoint.Header header, String startedAt, List<Task> topLevelTasks,
+            Map<String, TaskDetails> taskDetailsMap) {
+        this.header = Objects.requireNonNull(header);
+        this.startedAt = Objects.requireNonNull(startedAt);
+        this.topLevelTasks = Objects.requireNonNull(topLevelTasks);
+        this.taskDetailsMap = Objects.requireNonNull(taskDetailsMap);
+    }
+
+    private static final class FirstLine {
+        private ExportCheckpoint.@Nullable Header header;
+        private @Nullable String startedAt;
+    }
+
+    private static final class Record {
+        private @Nullable Task topLevelTask;
+        private @Nullable String taskId;
+        private @Nullable TaskDetails details;
+    }
+
+    /**
+     * Returns the snapshot stored at the given path, or {@code null} if there is no snapshot for the given export.
+     *
+     * @throws IOException if the file could not be read or is corrupt
+     */
+    static @Nullable ExportSnapshot load(Path path, ExportCheckpoint.Header header) throws IOException {
+        final Logger log = LoggerFactory.getLogger(ExportSnapshot.class);
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            @Nullable String line = reader.readLine();
+            @Nullable FirstLine firstLine = line == null
+                ? null
+                : AsanaJson.parseOrNull(line, FirstLine.class);
+            if (firstLine == null || firstLine.startedAt == null) {
+                throw new IOException(String.format("Snapshot %s is corrupt.", path));
+            } else if (!header.equals(firstLine.header)) {
+                log.warn("Ignoring snapshot {} because it was created for a different export.", path);
+                return null;
+            }
+
+            List<Task> topLevelTasks = new ArrayList<>();
+            Map<String, TaskDetails> taskDetailsMap = new HashMap<>();
+            while ((line = reader.readLine()) != null) {
+                @Nullable Record record = AsanaJson.parseOrNull(line, Record.class);
+                if (record != null && record.topLevelTask != null) {
+                    topLevelTasks.add(record.topLevelTask);
+                } else if (record != null && record.taskId != null && record.details != null) {
+                    taskDetailsMap.put(record.taskId, record.details);
+                } else {
+                    throw new IOException(String.format("Snapshot %s is corrupt.", path));
+                }
+            }
+            return new ExportSnapshot(header, firstLine.startedAt, topLevelTasks, taskDetailsMap);
+        }
+    }
+
+    private static void writeLine(BufferedWriter writer, String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+    }
+
+    /**
+     * Atomically replaces the file at the given path with this snapshot.
+     */
+    void save(Path path) throws IOException {
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+            var firstLine = new FirstLine();
+            firstLine.header = header;
+            firstLine.startedAt = startedAt;
+            writeLine(writer, AsanaJson.GSON.toJson(firstLine));
+            for (Task task : topLevelTasks) {
+                var record = new Record();
+                record.topLevelTask = task;
+                writeLine(writer, AsanaJson.GSON.toJson(record));
+            }
+            for (Map.Entry<String, TaskDetails> entry : taskDetailsMap.entrySet()) {
+                var record = new Record();
+                record.taskId = entry.getKey();
+                record.details = entry.getValue();
+                writeLine(writer, AsanaJson.GSON.toJson(record));
+            }
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the time at which the export that created this snapshot started, in RFC 3339 format.
+     */
+    String getStartedAt() {
+        return startedAt;
+    }
+
+    List<Task> getTopLevelTasks() {
+        return Collections.unmodifiableList(topLevelTasks);
+    }
+
+    /**
+     * Returns all tasks in this snapshot, that is, the top-level tasks and their (direct and indirect) subtasks.
+     */
+    Map<String, Task> getTasks() {
+        Map<String, Task> idToTaskMap = new HashMap<>();
+        for (Task task : topLevelTasks) {
+            idToTaskMap.put(task.id, task);
+        }
+        for (TaskDetails details : taskDetailsMap.values()) {
+            for (Task subtask : details.subtasks) {
+                idToTaskMap.put(subtask.id, subtask);
+            }
+        }
+        return idToTaskMap;
+    }
+
+    @Nullable TaskDetails get(String taskId) {
+        return taskDetailsMap.get(taskId);
+    }
+
+    Set<String> attachmentIds() {
+        Set<String> attachmentIds = new HashSet<>();
+        for (TaskDetails details : taskDetailsMap.values()) {
+            for (Attachment attachment : details.attachments) {
+                attachmentIds.add(attachment.id);
+            }
+        }
+        return attachmentIds;
+    }
+}
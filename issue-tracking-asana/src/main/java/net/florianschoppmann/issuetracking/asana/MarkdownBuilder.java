@@ -20,12 +20,22 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 final class MarkdownBuilder {
+    /**
+     * Factory for creating {@link XMLStreamReader} instances. Once configured, {@link XMLInputFactory} is thread-safe.
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = newXmlInputFactory();
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     enum ListType {
@@ -49,6 +59,7 @@ final class MarkdownBuilder {
     private @Nullable String currentLink;
     private boolean inTrivialLink = false;
     private @Nullable String lastText;
+    private final StringBuilder pendingText = new StringBuilder();
 
     private MarkdownBuilder(ReferenceFactory referenceFactory, int size) {
         this.referenceFactory = Objects.requireNonNull(referenceFactory);
@@ -96,7 +107,7 @@ final class MarkdownBuilder {
         }
     }
 
-    private boolean shouldEnterElement(String element, Map<String, String> attributes) {
+    private boolean shouldEnterElement(String element, Function<String, @Nullable String> attributes) {
         if (inTrivialLink) {
             noTrivialLink();
         }
@@ -114,11 +125,11 @@ final class MarkdownBuilder {
                 enterListItem();
                 break;
             case "a":
-                @Nullable String href = attributes.get("href");
-                @Nullable String type = attributes.get("data-asana-type");
+                @Nullable String href = attributes.apply("href");
+                @Nullable String type = attributes.apply("data-asana-type");
                 if (type != null) {
                     lazyStringBuilder.append(
-                        referenceFactory.createReference(href, type, attributes.get("data-asana-gid")));
+                        referenceFactory.createReference(href, type, attributes.apply("data-asana-gid")));
                     return false;
                 } else if (href != null) {
                     currentLink = href;
@@ -146,6 +157,7 @@ final class MarkdownBuilder {
                     if (inTrivialLink) {
                         lazyStringBuilder.append(currentLink);
                         inTrivialLink = false;
+                        lastText = null;
                     } else {
                         lazyStringBuilder.append("](").append(currentLink).append(')');
                     }
@@ -173,6 +185,95 @@ final class MarkdownBuilder {
         return lazyStringBuilder.build();
     }
 
+    private static XMLInputFactory newXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Visits the text accumulated since the last non-text event, if any.
+     *
+     * <p>The parser may report a text node as several consecutive events, whereas {@link #visitText(String)} expects
+     * complete text nodes (as in the DOM).
+     */
+    private void flushPendingText() {
+        if (pendingText.length() > 0) {
+            visitText(pendingText.toString());
+            pendingText.setLength(0);
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                ++depth;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                --depth;
+            }
+        }
+    }
+
+    /**
+     * Converts the given HTML with a single pass over the parser events, without building a DOM.
+     *
+     * <p>The result is the same as with {@link #htmlToMarkdownWithDomInternal(String)}, except that CDATA sections are
+     * treated as text instead of being ignored. In particular, the start tag of the document element is not visited,
+     * but its end tag is.
+     */
+    private LazyString htmlToMarkdownInternal(String html) {
+        @Nullable XMLStreamReader reader = null;
+        try {
+            XMLStreamReader currentReader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(html));
+            reader = currentReader;
+            Function<String, @Nullable String> attributes = name -> currentReader.getAttributeValue(null, name);
+            int depth = 0;
+            while (currentReader.hasNext()) {
+                switch (currentReader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        flushPendingText();
+                        if (depth == 0) {
+                            ++depth;
+                        } else if (shouldEnterElement(currentReader.getLocalName(), attributes)) {
+                            ++depth;
+                        } else {
+                            skipElement(currentReader);
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        flushPendingText();
+                        exitElement(currentReader.getLocalName());
+                        --depth;
+                        break;
+                    case XMLStreamConstants.CHARACTERS: case XMLStreamConstants.SPACE: case XMLStreamConstants.CDATA:
+                        if (depth > 0) {
+                            pendingText.append(currentReader.getTextCharacters(), currentReader.getTextStart(),
+                                currentReader.getTextLength());
+                        }
+                        break;
+                    default:
+                        // Like in the DOM, comments and processing instructions separate text nodes.
+                        flushPendingText();
+                }
+            }
+            return toLazyString();
+        } catch (XMLStreamException exception) {
+            log.warn("Could not parse HTML received from Asana.", exception);
+            return LazyString.of("[parsing error]");
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                    // Closing a reader of a StringReader does not release any resources that matter.
+                }
+            }
+        }
+    }
+
     private static Document parse(String xml) throws SAXException {
         try {
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
@@ -193,17 +294,14 @@ final class MarkdownBuilder {
         return Collections.unmodifiableSortedMap(stringMap);
     }
 
-    private LazyString htmlToMarkdownInternal(String html, ReferenceFactory referenceFactory) {
-        Objects.requireNonNull(html);
-        Objects.requireNonNull(referenceFactory);
-
+    private LazyString htmlToMarkdownWithDomInternal(String html) {
         try {
             Node parent = parse(html).getDocumentElement();
             Node node = parent.getFirstChild();
             while (node != null) {
                 switch (node.getNodeType()) {
                     case Node.ELEMENT_NODE:
-                        boolean shouldEnter = shouldEnterElement(node.getNodeName(), attributesMap(node));
+                        boolean shouldEnter = shouldEnterElement(node.getNodeName(), attributesMap(node)::get);
                         if (shouldEnter) {
                             parent = node;
                             node = parent.getFirstChild();
@@ -225,7 +323,7 @@ final class MarkdownBuilder {
             }
             return toLazyString();
         } catch (SAXException exception) {
-            log.warn("Could not parse HTML by received from Asana.", exception);
+            log.warn("Could not parse HTML received from Asana.", exception);
             return LazyString.of("[parsing error]");
         }
     }
@@ -233,6 +331,18 @@ final class MarkdownBuilder {
     static LazyString htmlToMarkdown(String html, ReferenceFactory referenceFactory) {
         Objects.requireNonNull(referenceFactory);
         var markdownBuilder = new MarkdownBuilder(referenceFactory, html.length());
-        return markdownBuilder.htmlToMarkdownInternal(html, referenceFactory);
+        return markdownBuilder.htmlToMarkdownInternal(html);
+    }
+
+    /**
+     * Converts the given HTML by first parsing it into a DOM.
+     *
+     * <p>This was the original implementation of {@link #htmlToMarkdown(String, ReferenceFactory)}. It is only kept
+     * as reference for tests and benchmarks.
+     */
+    static LazyString htmlToMarkdownWithDom(String html, ReferenceFactory referenceFactory) {
+        Objects.requireNonNull(referenceFactory);
+        var markdownBuilder = new MarkdownBuilder(referenceFactory, html.length());
+        return markdownBuilder.htmlToMarkdownWithDomInternal(html);
     }
 }
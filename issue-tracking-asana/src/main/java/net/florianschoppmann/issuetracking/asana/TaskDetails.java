@@ -0,0 +1,17 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import com.asana.models.Attachment;
+import com.asana.models.Story;
+import com.asana.models.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data of a task that is not part of the task itself and has to be retrieved with separate requests.
+ */
+final class TaskDetails {
+    final List<Attachment> attachments = new ArrayList<>();
+    final List<Story> stories = new ArrayList<>();
+    final List<Task> subtasks = new ArrayList<>();
+}
@@ -0,0 +1,247 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+public class AsyncAttachmentDownloaderTest {
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=([0-9]+)-");
+    private static final String TASK_ID = "1";
+    private static final String ATTACHMENT_NAME = "attachment.txt";
+    private static final String ATTACHMENT_ID = "2";
+    private static final String ENTITY_TAG = "\"v1\"";
+
+    private Path tempDir;
+    private Path targetFile;
+    private Path partialFile;
+    private Path manifestFile;
+    private ExecutorService executorService;
+    private HttpServer httpServer;
+    private URL url;
+    private HttpClient httpClient;
+    private AsyncAttachmentDownloader downloader;
+
+    private byte[] content;
+    private String entityTag;
+    private int truncateAfter;
+    private @Nullable String contentRange;
+    private boolean rangeNotSatisfiable;
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Serves {@link #content}, honoring range requests if the If-Range header matches {@link #entityTag}.
+     *
+     * Each request is recorded as its Range and If-Range headers, separated by a space.
+     */
+    private void handleDownload(HttpExchange exchange) throws IOException {
+        try {
+            @Nullable String range = exchange.getRequestHeaders().getFirst("Range");
+            @Nullable String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            requests.add(range + " " + ifRange);
+            exchange.getResponseHeaders().set("ETag", entityTag);
+            if (range != null && rangeNotSatisfiable) {
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+
+            int start = 0;
+            int statusCode = 200;
+            if (range != null && entityTag.equals(ifRange)) {
+                Matcher matcher = RANGE_PATTERN.matcher(range);
+                Assert.assertTrue(matcher.matches());
+                start = Integer.parseInt(matcher.group(1));
+                statusCode = 206;
+                exchange.getResponseHeaders().set("Content-Range", contentRange != null
+                    ? contentRange
+                    : String.format("bytes %d-%d/%d", start, content.length - 1, content.length));
+            }
+            int length = content.length - start;
+            exchange.sendResponseHeaders(statusCode, length);
+            exchange.getResponseBody().write(content, start, truncateAfter >= 0 ? truncateAfter : length);
+        } finally {
+            // If fewer bytes than announced were written, this closes the connection.
+            exchange.close();
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+        targetFile = tempDir.resolve(TASK_ID).resolve(ATTACHMENT_NAME);
+        partialFile = targetFile.resolveSibling(ATTACHMENT_NAME + ".part");
+        manifestFile = targetFile.resolveSibling(ATTACHMENT_NAME + ".part.properties");
+        content = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.UTF_8);
+        entityTag = ENTITY_TAG;
+        truncateAfter = -1;
+        contentRange = null;
+        rangeNotSatisfiable = false;
+        requests.clear();
+
+        executorService = Executors.newCachedThreadPool();
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        httpServer.setExecutor(executorService);
+        httpServer.createContext("/attachment", this::handleDownload);
+        httpServer.start();
+        url = new URL(String.format("http://localhost:%d/attachment", httpServer.getAddress().getPort()));
+        httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(executorService)
+            .build();
+        downloader = new AsyncAttachmentDownloader(httpClient, new DownloadScheduler(2, 2, 10));
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        httpServer.stop(0);
+        executorService.shutdownNow();
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private CompletableFuture<Path> download() {
+        return downloader.download(tempDir, TASK_ID, ATTACHMENT_NAME, ATTACHMENT_ID, url);
+    }
+
+    private void assertDownloaded() throws IOException {
+        Assert.assertEquals(download().join(), targetFile);
+        Assert.assertEquals(Files.readAllBytes(targetFile), content);
+        Assert.assertFalse(Files.exists(partialFile));
+        Assert.assertFalse(Files.exists(manifestFile));
+    }
+
+    /**
+     * Creates the state of an interrupted download, as if the first given number of bytes had been received.
+     */
+    private void writePartialDownload(int length, long manifestLength) throws IOException {
+        Files.createDirectories(targetFile.getParent());
+        Files.write(partialFile, Arrays.copyOf(content, length));
+        Files.writeString(manifestFile,
+            String.format("length=%d%netag=%s%n", manifestLength, entityTag), StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void completeDownload() throws IOException {
+        assertDownloaded();
+        Assert.assertEquals(requests, List.of("null null"));
+
+        // Already downloaded files are not requested again.
+        assertDownloaded();
+        Assert.assertEquals(requests.size(), 1);
+    }
+
+    @Test
+    public void knownAttachmentNotTransferred() throws IOException {
+        Path firstRun = tempDir.resolve("first");
+        Path secondRun = tempDir.resolve("second");
+        // Asana download URLs are presigned, so the URL is different in every run.
+        URL secondUrl = new URL(url + "?signature=2");
+        try (BlobStore blobStore = BlobStore.open(tempDir.resolve("blobs"))) {
+            downloader = new AsyncAttachmentDownloader(httpClient, new DownloadScheduler(2, 2, 10), blobStore);
+            Path firstFile = downloader.download(firstRun, TASK_ID, ATTACHMENT_NAME, ATTACHMENT_ID, url).join();
+            Assert.assertEquals(requests.size(), 1);
+
+            Path secondFile = downloader.download(secondRun, TASK_ID, ATTACHMENT_NAME, ATTACHMENT_ID, secondUrl).join();
+            Assert.assertEquals(requests.size(), 1);
+            Assert.assertNotEquals(secondFile, firstFile);
+            Assert.assertEquals(Files.readAllBytes(firstFile), content);
+            Assert.assertEquals(Files.readAllBytes(secondFile), content);
+        }
+    }
+
+    @Test
+    public void resume() throws IOException {
+        truncateAfter = 10;
+        Assert.assertThrows(CompletionException.class, () -> download().join());
+        Assert.assertFalse(Files.exists(targetFile));
+        Assert.assertTrue(Files.exists(manifestFile));
+        long existingLength = Files.size(partialFile);
+        Assert.assertTrue(existingLength <= 10);
+
+        truncateAfter = -1;
+        assertDownloaded();
+        Assert.assertEquals(requests, List.of("null null", "bytes=" + existingLength + "- " + ENTITY_TAG));
+    }
+
+    @Test
+    public void resumeAfterChange() throws IOException {
+        writePartialDownload(10, content.length);
+        content = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".getBytes(StandardCharsets.UTF_8);
+        entityTag = "\"v2\"";
+
+        // The server ignores the range because of the If-Range header, and the stale partial file must be replaced.
+        assertDownloaded();
+        Assert.assertEquals(requests, List.of("bytes=10- " + ENTITY_TAG));
+    }
+
+    @Test
+    public void unexpectedContentRange() throws IOException {
+        writePartialDownload(10, content.length);
+        contentRange = String.format("bytes 0-%d/%d", content.length - 1, content.length);
+
+        CompletionException exception = Assert.expectThrows(CompletionException.class, () -> download().join());
+        Assert.assertTrue(exception.getCause() instanceof IOException);
+        Assert.assertTrue(exception.getCause().getMessage().contains("Content-Range"));
+        // The partial file is kept, so that a later run can resume.
+        Assert.assertEquals(Files.size(partialFile), 10);
+        Assert.assertTrue(Files.exists(manifestFile));
+        Assert.assertFalse(Files.exists(targetFile));
+    }
+
+    @Test
+    public void rangeNotSatisfiableAfterCompleteTransfer() throws IOException {
+        writePartialDownload(content.length, content.length);
+        rangeNotSatisfiable = true;
+
+        assertDownloaded();
+        Assert.assertEquals(requests, List.of("bytes=" + content.length + "- " + ENTITY_TAG));
+    }
+
+    @Test
+    public void rangeNotSatisfiableRestart() throws IOException {
+        // Unknown length
+        writePartialDownload(10, -1);
+        rangeNotSatisfiable = true;
+
+        assertDownloaded();
+        Assert.assertEquals(requests, List.of("bytes=10- " + ENTITY_TAG, "null null"));
+    }
+
+    @Test
+    public void rangeNotSatisfiableWrongLength() throws IOException {
+        // The partial file is longer than the attachment (for instance, because the attachment was replaced by a
+        // shorter one with the same entity tag).
+        int previousLength = content.length;
+        writePartialDownload(previousLength, previousLength + 10);
+        content = Arrays.copyOf(content, 20);
+        rangeNotSatisfiable = true;
+
+        assertDownloaded();
+        Assert.assertEquals(requests, List.of("bytes=" + previousLength + "- " + ENTITY_TAG, "null null"));
+    }
+}
@@ -0,0 +1,86 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class BlobStoreTest {
+    private Path tempDir;
+    private Path root;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+        root = tempDir.resolve("blobs");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private Path add(BlobStore blobStore, String content, String attachmentId) throws IOException {
+        Path file = Files.writeString(Files.createTempFile(tempDir, "download", ".part"), content);
+        byte[] digest = BlobStore.newMessageDigest().digest(content.getBytes(StandardCharsets.UTF_8));
+        return blobStore.add(file, digest, attachmentId);
+    }
+
+    @Test
+    public void blobsByAttachmentId() throws IOException {
+        Path firstBlob;
+        Path secondBlob;
+        try (BlobStore blobStore = BlobStore.open(root)) {
+            firstBlob = add(blobStore, "first", "1");
+            Assert.assertEquals(blobStore.blobForAttachment("1"), firstBlob);
+            Assert.assertNull(blobStore.blobForAttachment("2"));
+
+            secondBlob = add(blobStore, "second", "2");
+            Assert.assertNotEquals(secondBlob, firstBlob);
+            // Same content as the first attachment
+            Assert.assertEquals(add(blobStore, "first", "3"), firstBlob);
+        }
+
+        try (BlobStore blobStore = BlobStore.open(root)) {
+            Assert.assertEquals(blobStore.blobForAttachment("1"), firstBlob);
+            Assert.assertEquals(blobStore.blobForAttachment("2"), secondBlob);
+            Assert.assertEquals(blobStore.blobForAttachment("3"), firstBlob);
+            Assert.assertEquals(Files.readString(secondBlob), "second");
+        }
+    }
+
+    @Test
+    public void truncatedIndexLineIgnored() throws IOException {
+        try (BlobStore blobStore = BlobStore.open(root)) {
+            add(blobStore, "first", "12");
+        }
+        Path indexFile;
+        try (Stream<Path> paths = Files.list(root)) {
+            indexFile = paths.filter(Files::isRegularFile).findAny().orElseThrow();
+        }
+        String index = Files.readString(indexFile, StandardCharsets.UTF_8);
+        Files.writeString(indexFile, index.substring(0, index.length() - 2), StandardCharsets.UTF_8);
+
+        // The truncated line would otherwise map attachment "1" to the content of attachment "12".
+        Path blob;
+        try (BlobStore blobStore = BlobStore.open(root)) {
+            Assert.assertNull(blobStore.blobForAttachment("1"));
+            blob = add(blobStore, "second", "1");
+        }
+
+        // The partial line must have been removed, so that the entry added afterwards is readable.
+        try (BlobStore blobStore = BlobStore.open(root)) {
+            Assert.assertEquals(blobStore.blobForAttachment("1"), blob);
+            Assert.assertNull(blobStore.blobForAttachment("12"));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class DownloadSchedulerTest {
+    private static final class FakeDownloads {
+        private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+        private final List<CompletableFuture<Path>> running = Collections.synchronizedList(new ArrayList<>());
+
+        private CompletableFuture<Path> submit(DownloadScheduler scheduler, String uri, long sizeHint) {
+            return scheduler.submit(URI.create(uri), sizeHint, scheduledDownload -> {
+                started.add(uri);
+                var future = new CompletableFuture<Path>();
+                running.add(future);
+                return future;
+            });
+        }
+
+        private void completeFirstRunning() {
+            running.remove(0).complete(Paths.get("done"));
+        }
+    }
+
+    @Test
+    public void limits() {
+        var scheduler = new DownloadScheduler(3, 2, 10);
+        var downloads = new FakeDownloads();
+        List<CompletableFuture<Path>> futures = new ArrayList<>();
+        futures.add(downloads.submit(scheduler, "http://a/1", 0));
+        futures.add(downloads.submit(scheduler, "http://a/2", 0));
+        futures.add(downloads.submit(scheduler, "http://a/3", 0));
+        futures.add(downloads.submit(scheduler, "http://b/1", 0));
+        futures.add(downloads.submit(scheduler, "http://b/2", 0));
+        // At most 2 downloads from host a, and at most 3 in total
+        Assert.assertEquals(downloads.started, List.of("http://a/1", "http://a/2", "http://b/1"));
+
+        downloads.completeFirstRunning();
+        Assert.assertTrue(futures.get(0).isDone());
+        Assert.assertEquals(downloads.started.get(3), "http://a/3");
+
+        while (!downloads.running.isEmpty()) {
+            downloads.completeFirstRunning();
+        }
+        Assert.assertEquals(downloads.started.size(), 5);
+        Assert.assertTrue(futures.stream().allMatch(CompletableFuture::isDone));
+    }
+
+    @Test
+    public void smallDownloadsFirst() {
+        var scheduler = new DownloadScheduler(1, 1, 10);
+        var downloads = new FakeDownloads();
+        downloads.submit(scheduler, "http://a/first", 0);
+        downloads.submit(scheduler, "http://a/large", 1000);
+        downloads.submit(scheduler, "http://a/medium", 100);
+        downloads.submit(scheduler, "http://a/unknown", 0);
+        for (int i = 0; i < 4; ++i) {
+            downloads.completeFirstRunning();
+        }
+        Assert.assertEquals(downloads.started,
+            List.of("http://a/first", "http://a/unknown", "http://a/medium", "http://a/large"));
+    }
+
+    @Test
+    public void defer() {
+        var scheduler = new DownloadScheduler(1, 1, 10);
+        List<DownloadScheduler.ScheduledDownload> attempts = new ArrayList<>();
+        List<CompletableFuture<Path>> attemptFutures = new ArrayList<>();
+        CompletableFuture<Path> large = scheduler.submit(URI.create("http://a/large"), 0, scheduledDownload -> {
+            attempts.add(scheduledDownload);
+            var future = new CompletableFuture<Path>();
+            attemptFutures.add(future);
+            return future;
+        });
+        CompletableFuture<Path> small = scheduler.submit(URI.create("http://a/small"), 0,
+            scheduledDownload -> CompletableFuture.completedFuture(Paths.get("small")));
+        Assert.assertEquals(attempts.size(), 1);
+        Assert.assertFalse(small.isDone());
+
+        long largeSize = 10L * 1024 * 1024;
+        Assert.assertFalse(attempts.get(0).deferIfLarge(1024));
+        Assert.assertTrue(attempts.get(0).deferIfLarge(largeSize));
+        attemptFutures.get(0).complete(null);
+        Assert.assertEquals(small.join(), Paths.get("small"));
+        Assert.assertFalse(large.isDone());
+
+        // A download is deferred at most once.
+        Assert.assertEquals(attempts.size(), 2);
+        Assert.assertFalse(attempts.get(1).deferIfLarge(largeSize));
+        attemptFutures.get(1).complete(Paths.get("large"));
+        Assert.assertEquals(large.join(), Paths.get("large"));
+    }
+}
@@ -0,0 +1,154 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import com.asana.models.Attachment;
+import com.asana.models.Story;
+import com.asana.models.Task;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ExportCheckpointTest {
+    private static final ExportCheckpoint.Header HEADER
+        = new ExportCheckpoint.Header("1", "name,notes", "text", "name");
+
+    private Path tempDir;
+    private Path checkpointPath;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+        checkpointPath = tempDir.resolve("checkpoint.jsonl");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static TaskDetails taskDetails(String taskId) {
+        var details = new TaskDetails();
+        var attachment = new Attachment();
+        attachment.id = taskId + "1";
+        attachment.name = "Attachment of " + taskId;
+        details.attachments.add(attachment);
+        var story = new Story();
+        story.id = taskId + "2";
+        story.text = "Comment on " + taskId;
+        details.stories.add(story);
+        var subtask = new Task();
+        subtask.id = taskId + "3";
+        subtask.name = "Subtask of " + taskId;
+        details.subtasks.add(subtask);
+        return details;
+    }
+
+    private static void assertDetails(@Nullable TaskDetails actual, String taskId) {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(AsanaJson.GSON.toJson(actual), AsanaJson.GSON.toJson(taskDetails(taskId)));
+    }
+
+    private void write(ExportCheckpoint.Header header, String... taskIds) throws IOException {
+        try (ExportCheckpoint checkpoint = ExportCheckpoint.open(checkpointPath, header)) {
+            for (String taskId : taskIds) {
+                checkpoint.add(taskId, taskDetails(taskId));
+            }
+        }
+    }
+
+    @Test
+    public void resume() throws IOException {
+        write(HEADER, "10", "11");
+
+        try (ExportCheckpoint checkpoint = ExportCheckpoint.open(checkpointPath, HEADER)) {
+            assertDetails(checkpoint.get("10"), "10");
+            assertDetails(checkpoint.get("11"), "11");
+            Assert.assertNull(checkpoint.get("12"));
+            checkpoint.add("12", taskDetails("12"));
+            // Records added after opening are only returned once the checkpoint is opened again.
+            Assert.assertNull(checkpoint.get("12"));
+        }
+
+        try (ExportCheckpoint checkpoint = ExportCheckpoint.open(checkpointPath, HEADER)) {
+            for (String taskId : List.of("10", "11", "12")) {
+                assertDetails(checkpoint.get(taskId), taskId);
+            }
+        }
+        // Header and one line per task, without duplicates
+        Assert.assertEquals(Files.readAllLines(checkpointPath).size(), 4);
+    }
+
+    @Test
+    public void truncatedLastLineIgnored() throws IOException {
+        write(HEADER, "10", "11");
+        long length = Files.size(checkpointPath);
+        try (FileChannel channel = FileChannel.open(checkpointPath, StandardOpenOption.WRITE)) {
+            channel.truncate(length - 10);
+        }
+
+        try (ExportCheckpoint checkpoint = ExportCheckpoint.open(checkpointPath, HEADER)) {
+            assertDetails(checkpoint.get("10"), "10");
+            Assert.assertNull(checkpoint.get("11"));
+            checkpoint.add("11", taskDetails("11"));
+        }
+
+        // The partial line must have been removed, so that the record added afterwards is readable.
+        try (ExportCheckpoint checkpoint = ExportCheckpoint.open(checkpointPath, HEADER)) {
+            assertDetails(checkpoint.get("10"), "10");
+            assertDetails(checkpoint.get("11"), "11");
+        }
+        Assert.assertEquals(Files.readAllLines(checkpointPath).size(), 3);
+    }
+
+    @Test
+    public void garbageLastLineIgnored() throws IOException {
+        write(HEADER, "10");
+        Files.writeString(checkpointPath, "{\"taskId\":\"11\",\"det", StandardCharsets.UTF_8,
+            StandardOpenOption.APPEND);
+
+        try (ExportCheckpoint checkpoint = ExportCheckpoint.open(checkpointPath, HEADER)) {
+            assertDetails(checkpoint.get("10"), "10");
+            Assert.assertNull(checkpoint.get("11"));
+        }
+    }
+
+    @DataProvider
+    public Object[][] otherHeaders() {
+        return new Object[][] {
+            { new ExportCheckpoint.Header("2", "name,notes", "text", "name") },
+            { new ExportCheckpoint.Header("1", "name", "text", "name") },
+            { new ExportCheckpoint.Header("1", "name,notes", "text,html_text", "name") },
+            { new ExportCheckpoint.Header("1", "name,notes", "text", "name,host") },
+        };
+    }
+
+    @Test(dataProvider = "otherHeaders")
+    public void otherHeaderRefused(ExportCheckpoint.Header otherHeader) throws IOException {
+        write(HEADER, "10");
+
+        try (ExportCheckpoint checkpoint = ExportCheckpoint.open(checkpointPath, otherHeader)) {
+            Assert.assertNull(checkpoint.get("10"));
+            checkpoint.add("11", taskDetails("11"));
+        }
+
+        // The checkpoint now belongs to the other export.
+        try (ExportCheckpoint checkpoint = ExportCheckpoint.open(checkpointPath, HEADER)) {
+            Assert.assertNull(checkpoint.get("10"));
+            Assert.assertNull(checkpoint.get("11"));
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import com.asana.models.Attachment;
+import com.asana.models.Project;
+import com.asana.models.Story;
+import com.asana.models.Task;
+import com.asana.models.User;
+import com.asana.models.Workspace;
+import com.google.api.client.util.DateTime;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class ExportTest {
+    private static final String PROJECT_ID = "1";
+    private static final long CREATED_AT = 1_500_000_000_000L;
+
+    private Path tempDir;
+    private Path snapshotPath;
+    private FakeAsanaSource asanaSource;
+
+    /**
+     * In-memory Asana project, keeping track of the requests for task details.
+     */
+    static final class FakeAsanaSource implements AsanaSource {
+        private final User user = new User();
+        final List<Task> projectTasks = new ArrayList<>();
+        final Map<String, List<Task>> subtasks = new HashMap<>();
+        final Map<String, List<Story>> stories = new HashMap<>();
+        final Map<String, List<Attachment>> attachments = new HashMap<>();
+        final Queue<String> detailRequests = new ConcurrentLinkedQueue<>();
+        boolean randomDelays = false;
+
+        FakeAsanaSource() {
+            user.id = "2";
+            user.email = "user@example.com";
+        }
+
+        private static DateTime dateTime(long offset) {
+            return new DateTime(CREATED_AT + offset);
+        }
+
+        /**
+         * Adds a task with one comment, and returns it.
+         *
+         * @param parent parent task, or {@code null} for a top-level task
+         */
+        Task addTask(String taskId, String name, @Nullable Task parent) {
+            var task = new Task();
+            task.id = taskId;
+            task.name = name;
+            task.htmlNotes = "<body>Notes of " + name + "</body>";
+            task.parent = parent;
+            task.createdBy = user;
+            task.likes = Collections.emptyList();
+            task.followers = Collections.singletonList(user);
+            task.createdAt = dateTime(Long.parseLong(taskId));
+            task.modifiedAt = task.createdAt;
+            if (parent == null) {
+                projectTasks.add(task);
+            } else {
+                subtasks.computeIfAbsent(parent.id, ignored -> new ArrayList<>()).add(task);
+            }
+            subtasks.putIfAbsent(taskId, new ArrayList<>());
+            attachments.put(taskId, new ArrayList<>());
+            stories.put(taskId, new ArrayList<>());
+            addComment(task, "Comment on " + name);
+            return task;
+        }
+
+        /**
+         * Adds a comment (and a corresponding attachment) to the given task, and marks the task as modified.
+         */
+        void addComment(Task task, String text) {
+            List<Story> taskStories = stories.get(task.id);
+            var story = new Story();
+            story.id = task.id + "0" + taskStories.size();
+            story.createdAt = dateTime(Long.parseLong(story.id));
+            story.createdBy = user;
+            story.resourceSubtype = "comment_added";
+            story.text = text;
+            story.htmlText = "<body>" + text + "</body>";
+            taskStories.add(story);
+
+            var attachment = new Attachment();
+            attachment.id = story.id + "1";
+            attachment.name = text + ".txt";
+            attachment.createdAt = story.createdAt;
+            attachments.get(task.id).add(attachment);
+
+            task.modifiedAt = dateTime(task.modifiedAt.getValue() - CREATED_AT + 1);
+        }
+
+        /**
+         * Returns copies of the given models, as the Asana client would deserialize them from a response.
+         */
+        private static <T> List<T> copy(List<T> list, Class<T> clazz) {
+            return list.stream()
+                .map(element -> AsanaJson.GSON.fromJson(AsanaJson.GSON.toJson(element), clazz))
+                .collect(Collectors.toList());
+        }
+
+        @Override
+        public Project project(String projectId, String optFields) {
+            Assert.assertEquals(projectId, PROJECT_ID);
+            var project = new Project();
+            project.id = projectId;
+            project.workspace = new Workspace();
+            project.workspace.id = "3";
+            return project;
+        }
+
+        @Override
+        public Iterable<User> usersOfWorkspace(String workspaceId, String optFields) {
+            return Collections.singletonList(user);
+        }
+
+        @Override
+        public Iterable<Task> tasksOfProject(String projectId, String optFields) {
+            Assert.assertEquals(projectId, PROJECT_ID);
+            return copy(projectTasks, Task.class);
+        }
+
+        /**
+         * Waits for up to 2 ms if {@link #randomDelays} is true, so that concurrent requests complete in random order.
+         */
+        private void delay() {
+            if (randomDelays) {
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public Iterable<Task> subtasks(String taskId, String optFields) {
+            delay();
+            detailRequests.add("subtasks " + taskId);
+            return copy(subtasks.get(taskId), Task.class);
+        }
+
+        @Override
+        public Iterable<Attachment> attachments(String taskId, String optFields) {
+            delay();
+            detailRequests.add("attachments " + taskId);
+            return copy(attachments.get(taskId), Attachment.class);
+        }
+
+        @Override
+        public Iterable<Story> stories(String taskId, String optFields) {
+            delay();
+            detailRequests.add("stories " + taskId);
+            return copy(stories.get(taskId), Story.class);
+        }
+
+        /**
+         * Returns the IDs of the tasks whose stories were requested, and clears the list of requests.
+         */
+        List<String> takeTasksWithFetchedStories() {
+            List<String> taskIds = detailRequests.stream()
+                .filter(request -> request.startsWith("stories "))
+                .map(request -> request.substring("stories ".length()))
+                .sorted()
+                .collect(Collectors.toList());
+            detailRequests.clear();
+            return taskIds;
+        }
+    }
+
+    private static final class NoAttachmentDownloader implements AttachmentDownloader {
+        @Override
+        public Path downloadPath(Path basePath, String taskId, String attachmentName) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Path> download(Path basePath, String taskId, String attachmentName,
+                String attachmentId, URL url) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+        snapshotPath = tempDir.resolve("snapshot.jsonl");
+        asanaSource = new FakeAsanaSource();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static Export.Result export(AsanaSource asanaSource, Path attachmentsBasePath, int parallelism,
+            @Nullable Path snapshotPath) throws IOException {
+        var options = new Export.Options(Collections.emptyList(), Collections.emptyList(), 1, parallelism, null,
+            snapshotPath);
+        return new Export(asanaSource, new NoAttachmentDownloader()).getTasks(PROJECT_ID, attachmentsBasePath, options);
+    }
+
+    private Export.Result export() throws IOException {
+        Export.Result result = export(asanaSource, tempDir, 1, snapshotPath);
+        result.saveSnapshot();
+        return result;
+    }
+
+    /**
+     * Returns a summary of the given tasks, in order, consisting of task ID, name, comments, and attachments.
+     */
+    private static List<String> summary(List<WrappedTask> tasks) {
+        List<String> summary = new ArrayList<>();
+        for (WrappedTask task : tasks) {
+            summary.add(String.format("%d %s %s %s %s", task.getNumberInProject(), task.getTaskId(),
+                task.getTask().name, task.getComments().stream()
+                    .map(comment -> comment.getNumberInTask() + ": " + comment.getMarkdownText())
+                    .collect(Collectors.toList()),
+                task.getAttachments().stream()
+                    .map(attachment -> attachment.getNumberInTask() + ": " + attachment.getAttachment().name)
+                    .collect(Collectors.toList())));
+        }
+        return summary;
+    }
+
+    private static List<String> sectionsAndDescriptions(List<WrappedTask> tasks) {
+        List<String> list = new ArrayList<>();
+        for (WrappedTask task : tasks) {
+            @Nullable WrappedTask sectionTitle = task.getSectionTitle();
+            list.add(String.format("%s %s %s", task.getTaskId(),
+                sectionTitle == null ? null : sectionTitle.getTaskId(), task.getMarkdownDescription()));
+        }
+        return list;
+    }
+
+    private static List<String> taskIds(List<WrappedTask> tasks) {
+        return tasks.stream().map(WrappedTask::getTaskId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void parallelEqualsSequential() throws IOException {
+        // 30 top-level tasks in 3 sections, where every third task has subtasks (some of which have subtasks, too)
+        int nextTaskId = 100;
+        for (int i = 0; i < 30; ++i) {
+            String name = i % 10 == 0
+                ? "Section " + i + ':'
+                : "Task " + i;
+            Task task = asanaSource.addTask(Integer.toString(nextTaskId++), name, null);
+            if (i % 3 == 1) {
+                for (int j = 0; j < 3; ++j) {
+                    Task subtask = asanaSource.addTask(Integer.toString(nextTaskId++), "Subtask " + i + '.' + j, task);
+                    if (j == 1) {
+                        asanaSource.addTask(Integer.toString(nextTaskId++), "Sub-subtask " + i + '.' + j, subtask);
+                    }
+                }
+            }
+        }
+        // Creation times are in reverse project order, so that the order of the result is not just the project order.
+        for (int i = 0; i < asanaSource.projectTasks.size(); ++i) {
+            Task task = asanaSource.projectTasks.get(i);
+            task.createdAt = new DateTime(CREATED_AT + 1000 - i);
+        }
+        asanaSource.randomDelays = true;
+
+        Export.Result sequential = export(asanaSource, tempDir, 1, null);
+        List<String> expectedRequests = asanaSource.detailRequests.stream().sorted().collect(Collectors.toList());
+        for (int parallelism : new int[] { 2, 8 }) {
+            asanaSource.detailRequests.clear();
+            Export.Result parallel = export(asanaSource, tempDir, parallelism, null);
+            Assert.assertEquals(summary(parallel.getTasks()), summary(sequential.getTasks()));
+            Assert.assertEquals(sectionsAndDescriptions(parallel.getTasks()),
+                sectionsAndDescriptions(sequential.getTasks()));
+            Assert.assertEquals(parallel.getUpdatedTasks(), sequential.getUpdatedTasks());
+            Assert.assertEquals(parallel.getIdToUserMap().keySet(), sequential.getIdToUserMap().keySet());
+            Assert.assertEquals(parallel.emailToOccurrenceMap(), sequential.emailToOccurrenceMap());
+            // Each task is fetched exactly once.
+            Assert.assertEquals(asanaSource.detailRequests.stream().sorted().collect(Collectors.toList()),
+                expectedRequests);
+        }
+        Assert.assertEquals(sequential.getTasks().size(), 30 + 10 * 4);
+    }
+
+    @Test
+    public void snapshotRoundTrip() throws IOException {
+        Task parent = asanaSource.addTask("10", "Parent", null);
+        asanaSource.addTask("11", "Subtask", parent);
+        asanaSource.addTask("20", "Other", null);
+
+        var header = new ExportCheckpoint.Header(PROJECT_ID, "name", "text", "name");
+        Map<String, TaskDetails> taskDetailsMap = new HashMap<>();
+        var details = new TaskDetails();
+        details.subtasks.add(asanaSource.subtasks.get("10").get(0));
+        details.stories.addAll(asanaSource.stories.get("10"));
+        taskDetailsMap.put("10", details);
+        taskDetailsMap.put("11", new TaskDetails());
+        Path path = tempDir.resolve("other-snapshot.jsonl");
+        new ExportSnapshot(header, "2019-03-01T00:00:00Z", asanaSource.projectTasks, taskDetailsMap).save(path);
+
+        ExportSnapshot snapshot = ExportSnapshot.load(path, header);
+        Assert.assertNotNull(snapshot);
+        Assert.assertEquals(snapshot.getStartedAt(), "2019-03-01T00:00:00Z");
+        Assert.assertEquals(snapshot.getTopLevelTasks().stream().map(task -> task.id).collect(Collectors.toList()),
+            List.of("10", "20"));
+        Assert.assertEquals(snapshot.getTasks().keySet(), Set.of("10", "11", "20"));
+        Assert.assertEquals(AsanaJson.GSON.toJson(snapshot.get("10")), AsanaJson.GSON.toJson(details));
+        Assert.assertNull(snapshot.get("20"));
+        Assert.assertEquals(snapshot.attachmentIds(), Collections.emptySet());
+
+        Assert.assertNull(ExportSnapshot.load(path, new ExportCheckpoint.Header("2", "name", "text", "name")));
+        Assert.assertNull(ExportSnapshot.load(tempDir.resolve("missing.jsonl"), header));
+        Files.writeString(path, "{\"topLevelTask\":", StandardOpenOption.APPEND);
+        Assert.expectThrows(IOException.class, () -> ExportSnapshot.load(path, header));
+    }
+
+    @Test
+    public void incrementalUnmodified() throws IOException {
+        Task parent = asanaSource.addTask("10", "Parent", null);
+        asanaSource.addTask("11", "Subtask", parent);
+        asanaSource.addTask("20", "Other", null);
+        Export.Result first = export();
+        Assert.assertEquals(asanaSource.takeTasksWithFetchedStories(), List.of("10", "11", "20"));
+        Assert.assertEquals(taskIds(first.getUpdatedTasks()), List.of("10", "11", "20"));
+
+        Export.Result second = export();
+        Assert.assertEquals(asanaSource.takeTasksWithFetchedStories(), Collections.emptyList());
+        Assert.assertEquals(summary(second.getTasks()), summary(first.getTasks()));
+        Assert.assertEquals(second.getUpdatedTasks(), Collections.emptyList());
+        for (WrappedTask task : second.getTasks()) {
+            for (WrappedAttachment attachment : task.getAttachments()) {
+                Assert.assertFalse(second.isNewAttachment(attachment));
+            }
+        }
+    }
+
+    @Test
+    public void incrementalModifiedTask() throws IOException {
+        Task parent = asanaSource.addTask("10", "Parent", null);
+        asanaSource.addTask("11", "Subtask", parent);
+        asanaSource.addTask("20", "Other", null);
+        export();
+        asanaSource.takeTasksWithFetchedStories();
+
+        asanaSource.addComment(parent, "Second comment");
+        Export.Result result = export();
+        Assert.assertEquals(asanaSource.takeTasksWithFetchedStories(), List.of("10"));
+        Assert.assertEquals(taskIds(result.getUpdatedTasks()), List.of("10"));
+        WrappedTask wrappedParent = result.getIdToTaskMap().get("10");
+        Assert.assertEquals(summary(List.of(wrappedParent)), List.of(
+            "1 10 Parent [1: Comment on Parent, 2: Second comment] [1: Comment on Parent.txt, 2: Second comment.txt]"
+        ));
+        List<WrappedAttachment> attachments = new ArrayList<>(wrappedParent.getAttachments());
+        Assert.assertFalse(result.isNewAttachment(attachments.get(0)));
+        Assert.assertTrue(result.isNewAttachment(attachments.get(1)));
+    }
+
+    @Test
+    public void incrementalModifiedSubtasks() throws IOException {
+        Task parent = asanaSource.addTask("10", "Parent", null);
+        Task subtask = asanaSource.addTask("11", "Subtask", parent);
+        Task subSubtask = asanaSource.addTask("12", "Sub-subtask", subtask);
+        asanaSource.addTask("20", "Other", null);
+        export();
+        asanaSource.takeTasksWithFetchedStories();
+
+        // Neither the parent nor the subtask are modified.
+        asanaSource.addComment(subSubtask, "Second comment");
+        asanaSource.addTask("13", "New subtask", parent);
+        Export.Result result = export();
+        Assert.assertEquals(asanaSource.takeTasksWithFetchedStories(), List.of("12", "13"));
+        Assert.assertEquals(taskIds(result.getUpdatedTasks()), List.of("12", "13"));
+        Assert.assertEquals(taskIds(result.getTasks()), List.of("10", "11", "12", "13", "20"));
+        Assert.assertEquals(summary(List.of(result.getIdToTaskMap().get("12"))), List.of(
+            "3 12 Sub-subtask [1: Comment on Sub-subtask, 2: Second comment] "
+                + "[1: Comment on Sub-subtask.txt, 2: Second comment.txt]"
+        ));
+
+        // The snapshot now contains the modified subtasks, so a further export fetches nothing.
+        export();
+        Assert.assertEquals(asanaSource.takeTasksWithFetchedStories(), Collections.emptyList());
+    }
+
+    @Test
+    public void incrementalDeletedAndMovedTasks() throws IOException {
+        Task moved = asanaSource.addTask("10", "Moved", null);
+        Task parent = asanaSource.addTask("20", "Parent", null);
+        asanaSource.addTask("21", "Subtask", parent);
+        asanaSource.addTask("22", "Other subtask", parent);
+        Task deleted = asanaSource.addTask("30", "Deleted", null);
+        asanaSource.addTask("31", "Subtask of deleted", deleted);
+        asanaSource.addTask("40", "Section:", null);
+        Export.Result first = export();
+        Assert.assertNull(first.getIdToTaskMap().get("10").getSectionTitle());
+        asanaSource.takeTasksWithFetchedStories();
+
+        asanaSource.projectTasks.remove(deleted);
+        asanaSource.projectTasks.remove(moved);
+        asanaSource.projectTasks.add(moved);
+        asanaSource.subtasks.get("20").remove(0);
+        Export.Result result = export();
+        Assert.assertEquals(asanaSource.takeTasksWithFetchedStories(), Collections.emptyList());
+        Assert.assertEquals(taskIds(result.getTasks()), List.of("10", "20", "22", "40"));
+        Assert.assertEquals(result.getIdToTaskMap().get("10").getSectionTitle(), result.getIdToTaskMap().get("40"));
+
+        // The deleted tasks are not in the snapshot either.
+        export();
+        Assert.assertEquals(asanaSource.detailRequests.stream().sorted().collect(Collectors.toList()),
+            List.of("subtasks 10", "subtasks 20", "subtasks 22", "subtasks 40"));
+    }
+}
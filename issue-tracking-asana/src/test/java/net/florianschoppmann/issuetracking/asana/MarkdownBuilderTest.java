@@ -51,4 +51,33 @@ public class MarkdownBuilderTest {
             markdown
         );
     }
+
+    @DataProvider
+    public Object[][] dataForStreamingAndDomEquivalent() {
+        return new Object[][] {
+            {"<body>foo &amp; bar &#x263A; <!-- comment -->baz</body>"},
+            {"<body><a href=\"x\">x<!-- comment --></a> <a href=\"y\">y<?pi?>z</a></body>"},
+            {"<body>\n  <ul>\n    <li>foo <a data-asana-type=\"user\" data-asana-gid=\"2\"><em>x</em></a> bar</li>\n"
+                + "  </ul>\n</body>"},
+            {"<strong>unbalanced</strong>"},
+            {"<body>not well-formed</bod>"},
+            {"<body>trailing</body> garbage"},
+            {""}
+        };
+    }
+
+    @Test(dataProvider = "dataForStreamingAndDomEquivalent")
+    public void streamingAndDomEquivalent(String html) {
+        Assert.assertEquals(
+            MarkdownBuilder.htmlToMarkdown(html, AsanaReference::new)
+                .toStringWithContext(MarkdownBuilderTest::stringFromAsanaReference),
+            MarkdownBuilder.htmlToMarkdownWithDom(html, AsanaReference::new)
+                .toStringWithContext(MarkdownBuilderTest::stringFromAsanaReference)
+        );
+    }
+
+    @Test(dataProvider = "dataForAsanaDomToMarkdown")
+    public void streamingAndDomEquivalentForExamples(String html, String ignoredMarkdown) {
+        streamingAndDomEquivalent("<body>" + html + "</body>");
+    }
 }
@@ -0,0 +1,198 @@
+package net.florianschoppmann.issuetracking;
+
+import jetbrains.exodus.entitystore.Entity;
+import jetbrains.exodus.entitystore.PersistentEntityStore;
+import jetbrains.exodus.entitystore.PersistentEntityStores;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Environments;
+import net.florianschoppmann.issuetracking.youtrack.Events.CustomFieldEvent;
+import net.florianschoppmann.issuetracking.youtrack.Events.Event;
+import net.florianschoppmann.issuetracking.youtrack.YouTrackDatabaseClient;
+import net.florianschoppmann.issuetracking.youtrack.YouTrackDatabaseClientException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the import of events into a local YouTrack database, with and without sorting the events first.
+ *
+ * <p>The synthetic database contains one project with a state field and an assignee field, and the events change
+ * these fields of randomly chosen issues. Each invocation imports into a fresh copy of the database. The sorted
+ * variant includes the time for sorting the events with {@link EventSorter}, which spills to disk if
+ * {@link SortOptions#maxEventsInMemory} is less than the number of events.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventImportBenchmark {
+    private static final String PROJECT_ABBREV = "BENCH";
+    private static final String STORE_NAME = "teamsysstore";
+    private static final int NUM_USERS = 50;
+    private static final int NUM_STATES = 8;
+
+    @Param({"100000"})
+    public int events;
+
+    @Param({"2000", "20000"})
+    public int issues;
+
+    /**
+     * Parameters of {@link #importSortedEvents(SortOptions)}, kept separate so that the unsorted variant is not run
+     * once for each of their values.
+     */
+    @State(Scope.Benchmark)
+    public static class SortOptions {
+        /**
+         * Maximum number of events sorted in memory. The default of {@link LowLevelYouTrackImport} (1,000,000) sorts
+         * all events in memory, whereas 10,000 sorts them in 10 runs that are spilled to disk and merged.
+         */
+        @Param({"1000000", "10000"})
+        public int maxEventsInMemory;
+    }
+
+    private Path basePath;
+    private Path eventsPath;
+    private Path databasePath;
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path current : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(current);
+            }
+        }
+    }
+
+    private static Stream<Event> streamEvents(Path path) throws IOException {
+        return BinaryFormat.streamRecords(
+            path, Serialization.ResultList.EVENTS.getRootName(), BinaryFormat.EVENT_CODEC);
+    }
+
+    private void createDatabase(Path path) {
+        try (Environment environment = Environments.newInstance(path.toFile());
+                PersistentEntityStore store = PersistentEntityStores.newInstance(environment, STORE_NAME)) {
+            store.executeInTransaction(txn -> {
+                Entity project = txn.newEntity("Project");
+                project.setProperty("shortName", PROJECT_ABBREV);
+                txn.newEntity("EventType").setProperty("__ENUM_CONST_NAME__", "MODIFY_LINK");
+                for (int i = 1; i <= issues; ++i) {
+                    Entity issue = txn.newEntity("Issue");
+                    issue.setProperty("numberInProject", (long) i);
+                    issue.setLink("project", project);
+                }
+                for (int i = 0; i < NUM_USERS; ++i) {
+                    txn.newEntity("User").setProperty("login", "user" + i);
+                }
+
+                Entity statePrototype = txn.newEntity("CustomFieldPrototype");
+                statePrototype.setProperty("name", "State");
+                statePrototype.setProperty("id", "77-1");
+                Entity bundle = txn.newEntity("StateBundle");
+                for (int i = 0; i < NUM_STATES; ++i) {
+                    Entity element = txn.newEntity("StateBundleElement");
+                    element.setProperty("name", "State " + i);
+                    bundle.addLink("children", element);
+                }
+                Entity stateField = txn.newEntity("BundleProjectCustomField");
+                stateField.setLink("prototype", statePrototype);
+                stateField.setLink("bundle", bundle);
+                project.addLink("fields", stateField);
+
+                Entity assigneePrototype = txn.newEntity("CustomFieldPrototype");
+                assigneePrototype.setProperty("name", "Assignee");
+                assigneePrototype.setProperty("id", "77-2");
+                Entity assigneeField = txn.newEntity("UserProjectCustomField");
+                assigneeField.setLink("prototype", assigneePrototype);
+                project.addLink("fields", assigneeField);
+            });
+        }
+    }
+
+    private void writeEvents(Path path) throws IOException {
+        Random random = new Random(1);
+        try (BinaryFormat.RecordWriter<Event> writer = BinaryFormat.newRecordWriter(
+                path, Serialization.ResultList.EVENTS.getRootName(), BinaryFormat.EVENT_CODEC)) {
+            for (int i = 0; i < events; ++i) {
+                var event = new CustomFieldEvent();
+                event.timestamp = 1_500_000_000_000L + i;
+                event.numberInProject = 1L + random.nextInt(issues);
+                event.author = "user" + random.nextInt(NUM_USERS);
+                if (random.nextBoolean()) {
+                    event.field = "State";
+                    event.added = "State " + random.nextInt(NUM_STATES);
+                    event.removed = "State " + random.nextInt(NUM_STATES);
+                } else {
+                    event.field = "Assignee";
+                    event.added = "user" + random.nextInt(NUM_USERS);
+                    event.removed = "user" + random.nextInt(NUM_USERS);
+                }
+                writer.write(event);
+            }
+            writer.finish();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        basePath = Files.createTempDirectory(getClass().getSimpleName());
+        eventsPath = basePath.resolve("Events.bin");
+        writeEvents(eventsPath);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        deleteRecursively(basePath);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() throws IOException {
+        databasePath = Files.createTempDirectory(basePath, "db");
+        createDatabase(databasePath);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() throws IOException {
+        deleteRecursively(databasePath);
+    }
+
+    private void importEvents(Path path) throws IOException, YouTrackDatabaseClientException {
+        try (Stream<Event> stream = streamEvents(path)) {
+            new YouTrackDatabaseClient(databasePath).importEvents(stream.iterator(), PROJECT_ABBREV);
+        }
+    }
+
+    @Benchmark
+    public void importUnsortedEvents() throws IOException, YouTrackDatabaseClientException {
+        importEvents(eventsPath);
+    }
+
+    @Benchmark
+    public void importSortedEvents(SortOptions sortOptions) throws IOException, YouTrackDatabaseClientException {
+        Path sortedPath = basePath.resolve("Events.sorted.bin");
+        try (Stream<Event> stream = streamEvents(eventsPath)) {
+            new EventSorter(basePath, new EventSorter.Options(sortOptions.maxEventsInMemory))
+                .sort(stream.iterator(), sortedPath);
+        }
+        importEvents(sortedPath);
+    }
+}
@@ -0,0 +1,136 @@
+package net.florianschoppmann.issuetracking;
+
+import net.florianschoppmann.issuetracking.youtrack.restold.Issues;
+import net.florianschoppmann.issuetracking.youtrack.restold.Issues.Issue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.xml.bind.JAXBException;
+
+/**
+ * Measures writing and reading of an {@link Issues} document, as done between the export and import steps.
+ *
+ * <p>Each synthetic issue has the same fields as an issue converted from Asana, a description of about 1000
+ * characters, and three comments. The size of the written file is printed during setup, so that the I/O savings of
+ * compression and compact output can be compared.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    @Param({"1000", "10000"})
+    public int issues;
+
+    /**
+     * Name of a {@link Serialization.Compression} constant. (Generated benchmark code cannot access the enum type.)
+     */
+    @Param({"NONE", "GZIP", "ZSTD"})
+    public String compression;
+
+    @Param({"true", "false"})
+    public boolean formatted;
+
+    private Path basePath;
+    private Serialization serialization;
+    private Issues issuesDocument;
+
+    private static void addField(Issue issue, String name, String value) {
+        var field = new Issue.Field();
+        field.setName(name);
+        field.getValue().add(value);
+        issue.getField().add(field);
+    }
+
+    static Issues syntheticIssues(int numIssues, long seed) {
+        var random = new Random(seed);
+        String paragraph = "The export should include all attachments & comments, even those with <markup>. ";
+        var issuesDocument = new Issues();
+        for (int i = 1; i <= numIssues; ++i) {
+            var issue = new Issue();
+            long created = 1_500_000_000_000L + random.nextInt(1_000_000_000);
+            addField(issue, "numberInProject", Integer.toString(i));
+            addField(issue, "summary", "Synthetic issue number " + i);
+            addField(issue, "description", paragraph.repeat(12));
+            addField(issue, "created", Long.toString(created));
+            addField(issue, "updated", Long.toString(created + random.nextInt(1_000_000)));
+            addField(issue, "reporterName", "user" + random.nextInt(100));
+            addField(issue, "Assignee", "user" + random.nextInt(100));
+            addField(issue, "State", random.nextBoolean() ? "Open" : "Fixed");
+            addField(issue, "Estimation", Integer.toString(60 * random.nextInt(16)));
+            for (int j = 0; j < 3; ++j) {
+                var comment = new Issue.Comment();
+                comment.setAuthor("user" + random.nextInt(100));
+                comment.setText(paragraph.repeat(3));
+                comment.setCreated(Long.toString(created + j));
+                issue.getComment().add(comment);
+            }
+            issuesDocument.getIssue().add(issue);
+        }
+        return issuesDocument;
+    }
+
+    @Setup
+    public void setup() throws IOException, JAXBException {
+        basePath = Files.createTempDirectory(getClass().getSimpleName());
+        serialization = Serialization.defaultSerialization(
+            basePath, Serialization.Compression.valueOf(compression), formatted);
+        issuesDocument = syntheticIssues(issues, issues);
+        serialization.writeResultXml(issuesDocument);
+        try (Stream<Path> paths = Files.list(basePath)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                System.out.printf("%n%s: %d bytes%n", path.getFileName(), Files.size(path));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(basePath)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public void writeXml() throws JAXBException {
+        serialization.writeResultXml(issuesDocument);
+    }
+
+    @Benchmark
+    public void writeJson() throws JAXBException {
+        serialization.writeResultJson(issuesDocument);
+    }
+
+    @Benchmark
+    public Issues readXml() throws JAXBException {
+        return serialization.readResultXml(Issues.class);
+    }
+
+    @Benchmark
+    public long readXmlStreamed() throws JAXBException {
+        try (Stream<Issue> issueStream = serialization.streamResultXml(Serialization.ResultList.ISSUES)) {
+            return issueStream.count();
+        }
+    }
+}
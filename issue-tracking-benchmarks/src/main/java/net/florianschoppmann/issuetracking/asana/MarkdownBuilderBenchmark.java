@@ -0,0 +1,109 @@
+package net.florianschoppmann.issuetracking.asana;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming HTML-to-Markdown conversion with the original DOM-based conversion.
+ *
+ * <p>The input is a synthetic Asana rich-text description with the given number of paragraphs. Each paragraph
+ * contains formatted text, links, task and user references, and (every third paragraph) a nested list.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MarkdownBuilderBenchmark {
+    private static final String[] WORDS = {
+        "migration", "issue", "the", "attachment", "deadline", "of", "review", "sprint", "and", "customer", "a",
+        "release", "to", "estimate", "priority", "with"
+    };
+
+    @Param({"1", "10", "100"})
+    public int paragraphs;
+
+    private String html;
+
+    private static void appendWords(StringBuilder stringBuilder, Random random, int count) {
+        for (int i = 0; i < count; ++i) {
+            stringBuilder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+    }
+
+    static String syntheticHtml(int paragraphs, long seed) {
+        var random = new Random(seed);
+        var stringBuilder = new StringBuilder("<body>");
+        for (int i = 0; i < paragraphs; ++i) {
+            appendWords(stringBuilder, random, 20);
+            stringBuilder.append("<strong>");
+            appendWords(stringBuilder, random, 3);
+            stringBuilder.append("</strong>, <em>");
+            appendWords(stringBuilder, random, 2);
+            stringBuilder.append("</em> &amp; <code>foo()</code> ");
+            int taskGid = 1_000_000 + random.nextInt(1_000_000);
+            stringBuilder
+                .append("<a href=\"https://app.asana.com/0/0/").append(taskGid)
+                .append("\" data-asana-type=\"task\" data-asana-gid=\"").append(taskGid)
+                .append("\">https://app.asana.com/0/0/").append(taskGid).append("</a> ")
+                .append("<a data-asana-type=\"user\" data-asana-gid=\"").append(random.nextInt(100))
+                .append("\">@someone</a> ")
+                .append("<a href=\"https://example.com/").append(i).append("\">https://example.com/").append(i)
+                .append("</a> <a href=\"https://example.com/doc\">the documentation</a>\n");
+            if (i % 3 == 0) {
+                stringBuilder.append("<ul><li>");
+                appendWords(stringBuilder, random, 5);
+                stringBuilder.append("<ol><li>");
+                appendWords(stringBuilder, random, 5);
+                stringBuilder.append("</li><li><s>");
+                appendWords(stringBuilder, random, 3);
+                stringBuilder.append("</s></li></ol></li><li>");
+                appendWords(stringBuilder, random, 5);
+                stringBuilder.append("</li></ul>");
+            }
+            stringBuilder.append('\n');
+        }
+        return stringBuilder.append("</body>").toString();
+    }
+
+    private static String stringFromAsanaReference(Object object) {
+        return object instanceof AsanaReference
+            ? "#" + ((AsanaReference) object).getGid()
+            : String.valueOf(object);
+    }
+
+    @Setup
+    public void setup() {
+        html = syntheticHtml(paragraphs, paragraphs);
+        String streaming = MarkdownBuilder.htmlToMarkdown(html, AsanaReference::new)
+            .toStringWithContext(MarkdownBuilderBenchmark::stringFromAsanaReference);
+        String dom = MarkdownBuilder.htmlToMarkdownWithDom(html, AsanaReference::new)
+            .toStringWithContext(MarkdownBuilderBenchmark::stringFromAsanaReference);
+        if (!streaming.equals(dom)) {
+            throw new IllegalStateException("Streaming and DOM-based conversion differ.");
+        }
+    }
+
+    @Benchmark
+    public Object streaming() {
+        return MarkdownBuilder.htmlToMarkdown(html, AsanaReference::new);
+    }
+
+    @Benchmark
+    public Object dom() {
+        return MarkdownBuilder.htmlToMarkdownWithDom(html, AsanaReference::new);
+    }
+}
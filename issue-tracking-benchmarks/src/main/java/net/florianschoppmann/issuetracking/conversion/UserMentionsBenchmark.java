@@ -0,0 +1,74 @@
+package net.florianschoppmann.issuetracking.conversion;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the rewriting of Jira user mentions, as done by {@link JiraToYouTrack} for all issue descriptions and
+ * comments of a project.
+ *
+ * <p>The synthetic project has the given number of texts (descriptions and comments) and 500 Jira users. Every text
+ * has about 600 characters and contains the given number of mentions, a tenth of which refer to unknown users.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserMentionsBenchmark {
+    private static final int JIRA_USERS = 500;
+
+    @Param({"1000", "10000"})
+    public int texts;
+
+    @Param({"0", "3"})
+    public int mentionsPerText;
+
+    private SortedSet<String> jiraUserNames;
+    private String[] jiraTexts;
+
+    @Setup
+    public void setup() {
+        var random = new Random(texts);
+        jiraUserNames = new TreeSet<>();
+        for (int i = 0; i < JIRA_USERS; ++i) {
+            jiraUserNames.add("user" + i);
+        }
+        String sentence = "As discussed in the meeting, the [customer|https://example.com] needs this by Friday. ";
+        jiraTexts = new String[texts];
+        for (int i = 0; i < texts; ++i) {
+            var stringBuilder = new StringBuilder();
+            for (int j = 0; j < 7; ++j) {
+                stringBuilder.append(sentence);
+                if (j < mentionsPerText) {
+                    int user = random.nextInt(JIRA_USERS + JIRA_USERS / 10);
+                    stringBuilder.append("[~user").append(user).append("] ");
+                }
+            }
+            jiraTexts[i] = stringBuilder.toString();
+        }
+    }
+
+    @Benchmark
+    public void jiraToYouTrack(Blackhole blackhole) {
+        for (String jiraText : jiraTexts) {
+            blackhole.consume(UserMentions.jiraToYouTrack(jiraText, jiraUserNames, blackhole::consume));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package net.florianschoppmann.issuetracking.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link LazyString#toStringWithContext(LazyContext)} for a text with the given number of references.
+ *
+ * <p>The synthetic text resembles a converted Asana description: Plain text alternates with references to other tasks
+ * or users, which are resolved (as in the conversion) by looking them up in a map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LazyStringBenchmark {
+    /**
+     * Stand-in for a reference whose string representation is only known after all tasks have been exported.
+     */
+    private static final class Reference { }
+
+    @Param({"10", "100", "1000"})
+    public int references;
+
+    private LazyString lazyString;
+    private LazyContext context;
+
+    @Setup
+    public void setup() {
+        String text = "Please have a look at the attached screenshots, and coordinate with ";
+        var builder = new LazyString.Builder(references * (text.length() + 10));
+        Map<Object, String> resolvedReferences = new IdentityHashMap<>();
+        for (int i = 0; i < references; ++i) {
+            var reference = new Reference();
+            resolvedReferences.put(reference, i % 2 == 0 ? "@user" + i : "PRJ-" + i);
+            builder.append(text).append(reference).append('.').append(' ');
+        }
+        lazyString = builder.build();
+        context = object -> {
+            String resolved = resolvedReferences.get(object);
+            return resolved == null
+                ? String.valueOf(object)
+                : resolved;
+        };
+    }
+
+    @Benchmark
+    public String toStringWithContext() {
+        return lazyString.toStringWithContext(context);
+    }
+}
@@ -0,0 +1,68 @@
+package net.florianschoppmann.issuetracking.util;
+
+import static net.florianschoppmann.issuetracking.util.StringNode.node;
+import static net.florianschoppmann.issuetracking.util.StringNode.nodeOfNodes;
+import static net.florianschoppmann.issuetracking.util.StringNode.nodeOfStrings;
+import static net.florianschoppmann.issuetracking.util.StringNode.rootOfNodes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the string conversions of {@link StringNode}, as used for the {@code fields} parameter of YouTrack REST
+ * requests.
+ *
+ * <p>Parameter {@code customFields} is the number of custom fields requested in addition to the usual issue fields.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringNodeBenchmark {
+    @Param({"0", "10", "100"})
+    public int customFields;
+
+    private StringNode fields;
+
+    @Setup
+    public void setup() {
+        StringNode[] customFieldNodes = new StringNode[customFields];
+        for (int i = 0; i < customFields; ++i) {
+            customFieldNodes[i] = nodeOfNodes("customField" + i, node("id"), node("name"),
+                nodeOfStrings("value", "id", "name", "login"));
+        }
+        StringNode issueFields = customFields == 0
+            ? nodeOfStrings("customFields", "id", "name")
+            : nodeOfNodes("customFields", node("id"), customFieldNodes);
+        fields = rootOfNodes(
+            node("id"), node("idReadable"), node("numberInProject"), node("summary"), node("description"),
+            nodeOfStrings("reporter", "id", "login", "email"),
+            nodeOfNodes("comments", node("id"), node("text"), nodeOfStrings("author", "id", "login")),
+            nodeOfNodes("tags", node("id"), node("name"), nodeOfStrings("visibleFor", "id", "name")),
+            issueFields
+        );
+    }
+
+    @Benchmark
+    public String toStringAsTree() {
+        return fields.toString();
+    }
+
+    @Benchmark
+    public String toStringFlattened() {
+        return fields.toStringFlattened(".", ",");
+    }
+}
@@ -213,13 +213,14 @@ public final class AsanaToYouTrack {
             convertCustomFields(wrappedTask, issue, timeEstimate);
         }
 
-        private void collectIssues(Issues issuesRoot, IssueUpdates issueUpdatesRoot) {
-            List<Issue> oldApiIssues = issuesRoot.getIssue();
-            for (WrappedTask wrappedTask : result.getTasks()) {
-                Issue issue = new Issue();
-                oldApiIssues.add(issue);
-                convertTask(wrappedTask, issue);
+        private Issue issueFromTask(WrappedTask wrappedTask) {
+            Issue issue = new Issue();
+            convertTask(wrappedTask, issue);
+            return issue;
+        }
 
+        private void collectIssueUpdates(IssueUpdates issueUpdatesRoot) {
+            for (WrappedTask wrappedTask : result.getUpdatedTasks()) {
                 Collection<Tag> asanaTags = wrappedTask.getTask().tags;
                 if (!asanaTags.isEmpty()) {
                     var newApiIssue = new net.florianschoppmann.issuetracking.youtrack.rest.Issue();
@@ -240,7 +241,7 @@ public final class AsanaToYouTrack {
         private void collectLinks(net.florianschoppmann.issuetracking.youtrack.restold.List linksList) {
             var idToTaskMap = result.getIdToTaskMap();
             List<net.florianschoppmann.issuetracking.youtrack.restold.List.Link> links = linksList.getLink();
-            for (WrappedTask wrappedTask : result.getTasks()) {
+            for (WrappedTask wrappedTask : result.getUpdatedTasks()) {
                 Task asanaTask = wrappedTask.getTask();
                 BiConsumer<Task, String> linkTarget = (targetTask, relationName) -> {
                     if (targetTask != null) {
@@ -267,8 +268,12 @@ public final class AsanaToYouTrack {
         }
 
         private void collectAttachments(Attachments attachments,  Path attachmentsBasePath) {
-            for (WrappedTask task : result.getTasks()) {
+            for (WrappedTask task : result.getUpdatedTasks()) {
                 for (WrappedAttachment wrappedAttachment : task.getAttachments()) {
+                    if (!result.isNewAttachment(wrappedAttachment)) {
+                        continue;
+                    }
+
                     Attachment attachment = new Attachment();
                     attachment.taskNumberInProject = task.getNumberInProject();
                     @Nullable WrappedUser creator = wrappedAttachment.getCreatedBy();
@@ -290,9 +295,8 @@ public final class AsanaToYouTrack {
         }
 
         private Result youTrackFromAsanaProject() {
-            var issues = new Issues();
             var issueUpdates = new IssueUpdates();
-            collectIssues(issues, issueUpdates);
+            collectIssueUpdates(issueUpdates);
 
             var links = new net.florianschoppmann.issuetracking.youtrack.restold.List();
             collectLinks(links);
@@ -300,8 +304,8 @@ public final class AsanaToYouTrack {
             var attachments = new Attachments();
             collectAttachments(attachments, attachmentsBasePath);
 
-            return new Result(issues, links, attachments, issueUpdates, result.getExportWarnings(), conversionWarnings,
-                result.getDownloads());
+            return new Result(this, links, attachments, issueUpdates, result.getExportWarnings(), conversionWarnings,
+                result);
         }
     }
 
@@ -342,7 +346,10 @@ public final class AsanaToYouTrack {
         var exportOptions = new Export.Options(
             Arrays.asList("completed_at", "due_at", "due_on", "modified_at", "tags.name"),
             Collections.singleton("is_edited"),
-            options.startId
+            options.startId,
+            options.parallelism,
+            options.checkpointPath,
+            options.snapshotPath
         );
         Export.Result result = export.getTasks(projectId, attachmentsBasePath, exportOptions);
 
@@ -422,36 +429,81 @@ public final class AsanaToYouTrack {
     public static final class Options {
         private final boolean estimatesInBrackets;
         private final int startId;
-
-        public Options(boolean estimatesInBrackets, int startId) {
+        private final int parallelism;
+        private final @Nullable Path checkpointPath;
+        private final @Nullable Path snapshotPath;
+
+        /**
+         * Constructor.
+         *
+         * @param estimatesInBrackets whether numbers in brackets in task names are time estimates
+         * @param startId first number in project
+         * @param parallelism maximum number of Asana tasks whose details are retrieved concurrently
+         * @param checkpointPath file for recording the export progress, or {@code null} if none
+         * @param snapshotPath File with the data of the previous export, or {@code null} if none. If given, the
+         *     conversion result only contains issues (and their links, attachments, and updates) that were modified
+         *     since the previous export.
+         */
+        public Options(boolean estimatesInBrackets, int startId, int parallelism, @Nullable Path checkpointPath,
+                @Nullable Path snapshotPath) {
             this.estimatesInBrackets = estimatesInBrackets;
             this.startId = startId;
+            this.parallelism = parallelism;
+            this.checkpointPath = checkpointPath;
+            this.snapshotPath = snapshotPath;
         }
     }
 
     public static final class Result {
-        private final Issues issues;
+        private final Request request;
         private final net.florianschoppmann.issuetracking.youtrack.restold.List links;
         private final Attachments attachments;
         private final IssueUpdates issueUpdates;
         private final AsanaExportWarnings exportWarnings;
         private final ConversionWarnings conversionWarnings;
-        private final List<CompletableFuture<Path>> downloads;
+        private final Export.Result exportResult;
+
+        private @Nullable Issues issues;
 
-        private Result(Issues issues, net.florianschoppmann.issuetracking.youtrack.restold.List links, Attachments attachments,
-                IssueUpdates issueUpdates, AsanaExportWarnings exportWarnings, ConversionWarnings conversionWarnings,
-                List<CompletableFuture<Path>> downloads) {
-            this.issues = issues;
+        private Result(Request request, net.florianschoppmann.issuetracking.youtrack.restold.List links,
+                Attachments attachments, IssueUpdates issueUpdates, AsanaExportWarnings exportWarnings,
+                ConversionWarnings conversionWarnings, Export.Result exportResult) {
+            this.request = request;
             this.links = links;
             this.attachments = attachments;
             this.issueUpdates = issueUpdates;
             this.exportWarnings = exportWarnings;
             this.conversionWarnings = conversionWarnings;
-            this.downloads = downloads;
+            this.exportResult = exportResult;
         }
 
+        /**
+         * Returns the converted issues.
+         *
+         * <p>The issues are converted on the first call, and they are kept in memory afterwards.
+         */
         public Issues getIssues() {
-            return issues;
+            @Nullable Issues currentIssues = issues;
+            if (currentIssues == null) {
+                currentIssues = new Issues();
+                streamIssues().forEach(currentIssues.getIssue()::add);
+                issues = currentIssues;
+            }
+            return currentIssues;
+        }
+
+        /**
+         * Returns a stream of the converted issues, in the same order as {@link #getIssues()}.
+         *
+         * <p>Unless {@link #getIssues()} was called before, each issue is converted only when the stream reaches it,
+         * and the issues are not kept in memory. Issues can therefore be imported while later issues are still being
+         * converted.
+         */
+        public Stream<Issue> streamIssues() {
+            @Nullable Issues currentIssues = issues;
+            return currentIssues != null
+                ? currentIssues.getIssue().stream()
+                : request.result.getUpdatedTasks().stream().map(request::issueFromTask);
         }
 
         public net.florianschoppmann.issuetracking.youtrack.restold.List getLinks() {
@@ -475,7 +527,16 @@ public final class AsanaToYouTrack {
         }
 
         public List<CompletableFuture<Path>> getDownloads() {
-            return Collections.unmodifiableList(downloads);
+            return exportResult.getDownloads();
+        }
+
+        /**
+         * Stores the Asana data of this conversion as snapshot for the next incremental export.
+         *
+         * @see Export.Result#saveSnapshot()
+         */
+        public void saveSnapshot() throws IOException {
+            exportResult.saveSnapshot();
         }
     }
 }
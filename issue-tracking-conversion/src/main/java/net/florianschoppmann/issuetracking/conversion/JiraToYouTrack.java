@@ -1,5 +1,8 @@
 package net.florianschoppmann.issuetracking.conversion;
 
+import static net.florianschoppmann.issuetracking.util.StringNode.node;
+import static net.florianschoppmann.issuetracking.util.StringNode.nodeOfStrings;
+import static net.florianschoppmann.issuetracking.util.StringNode.rootOfNodes;
 import static net.florianschoppmann.issuetracking.util.StringNode.rootOfStrings;
 
 import com.atlassian.jira.rest.client.api.JiraRestClient;
@@ -22,10 +25,11 @@ import net.florianschoppmann.issuetracking.youtrack.YouTrackClient;
 import net.florianschoppmann.issuetracking.youtrack.rest.IssueComment;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -40,6 +44,7 @@ import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 public class JiraToYouTrack {
@@ -47,15 +52,15 @@ public class JiraToYouTrack {
         = new TreeSet<>(Arrays.asList(IssueFieldId.LINKS_FIELD.id, "parent"));
     private static final StringNode YOUTRACK_REQUESTED_FIELDS_FOR_ISSUES
         = rootOfStrings("description", "numberInProject", "summary");
-    private static final StringNode YOUTRACK_REQUESTED_FIELDS_FOR_COMMENTS = rootOfStrings("id", "text");
-    private static final StringNode YOUTRACK_REQUESTED_FIELDS_FOR_PROJECTS = rootOfStrings("shortName");
-
     /**
-     * Regular expression for user mentions. See
-     * <a href="https://jira.atlassian.com/secure/WikiRendererHelpAction.jspa?section=links">Atlassian Jira: Text
-     * Formatting Notation Help</a>
+     * Fields requested when listing all issues of a project. Comments are included, so that they do not have to be
+     * requested separately for each issue.
      */
-    private static final Pattern JIRA_USER_MENTION_PATTERN = Pattern.compile("\\[~([\\S]+?)]");
+    private static final StringNode YOUTRACK_REQUESTED_FIELDS_FOR_ISSUE_LIST = rootOfNodes(
+        node("description"), node("numberInProject"), node("summary"), nodeOfStrings("comments", "id", "text"));
+    private static final StringNode YOUTRACK_REQUESTED_FIELDS_FOR_FOREIGN_ISSUES
+        = rootOfStrings("idReadable", "summary");
+    private static final StringNode YOUTRACK_REQUESTED_FIELDS_FOR_PROJECTS = rootOfStrings("shortName");
 
     private static final Pattern ISSUE_KEY_PATTERN = Pattern.compile("(\\p{Upper}+)-(\\d+)");
 
@@ -73,9 +78,9 @@ public class JiraToYouTrack {
         return projectAbbreviation + '-' + numberInProject;
     }
 
-    private static <T, U> SortedMap<T, U> issueListToMap(List<U> issues,
+    private static <T, U> SortedMap<T, U> issueStreamToMap(Stream<U> issues,
             Function<U, T> issueToNumberInProject) {
-        return issues.stream()
+        return issues
             .collect(Collectors.toMap(
                 issueToNumberInProject,
                 Function.identity(),
@@ -104,18 +109,22 @@ public class JiraToYouTrack {
             .collect(Collectors.toCollection(TreeSet::new));
         SortedSet<String> jiraRequestedFieldsForIssues = new TreeSet<>(JIRA_REQUESTED_FIELDS_FOR_ISSUES);
         Optional.ofNullable(jiraEpicFieldId).ifPresent(jiraRequestedFieldsForIssues::add);
-        SortedMap<String, Issue> jiraIssuesMap = issueListToMap(
-            jiraClient.getIssues(projectAbbrev, jiraRequestedFieldsForIssues), Issue::getKey);
-        SortedMap<String, net.florianschoppmann.issuetracking.youtrack.rest.Issue> youTrackIssuesMap = issueListToMap(
-            youTrackClient.getIssues(projectAbbrev, YOUTRACK_REQUESTED_FIELDS_FOR_ISSUES),
-            issue -> {
-                if (issue.numberInProject == null) {
-                    throw new IllegalStateException(
-                        "Unknown number in project, even though requested from YouTrack server.");
+        SortedMap<String, Issue> jiraIssuesMap = issueStreamToMap(
+            jiraClient.getIssues(projectAbbrev, jiraRequestedFieldsForIssues).stream(), Issue::getKey);
+        SortedMap<String, net.florianschoppmann.issuetracking.youtrack.rest.Issue> youTrackIssuesMap;
+        try (Stream<net.florianschoppmann.issuetracking.youtrack.rest.Issue> youTrackIssues
+                = youTrackClient.streamIssues(projectAbbrev, YOUTRACK_REQUESTED_FIELDS_FOR_ISSUE_LIST)) {
+            youTrackIssuesMap = issueStreamToMap(
+                youTrackIssues,
+                issue -> {
+                    if (issue.numberInProject == null) {
+                        throw new IllegalStateException(
+                            "Unknown number in project, even though requested from YouTrack server.");
+                    }
+                    return issueKey(projectAbbrev, issue.numberInProject);
                 }
-                return issueKey(projectAbbrev, issue.numberInProject);
-            }
-        );
+            );
+        }
         SortedMap<String, List<RemoteIssueLink>> issueKeyToRemoteIssueLinkMap
             = jiraClient.getRemoteIssueLinks(jiraIssuesMap.keySet());
 
@@ -134,7 +143,7 @@ public class JiraToYouTrack {
         private final SortedSet<String> youTrackProjects;
         private final SortedMap<String, SortedSet<String>> missingUsers = new TreeMap<>();
         private final SortedMap<String, SortedSet<String>> missingProjects = new TreeMap<>();
-        private final Set<String> checkedForeignIssues = new HashSet<>();
+        private final Set<String> foreignIssueKeys = new LinkedHashSet<>();
         private final ConversionWarnings conversionWarnings = new ConversionWarnings();
 
         private Request(SortedSet<String> jiraUserNames, SortedMap<String, Issue> jiraIssuesMap,
@@ -152,20 +161,15 @@ public class JiraToYouTrack {
             this.youTrackProjects = youTrackProjects;
         }
 
+        private void addMentionedUser(String userName, String referencingIssue) {
+            if (!youTrackLoginNames.contains(userName)) {
+                missingUsers.computeIfAbsent(userName, ignoredUserName -> new TreeSet<>()).add(referencingIssue);
+            }
+        }
+
         private String updateUserMentions(String originalDescription, String referencingIssue) {
-            return JIRA_USER_MENTION_PATTERN.matcher(originalDescription)
-                .replaceAll(matchResult -> {
-                    String userName = matchResult.group(1);
-                    if (jiraUserNames.contains(userName)) {
-                        if (!youTrackLoginNames.contains(userName)) {
-                            missingUsers.computeIfAbsent(userName, ignoredUserName -> new TreeSet<>())
-                                .add(referencingIssue);
-                        }
-                        return '@' + userName;
-                    } else {
-                        return matchResult.group();
-                    }
-                });
+            return UserMentions.jiraToYouTrack(
+                originalDescription, jiraUserNames, userName -> addMentionedUser(userName, referencingIssue));
         }
 
         private void ensureSameSummary(Issue jiraIssue,
@@ -179,16 +183,38 @@ public class JiraToYouTrack {
             }
         }
 
-        private void ensureForeignIssueHasSameSummary(String issueKey) {
-            if (checkedForeignIssues.contains(issueKey)) {
+        /**
+         * Compares the summaries of all linked issues in other projects (in the order they were encountered).
+         *
+         * <p>Issues are retrieved in bulk. Only an issue that cannot be found by its key (for instance, because it
+         * was moved) is retrieved individually.
+         */
+        private void ensureForeignIssuesHaveSameSummary() {
+            if (foreignIssueKeys.isEmpty()) {
                 return;
             }
 
-            checkedForeignIssues.add(issueKey);
-            ensureSameSummary(
-                Objects.requireNonNull(jiraClient.getIssue(issueKey)),
-                youTrackClient.getIssue(issueKey, YOUTRACK_REQUESTED_FIELDS_FOR_ISSUES)
-            );
+            Map<String, Issue> jiraIssues = jiraClient.getIssuesByKey(foreignIssueKeys, Collections.emptySet())
+                .stream()
+                .collect(Collectors.toMap(Issue::getKey, Function.identity(), (first, second) -> first));
+            Map<String, net.florianschoppmann.issuetracking.youtrack.rest.Issue> youTrackIssues = youTrackClient
+                .getIssuesByKey(foreignIssueKeys, YOUTRACK_REQUESTED_FIELDS_FOR_FOREIGN_ISSUES)
+                .stream()
+                .filter(issue -> issue.idReadable != null)
+                .collect(Collectors.toMap(issue -> issue.idReadable, Function.identity(), (first, second) -> first));
+            for (String issueKey : foreignIssueKeys) {
+                @Nullable Issue jiraIssue = jiraIssues.get(issueKey);
+                net.florianschoppmann.issuetracking.youtrack.rest.@Nullable Issue youTrackIssue
+                    = youTrackIssues.get(issueKey);
+                ensureSameSummary(
+                    jiraIssue != null
+                        ? jiraIssue
+                        : Objects.requireNonNull(jiraClient.getIssue(issueKey)),
+                    youTrackIssue != null
+                        ? youTrackIssue
+                        : youTrackClient.getIssue(issueKey, YOUTRACK_REQUESTED_FIELDS_FOR_ISSUES)
+                );
+            }
         }
 
         private String project(String issueKey) {
@@ -205,7 +231,7 @@ public class JiraToYouTrack {
             String linkOriginProject = project(linkOriginIssueKey);
             if (youTrackProjects.contains(linkOriginProject)) {
                 if (!linkOriginProject.equals(project(issueKey))) {
-                    ensureForeignIssueHasSameSummary(linkOriginIssueKey);
+                    foreignIssueKeys.add(linkOriginIssueKey);
                 }
             } else {
                 missingProjects.computeIfAbsent(linkOriginProject, ignoredProject -> new TreeSet<>()).add(issueKey);
@@ -305,28 +331,60 @@ public class JiraToYouTrack {
             return issueUpdatesRoot;
         }
 
+        /**
+         * Returns the comment updates for all YouTrack issues.
+         *
+         * <p>The comments were already retrieved together with the issues. User mentions are rewritten in parallel;
+         * mentioned users are recorded afterwards, in the order of the comments.
+         */
         private CommentUpdates collectCommentUpdates() {
+            List<CommentConversion> commentConversions = youTrackIssuesMap.entrySet().stream()
+                .flatMap(entry -> Optional.ofNullable(entry.getValue().comments).orElse(Collections.emptyList())
+                    .stream()
+                    .map(issueComment -> new CommentConversion(entry.getKey(), issueComment)))
+                .collect(Collectors.toList());
+            commentConversions.parallelStream().forEach(CommentConversion::convert);
+
             var commentUpdatesRoot = new CommentUpdates();
-            for (String issueKey : youTrackIssuesMap.keySet()) {
-                List<IssueComment> issueComments
-                    = youTrackClient.getIssueComments(issueKey, YOUTRACK_REQUESTED_FIELDS_FOR_COMMENTS);
-                for (IssueComment issueComment : issueComments) {
-                    String oldText = emptyStringIfNull(issueComment.text);
-                    String newText = updateUserMentions(oldText, issueKey);
-                    if (!newText.isEmpty() && !newText.equals(oldText)) {
-                        var updatedComment = new IssueComment();
-                        updatedComment.text = newText;
-                        var commentUpdate = new CommentUpdate();
-                        commentUpdate.issueKey = issueKey;
-                        commentUpdate.commentId = issueComment.id;
-                        commentUpdate.issueComment = updatedComment;
-                        commentUpdatesRoot.commentUpdates.add(commentUpdate);
-                    }
+            for (CommentConversion commentConversion : commentConversions) {
+                for (String userName : commentConversion.mentionedUsers) {
+                    addMentionedUser(userName, commentConversion.issueKey);
+                }
+                String oldText = emptyStringIfNull(commentConversion.issueComment.text);
+                String newText = commentConversion.newText;
+                if (!newText.isEmpty() && !newText.equals(oldText)) {
+                    var updatedComment = new IssueComment();
+                    updatedComment.text = newText;
+                    var commentUpdate = new CommentUpdate();
+                    commentUpdate.issueKey = commentConversion.issueKey;
+                    commentUpdate.commentId = commentConversion.issueComment.id;
+                    commentUpdate.issueComment = updatedComment;
+                    commentUpdatesRoot.commentUpdates.add(commentUpdate);
                 }
             }
             return commentUpdatesRoot;
         }
 
+        /**
+         * Conversion of a single comment, which does not modify any state of the enclosing {@link Request}.
+         */
+        private final class CommentConversion {
+            private final String issueKey;
+            private final IssueComment issueComment;
+            private final List<String> mentionedUsers = new ArrayList<>();
+            private String newText = "";
+
+            private CommentConversion(String issueKey, IssueComment issueComment) {
+                this.issueKey = issueKey;
+                this.issueComment = issueComment;
+            }
+
+            private void convert() {
+                newText = UserMentions.jiraToYouTrack(
+                    emptyStringIfNull(issueComment.text), jiraUserNames, mentionedUsers::add);
+            }
+        }
+
         private void collectWarnings() {
             for (Map.Entry<String, SortedSet<String>> entry : missingUsers.entrySet()) {
                 var missingUser = new MissingUser();
@@ -353,6 +411,7 @@ public class JiraToYouTrack {
             }
 
             net.florianschoppmann.issuetracking.youtrack.restold.List links = collectLinks(jiraIssuesMap.values());
+            ensureForeignIssuesHaveSameSummary();
             IssueUpdates issueUpdates = collectIssueUpdates();
             CommentUpdates commentUpdates = collectCommentUpdates();
             collectWarnings();
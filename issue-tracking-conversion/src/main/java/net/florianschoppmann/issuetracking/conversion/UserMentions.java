@@ -0,0 +1,37 @@
+package net.florianschoppmann.issuetracking.conversion;
+
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+final class UserMentions {
+    /**
+     * Regular expression for user mentions. See
+     * <a href="https://jira.atlassian.com/secure/WikiRendererHelpAction.jspa?section=links">Atlassian Jira: Text
+     * Formatting Notation Help</a>
+     */
+    private static final Pattern JIRA_USER_MENTION_PATTERN = Pattern.compile("\\[~([\\S]+?)]");
+
+    private UserMentions() { }
+
+    /**
+     * Replaces Jira user mentions of the form {@code [~user]} by YouTrack user mentions of the form {@code @user}.
+     *
+     * @param text text in Jira markup
+     * @param jiraUserNames names of all Jira users; mentions of other names are left unchanged
+     * @param mentionedUserConsumer consumer that is called with the name of each replaced mention
+     * @return the text with replaced mentions
+     */
+    static String jiraToYouTrack(String text, Set<String> jiraUserNames, Consumer<String> mentionedUserConsumer) {
+        return JIRA_USER_MENTION_PATTERN.matcher(text)
+            .replaceAll(matchResult -> {
+                String userName = matchResult.group(1);
+                if (jiraUserNames.contains(userName)) {
+                    mentionedUserConsumer.accept(userName);
+                    return '@' + userName;
+                } else {
+                    return matchResult.group();
+                }
+            });
+    }
+}
@@ -0,0 +1,33 @@
+package net.florianschoppmann.issuetracking.conversion;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+public class UserMentionsTest {
+    @DataProvider
+    public Object[][] dataForJiraToYouTrack() {
+        return new Object[][] {
+            {"foo", "foo", new String[0]},
+            {"[~alice] and [~bob]", "@alice and @bob", new String[] {"alice", "bob"}},
+            {"[~carol] is unknown, [~ alice] is not a mention", "[~carol] is unknown, [~ alice] is not a mention",
+                new String[0]},
+            {"[~alice][~alice]", "@alice@alice", new String[] {"alice", "alice"}}
+        };
+    }
+
+    @Test(dataProvider = "dataForJiraToYouTrack")
+    public void jiraToYouTrack(String jiraText, String expectedText, String[] expectedMentionedUsers) {
+        List<String> mentionedUsers = new ArrayList<>();
+        Assert.assertEquals(
+            UserMentions.jiraToYouTrack(jiraText, Set.of("alice", "bob"), mentionedUsers::add),
+            expectedText
+        );
+        Assert.assertEquals(mentionedUsers, Arrays.asList(expectedMentionedUsers));
+    }
+}
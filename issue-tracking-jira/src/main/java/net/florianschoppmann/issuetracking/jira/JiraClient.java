@@ -1,21 +1,33 @@
 package net.florianschoppmann.issuetracking.jira;
 
 import com.atlassian.jira.rest.client.api.JiraRestClient;
+import com.atlassian.jira.rest.client.api.RestClientException;
+import com.atlassian.jira.rest.client.api.SearchRestClient;
 import com.atlassian.jira.rest.client.api.domain.Field;
 import com.atlassian.jira.rest.client.api.domain.Issue;
 import com.atlassian.jira.rest.client.api.domain.IssueField;
 import com.atlassian.jira.rest.client.api.domain.IssueFieldId;
 import com.atlassian.jira.rest.client.api.domain.SearchResult;
 import com.atlassian.jira.rest.client.api.domain.User;
+import io.atlassian.util.concurrent.Promise;
 import net.florianschoppmann.issuetracking.jira.rest.RemoteIssueLink;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -23,6 +35,13 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.HttpHeaders;
@@ -54,36 +73,204 @@ public final class JiraClient {
 
     private static final int BATCH_SIZE = 50;
 
+    /**
+     * Maximum number of attempts for a request that Jira answers with status 429 (Too Many Requests).
+     */
+    private static final int MAX_ATTEMPTS = 6;
+
+    /**
+     * Delay before the first retry if Jira does not send a Retry-After header. The delay doubles with each attempt.
+     */
+    private static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final int BAD_REQUEST = 400;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
     private final JiraRestClient jiraRestClient;
     private final Client jaxrsClient;
     private final URI baseUri;
     private final String credentials;
+    private final Options options;
 
     public JiraClient(JiraRestClient jiraRestClient, Client jaxrsClient, URI baseUri, String username, String password) {
+        this(jiraRestClient, jaxrsClient, baseUri, username, password, new Options(1));
+    }
+
+    public JiraClient(JiraRestClient jiraRestClient, Client jaxrsClient, URI baseUri, String username, String password,
+            Options options) {
         this.jiraRestClient = Objects.requireNonNull(jiraRestClient);
         this.jaxrsClient = Objects.requireNonNull(jaxrsClient);
         this.baseUri = Objects.requireNonNull(baseUri);
         credentials = Base64.getEncoder().encodeToString((username + ':' + password).getBytes());
+        this.options = Objects.requireNonNull(options);
     }
 
-    public List<Issue> getIssues(String projectAbbrev, Set<String> fields) {
+    public static final class Options {
+        private final int maxRequestsInFlight;
+        private final int searchPageSize;
+
+        /**
+         * Constructor for options with the default search page size of 50.
+         *
+         * @param maxRequestsInFlight Maximum number of requests sent to Jira concurrently.
+         */
+        public Options(int maxRequestsInFlight) {
+            this(maxRequestsInFlight, BATCH_SIZE);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param maxRequestsInFlight Maximum number of requests sent to Jira concurrently, when a method performs
+         *     one request per issue or per page of search results.
+         * @param searchPageSize Number of issues requested per page of search results. Jira may return fewer issues
+         *     per page (Jira Cloud, for instance, caps the page size), in which case the page size returned by Jira
+         *     is used.
+         */
+        public Options(int maxRequestsInFlight, int searchPageSize) {
+            if (maxRequestsInFlight < 1) {
+                throw new IllegalArgumentException("Maximum number of requests in flight must be at least 1.");
+            } else if (searchPageSize < 1) {
+                throw new IllegalArgumentException("Search page size must be at least 1.");
+            }
+            this.maxRequestsInFlight = maxRequestsInFlight;
+            this.searchPageSize = searchPageSize;
+        }
+    }
+
+    private static int addAll(SearchResult result, List<Issue> issues) {
+        int numIssues = 0;
+        for (Issue issue : result.getIssues()) {
+            issues.add(issue);
+            ++numIssues;
+        }
+        return numIssues;
+    }
+
+    /**
+     * Adds all issues matching the given JQL query to the given list, in the order of the search results.
+     *
+     * <p>The first page of search results reports the total number of issues and the effective page size. The
+     * remaining pages are then requested concurrently, with up to {@link Options#maxRequestsInFlight} requests in
+     * flight, and consumed in order. If a page is shorter than expected (for instance, because Jira caps the number of
+     * results per response, or because issues were deleted in the meantime), the rest of its range is requested
+     * sequentially. If Jira still returns fewer results, a warning is logged.
+     */
+    private void searchAll(String jql, Set<String> fields, List<Issue> issues) {
         // See comments for ISSUES_REQUIRED_SEARCH_FIELDS
         var combinedFields = new TreeSet<>(ISSUES_REQUIRED_SEARCH_FIELDS);
         combinedFields.addAll(fields);
-        List<Issue> issues = new ArrayList<>();
-        int startAt = 0;
-        while (true) {
-            SearchResult result = jiraRestClient.getSearchClient()
-                .searchJql(String.format("project = %s ORDER BY issuekey ASC", projectAbbrev), BATCH_SIZE, startAt,
-                    combinedFields)
-                .claim();
-            for (Issue issue : result.getIssues()) {
-                issues.add(issue);
-                ++startAt;
+        SearchRestClient searchClient = jiraRestClient.getSearchClient();
+        SearchResult firstPage = searchClient.searchJql(jql, options.searchPageSize, 0, combinedFields).claim();
+        int total = firstPage.getTotal();
+        int pageSize = Math.max(1, Math.min(options.searchPageSize, firstPage.getMaxResults()));
+        int nextStartAt = addAll(firstPage, issues);
+        if (nextStartAt == 0) {
+            return;
+        }
+
+        Deque<Promise<SearchResult>> pagesInFlight = new ArrayDeque<>(options.maxRequestsInFlight);
+        int nextRequestedStartAt = nextStartAt;
+        while (nextStartAt < total) {
+            while (nextRequestedStartAt < total && pagesInFlight.size() < options.maxRequestsInFlight) {
+                pagesInFlight.addLast(searchClient.searchJql(jql, pageSize, nextRequestedStartAt, combinedFields));
+                nextRequestedStartAt += pageSize;
             }
-            if (startAt >= result.getTotal()) {
+            if (pagesInFlight.isEmpty()) {
+                // The results changed while paging; there are no further requests in flight.
                 break;
             }
+
+            int expectedPageSize = Math.min(pageSize, total - nextStartAt);
+            int numIssues = addAll(pagesInFlight.removeFirst().claim(), issues);
+            while (0 < numIssues && numIssues < expectedPageSize) {
+                int received = addAll(
+                    searchClient.searchJql(jql, expectedPageSize - numIssues, nextStartAt + numIssues, combinedFields)
+                        .claim(),
+                    issues
+                );
+                if (received == 0) {
+                    break;
+                }
+                numIssues += received;
+            }
+            if (numIssues < expectedPageSize) {
+                log.warn("Jira returned only {} of {} search results at offset {} for query \"{}\" (of {} results "
+                    + "initially reported). Presumably, issues were deleted in the meantime. The search results may be "
+                    + "incomplete.", numIssues, expectedPageSize, nextStartAt, jql, total);
+            }
+            if (numIssues == 0) {
+                // Fewer results than initially reported
+                break;
+            }
+            nextStartAt += expectedPageSize;
+        }
+        pagesInFlight.forEach(page -> page.cancel(true));
+    }
+
+    public List<Issue> getIssues(String projectAbbrev, Set<String> fields) {
+        List<Issue> issues = new ArrayList<>();
+        searchAll(String.format("project = %s ORDER BY issuekey ASC", projectAbbrev), fields, issues);
+        return issues;
+    }
+
+    /**
+     * Adds the results of the given search for the given issue keys to the given list, and returns the keys that
+     * Jira rejected.
+     *
+     * <p>Jira rejects a {@code key in (...)} query with status 400 if any of the keys does not exist (for instance,
+     * because the issue was deleted). In that case, the keys are split in half, and both halves are searched for
+     * separately, until the rejected keys are isolated.
+     */
+    static <T> List<String> searchByKeys(List<String> issueKeys, Function<List<String>, List<T>> search,
+            List<T> results) {
+        try {
+            results.addAll(search.apply(issueKeys));
+            return Collections.emptyList();
+        } catch (RestClientException exception) {
+            if (exception.getStatusCode().filter(status -> status == BAD_REQUEST).isEmpty()) {
+                throw exception;
+            } else if (issueKeys.size() == 1) {
+                return issueKeys;
+            }
+        }
+        int middle = issueKeys.size() / 2;
+        List<String> rejectedKeys = new ArrayList<>(searchByKeys(issueKeys.subList(0, middle), search, results));
+        rejectedKeys.addAll(searchByKeys(issueKeys.subList(middle, issueKeys.size()), search, results));
+        return rejectedKeys;
+    }
+
+    /**
+     * Returns the issues with the given keys, using one JQL search per {@link #BATCH_SIZE} keys.
+     *
+     * <p>Issues that were moved to another project are returned with their new key. Keys that do not exist are
+     * skipped (and logged). The returned list is therefore not guaranteed to contain an issue for every given key.
+     */
+    public List<Issue> getIssuesByKey(Collection<String> issueKeys, Set<String> fields) {
+        List<String> issueKeyList = new ArrayList<>(issueKeys);
+        List<Issue> issues = new ArrayList<>(issueKeyList.size());
+        for (int start = 0; start < issueKeyList.size(); start += BATCH_SIZE) {
+            List<String> rejectedKeys = searchByKeys(
+                issueKeyList.subList(start, Math.min(issueKeyList.size(), start + BATCH_SIZE)),
+                keys -> {
+                    List<Issue> chunkIssues = new ArrayList<>(keys.size());
+                    searchAll(
+                        keys.stream()
+                            .map(issueKey -> '"' + issueKey + '"')
+                            .collect(Collectors.joining(", ", "key in (", ") ORDER BY issuekey ASC")),
+                        fields,
+                        chunkIssues
+                    );
+                    return chunkIssues;
+                },
+                issues
+            );
+            if (!rejectedKeys.isEmpty()) {
+                log.warn("Jira rejected the search for issue keys {}. Presumably, these issues do not exist.",
+                    rejectedKeys);
+            }
         }
         return issues;
     }
@@ -93,20 +280,140 @@ public final class JiraClient {
     }
 
     /**
-     * Get remote links for a collection of issues.
+     * Point in time before which no further request may be sent, because Jira responded with status 429.
+     *
+     * <p>Instances of this class are not thread-safe.
      */
-    public SortedMap<String, List<RemoteIssueLink>> getRemoteIssueLinks(Collection<String> issueKeys) {
-        SortedMap<String, List<RemoteIssueLink>> issueKeyToRemoteIssueLinkMap = new TreeMap<>();
-        for (String issueKey : issueKeys) {
+    static final class Throttle {
+        private long resumeNanos = System.nanoTime();
+
+        /**
+         * Postpones the resume time to the given delay after the given response time, unless it is already later.
+         */
+        void pause(long responseNanos, long delayMillis) {
+            long newResumeNanos = responseNanos + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            if (newResumeNanos - resumeNanos > 0) {
+                resumeNanos = newResumeNanos;
+            }
+        }
+
+        void awaitResume() {
+            long remainingNanos = resumeNanos - System.nanoTime();
+            if (remainingNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(remainingNanos);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new ProcessingException("Interrupted while waiting for Jira rate limit.", exception);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the delay in milliseconds requested by the given Retry-After header value, or an exponential backoff if
+     * the header is missing or cannot be parsed.
+     *
+     * @param retryAfter value of the Retry-After header, either a number of seconds or an HTTP date
+     * @param attempt number of attempts so far, at least 1
+     */
+    static long retryDelayMillis(@Nullable String retryAfter, int attempt) {
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+            } catch (NumberFormatException ignored) {
+                // Retry-After may also be an HTTP date
+            }
+            try {
+                ZonedDateTime retryTime = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(retryTime.getZone()), retryTime).toMillis());
+            } catch (DateTimeParseException ignored) {
+                // Fall back to exponential backoff
+            }
+        }
+        return DEFAULT_RETRY_DELAY_MILLIS << Math.min(attempt - 1, 16);
+    }
+
+    private final class RemoteIssueLinksRequest {
+        private final String issueKey;
+        private final Throttle throttle;
+        private int attempts = 0;
+        private @Nullable CompletableFuture<List<RemoteIssueLink>> remoteIssueLinksFuture;
+        private volatile long responseNanos;
+
+        private RemoteIssueLinksRequest(String issueKey, Throttle throttle) {
+            this.issueKey = issueKey;
+            this.throttle = throttle;
+        }
+
+        private RemoteIssueLinksRequest send() {
+            throttle.awaitResume();
+            ++attempts;
             URI targetUri = baseUri.resolve(UriBuilder.fromPath("rest/api/3/issue/{issueIdOrKey}/remotelink")
                 .resolveTemplate("issueIdOrKey", issueKey)
                 .build());
-            List<RemoteIssueLink> remoteIssueLinks = jaxrsClient.target(targetUri)
+            remoteIssueLinksFuture = jaxrsClient.target(targetUri)
                 .request(MediaType.APPLICATION_JSON_TYPE)
                 .header(HttpHeaders.AUTHORIZATION, "Basic " + credentials)
-                .buildGet()
-                .invoke(new GenericType<List<RemoteIssueLink>>() { });
-            issueKeyToRemoteIssueLinkMap.put(issueKey, remoteIssueLinks);
+                .rx()
+                .get(new GenericType<List<RemoteIssueLink>>() { })
+                .toCompletableFuture()
+                .whenComplete((ignoredLinks, ignoredException) -> responseNanos = System.nanoTime());
+            return this;
+        }
+
+        /**
+         * Waits for the remote links, sending the request again (after the delay requested by Jira) as long as Jira
+         * responds with status 429.
+         */
+        private List<RemoteIssueLink> await() {
+            while (true) {
+                try {
+                    return Objects.requireNonNull(remoteIssueLinksFuture).join();
+                } catch (CompletionException exception) {
+                    @Nullable Throwable cause = exception.getCause();
+                    if (cause instanceof WebApplicationException
+                            && ((WebApplicationException) cause).getResponse().getStatus() == TOO_MANY_REQUESTS
+                            && attempts < MAX_ATTEMPTS) {
+                        long delayMillis = retryDelayMillis(
+                            ((WebApplicationException) cause).getResponse().getHeaderString(HttpHeaders.RETRY_AFTER),
+                            attempts);
+                        log.warn("Jira rate limit reached while retrieving remote links for {}. Pausing for {} ms.",
+                            issueKey, delayMillis);
+                        // Retry-After is relative to the time of the response, not the time we got around to look at it
+                        throttle.pause(responseNanos, delayMillis);
+                        send();
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else {
+                        throw new ProcessingException(cause);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get remote links for a collection of issues.
+     *
+     * <p>Up to {@link Options#maxRequestsInFlight} requests are sent concurrently. If Jira responds with status 429
+     * (Too Many Requests), no further request is sent until the time given by the Retry-After header, and the
+     * rejected request is retried.
+     */
+    public SortedMap<String, List<RemoteIssueLink>> getRemoteIssueLinks(Collection<String> issueKeys) {
+        SortedMap<String, List<RemoteIssueLink>> issueKeyToRemoteIssueLinkMap = new TreeMap<>();
+        var throttle = new Throttle();
+        Deque<RemoteIssueLinksRequest> requestsInFlight = new ArrayDeque<>(options.maxRequestsInFlight);
+        for (String issueKey : issueKeys) {
+            if (requestsInFlight.size() == options.maxRequestsInFlight) {
+                RemoteIssueLinksRequest request = requestsInFlight.removeFirst();
+                issueKeyToRemoteIssueLinkMap.put(request.issueKey, request.await());
+            }
+            requestsInFlight.addLast(new RemoteIssueLinksRequest(issueKey, throttle).send());
+        }
+        while (!requestsInFlight.isEmpty()) {
+            RemoteIssueLinksRequest request = requestsInFlight.removeFirst();
+            issueKeyToRemoteIssueLinkMap.put(request.issueKey, request.await());
         }
         return issueKeyToRemoteIssueLinkMap;
     }
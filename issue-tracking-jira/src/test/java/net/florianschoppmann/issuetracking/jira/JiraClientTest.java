@@ -0,0 +1,253 @@
+package net.florianschoppmann.issuetracking.jira;
+
+import com.atlassian.jira.rest.client.api.JiraRestClient;
+import com.atlassian.jira.rest.client.api.RestClientException;
+import com.atlassian.jira.rest.client.api.SearchRestClient;
+import com.atlassian.jira.rest.client.api.domain.Issue;
+import com.atlassian.jira.rest.client.api.domain.SearchResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.atlassian.util.concurrent.Promises;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+
+public class JiraClientTest {
+    private ExecutorService executorService;
+    private HttpServer httpServer;
+    private Client jaxrsClient;
+    private final AtomicInteger numRequests = new AtomicInteger();
+
+    /**
+     * Mock of the Jira remote-link endpoint that always responds with status 429 and a Retry-After header of 0 s.
+     */
+    private void handleRemoteLinks(HttpExchange exchange) throws IOException {
+        numRequests.incrementAndGet();
+        exchange.getResponseHeaders().add("Retry-After", "0");
+        exchange.sendResponseHeaders(429, -1);
+        exchange.close();
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        numRequests.set(0);
+        executorService = Executors.newCachedThreadPool();
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        httpServer.setExecutor(executorService);
+        httpServer.createContext("/rest/api/3/issue/", this::handleRemoteLinks);
+        httpServer.start();
+        jaxrsClient = ClientBuilder.newClient();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        jaxrsClient.close();
+        httpServer.stop(0);
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Fake of the Jira search endpoint for query {@code project = P}, which returns (placeholders for) the issues with
+     * the numbers in {@link #issueNumbers}, but at most {@link #maxIssuesPerResponse} per response. After the first
+     * search, the last {@link #numDeletedAfterFirstSearch} issues are deleted.
+     */
+    private static final class FakeSearch {
+        private final List<Integer> issueNumbers;
+        private final int maxIssuesPerResponse;
+        private int numDeletedAfterFirstSearch;
+        private final List<String> searches = new ArrayList<>();
+
+        private FakeSearch(int numIssues, int maxIssuesPerResponse, int numDeletedAfterFirstSearch) {
+            issueNumbers = IntStream.rangeClosed(1, numIssues).boxed().collect(Collectors.toList());
+            this.maxIssuesPerResponse = maxIssuesPerResponse;
+            this.numDeletedAfterFirstSearch = numDeletedAfterFirstSearch;
+        }
+
+        private SearchResult search(int maxResults, int startAt) {
+            searches.add(startAt + "+" + maxResults);
+            int total = issueNumbers.size();
+            int end = Math.min(total, startAt + Math.min(maxResults, maxIssuesPerResponse));
+            // The content of the issues is irrelevant here
+            List<Issue> issues = Collections.nCopies(Math.max(0, end - startAt), null);
+            issueNumbers.subList(issueNumbers.size() - numDeletedAfterFirstSearch, issueNumbers.size()).clear();
+            numDeletedAfterFirstSearch = 0;
+            return new SearchResult(startAt, maxResults, total, issues);
+        }
+
+        private SearchRestClient searchRestClient() {
+            return (SearchRestClient) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { SearchRestClient.class }, (proxy, method, args) -> {
+                    if (!"searchJql".equals(method.getName()) || args.length != 4) {
+                        throw new UnsupportedOperationException();
+                    }
+                    Assert.assertTrue(((String) args[0]).startsWith("project = P "));
+                    return Promises.promise(search((Integer) args[1], (Integer) args[2]));
+                });
+        }
+    }
+
+    private JiraClient jiraClient(@Nullable FakeSearch fakeSearch, int searchPageSize) {
+        var jiraRestClient = (JiraRestClient) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { JiraRestClient.class }, (proxy, method, args) -> {
+                if (fakeSearch == null || !"getSearchClient".equals(method.getName())) {
+                    throw new UnsupportedOperationException();
+                }
+                return fakeSearch.searchRestClient();
+            });
+        URI baseUri = URI.create("http://" + httpServer.getAddress().getHostString() + ':'
+            + httpServer.getAddress().getPort() + '/');
+        return new JiraClient(jiraRestClient, jaxrsClient, baseUri, "user", "password",
+            new JiraClient.Options(2, searchPageSize));
+    }
+
+    private static List<String> issueKeys(int numIssues) {
+        return IntStream.rangeClosed(1, numIssues)
+            .mapToObj(number -> "P-" + number)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Fake of a {@code key in (...)} search that, like Jira, fails with status 400 if any of the keys does not exist.
+     */
+    private static final class FakeKeySearch implements Function<List<String>, List<String>> {
+        private final Set<String> existingKeys;
+        private int numSearches = 0;
+
+        private FakeKeySearch(Set<String> existingKeys) {
+            this.existingKeys = existingKeys;
+        }
+
+        @Override
+        public List<String> apply(List<String> issueKeys) {
+            ++numSearches;
+            if (!existingKeys.containsAll(issueKeys)) {
+                throw new RestClientException("An issue with the given key does not exist.", null, 400);
+            }
+            return new ArrayList<>(issueKeys);
+        }
+    }
+
+    @Test
+    public void searchByKeysAllExisting() {
+        var search = new FakeKeySearch(new TreeSet<>(issueKeys(50)));
+        List<String> results = new ArrayList<>();
+        Assert.assertEquals(JiraClient.searchByKeys(issueKeys(50), search, results), Collections.emptyList());
+        Assert.assertEquals(results, issueKeys(50));
+        Assert.assertEquals(search.numSearches, 1);
+    }
+
+    @Test
+    public void searchByKeysMissing() {
+        Set<String> existingKeys = new TreeSet<>(issueKeys(50));
+        existingKeys.removeAll(Arrays.asList("P-4", "P-37"));
+        var search = new FakeKeySearch(existingKeys);
+        List<String> results = new ArrayList<>();
+        Assert.assertEquals(JiraClient.searchByKeys(issueKeys(50), search, results), Arrays.asList("P-4", "P-37"));
+        Assert.assertEquals(results, issueKeys(50).stream()
+            .filter(existingKeys::contains)
+            .collect(Collectors.toList()));
+        // Bisection isolates each missing key with a logarithmic number of searches, so there are far fewer searches
+        // than keys
+        Assert.assertTrue(search.numSearches < 30,
+            String.format("Expected fewer than 30 searches, but there were %d.", search.numSearches));
+    }
+
+    @Test
+    public void searchByKeysOtherFailure() {
+        List<String> results = new ArrayList<>();
+        Assert.assertThrows(RestClientException.class, () -> JiraClient.searchByKeys(issueKeys(10), keys -> {
+            throw new RestClientException("Internal server error.", null, 500);
+        }, results));
+        Assert.assertEquals(results, Collections.emptyList());
+    }
+
+    @Test
+    public void retryDelayMillisInSeconds() {
+        Assert.assertEquals(JiraClient.retryDelayMillis("120", 1), 120_000);
+        Assert.assertEquals(JiraClient.retryDelayMillis(" 0 ", 3), 0);
+    }
+
+    @Test
+    public void retryDelayMillisAsHttpDate() {
+        ZonedDateTime retryTime = ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(60);
+        long delayMillis = JiraClient.retryDelayMillis(DateTimeFormatter.RFC_1123_DATE_TIME.format(retryTime), 1);
+        // The HTTP date has a precision of one second
+        Assert.assertTrue(delayMillis > 58_000 && delayMillis <= 60_000,
+            String.format("Expected a delay of about 60 s, but got %d ms.", delayMillis));
+
+        String pastDate = DateTimeFormatter.RFC_1123_DATE_TIME.format(retryTime.minusHours(1));
+        Assert.assertEquals(JiraClient.retryDelayMillis(pastDate, 1), 0);
+    }
+
+    @Test
+    public void retryDelayMillisMissingOrInvalid() {
+        Assert.assertEquals(JiraClient.retryDelayMillis(null, 1), 1000);
+        Assert.assertEquals(JiraClient.retryDelayMillis(null, 3), 4000);
+        Assert.assertEquals(JiraClient.retryDelayMillis("soon", 2), 2000);
+        // The exponent is capped, so that the delay does not overflow
+        Assert.assertEquals(JiraClient.retryDelayMillis(null, 100), 1000L << 16);
+    }
+
+    @Test
+    public void throttleKeepsLaterResumeTime() {
+        var throttle = new JiraClient.Throttle();
+        long start = System.nanoTime();
+        throttle.pause(start, 200);
+        throttle.pause(start, 0);
+        throttle.awaitResume();
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void remoteIssueLinksAttemptsCapped() {
+        JiraClient jiraClient = jiraClient(null, 50);
+        WebApplicationException exception = Assert.expectThrows(WebApplicationException.class,
+            () -> jiraClient.getRemoteIssueLinks(Collections.singletonList("P-1")));
+        Assert.assertEquals(exception.getResponse().getStatus(), 429);
+        // The request was sent JiraClient.MAX_ATTEMPTS times and then given up
+        Assert.assertEquals(numRequests.get(), 6);
+    }
+
+    @Test
+    public void getIssuesShortPages() {
+        // Jira returns at most 3 of the 4 requested issues per response. The rest of each page is requested separately.
+        var fakeSearch = new FakeSearch(10, 3, 0);
+        Assert.assertEquals(jiraClient(fakeSearch, 4).getIssues("P", Collections.emptySet()).size(), 10);
+        Assert.assertEquals(fakeSearch.searches, Arrays.asList("0+4", "3+4", "7+4", "6+1"));
+    }
+
+    @Test
+    public void getIssuesDeletedWhilePaging() {
+        // The last issue is deleted after the first page. Requesting the rest of the last page yields nothing.
+        var fakeSearch = new FakeSearch(10, 4, 1);
+        Assert.assertEquals(jiraClient(fakeSearch, 4).getIssues("P", Collections.emptySet()).size(), 9);
+        Assert.assertEquals(fakeSearch.searches, Arrays.asList("0+4", "4+4", "8+4", "9+1"));
+    }
+}
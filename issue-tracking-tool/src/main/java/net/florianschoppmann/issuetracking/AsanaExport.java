@@ -8,9 +8,12 @@ import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 import joptsimple.util.PathConverter;
 import net.florianschoppmann.issuetracking.asana.AsyncAttachmentDownloader;
+import net.florianschoppmann.issuetracking.asana.BlobStore;
+import net.florianschoppmann.issuetracking.asana.DownloadScheduler;
 import net.florianschoppmann.issuetracking.asana.Export;
 import net.florianschoppmann.issuetracking.conversion.AsanaToYouTrack;
 import net.florianschoppmann.java.futures.Futures;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,6 +30,11 @@ import java.util.stream.Collectors;
 import javax.xml.bind.JAXBException;
 
 public final class AsanaExport {
+    private static final String CHECKPOINT_FILE_NAME = "AsanaExportCheckpoint.jsonl";
+    private static final String SNAPSHOT_FILE_NAME = "AsanaExportSnapshot.jsonl";
+    private static final String BLOB_STORE_DIRECTORY_NAME = "blobs";
+    static final int MAX_PENDING_DOWNLOADS = 1000;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final String workspaceName;
@@ -53,7 +61,13 @@ public final class AsanaExport {
         this.options = options;
     }
 
-    private void run() throws IOException, JAXBException {
+    /**
+     * Returns the Asana project with the given name in the workspace with the given name, or {@code null} (after
+     * logging an error) if there is no such project.
+     */
+    static @Nullable Project findProject(Client asanaClient, String workspaceName, String projectName) {
+        final Logger log = LoggerFactory.getLogger(AsanaExport.class);
+
         Workspace workspace = null;
         for (Workspace currentWorkspace : asanaClient.workspaces.findAll()) {
             if (workspaceName.equals(currentWorkspace.name)) {
@@ -63,19 +77,21 @@ public final class AsanaExport {
         }
         if (workspace == null) {
             log.error("Could not find workspace '{}'.\n", workspaceName);
-            System.exit(1);
-            return;
+            return null;
         }
 
-        Project project = null;
         for (Project currentProject : asanaClient.projects.findByWorkspace(workspace.id)) {
             if (projectName.equals(currentProject.name)) {
-                project = currentProject;
-                break;
+                return currentProject;
             }
         }
+        log.error("Could not find project '{}'.\n", projectName);
+        return null;
+    }
+
+    private void run() throws IOException, JAXBException {
+        @Nullable Project project = findProject(asanaClient, workspaceName, projectName);
         if (project == null) {
-            log.error("Could not find project '{}'.\n", projectName);
             System.exit(1);
             return;
         }
@@ -88,10 +104,10 @@ public final class AsanaExport {
             Futures.unwrapCompletionException(download).join();
         }
 
-        serialization.writeResultXml(result.getIssues());
+        serialization.writeResultList(Serialization.ResultList.ISSUES, result.getIssues().getIssue());
         serialization.writeResultXml(result.getLinks());
-        serialization.writeResultXml(result.getAttachments());
-        serialization.writeResultXml(result.getIssueUpdates());
+        serialization.writeResultList(Serialization.ResultList.ATTACHMENTS, result.getAttachments().attachments);
+        serialization.writeResultList(Serialization.ResultList.ISSUE_UPDATES, result.getIssueUpdates().issueUpdates);
         serialization.writeResultXml(result.getExportWarnings());
         serialization.writeResultXml(result.getConversionWarnings());
 
@@ -102,9 +118,14 @@ public final class AsanaExport {
         importSettings.importAttachments = true;
         importSettings.updateIssues = true;
         serialization.writeResultXml(importSettings);
+
+        // The export is complete, so the checkpoint (if any) is no longer needed. Also, the next incremental export (if
+        // any) should start from here.
+        result.saveSnapshot();
+        Files.deleteIfExists(attachmentBasePath.resolve(CHECKPOINT_FILE_NAME));
     }
 
-    private static Map<String, String> userMapping(Path userMappingFile) throws IOException {
+    static Map<String, String> userMapping(Path userMappingFile) throws IOException {
         return Files.lines(userMappingFile)
             .filter(line -> line.contains("="))
             .map(line -> line.split("="))
@@ -112,20 +133,30 @@ public final class AsanaExport {
     }
 
     private static void start(String workspaceName, String projectName, String youTrackProjectAbbrev,
-            Path userMappingFile, Path attachmentBasePath, boolean estimatesInBrackets, int startId,
+            Path userMappingFile, Path attachmentBasePath, boolean estimatesInBrackets, int startId, int parallelism,
+            boolean checkpoint, boolean incremental, int maxDownloads, int maxDownloadsPerHost,
+            boolean deduplicateAttachments, Serialization.Compression compression, boolean compact, boolean binary,
             String asanaAccessToken) throws IOException, JAXBException {
         // Create all dependencies
         Client asanaClient = Client.accessToken(asanaAccessToken);
-        Serialization serialization = Serialization.defaultSerialization(attachmentBasePath);
+        Serialization serialization
+            = Serialization.defaultSerialization(attachmentBasePath, compression, !compact, binary);
         var executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
         executor.allowCoreThreadTimeOut(true);
         HttpClient httpClient = HttpClient.newBuilder()
             .executor(executor)
             .build();
-        var attachmentDownloader = new AsyncAttachmentDownloader(httpClient);
+        var downloadScheduler = new DownloadScheduler(maxDownloads, maxDownloadsPerHost,
+            Math.max(maxDownloads, MAX_PENDING_DOWNLOADS));
+        @Nullable BlobStore blobStore = deduplicateAttachments
+            ? BlobStore.open(attachmentBasePath.resolve(BLOB_STORE_DIRECTORY_NAME))
+            : null;
+        var attachmentDownloader = new AsyncAttachmentDownloader(httpClient, downloadScheduler, blobStore);
         var export = new Export(asanaClient, attachmentDownloader);
         var asanaToYouTrack = new AsanaToYouTrack(export);
-        var options = new AsanaToYouTrack.Options(estimatesInBrackets, startId);
+        var options = new AsanaToYouTrack.Options(estimatesInBrackets, startId, parallelism,
+            checkpoint ? attachmentBasePath.resolve(CHECKPOINT_FILE_NAME) : null,
+            incremental ? attachmentBasePath.resolve(SNAPSHOT_FILE_NAME) : null);
         var asanaDownloader = new AsanaExport(workspaceName, projectName, youTrackProjectAbbrev, asanaClient,
             asanaToYouTrack, serialization, userMapping(userMappingFile), attachmentBasePath, options);
 
@@ -133,6 +164,9 @@ public final class AsanaExport {
             asanaDownloader.run();
         } finally {
             executor.shutdown();
+            if (blobStore != null) {
+                blobStore.close();
+            }
         }
     }
 
@@ -157,6 +191,26 @@ public final class AsanaExport {
             .accepts("no-estimates", "in task names, do not treat numbers in brackets as time estimates");
         OptionSpec<Integer> startIdOpt = parser.accepts("start-id", "first number in project")
             .withRequiredArg().ofType(Integer.class).defaultsTo(1);
+        OptionSpec<Integer> parallelismOpt = parser
+            .accepts("parallelism", "maximum number of Asana tasks whose details are retrieved concurrently")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(4);
+        OptionSpec<Void> checkpointOpt = parser.accepts("checkpoint",
+            "record progress in the output directory, so that an interrupted export can be resumed");
+        OptionSpec<Void> incrementalOpt = parser.accepts("incremental",
+            "only export tasks modified since the previous incremental export into the same output directory");
+        OptionSpec<Integer> maxDownloadsOpt = parser.accepts("max-downloads", "maximum number of concurrent downloads")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(8);
+        OptionSpec<Integer> maxDownloadsPerHostOpt = parser
+            .accepts("max-downloads-per-host", "maximum number of concurrent downloads from the same host")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(4);
+        OptionSpec<Void> deduplicateAttachmentsOpt = parser.accepts("deduplicate-attachments",
+            "store identical attachments only once (as hard links into a content-addressed store)");
+        OptionSpec<Serialization.Compression> compressionOpt = parser
+            .accepts("compression", "compression of the result files (none, gzip, or zstd)")
+            .withRequiredArg().withValuesConvertedBy(new Common.CompressionConverter())
+            .defaultsTo(Serialization.Compression.NONE);
+        OptionSpec<Void> compactOpt = parser.accepts("compact", "write result files without indentation");
+        OptionSpec<Void> binaryOpt = parser.accepts("binary", "write issues and attachments in binary format");
         OptionSet options = parser.parse(args);
         if (options.has(helpOption)) {
             parser.printHelpOn(System.out);
@@ -174,6 +228,9 @@ public final class AsanaExport {
 
         start(options.valueOf(workspaceOpt), options.valueOf(asanaProjectOpt), options.valueOf(youTrackAbbrevOpt),
             options.valueOf(userMappingOpt), options.valueOf(outputOpt), !options.has(noTimeEstimatesInBracketsOpt),
-            options.valueOf(startIdOpt), asanaAccessToken);
+            options.valueOf(startIdOpt), options.valueOf(parallelismOpt), options.has(checkpointOpt),
+            options.has(incrementalOpt), options.valueOf(maxDownloadsOpt), options.valueOf(maxDownloadsPerHostOpt),
+            options.has(deduplicateAttachmentsOpt), options.valueOf(compressionOpt), options.has(compactOpt),
+            options.has(binaryOpt), asanaAccessToken);
     }
 }
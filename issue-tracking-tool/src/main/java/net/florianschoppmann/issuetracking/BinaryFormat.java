@@ -0,0 +1,488 @@
+package net.florianschoppmann.issuetracking;
+
+import net.florianschoppmann.issuetracking.youtrack.Attachments.Attachment;
+import net.florianschoppmann.issuetracking.youtrack.Events.CustomFieldEvent;
+import net.florianschoppmann.issuetracking.youtrack.Events.Event;
+import net.florianschoppmann.issuetracking.youtrack.restold.Issues;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Binary format for result lists.
+ *
+ * <p>A file starts with the magic number {@link #MAGIC}, the format version, and the name of the root element of the
+ * equivalent XML file. It is followed by one record per list element. Each record consists of its length in bytes (as
+ * 32-bit integer) and the encoded element. The file ends with length -1, so that truncated files are detected. All
+ * numbers are big-endian. Strings are encoded as length in bytes followed by UTF-8 bytes; length -1 stands for null.
+ *
+ * <p>Files are read through memory-mapped windows, so reading a record does not involve a system call. The records are
+ * decoded one at a time, so the complete list is never held in memory.
+ */
+final class BinaryFormat {
+    private static final int MAGIC = 0x49545242; // "ITRB"
+    private static final int VERSION = 1;
+    private static final int END_OF_RECORDS = -1;
+    private static final int HEADER_BYTES_WITHOUT_NAME = 12;
+
+    /**
+     * Minimum size of a memory-mapped window. A window is larger if a record does not fit.
+     */
+    private static final long WINDOW_BYTES = 64L * 1024 * 1024;
+
+    private BinaryFormat() { }
+
+    /**
+     * Encoding of one kind of list element.
+     */
+    interface Codec<E> {
+        void write(E element, DataOutputStream output) throws IOException;
+
+        E read(RecordInput input) throws IOException;
+    }
+
+    static final Codec<Issues.Issue> ISSUE_CODEC = new Codec<>() {
+        @Override
+        public void write(Issues.Issue issue, DataOutputStream output) throws IOException {
+            output.writeInt(issue.getField().size());
+            for (Issues.Issue.Field field : issue.getField()) {
+                writeString(field.getName(), output);
+                output.writeInt(field.getValue().size());
+                for (String value : field.getValue()) {
+                    writeString(value, output);
+                }
+            }
+            output.writeInt(issue.getComment().size());
+            for (Issues.Issue.Comment comment : issue.getComment()) {
+                writeString(comment.getAuthor(), output);
+                writeString(comment.getText(), output);
+                writeString(comment.getMarkdown(), output);
+                writeString(comment.getCreated(), output);
+                writeString(comment.getUpdated(), output);
+            }
+        }
+
+        @Override
+        public Issues.Issue read(RecordInput input) throws IOException {
+            var issue = new Issues.Issue();
+            int numFields = input.readCount();
+            for (int i = 0; i < numFields; ++i) {
+                var field = new Issues.Issue.Field();
+                field.setName(input.readString());
+                int numValues = input.readCount();
+                for (int j = 0; j < numValues; ++j) {
+                    field.getValue().add(input.readString());
+                }
+                issue.getField().add(field);
+            }
+            int numComments = input.readCount();
+            for (int i = 0; i < numComments; ++i) {
+                var comment = new Issues.Issue.Comment();
+                comment.setAuthor(input.readString());
+                comment.setText(input.readString());
+                comment.setMarkdown(input.readString());
+                comment.setCreated(input.readString());
+                comment.setUpdated(input.readString());
+                issue.getComment().add(comment);
+            }
+            return issue;
+        }
+    };
+
+    static final Codec<Attachment> ATTACHMENT_CODEC = new Codec<>() {
+        @Override
+        public void write(Attachment attachment, DataOutputStream output) throws IOException {
+            writeInteger(attachment.taskNumberInProject, output);
+            writeString(attachment.authorLogin, output);
+            writeLong(attachment.created, output);
+            writeString(attachment.name, output);
+            writeString(attachment.path, output);
+            writeString(attachment.link, output);
+        }
+
+        @Override
+        public Attachment read(RecordInput input) throws IOException {
+            var attachment = new Attachment();
+            attachment.taskNumberInProject = input.readInteger();
+            attachment.authorLogin = input.readString();
+            attachment.created = input.readLong();
+            attachment.name = input.readString();
+            attachment.path = input.readString();
+            attachment.link = input.readString();
+            return attachment;
+        }
+    };
+
+    /**
+     * Codec for events. Each record starts with a byte that identifies the event type.
+     */
+    static final Codec<Event> EVENT_CODEC = new Codec<>() {
+        private static final byte CUSTOM_FIELD_EVENT = 1;
+
+        @Override
+        public void write(Event event, DataOutputStream output) throws IOException {
+            if (!(event instanceof CustomFieldEvent)) {
+                throw new IOException(String.format("Unsupported event type: %s", event.getClass().getName()));
+            }
+            var customFieldEvent = (CustomFieldEvent) event;
+            output.writeByte(CUSTOM_FIELD_EVENT);
+            writeLong(customFieldEvent.timestamp, output);
+            writeLong(customFieldEvent.numberInProject, output);
+            writeString(customFieldEvent.field, output);
+            writeString(customFieldEvent.author, output);
+            writeString(customFieldEvent.added, output);
+            writeString(customFieldEvent.removed, output);
+        }
+
+        @Override
+        public Event read(RecordInput input) throws IOException {
+            byte eventType = input.readByte();
+            if (eventType != CUSTOM_FIELD_EVENT) {
+                throw new IOException(String.format("Unknown event type %d.", eventType));
+            }
+            var customFieldEvent = new CustomFieldEvent();
+            customFieldEvent.timestamp = input.readLong();
+            customFieldEvent.numberInProject = input.readLong();
+            customFieldEvent.field = input.readString();
+            customFieldEvent.author = input.readString();
+            customFieldEvent.added = input.readString();
+            customFieldEvent.removed = input.readString();
+            return customFieldEvent;
+        }
+    };
+
+    private static void writeString(@Nullable String string, DataOutputStream output) throws IOException {
+        if (string == null) {
+            output.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    private static void writeInteger(@Nullable Integer value, DataOutputStream output) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeInt(value);
+        }
+    }
+
+    private static void writeLong(@Nullable Long value, DataOutputStream output) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeLong(value);
+        }
+    }
+
+    /**
+     * Decoder for a single record.
+     */
+    static final class RecordInput {
+        private ByteBuffer buffer;
+        private byte[] scratch = new byte[256];
+
+        private RecordInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            return buffer.get();
+        }
+
+        int readCount() throws IOException {
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining()) {
+                throw new IOException(String.format("Invalid element count %d.", count));
+            }
+            return count;
+        }
+
+        @Nullable String readString() throws IOException {
+            int length = buffer.getInt();
+            if (length == -1) {
+                return null;
+            } else if (length < 0 || length > buffer.remaining()) {
+                throw new IOException(String.format("Invalid string length %d.", length));
+            }
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, 2 * scratch.length)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        @Nullable Integer readInteger() {
+            return buffer.get() != 0
+                ? buffer.getInt()
+                : null;
+        }
+
+        @Nullable Long readLong() {
+            return buffer.get() != 0
+                ? buffer.getLong()
+                : null;
+        }
+    }
+
+    /**
+     * Writer for the records of a binary result file.
+     *
+     * <p>The file is complete only once {@link #finish()} has been called and this writer has been closed. If the
+     * writer is closed without calling {@link #finish()} (for instance, because obtaining the elements failed), the end
+     * marker is missing, so that readers reject the file as truncated.
+     */
+    static final class RecordWriter<E> implements Closeable {
+        private final Codec<E> codec;
+        private final DataOutputStream output;
+        private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        private final DataOutputStream recordOutput = new DataOutputStream(recordBytes);
+        private boolean finished;
+
+        private RecordWriter(Codec<E> codec, DataOutputStream output) {
+            this.codec = codec;
+            this.output = output;
+        }
+
+        void write(E element) throws IOException {
+            if (finished) {
+                throw new IllegalStateException("Cannot write records after finish().");
+            }
+            recordBytes.reset();
+            codec.write(element, recordOutput);
+            output.writeInt(recordBytes.size());
+            recordBytes.writeTo(output);
+        }
+
+        /**
+         * Writes the end marker, which marks the file as complete. Calling this method more than once has no effect.
+         */
+        void finish() throws IOException {
+            if (!finished) {
+                output.writeInt(END_OF_RECORDS);
+                finished = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+
+    /**
+     * Creates (or truncates) the given file and returns a writer for its records.
+     *
+     * @param path path of the file
+     * @param rootName name of the root element of the equivalent XML file
+     * @param codec codec for the list elements
+     */
+    static <E> RecordWriter<E> newRecordWriter(Path path, String rootName, Codec<E> codec) throws IOException {
+        OutputStream outputStream = Files.newOutputStream(path);
+        try {
+            var output = new DataOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            writeString(rootName, output);
+            return new RecordWriter<>(codec, output);
+        } catch (IOException exception) {
+            try {
+                outputStream.close();
+            } catch (IOException closeException) {
+                exception.addSuppressed(closeException);
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * Returns whether the given file starts with the magic number of the binary format.
+     */
+    static boolean isBinaryFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full or the end of the file is reached.
+            }
+            return !buffer.hasRemaining() && buffer.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Reader for the records of a binary result file.
+     *
+     * <p>Errors while reading records are reported as {@link UncheckedIOException}.
+     */
+    static final class RecordReader<E> extends Spliterators.AbstractSpliterator<E> implements Closeable {
+        private final Path path;
+        private final Codec<E> codec;
+        private final FileChannel channel;
+        private final long fileSize;
+        private final long windowBytes;
+        private final RecordInput recordInput = new RecordInput(ByteBuffer.allocate(0));
+        private MappedByteBuffer window;
+        private long windowPosition;
+        private boolean done;
+
+        private RecordReader(Path path, Codec<E> codec, FileChannel channel, long windowBytes) throws IOException {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.path = path;
+            this.codec = codec;
+            this.channel = channel;
+            fileSize = channel.size();
+            this.windowBytes = windowBytes;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, windowBytes));
+        }
+
+        /**
+         * Makes sure that the next {@code numBytes} bytes are in the current window, remapping if necessary.
+         */
+        private void ensureAvailable(int numBytes) throws IOException {
+            if (window.remaining() >= numBytes) {
+                return;
+            }
+            long position = windowPosition + window.position();
+            if (position + numBytes > fileSize) {
+                throw new IOException(String.format("Unexpected end of file %s.", path));
+            }
+            windowPosition = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(fileSize - position, Math.max(windowBytes, numBytes)));
+        }
+
+        private void readHeader(String expectedRootName) throws IOException {
+            ensureAvailable(HEADER_BYTES_WITHOUT_NAME);
+            int magic = window.getInt();
+            int version = window.getInt();
+            if (magic != MAGIC) {
+                throw new IOException(String.format("File %s is not in the binary result format.", path));
+            } else if (version != VERSION) {
+                throw new IOException(String.format(
+                    "File %s has binary format version %d, but only version %d is supported.", path, version, VERSION));
+            }
+            int nameLength = window.getInt();
+            if (nameLength < 0) {
+                throw new IOException(String.format("Invalid header in file %s.", path));
+            }
+            ensureAvailable(nameLength);
+            byte[] nameBytes = new byte[nameLength];
+            window.get(nameBytes);
+            String rootName = new String(nameBytes, StandardCharsets.UTF_8);
+            if (!expectedRootName.equals(rootName)) {
+                throw new IOException(String.format(
+                    "Expected records of <%s> in %s, but found <%s>.", expectedRootName, path, rootName));
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (done) {
+                return false;
+            }
+            try {
+                ensureAvailable(Integer.BYTES);
+                int length = window.getInt();
+                if (length == END_OF_RECORDS) {
+                    done = true;
+                    return false;
+                } else if (length < 0) {
+                    throw new IOException(String.format("Invalid record length %d in %s.", length, path));
+                }
+                ensureAvailable(length);
+                ByteBuffer record = window.slice();
+                record.limit(length);
+                window.position(window.position() + length);
+                recordInput.buffer = record;
+                E element = codec.read(recordInput);
+                if (record.hasRemaining()) {
+                    throw new IOException(String.format("Record in %s has %d unexpected trailing bytes.", path,
+                        record.remaining()));
+                }
+                action.accept(element);
+                return true;
+            } catch (BufferUnderflowException exception) {
+                throw new UncheckedIOException(new IOException(
+                    String.format("Record in %s is shorter than expected.", path), exception));
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Opens the given file and returns a reader for its records.
+     *
+     * @param path path of the file
+     * @param rootName expected name of the root element of the equivalent XML file
+     * @param codec codec for the list elements
+     */
+    static <E> RecordReader<E> newRecordReader(Path path, String rootName, Codec<E> codec) throws IOException {
+        return newRecordReader(path, rootName, codec, WINDOW_BYTES);
+    }
+
+    /**
+     * Opens the given file and returns a reader for its records, using memory-mapped windows of the given minimum size.
+     *
+     * @see #newRecordReader(Path, String, Codec)
+     */
+    static <E> RecordReader<E> newRecordReader(Path path, String rootName, Codec<E> codec, long windowBytes)
+            throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            var recordReader = new RecordReader<>(path, codec, channel, windowBytes);
+            recordReader.readHeader(rootName);
+            return recordReader;
+        } catch (IOException exception) {
+            try {
+                channel.close();
+            } catch (IOException closeException) {
+                exception.addSuppressed(closeException);
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * Opens the given file and returns a stream of its records.
+     *
+     * <p>The returned stream must be closed in order to close the file. Errors while reading records are reported as
+     * {@link UncheckedIOException}.
+     *
+     * @see #newRecordReader(Path, String, Codec)
+     */
+    static <E> Stream<E> streamRecords(Path path, String rootName, Codec<E> codec) throws IOException {
+        RecordReader<E> reader = newRecordReader(path, rootName, codec);
+        return StreamSupport.stream(reader, false)
+            .onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            });
+    }
+}
@@ -1,6 +1,25 @@
 package net.florianschoppmann.issuetracking;
 
+import static java.util.Collections.singletonMap;
+
+import joptsimple.util.EnumConverter;
+import net.florianschoppmann.issuetracking.youtrack.restold.ImportReport;
+import net.florianschoppmann.issuetracking.youtrack.restold.Issues;
+import org.eclipse.persistence.jaxb.MarshallerProperties;
+import org.eclipse.persistence.jaxb.UnmarshallerProperties;
+import org.glassfish.jersey.CommonProperties;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.logging.LoggingFeature;
+import org.glassfish.jersey.media.multipart.MultiPartFeature;
+import org.glassfish.jersey.moxy.json.MoxyJsonConfig;
+import org.glassfish.jersey.moxy.json.MoxyJsonFeature;
+import org.glassfish.jersey.moxy.xml.MoxyXmlFeature;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
 import java.net.URI;
+import java.util.logging.Level;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
 
 final class Common {
     private Common() { }
@@ -11,4 +30,38 @@ final class Common {
             : (string + '/')
         );
     }
+
+    /**
+     * Returns a new JAX-RS client for talking to YouTrack.
+     */
+    static Client newJaxrsClient() {
+        // We need to keep a reference to julLogger, because it could be garbage collected otherwise
+        // We want to make it possible to log JAX-RS traffic by setting the slf4j log level to debug or higher
+        var julLogger = java.util.logging.Logger.getLogger(LoggingFeature.class.getPackageName());
+        julLogger.setLevel(Level.ALL);
+        SLF4JBridgeHandler.install();
+
+        MoxyJsonConfig moxyJsonConfig = new MoxyJsonConfig()
+            .setIncludeRoot(false)
+            .setMarshallerProperties(singletonMap(MarshallerProperties.JSON_WRAPPER_AS_ARRAY_NAME, true))
+            .setUnmarshallerProperties(singletonMap(UnmarshallerProperties.JSON_WRAPPER_AS_ARRAY_NAME, true));
+        return ClientBuilder.newClient(
+            new ClientConfig()
+                .property(CommonProperties.FEATURE_AUTO_DISCOVERY_DISABLE, true)
+                .register(MultiPartFeature.class)
+                .register(new MoxyXmlFeature(
+                    Issues.class, net.florianschoppmann.issuetracking.youtrack.restold.List.class, ImportReport.class))
+                .register(MoxyJsonFeature.class)
+                .register(moxyJsonConfig.resolver())
+                .register(LoggingFeature.class)
+                .property(LoggingFeature.LOGGING_FEATURE_VERBOSITY_CLIENT, LoggingFeature.Verbosity.PAYLOAD_ANY)
+                .property(LoggingFeature.LOGGING_FEATURE_LOGGER_LEVEL_CLIENT, Level.FINE.getName())
+        );
+    }
+
+    static final class CompressionConverter extends EnumConverter<Serialization.Compression> {
+        CompressionConverter() {
+            super(Serialization.Compression.class);
+        }
+    }
 }
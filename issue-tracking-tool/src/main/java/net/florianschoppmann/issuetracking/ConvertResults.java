@@ -0,0 +1,90 @@
+package net.florianschoppmann.issuetracking;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import joptsimple.util.EnumConverter;
+import joptsimple.util.PathConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import javax.xml.bind.JAXBException;
+
+/**
+ * Converts result lists between XML and the {@link BinaryFormat binary format}, for instance in order to inspect a
+ * binary file.
+ */
+public final class ConvertResults {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Serialization serialization;
+    private final Target target;
+
+    private ConvertResults(Serialization serialization, Target target) {
+        this.serialization = serialization;
+        this.target = target;
+    }
+
+    enum Target {
+        XML,
+        BINARY
+    }
+
+    static final class TargetConverter extends EnumConverter<Target> {
+        TargetConverter() {
+            super(Target.class);
+        }
+    }
+
+    private <E> void convert(Serialization.ResultList<E> resultList) throws JAXBException {
+        boolean toBinary = target == Target.BINARY;
+        if (!serialization.hasResultFile(resultList, !toBinary)) {
+            return;
+        }
+
+        try (Stream<E> elements = toBinary
+                ? serialization.streamResultXml(resultList)
+                : serialization.streamResultBinary(resultList)) {
+            if (toBinary) {
+                serialization.writeResultBinary(resultList, elements::iterator);
+            } else {
+                serialization.writeResultXml(resultList, elements::iterator);
+            }
+        }
+        log.info("Converted {} to {}.", resultList.getName(), target);
+    }
+
+    private static void start(Path ioPath, Target target, Serialization.Compression compression, boolean compact)
+            throws JAXBException {
+        var convertResults
+            = new ConvertResults(Serialization.defaultSerialization(ioPath, compression, !compact), target);
+        for (Serialization.ResultList<?> resultList : Serialization.ResultList.BINARY_RESULT_LISTS) {
+            convertResults.convert(resultList);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, JAXBException {
+        OptionParser parser = new OptionParser();
+        OptionSpec<Void> helpOption = parser.accepts("help").forHelp();
+        OptionSpec<Path> ioOpt = parser.accepts("io", "path where to read input and write output")
+            .withRequiredArg().withValuesConvertedBy(new PathConverter()).required();
+        OptionSpec<Target> targetOpt = parser.accepts("to", "target format (xml or binary)")
+            .withRequiredArg().withValuesConvertedBy(new TargetConverter()).required();
+        OptionSpec<Serialization.Compression> compressionOpt = parser
+            .accepts("compression", "compression of written XML files (none, gzip, or zstd)")
+            .withRequiredArg().withValuesConvertedBy(new Common.CompressionConverter())
+            .defaultsTo(Serialization.Compression.NONE);
+        OptionSpec<Void> compactOpt = parser.accepts("compact", "write XML files without indentation");
+        OptionSet options = parser.parse(args);
+        if (options.has(helpOption)) {
+            parser.printHelpOn(System.out);
+            System.exit(0);
+            return;
+        }
+
+        start(options.valueOf(ioOpt), options.valueOf(targetOpt), options.valueOf(compressionOpt),
+            options.has(compactOpt));
+    }
+}
@@ -0,0 +1,213 @@
+package net.florianschoppmann.issuetracking;
+
+import net.florianschoppmann.issuetracking.youtrack.Events.CustomFieldEvent;
+import net.florianschoppmann.issuetracking.youtrack.Events.Event;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Sorts events by issue, custom field, and timestamp, spilling to disk if there are more events than fit in memory.
+ *
+ * <p>Events that are consecutive in this order are written to the same issue and custom-field entities of the YouTrack
+ * database, so importing them in this order makes the database writes more local than importing them in file order.
+ *
+ * <p>The events are read once. They are sorted in runs of at most {@link Options#maxEventsInMemory} events, and each
+ * run is written to a temporary file in the {@link BinaryFormat binary format}. The runs are finally merged into the
+ * target file. If all events fit into a single run, they are written to the target file directly. The sort is stable,
+ * so that sorting the same events always yields the same order. This is required in order to resume an interrupted
+ * chunked import.
+ */
+final class EventSorter {
+    /**
+     * Order of events imported by {@link EventSorter}.
+     *
+     * <p>Events without issue number, field, or timestamp come first within their group. Events that are not
+     * {@link CustomFieldEvent} instances are treated as if they had neither issue number nor field.
+     */
+    static final Comparator<Event> EVENT_ORDER = Comparator
+        .comparing(EventSorter::numberInProject, Comparator.nullsFirst(Comparator.<Long>naturalOrder()))
+        .thenComparing(EventSorter::field, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+        .thenComparing(event -> event.timestamp, Comparator.nullsFirst(Comparator.<Long>naturalOrder()));
+
+    private static final String ROOT_NAME = Serialization.ResultList.EVENTS.getRootName();
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Path temporaryDirectory;
+    private final Options options;
+
+    /**
+     * Constructor.
+     *
+     * @param temporaryDirectory directory where the sorted runs are stored temporarily
+     * @param options options
+     */
+    EventSorter(Path temporaryDirectory, Options options) {
+        this.temporaryDirectory = temporaryDirectory;
+        this.options = options;
+    }
+
+    private static @Nullable Long numberInProject(Event event) {
+        return event instanceof CustomFieldEvent
+            ? ((CustomFieldEvent) event).numberInProject
+            : null;
+    }
+
+    private static @Nullable String field(Event event) {
+        return event instanceof CustomFieldEvent
+            ? ((CustomFieldEvent) event).field
+            : null;
+    }
+
+    private static void writeEvents(Path path, Iterable<? extends Event> events) throws IOException {
+        try (BinaryFormat.RecordWriter<Event> writer
+                = BinaryFormat.newRecordWriter(path, ROOT_NAME, BinaryFormat.EVENT_CODEC)) {
+            for (Event event : events) {
+                writer.write(event);
+            }
+            writer.finish();
+        }
+    }
+
+    /**
+     * Reads the given events and writes them, in {@link #EVENT_ORDER}, to the given file in the
+     * {@link BinaryFormat binary format}.
+     *
+     * @param events events in file order
+     * @param target path of the file that will contain the sorted events; an existing file is replaced
+     * @return number of events written
+     * @throws IOException if an I/O error occurs
+     */
+    long sort(Iterator<? extends Event> events, Path target) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        try {
+            List<Event> run = new ArrayList<>();
+            long numEvents = 0;
+            while (events.hasNext()) {
+                run.add(events.next());
+                ++numEvents;
+                if (run.size() >= options.maxEventsInMemory && events.hasNext()) {
+                    Path runPath = Files.createTempFile(temporaryDirectory, "events-", ".bin");
+                    runs.add(runPath);
+                    run.sort(EVENT_ORDER);
+                    writeEvents(runPath, run);
+                    run.clear();
+                }
+            }
+            run.sort(EVENT_ORDER);
+            if (runs.isEmpty()) {
+                writeEvents(target, run);
+            } else {
+                Path runPath = Files.createTempFile(temporaryDirectory, "events-", ".bin");
+                runs.add(runPath);
+                writeEvents(runPath, run);
+                run.clear();
+                log.info("Merging {} sorted runs of {} events.", runs.size(), numEvents);
+                merge(runs, target);
+            }
+            return numEvents;
+        } finally {
+            for (Path runPath : runs) {
+                Files.deleteIfExists(runPath);
+            }
+        }
+    }
+
+    private static void merge(List<Path> runs, Path target) throws IOException {
+        List<Stream<Event>> streams = new ArrayList<>(runs.size());
+        try {
+            PriorityQueue<RunHead> heads = new PriorityQueue<>(runs.size());
+            for (Path runPath : runs) {
+                Stream<Event> stream = BinaryFormat.streamRecords(runPath, ROOT_NAME, BinaryFormat.EVENT_CODEC);
+                streams.add(stream);
+                Iterator<Event> iterator = stream.iterator();
+                if (iterator.hasNext()) {
+                    heads.add(new RunHead(streams.size() - 1, iterator, iterator.next()));
+                }
+            }
+
+            try (BinaryFormat.RecordWriter<Event> writer
+                    = BinaryFormat.newRecordWriter(target, ROOT_NAME, BinaryFormat.EVENT_CODEC)) {
+                @Nullable RunHead head;
+                while ((head = heads.poll()) != null) {
+                    writer.write(head.event);
+                    if (head.advance()) {
+                        heads.add(head);
+                    }
+                }
+                writer.finish();
+            }
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        } finally {
+            for (Stream<Event> stream : streams) {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Next event of a sorted run.
+     *
+     * <p>Events that compare equal are ordered by the index of their run, which keeps the merge stable.
+     */
+    private static final class RunHead implements Comparable<RunHead> {
+        private final int runIndex;
+        private final Iterator<Event> iterator;
+        private Event event;
+
+        private RunHead(int runIndex, Iterator<Event> iterator, Event event) {
+            this.runIndex = runIndex;
+            this.iterator = iterator;
+            this.event = event;
+        }
+
+        private boolean advance() {
+            if (iterator.hasNext()) {
+                event = iterator.next();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int compareTo(RunHead other) {
+            int result = EVENT_ORDER.compare(event, other.event);
+            return result != 0
+                ? result
+                : Integer.compare(runIndex, other.runIndex);
+        }
+    }
+
+    /**
+     * Options for the event sorter.
+     */
+    static final class Options {
+        private final int maxEventsInMemory;
+
+        /**
+         * Constructor.
+         *
+         * @param maxEventsInMemory maximum number of events held in memory; more events are sorted in runs that are
+         *     stored in temporary files and merged afterwards
+         * @throws IllegalArgumentException if {@code maxEventsInMemory} is less than 1
+         */
+        Options(int maxEventsInMemory) {
+            if (maxEventsInMemory < 1) {
+                throw new IllegalArgumentException("maxEventsInMemory must be positive.");
+            }
+            this.maxEventsInMemory = maxEventsInMemory;
+        }
+    }
+}
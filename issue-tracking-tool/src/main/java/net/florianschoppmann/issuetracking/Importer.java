@@ -0,0 +1,456 @@
+package net.florianschoppmann.issuetracking;
+
+import static net.florianschoppmann.issuetracking.util.StringNode.node;
+import static net.florianschoppmann.issuetracking.util.StringNode.nodeOfStrings;
+import static net.florianschoppmann.issuetracking.util.StringNode.rootOfNodes;
+import static net.florianschoppmann.issuetracking.util.StringNode.rootOfStrings;
+
+import net.florianschoppmann.issuetracking.util.StringNode;
+import net.florianschoppmann.issuetracking.youtrack.Attachments.Attachment;
+import net.florianschoppmann.issuetracking.youtrack.CommentUpdates.CommentUpdate;
+import net.florianschoppmann.issuetracking.youtrack.IssueUpdates;
+import net.florianschoppmann.issuetracking.youtrack.IssueUpdates.IssueUpdate;
+import net.florianschoppmann.issuetracking.youtrack.YouTrackClient;
+import net.florianschoppmann.issuetracking.youtrack.rest.Issue;
+import net.florianschoppmann.issuetracking.youtrack.rest.IssueComment;
+import net.florianschoppmann.issuetracking.youtrack.rest.IssueTag;
+import net.florianschoppmann.issuetracking.youtrack.rest.UserGroup;
+import net.florianschoppmann.issuetracking.youtrack.restold.Error;
+import net.florianschoppmann.issuetracking.youtrack.restold.ImportReport;
+import net.florianschoppmann.issuetracking.youtrack.restold.ImportReport.Item;
+import net.florianschoppmann.issuetracking.youtrack.restold.Issues;
+import net.florianschoppmann.issuetracking.youtrack.restold.Search;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Imports converted issues, links, attachments, and updates into a YouTrack project.
+ *
+ * <p>This class contains the import steps shared by {@link YouTrackImport}, which reads its input from result files,
+ * and {@link Pipeline}, which receives its input directly from the conversion.
+ */
+final class Importer {
+    private static final StringNode REQUESTED_FIELDS_FOR_UPDATES = rootOfStrings("id");
+    private static final StringNode REQUESTED_FIELDS_FOR_ISSUES = rootOfStrings("id", "description", "tags");
+    private static final StringNode REQUESTED_FIELDS_FOR_COMMENTS
+        = rootOfNodes(node("id"), nodeOfStrings("comments", "id", "text"));
+
+    /**
+     * Maximum number of updates that are sent concurrently before they are verified.
+     */
+    private static final int UPDATE_CHUNK_SIZE = 500;
+
+    /**
+     * Number of issues read back per request when verifying updates.
+     *
+     * <p>{@link YouTrackClient#getIssuesByKey} sends exactly one request for up to this many keys, so each call
+     * acquires exactly one permit of the rate limit of the {@link UpdateExecutor}.
+     */
+    private static final int VERIFIED_ISSUES_PER_REQUEST = YouTrackClient.MAX_ISSUE_KEYS_PER_REQUEST;
+
+    static final String UPLOADED_ATTACHMENTS_FILE_NAME = "UploadedAttachments.txt";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final YouTrackClient youTrackClient;
+    private final String projectAbbrev;
+    private final Path attachmentBasePath;
+    private final boolean dryRun;
+    private final UpdateExecutor.Options updateOptions;
+
+    Importer(YouTrackClient youTrackClient, String projectAbbrev, Path attachmentBasePath, boolean dryRun,
+            UpdateExecutor.Options updateOptions) {
+        this.youTrackClient = youTrackClient;
+        this.projectAbbrev = projectAbbrev;
+        this.attachmentBasePath = attachmentBasePath;
+        this.dryRun = dryRun;
+        this.updateOptions = updateOptions;
+    }
+
+    /**
+     * Returns whether all items of the given report have been imported (or, for an update report, verified).
+     */
+    static boolean isSuccessful(ImportReport importReport) {
+        return importReport.getItem().stream().allMatch(Item::isImported);
+    }
+
+    private static void ensureSuccessful(String kind, ImportReport importReport) {
+        if (!isSuccessful(importReport)) {
+            throw new ImportException(kind, importReport);
+        }
+    }
+
+    private void addMissingTags(IssueUpdates issueUpdates) {
+        // Gather all YouTrack tags that are available to us (the current user).
+        SortedMap<String, IssueTag> availableTags = youTrackClient.getAllAvailableTags();
+
+        // Gather all tags that are missing and need to be created
+        SortedSet<String> requiredTags = issueUpdates.issueUpdates.stream()
+            .map(issueUpdate -> issueUpdate.issue)
+            .filter(Objects::nonNull)
+            .map(issue -> issue.tags)
+            .filter(Objects::nonNull)
+            .flatMap(tags -> tags.stream().map(tag -> tag.name))
+            .collect(Collectors.toCollection(TreeSet::new));
+        requiredTags.removeAll(availableTags.keySet());
+
+        // Finally, create the tags. The YouTrackClient needs the project team name, so we need to obtain that, too.
+        StringNode fields = rootOfNodes(node("name"), nodeOfStrings("teamForProject", "shortName"));
+        List<UserGroup> userGroups = youTrackClient.getUserGroups(fields);
+        Optional<UserGroup> projectTeam = userGroups.stream()
+            .filter(userGroup -> userGroup.teamForProject != null)
+            .filter(userGroup -> projectAbbrev.equals(userGroup.teamForProject.shortName))
+            .findAny();
+        if (projectTeam.isEmpty()) {
+            throw new IllegalStateException(String.format("Could not find team for project %s.", projectAbbrev));
+        }
+        String projectTeamName = projectTeam.get().name;
+        for (String requiredTag : requiredTags) {
+            Search tag = new Search();
+            tag.name = requiredTag;
+            tag.visibleForGroup = projectTeamName;
+            tag.updatableByGroup = projectTeamName;
+            Error error = youTrackClient.addTag(tag);
+            if (error.value != null) {
+                throw new IllegalStateException(
+                    String.format("Could not add tag '%s'. YouTrack reported: %s", requiredTag, error.value));
+            }
+        }
+    }
+
+    /**
+     * Creates the tags required by the given issue updates (if any), and returns all tags available afterwards.
+     */
+    SortedMap<String, IssueTag> prepareTags(@Nullable IssueUpdates issueUpdates) {
+        // Note that addMissingTags() also calls youTrackClient.getAllAvailableTags() initially. However, we need to
+        // call again in order to retrieve the meta data of the tags created in addMissingTags().
+        if (issueUpdates != null) {
+            addMissingTags(issueUpdates);
+        }
+        return youTrackClient.getAllAvailableTags();
+    }
+
+    /**
+     * Imports the given issues.
+     *
+     * @throws ImportException if not all issues could be imported
+     */
+    void importIssues(Iterator<Issues.Issue> issues) {
+        ensureSuccessful("issues", youTrackClient.importIssues(issues, projectAbbrev, dryRun));
+    }
+
+    /**
+     * Imports the given links.
+     *
+     * @throws ImportException if not all links could be imported
+     */
+    void importLinks(net.florianschoppmann.issuetracking.youtrack.restold.List links) {
+        ensureSuccessful("links", youTrackClient.importLinks(links, dryRun));
+    }
+
+    /**
+     * Imports the given attachments, whose paths are relative to the attachment base path.
+     *
+     * <p>Uploaded attachments are recorded in file {@value #UPLOADED_ATTACHMENTS_FILE_NAME} in the attachment base
+     * path. Attachments recorded by a previous run are skipped, so that a failed or interrupted import can be resumed.
+     *
+     * @throws ImportException if not all attachments could be imported
+     * @throws IOException if reading or writing the record of uploaded attachments fails
+     */
+    void importAttachments(List<Attachment> attachments) throws IOException {
+        try (UploadedAttachments uploaded = UploadedAttachments.read(
+                attachmentBasePath.resolve(UPLOADED_ATTACHMENTS_FILE_NAME), projectAbbrev)) {
+            List<Attachment> remaining = attachments.stream()
+                .filter(attachment -> !uploaded.contains(attachment))
+                .collect(Collectors.toList());
+            if (remaining.size() < attachments.size()) {
+                log.info("Skipping {} attachments that were uploaded by a previous run.",
+                    attachments.size() - remaining.size());
+            }
+            Consumer<Attachment> importedAttachmentConsumer = dryRun
+                ? attachment -> { }
+                : attachment -> {
+                    try {
+                        uploaded.add(attachment);
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                };
+            ensureSuccessful("attachment", youTrackClient.importAttachments(
+                remaining, projectAbbrev, attachmentBasePath, dryRun, importedAttachmentConsumer));
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+    }
+
+    /**
+     * Passes the given items to the given function in chunks of at most {@link #UPDATE_CHUNK_SIZE} items, until the
+     * function returns false.
+     *
+     * <p>A chunk is ended early if an item has the same key as an item already in the chunk, so that updates of the
+     * same entity are applied in order. A chunk is also ended once it contains {@code maxCriticalItems} critical
+     * items, so that only few critical items are sent after a critical item whose failure ends the import.
+     *
+     * @param critical predicate that returns whether an item is critical
+     * @param maxCriticalItems maximum number of critical items in a chunk
+     * @return whether the function returned true for all chunks
+     */
+    static <T> boolean forEachChunk(List<T> items, Function<T, ?> key, Predicate<T> critical, int maxCriticalItems,
+            Predicate<List<T>> chunkFunction) {
+        List<T> chunk = new ArrayList<>(UPDATE_CHUNK_SIZE);
+        Set<Object> keysInChunk = new HashSet<>();
+        int criticalItemsInChunk = 0;
+        for (T item : items) {
+            if (chunk.size() == UPDATE_CHUNK_SIZE || criticalItemsInChunk == maxCriticalItems
+                    || keysInChunk.contains(key.apply(item))) {
+                if (!chunkFunction.test(chunk)) {
+                    return false;
+                }
+                chunk.clear();
+                keysInChunk.clear();
+                criticalItemsInChunk = 0;
+            }
+            chunk.add(item);
+            keysInChunk.add(key.apply(item));
+            if (critical.test(item)) {
+                ++criticalItemsInChunk;
+            }
+        }
+        return chunk.isEmpty() || chunkFunction.test(chunk);
+    }
+
+    /**
+     * Returns the issues with the given keys, mapped by (database) ID. Issues that do not exist are missing from the
+     * map.
+     *
+     * <p>The issues are mapped by ID rather than by key, because an issue that has been moved to another project has a
+     * new key. It is still found by its previous key, but returned with the new one.
+     */
+    private Map<String, Issue> getIssuesByKey(UpdateExecutor executor, Collection<String> issueKeys,
+            StringNode fields) {
+        List<String> issueKeyList = new ArrayList<>(issueKeys);
+        List<List<String>> requests = new ArrayList<>();
+        for (int start = 0; start < issueKeyList.size(); start += VERIFIED_ISSUES_PER_REQUEST) {
+            requests.add(
+                issueKeyList.subList(start, Math.min(issueKeyList.size(), start + VERIFIED_ISSUES_PER_REQUEST)));
+        }
+        Map<String, Issue> issues = new HashMap<>();
+        for (List<Issue> issueList : executor.map(requests, keys -> youTrackClient.getIssuesByKey(keys, fields))) {
+            for (Issue issue : issueList) {
+                issues.put(issue.id, issue);
+            }
+        }
+        return issues;
+    }
+
+    private static Item reportItem(String id, List<String> failedFields) {
+        var item = new Item();
+        item.setId(id);
+        for (String fieldName : failedFields) {
+            var error = new Item.Error();
+            error.setFieldName(fieldName);
+            error.setValue("Value differs from update.");
+            item.getError().add(error);
+        }
+        item.setImported(failedFields.isEmpty());
+        return item;
+    }
+
+    private void logThroughput(String kind, int numUpdates, long startNanos) {
+        long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+        log.info("Updated {} {} in {} ms, that is, {} updates/s.", numUpdates, kind,
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+            (long) (numUpdates * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos));
+    }
+
+    private boolean updateIssueChunk(UpdateExecutor executor, List<IssueUpdate> chunk,
+            SortedMap<String, IssueTag> availableTags, ImportReport updateReport) {
+        for (IssueUpdate issueUpdate : chunk) {
+            // Fill in the tag IDs. They were obviously not known before.
+            List<IssueTag> tags = Objects.requireNonNullElse(issueUpdate.issue.tags, Collections.emptyList());
+            for (IssueTag tag : tags) {
+                tag.id = availableTags.get(tag.name).id;
+            }
+        }
+        List<Issue> updateResults = executor.map(chunk, issueUpdate -> youTrackClient.updateIssue(
+            issueUpdate.issueKey, issueUpdate.issue, REQUESTED_FIELDS_FOR_UPDATES));
+
+        Map<String, Issue> updatedIssues = getIssuesByKey(executor,
+            chunk.stream().map(issueUpdate -> issueUpdate.issueKey).collect(Collectors.toList()),
+            REQUESTED_FIELDS_FOR_ISSUES);
+        boolean tagsUpdated = true;
+        for (int i = 0; i < chunk.size(); ++i) {
+            IssueUpdate issueUpdate = chunk.get(i);
+            Issue issue = issueUpdate.issue;
+            @Nullable String issueId = updateResults.get(i).id;
+            @Nullable Issue updatedIssue = issueId == null
+                ? null
+                : updatedIssues.get(issueId);
+            List<String> failedFields = new ArrayList<>();
+            if (updatedIssue == null) {
+                log.error("Failed to verify update of issue {}, because it was not found.", issueUpdate.issueKey);
+                failedFields.add("idReadable");
+            } else {
+                if (issue.tags != null
+                        && (updatedIssue.tags == null || updatedIssue.tags.size() != issue.tags.size())) {
+                    log.error("Failed to update tags for issue {}.", issueUpdate.issueKey);
+                    failedFields.add("tags");
+                    tagsUpdated = false;
+                }
+                if (issue.description != null
+                        && (updatedIssue.description == null || !updatedIssue.description.equals(issue.description))) {
+                    log.error("Failed to update description for issue {}. Expected:\n{}\n\nActual:\n{}.",
+                        issueUpdate.issueKey, issue.description, updatedIssue.description);
+                    failedFields.add("description");
+                }
+            }
+            updateReport.getItem().add(reportItem(issueUpdate.issueKey, failedFields));
+        }
+        return tagsUpdated;
+    }
+
+    /**
+     * Applies the given issue updates.
+     *
+     * <p>The updates are sent concurrently, in chunks of at most {@link #UPDATE_CHUNK_SIZE} updates. Once all updates
+     * of a chunk have been applied, the updated issues are read back in batches and compared with the updates. The
+     * results are added to the given report, with one item per update (identified by issue key) that is imported if
+     * and only if the update could be verified.
+     *
+     * <p>A failed tag update ends the import. So that only few updates are sent after it, a chunk contains at most as
+     * many updates with tags as there are workers.
+     *
+     * @param availableTags the tags returned by {@link #prepareTags(IssueUpdates)}
+     * @param updateReport the report that the verification results are added to
+     * @return whether all tag updates succeeded; if not, the updates after the chunk containing the first failed tag
+     *     update have not been sent
+     */
+    boolean updateIssues(Iterable<IssueUpdate> issueUpdates, SortedMap<String, IssueTag> availableTags,
+            ImportReport updateReport) {
+        long startNanos = System.nanoTime();
+        int numUpdates = updateReport.getItem().size();
+        boolean tagsUpdated;
+        try (UpdateExecutor executor = new UpdateExecutor(updateOptions)) {
+            tagsUpdated = forEachChunk(
+                StreamSupport.stream(issueUpdates.spliterator(), false)
+                    .filter(issueUpdate -> issueUpdate.issueKey != null && issueUpdate.issue != null)
+                    .collect(Collectors.toList()),
+                issueUpdate -> issueUpdate.issueKey,
+                issueUpdate -> issueUpdate.issue.tags != null,
+                updateOptions.getWorkers(),
+                chunk -> updateIssueChunk(executor, chunk, availableTags, updateReport)
+            );
+        }
+        logThroughput("issues", updateReport.getItem().size() - numUpdates, startNanos);
+        return tagsUpdated;
+    }
+
+    private void updateCommentChunk(UpdateExecutor executor, List<CommentUpdate> chunk, ImportReport updateReport) {
+        executor.map(chunk, commentUpdate -> youTrackClient.updateIssueComment(
+            commentUpdate.issueKey, commentUpdate.commentId, commentUpdate.issueComment, REQUESTED_FIELDS_FOR_UPDATES));
+
+        // Comment IDs are unique across issues, so the comments need not be matched with the (possibly moved) issues.
+        Map<String, IssueComment> updatedComments = getIssuesByKey(executor,
+            chunk.stream().map(commentUpdate -> commentUpdate.issueKey).collect(Collectors.toCollection(TreeSet::new)),
+            REQUESTED_FIELDS_FOR_COMMENTS)
+            .values().stream()
+            .filter(issue -> issue.comments != null)
+            .flatMap(issue -> issue.comments.stream())
+            .collect(Collectors.toMap(comment -> comment.id, Function.identity()));
+        for (CommentUpdate commentUpdate : chunk) {
+            IssueComment issueComment = commentUpdate.issueComment;
+            Optional<IssueComment> updatedComment = Optional.ofNullable(updatedComments.get(commentUpdate.commentId));
+            List<String> failedFields = new ArrayList<>();
+            if (updatedComment.isEmpty()) {
+                log.error("Failed to verify update of comment {} / {}, because it was not found.",
+                    commentUpdate.issueKey, commentUpdate.commentId);
+                failedFields.add("id");
+            } else if (issueComment.text != null && (updatedComment.get().text == null
+                    || !updatedComment.get().text.equals(issueComment.text))) {
+                log.error("Failed to update text for comment {} / {}. Expected:\n{}\n\nActual:\n{}.",
+                    commentUpdate.issueKey, commentUpdate.commentId, issueComment.text, updatedComment.get().text);
+                failedFields.add("text");
+            }
+            updateReport.getItem().add(
+                reportItem(commentUpdate.issueKey + '/' + commentUpdate.commentId, failedFields));
+        }
+    }
+
+    /**
+     * Applies the given comment updates.
+     *
+     * <p>The updates are sent and verified like issue updates (see
+     * {@link #updateIssues(Iterable, SortedMap, ImportReport)}). The comments of a chunk are read back with the issues
+     * they belong to. The report items are identified by issue key and comment ID, separated by a slash.
+     *
+     * @param updateReport the report that the verification results are added to
+     */
+    void updateComments(Iterable<CommentUpdate> commentUpdates, ImportReport updateReport) {
+        long startNanos = System.nanoTime();
+        int numUpdates = updateReport.getItem().size();
+        try (UpdateExecutor executor = new UpdateExecutor(updateOptions)) {
+            forEachChunk(
+                StreamSupport.stream(commentUpdates.spliterator(), false)
+                    .filter(commentUpdate -> commentUpdate.issueKey != null && commentUpdate.commentId != null
+                        && commentUpdate.issueComment != null)
+                    .collect(Collectors.toList()),
+                commentUpdate -> List.of(commentUpdate.issueKey, commentUpdate.commentId),
+                commentUpdate -> false,
+                1,
+                chunk -> {
+                    updateCommentChunk(executor, chunk, updateReport);
+                    return true;
+                }
+            );
+        }
+        logThroughput("comments", updateReport.getItem().size() - numUpdates, startNanos);
+    }
+
+    /**
+     * Signals that YouTrack did not import all items of a batch.
+     */
+    static final class ImportException extends RuntimeException {
+        private static final long serialVersionUID = 4848411093498437136L;
+
+        private final ImportReport importReport;
+
+        private ImportException(String kind, ImportReport importReport) {
+            super(String.format("Failed to import %s.", kind));
+            this.importReport = importReport;
+        }
+
+        ImportReport getImportReport() {
+            return importReport;
+        }
+
+        private void writeObject(ObjectOutputStream stream) throws IOException {
+            throw new NotSerializableException(getClass().getName());
+        }
+    }
+}
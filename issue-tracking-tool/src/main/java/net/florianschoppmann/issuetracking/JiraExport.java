@@ -47,7 +47,7 @@ public final class JiraExport {
     private void run() throws JAXBException {
         JiraToYouTrack.Result result = jiraToYouTrack.youTrackFromJiraProject(projectAbbrev);
         serialization.writeResultXml(result.getLinks());
-        serialization.writeResultXml(result.getIssueUpdates());
+        serialization.writeResultXml(Serialization.ResultList.ISSUE_UPDATES, result.getIssueUpdates().issueUpdates);
         serialization.writeResultXml(result.getCommentUpdates());
         serialization.writeResultXml(result.getConversionWarnings());
 
@@ -60,7 +60,9 @@ public final class JiraExport {
     }
 
     private static void start(URI jiraBaseUri, URI youTrackBaseUri, Path filesBasePath, String projectAbbrev,
-            String jiraUsername, String jiraPassword, String youTrackAccessToken) throws IOException, JAXBException {
+            String jiraUsername, String jiraPassword, String youTrackAccessToken, int maxPagesInFlight,
+            int maxJiraRequestsInFlight, int jiraSearchPageSize, Serialization.Compression compression,
+            boolean compact) throws IOException, JAXBException {
         // We need to keep a reference to julLogger, because it could be garbage collected otherwise
         // We want to make it possible to log JAX-RS traffic by setting the slf4j log level to debug or higher
         var julLogger = java.util.logging.Logger.getLogger(LoggingFeature.class.getPackageName());
@@ -80,13 +82,14 @@ public final class JiraExport {
                 .property(LoggingFeature.LOGGING_FEATURE_VERBOSITY_CLIENT, LoggingFeature.Verbosity.PAYLOAD_ANY)
                 .property(LoggingFeature.LOGGING_FEATURE_LOGGER_LEVEL_CLIENT, Level.FINE.getName())
         );
-        Serialization serialization = Serialization.defaultSerialization(filesBasePath);
+        Serialization serialization = Serialization.defaultSerialization(filesBasePath, compression, !compact);
         JiraRestClientFactory clientFactory = new AsynchronousJiraRestClientFactory();
         try (JiraRestClient jiraRestClient
                 = clientFactory.createWithBasicHttpAuthentication(jiraBaseUri, jiraUsername, jiraPassword)) {
-            JiraClient jiraClient
-                = new JiraClient(jiraRestClient, jaxrsClient, jiraBaseUri, jiraUsername, jiraPassword);
-            YouTrackClient youTrackClient = new YouTrackClient(jaxrsClient, youTrackBaseUri, youTrackAccessToken);
+            JiraClient jiraClient = new JiraClient(jiraRestClient, jaxrsClient, jiraBaseUri, jiraUsername, jiraPassword,
+                new JiraClient.Options(maxJiraRequestsInFlight, jiraSearchPageSize));
+            YouTrackClient youTrackClient = new YouTrackClient(jaxrsClient, youTrackBaseUri, youTrackAccessToken,
+                new YouTrackClient.Options(maxPagesInFlight));
             var jiraToYouTrack = new JiraToYouTrack(youTrackClient, jiraClient, jiraRestClient);
 
             var jiraExport = new JiraExport(jiraToYouTrack, serialization, projectAbbrev);
@@ -112,6 +115,21 @@ public final class JiraExport {
             .withRequiredArg().required();
         OptionSpec<Path> outputOpt = parser.accepts("output", "path where to store output")
             .withRequiredArg().withValuesConvertedBy(new PathConverter()).required();
+        OptionSpec<Integer> maxPagesInFlightOpt = parser
+            .accepts("max-pages-in-flight", "maximum number of pages requested concurrently from YouTrack")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(4);
+        OptionSpec<Integer> maxJiraRequestsInFlightOpt = parser
+            .accepts("max-jira-requests-in-flight",
+                "maximum number of search-page or per-issue requests sent to Jira concurrently")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(4);
+        OptionSpec<Integer> jiraSearchPageSizeOpt = parser
+            .accepts("jira-search-page-size", "number of issues requested per Jira search page")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(50);
+        OptionSpec<Serialization.Compression> compressionOpt = parser
+            .accepts("compression", "compression of the result files (none, gzip, or zstd)")
+            .withRequiredArg().withValuesConvertedBy(new Common.CompressionConverter())
+            .defaultsTo(Serialization.Compression.NONE);
+        OptionSpec<Void> compactOpt = parser.accepts("compact", "write result files without indentation");
         OptionSet options = parser.parse(args);
         if (options.has(helpOption)) {
             parser.printHelpOn(System.out);
@@ -131,6 +149,8 @@ public final class JiraExport {
 
         start(Common.uriFromString(options.valueOf(jiraInstanceUrlOpt)),
             Common.uriFromString(options.valueOf(youTrackInstanceUrlOpt)), options.valueOf(outputOpt),
-            options.valueOf(youTrackAbbrevOpt), jiraUsername, jiraPassword, youTrackAccessToken);
+            options.valueOf(youTrackAbbrevOpt), jiraUsername, jiraPassword, youTrackAccessToken,
+            options.valueOf(maxPagesInFlightOpt), options.valueOf(maxJiraRequestsInFlightOpt),
+            options.valueOf(jiraSearchPageSizeOpt), options.valueOf(compressionOpt), options.has(compactOpt));
     }
 }
@@ -4,30 +4,77 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 import joptsimple.util.PathConverter;
-import net.florianschoppmann.issuetracking.youtrack.Events;
+import net.florianschoppmann.issuetracking.youtrack.Events.Event;
 import net.florianschoppmann.issuetracking.youtrack.YouTrackDatabaseClient;
 import net.florianschoppmann.issuetracking.youtrack.YouTrackDatabaseClientException;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.stream.Stream;
+import javax.xml.bind.DataBindingException;
 import javax.xml.bind.JAXBException;
 
 public final class LowLevelYouTrackImport {
+    private static final String SORTED_EVENTS_FILE_NAME = "Events.sorted.bin";
+
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final Serialization serialization;
     private final YouTrackDatabaseClient youTrackDatabaseClient;
+    private final Path ioPath;
+    private final @Nullable EventSorter eventSorter;
     private final boolean dryRun;
+    private final boolean chunked;
 
     private LowLevelYouTrackImport(Serialization serialization, YouTrackDatabaseClient youTrackDatabaseClient,
-            boolean dryRun) {
+            Path ioPath, @Nullable EventSorter eventSorter, boolean dryRun, boolean chunked) {
         this.serialization = serialization;
         this.youTrackDatabaseClient = youTrackDatabaseClient;
+        this.ioPath = ioPath;
+        this.eventSorter = eventSorter;
         this.dryRun = dryRun;
+        this.chunked = chunked;
+    }
+
+    private void importEvents(String projectAbbrev) throws YouTrackDatabaseClientException {
+        // Events are read one at a time (from the binary or the XML file), once for validation and once while they
+        // are imported.
+        youTrackDatabaseClient.validateAndImportEvents(() -> {
+            try {
+                return serialization.streamResultList(Serialization.ResultList.EVENTS);
+            } catch (JAXBException exception) {
+                throw new DataBindingException(exception);
+            }
+        }, projectAbbrev);
+    }
+
+    private void sortAndImportEvents(EventSorter sorter, String projectAbbrev)
+            throws IOException, JAXBException, YouTrackDatabaseClientException {
+        // The events are sorted into a temporary binary file first, which is then read for validation and import.
+        Path sortedEventsPath = ioPath.resolve(SORTED_EVENTS_FILE_NAME);
+        try {
+            try (Stream<Event> events = serialization.streamResultList(Serialization.ResultList.EVENTS)) {
+                long numEvents = sorter.sort(events.iterator(), sortedEventsPath);
+                log.info("Sorted {} events by issue, custom field, and timestamp.", numEvents);
+            }
+            youTrackDatabaseClient.validateAndImportEvents(() -> {
+                try {
+                    return BinaryFormat.streamRecords(sortedEventsPath,
+                        Serialization.ResultList.EVENTS.getRootName(), BinaryFormat.EVENT_CODEC);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            }, projectAbbrev);
+        } finally {
+            Files.deleteIfExists(sortedEventsPath);
+        }
     }
 
-    private void run() throws JAXBException {
+    private void run() throws IOException, JAXBException {
         if (dryRun) {
             log.info("Dry run. Import will not be saved...");
         }
@@ -37,18 +84,32 @@ public final class LowLevelYouTrackImport {
 
         try {
             if (importSettings.importEvents) {
-                Events events = serialization.readResultXml(Events.class);
-                youTrackDatabaseClient.importEvents(events, projectAbbrev);
+                if (eventSorter == null) {
+                    importEvents(projectAbbrev);
+                } else {
+                    sortAndImportEvents(eventSorter, projectAbbrev);
+                }
             }
         } catch (YouTrackDatabaseClientException exception) {
-            log.error("The import did not succeed. No changes were made to the database.", exception);
+            if (chunked) {
+                log.error("The import did not succeed. Events committed so far remain in the database, and running "
+                    + "the same command again resumes the import.", exception);
+            } else {
+                log.error("The import did not succeed. No changes were made to the database.", exception);
+            }
         }
     }
 
-    private static void start(Path databasePath, Path ioPath, boolean dryRun) throws JAXBException {
+    private static void start(Path databasePath, Path ioPath, boolean dryRun, int eventsPerTransaction,
+            int validationParallelism, boolean sortEvents, int maxEventsInMemory) throws IOException, JAXBException {
         Serialization serialization = Serialization.defaultSerialization(ioPath);
-        var youTrackDatabaseClient = new YouTrackDatabaseClient(databasePath);
-        var lowLevelYouTrackImport = new LowLevelYouTrackImport(serialization, youTrackDatabaseClient, dryRun);
+        var youTrackDatabaseClient = new YouTrackDatabaseClient(databasePath,
+            new YouTrackDatabaseClient.Options(eventsPerTransaction, validationParallelism));
+        @Nullable EventSorter eventSorter = sortEvents
+            ? new EventSorter(ioPath, new EventSorter.Options(maxEventsInMemory))
+            : null;
+        var lowLevelYouTrackImport = new LowLevelYouTrackImport(serialization, youTrackDatabaseClient, ioPath,
+            eventSorter, dryRun, eventsPerTransaction > 0);
 
         lowLevelYouTrackImport.run();
     }
@@ -62,6 +123,18 @@ public final class LowLevelYouTrackImport {
         OptionSpec<Path> inputOpt = parser.accepts("in", "path where to read input")
             .withRequiredArg().withValuesConvertedBy(new PathConverter()).required();
         OptionSpec<Void> dryRun = parser.accepts("dry-run", "if given, the database transaction is not committed");
+        OptionSpec<Integer> eventsPerTransactionOpt = parser.accepts("events-per-transaction",
+            "commit after this many events, and resume after the last commit if interrupted (0 for a single "
+                + "transaction)")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(0);
+        OptionSpec<Integer> validationParallelismOpt = parser.accepts("validation-parallelism",
+            "maximum number of read-only transactions that concurrently validate references before the import")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(4);
+        OptionSpec<Void> sortEventsOpt = parser.accepts("sort-events",
+            "import events ordered by issue, custom field, and timestamp instead of in file order");
+        OptionSpec<Integer> maxEventsInMemoryOpt = parser.accepts("max-events-in-memory",
+            "maximum number of events sorted in memory; larger inputs are sorted in runs stored in temporary files")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(1_000_000);
         OptionSet options = parser.parse(args);
         if (options.has(helpOption)) {
             parser.printHelpOn(System.out);
@@ -69,6 +142,8 @@ public final class LowLevelYouTrackImport {
             return;
         }
 
-        start(options.valueOf(databasePathOpt), options.valueOf(inputOpt), options.has(dryRun));
+        start(options.valueOf(databasePathOpt), options.valueOf(inputOpt), options.has(dryRun),
+            options.valueOf(eventsPerTransactionOpt), options.valueOf(validationParallelismOpt),
+            options.has(sortEventsOpt), options.valueOf(maxEventsInMemoryOpt));
     }
 }
@@ -0,0 +1,428 @@
+package net.florianschoppmann.issuetracking;
+
+import com.asana.models.Project;
+import com.atlassian.jira.rest.client.api.JiraRestClient;
+import com.atlassian.jira.rest.client.internal.async.AsynchronousJiraRestClientFactory;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import joptsimple.util.EnumConverter;
+import joptsimple.util.PathConverter;
+import net.florianschoppmann.issuetracking.asana.AsyncAttachmentDownloader;
+import net.florianschoppmann.issuetracking.asana.DownloadScheduler;
+import net.florianschoppmann.issuetracking.asana.Export;
+import net.florianschoppmann.issuetracking.conversion.AsanaToYouTrack;
+import net.florianschoppmann.issuetracking.conversion.JiraToYouTrack;
+import net.florianschoppmann.issuetracking.jira.JiraClient;
+import net.florianschoppmann.issuetracking.youtrack.YouTrackClient;
+import net.florianschoppmann.issuetracking.youtrack.rest.IssueTag;
+import net.florianschoppmann.issuetracking.youtrack.restold.ImportReport;
+import net.florianschoppmann.issuetracking.youtrack.restold.Issues;
+import net.florianschoppmann.java.futures.Futures;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.ws.rs.client.Client;
+import javax.xml.bind.DataBindingException;
+import javax.xml.bind.JAXBException;
+
+/**
+ * Exports a project from Asana or Jira, converts it, and imports the result into YouTrack, all in one process.
+ *
+ * <p>Unlike running {@link AsanaExport} or {@link JiraExport} followed by {@link YouTrackImport}, the conversion result
+ * is passed to the import directly, without writing and re-parsing result files. Asana issues are converted one at a
+ * time while earlier issues are imported, and attachments are still downloaded while issues and links are imported.
+ * Optionally, the conversion result is also written (spilled) to the output directory, in the same format as by the
+ * export commands, for auditing or for repeating the import with {@link YouTrackImport}.
+ */
+public final class Pipeline {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final Importer importer;
+    private final String youTrackProjectAbbrev;
+    private final Serialization serialization;
+    private final boolean spill;
+    private boolean attachmentsSpilled;
+
+    private Pipeline(Importer importer, String youTrackProjectAbbrev, Serialization serialization, boolean spill) {
+        this.importer = importer;
+        this.youTrackProjectAbbrev = youTrackProjectAbbrev;
+        this.serialization = serialization;
+        this.spill = spill;
+    }
+
+    enum Source {
+        ASANA,
+        JIRA
+    }
+
+    static final class SourceConverter extends EnumConverter<Source> {
+        SourceConverter() {
+            super(Source.class);
+        }
+    }
+
+    /**
+     * Returns an iterator over the given issues that also writes each issue it returns to the given writer (if any).
+     *
+     * <p>The writer is finished once the iterator has been found to have no more elements. If not all issues are
+     * taken from the iterator (for instance, because the import fails), the spilled file therefore remains incomplete,
+     * and reading it fails.
+     */
+    private static Iterator<Issues.Issue> spillingIterator(Iterator<Issues.Issue> issues,
+            Serialization.@Nullable ResultListWriter<Issues.Issue> writer) {
+        if (writer == null) {
+            return issues;
+        }
+
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                boolean hasNext = issues.hasNext();
+                if (!hasNext) {
+                    try {
+                        writer.finish();
+                    } catch (JAXBException exception) {
+                        throw new DataBindingException(exception);
+                    }
+                }
+                return hasNext;
+            }
+
+            @Override
+            public Issues.Issue next() {
+                Issues.Issue issue = issues.next();
+                try {
+                    writer.write(issue);
+                } catch (JAXBException exception) {
+                    throw new DataBindingException(exception);
+                }
+                return issue;
+            }
+        };
+    }
+
+    private void writeImportSettings(boolean importIssues, boolean importAttachments, boolean updateComments)
+            throws JAXBException {
+        var importSettings = new ImportSettings();
+        importSettings.youTrackProjectAbbrev = youTrackProjectAbbrev;
+        importSettings.importIssues = importIssues;
+        importSettings.importLinks = true;
+        importSettings.importAttachments = importAttachments;
+        importSettings.updateIssues = true;
+        importSettings.updateComments = updateComments;
+        serialization.writeResultXml(importSettings);
+    }
+
+    /**
+     * Waits for all downloads, and then writes the attachments and the import settings, if results are spilled.
+     *
+     * <p>This method is idempotent, so that it can be called again if the import fails after it has been called.
+     */
+    private void spillAttachments(AsanaToYouTrack.Result result) throws JAXBException {
+        if (!spill || attachmentsSpilled) {
+            return;
+        }
+
+        for (CompletableFuture<Path> download : result.getDownloads()) {
+            Futures.unwrapCompletionException(download).join();
+        }
+        serialization.writeResultList(Serialization.ResultList.ATTACHMENTS, result.getAttachments().attachments);
+        writeImportSettings(true, true, false);
+        attachmentsSpilled = true;
+    }
+
+    private void runAsana(AsanaToYouTrack asanaToYouTrack, Project project, Path attachmentBasePath,
+            Map<String, String> emailToLoginNameMap, AsanaToYouTrack.Options options)
+            throws IOException, JAXBException {
+        Files.createDirectories(attachmentBasePath);
+        AsanaToYouTrack.Result result = asanaToYouTrack.youTrackFromAsanaProject(project.id, attachmentBasePath,
+            youTrackProjectAbbrev, emailToLoginNameMap, options);
+        if (spill) {
+            serialization.writeResultXml(result.getLinks());
+            serialization.writeResultList(Serialization.ResultList.ISSUE_UPDATES,
+                result.getIssueUpdates().issueUpdates);
+            serialization.writeResultXml(result.getExportWarnings());
+            serialization.writeResultXml(result.getConversionWarnings());
+        }
+
+        SortedMap<String, IssueTag> availableTags = importer.prepareTags(result.getIssueUpdates());
+        try {
+            // Issues are converted lazily, so conversion overlaps with the batches that are in flight. Meanwhile,
+            // attachments are still being downloaded in the background.
+            try (Stream<Issues.Issue> issues = result.streamIssues();
+                    Serialization.@Nullable ResultListWriter<Issues.Issue> writer = spill
+                        ? serialization.openResultXmlWriter(Serialization.ResultList.ISSUES)
+                        : null) {
+                importer.importIssues(spillingIterator(issues.iterator(), writer));
+            }
+            importer.importLinks(result.getLinks());
+            spillAttachments(result);
+            importer.importAttachments(result.getAttachments().attachments);
+        } catch (Importer.ImportException exception) {
+            // Complete the spilled result (if any) even though the import failed, so that YouTrackImport can repeat it
+            spillAttachments(result);
+            reportFailure(exception);
+            return;
+        } catch (RuntimeException exception) {
+            // Same for other failures, such as a request that could not be sent. If the failure occurred before all
+            // issues were converted, the spilled issues remain incomplete (see spillingIterator), so that
+            // YouTrackImport refuses to read them.
+            try {
+                spillAttachments(result);
+            } catch (JAXBException | RuntimeException spillException) {
+                exception.addSuppressed(spillException);
+            }
+            throw exception;
+        }
+
+        var updateReport = new ImportReport();
+        importer.updateIssues(result.getIssueUpdates().issueUpdates, availableTags, updateReport);
+        reportUpdates(updateReport);
+    }
+
+    private void runJira(JiraToYouTrack jiraToYouTrack) throws JAXBException {
+        JiraToYouTrack.Result result = jiraToYouTrack.youTrackFromJiraProject(youTrackProjectAbbrev);
+        if (spill) {
+            serialization.writeResultXml(result.getLinks());
+            serialization.writeResultXml(Serialization.ResultList.ISSUE_UPDATES,
+                result.getIssueUpdates().issueUpdates);
+            serialization.writeResultXml(result.getCommentUpdates());
+            serialization.writeResultXml(result.getConversionWarnings());
+            writeImportSettings(false, false, true);
+        }
+
+        SortedMap<String, IssueTag> availableTags = importer.prepareTags(result.getIssueUpdates());
+        try {
+            importer.importLinks(result.getLinks());
+        } catch (Importer.ImportException exception) {
+            reportFailure(exception);
+            return;
+        }
+
+        var updateReport = new ImportReport();
+        if (importer.updateIssues(result.getIssueUpdates().issueUpdates, availableTags, updateReport)) {
+            importer.updateComments(result.getCommentUpdates().commentUpdates, updateReport);
+        }
+        reportUpdates(updateReport);
+    }
+
+    private void reportFailure(Importer.ImportException exception) throws JAXBException {
+        log.error("{} See import report.", exception.getMessage());
+        serialization.writeResultXml(exception.getImportReport());
+    }
+
+    private void reportUpdates(ImportReport updateReport) throws JAXBException {
+        if (!Importer.isSuccessful(updateReport)) {
+            log.error("Failed to verify all updates. See import report.");
+            serialization.writeResultXml(updateReport);
+        }
+    }
+
+    private static void startAsana(URI youTrackBaseUri, String youTrackProjectAbbrev, Path outputPath,
+            String workspaceName, String projectName, Path userMappingFile, boolean estimatesInBrackets, int startId,
+            int parallelism, int maxDownloads, int maxDownloadsPerHost, int maxBatchesInFlight, int maxUploadsInFlight,
+            UpdateExecutor.Options updateOptions, boolean dryRun, boolean spill, Serialization.Compression compression,
+            String asanaAccessToken, String youTrackAccessToken) throws IOException, JAXBException {
+        com.asana.Client asanaClient = com.asana.Client.accessToken(asanaAccessToken);
+        @Nullable Project project = AsanaExport.findProject(asanaClient, workspaceName, projectName);
+        if (project == null) {
+            System.exit(1);
+            return;
+        }
+
+        var youTrackClient = new YouTrackClient(Common.newJaxrsClient(), youTrackBaseUri, youTrackAccessToken,
+            new YouTrackClient.Options(maxBatchesInFlight, true, maxUploadsInFlight));
+        var executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        executor.allowCoreThreadTimeOut(true);
+        HttpClient httpClient = HttpClient.newBuilder()
+            .executor(executor)
+            .build();
+        var downloadScheduler = new DownloadScheduler(maxDownloads, maxDownloadsPerHost,
+            Math.max(maxDownloads, AsanaExport.MAX_PENDING_DOWNLOADS));
+        var export = new Export(asanaClient, new AsyncAttachmentDownloader(httpClient, downloadScheduler, null));
+        var options = new AsanaToYouTrack.Options(estimatesInBrackets, startId, parallelism, null, null);
+        var importer = new Importer(youTrackClient, youTrackProjectAbbrev, outputPath, dryRun, updateOptions);
+        var pipeline = new Pipeline(importer,
+            youTrackProjectAbbrev, Serialization.defaultSerialization(outputPath, compression, true), spill);
+
+        try {
+            pipeline.runAsana(new AsanaToYouTrack(export), project, outputPath,
+                AsanaExport.userMapping(userMappingFile), options);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void startJira(URI youTrackBaseUri, String youTrackProjectAbbrev, Path outputPath,
+            URI jiraBaseUri, int maxJiraRequestsInFlight, int jiraSearchPageSize, int maxBatchesInFlight,
+            UpdateExecutor.Options updateOptions, boolean dryRun, boolean spill, Serialization.Compression compression,
+            String jiraUsername, String jiraPassword, String youTrackAccessToken) throws IOException, JAXBException {
+        Client jaxrsClient = Common.newJaxrsClient();
+        try (JiraRestClient jiraRestClient = new AsynchronousJiraRestClientFactory()
+                .createWithBasicHttpAuthentication(jiraBaseUri, jiraUsername, jiraPassword)) {
+            JiraClient jiraClient = new JiraClient(jiraRestClient, jaxrsClient, jiraBaseUri, jiraUsername, jiraPassword,
+                new JiraClient.Options(maxJiraRequestsInFlight, jiraSearchPageSize));
+            var youTrackClient = new YouTrackClient(jaxrsClient, youTrackBaseUri, youTrackAccessToken,
+                new YouTrackClient.Options(maxBatchesInFlight));
+            var importer = new Importer(youTrackClient, youTrackProjectAbbrev, outputPath, dryRun, updateOptions);
+            var pipeline = new Pipeline(importer,
+                youTrackProjectAbbrev, Serialization.defaultSerialization(outputPath, compression, true), spill);
+            pipeline.runJira(new JiraToYouTrack(youTrackClient, jiraClient, jiraRestClient));
+        }
+    }
+
+    private static boolean requireOptions(Logger log, OptionSet options, Source source, OptionSpec<?>... required) {
+        boolean complete = true;
+        for (OptionSpec<?> option : required) {
+            if (!options.has(option)) {
+                log.error("Option {} is required for source {}.", option, source.name().toLowerCase());
+                complete = false;
+            }
+        }
+        return complete;
+    }
+
+    public static void main(String[] args) throws IOException, JAXBException {
+        final Logger log = LoggerFactory.getLogger(Pipeline.class);
+
+        OptionParser parser = new OptionParser();
+        OptionSpec<Void> helpOption = parser.accepts("help").forHelp();
+        OptionSpec<Source> sourceOpt = parser.accepts("source", "issue tracker to export from (asana or jira)")
+            .withRequiredArg().withValuesConvertedBy(new SourceConverter()).required();
+        OptionSpec<String> youTrackInstanceUrlOpt = parser
+            .accepts("youtrack-url",
+                "URL of the YouTrack instance (of form https://<name>.myjetbrains.com/youtrack for InCloud instances)")
+            .withRequiredArg().required();
+        OptionSpec<String> youTrackAbbrevOpt = parser
+            .accepts("abbrev", "YouTrack project abbreviation, should not contain hyphen (-)")
+            .withRequiredArg().required();
+        OptionSpec<Path> outputOpt = parser.accepts("output",
+            "path where to store attachments, the import report in case of failure, and spilled results")
+            .withRequiredArg().withValuesConvertedBy(new PathConverter()).required();
+        OptionSpec<Void> spillOpt = parser.accepts("spill",
+            "also write the conversion result to the output path, as the export commands would");
+        OptionSpec<Serialization.Compression> compressionOpt = parser
+            .accepts("compression", "compression of spilled result files (none, gzip, or zstd)")
+            .withRequiredArg().withValuesConvertedBy(new Common.CompressionConverter())
+            .defaultsTo(Serialization.Compression.NONE);
+        OptionSpec<Void> dryRunOpt = parser
+            .accepts("dry-run", "if given, nothing is saved, but imported data is validated by YouTrack");
+        OptionSpec<Integer> maxBatchesInFlightOpt = parser
+            .accepts("max-batches-in-flight", "maximum number of import batches sent to YouTrack concurrently")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(4);
+        OptionSpec<Integer> maxUploadsInFlightOpt = parser
+            .accepts("max-uploads-in-flight",
+                "maximum number of attachments uploaded to YouTrack concurrently (Asana only)")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(4);
+        OptionSpec<Integer> updateWorkersOpt = parser
+            .accepts("update-workers", "maximum number of issue or comment updates sent to YouTrack concurrently")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(4);
+        OptionSpec<Double> maxRequestsPerSecondOpt = parser
+            .accepts("max-update-requests-per-second",
+                "maximum number of update and verification requests sent to YouTrack per second (0 for no limit)")
+            .withRequiredArg().ofType(Double.class).defaultsTo(0.0);
+
+        // Asana
+        OptionSpec<String> workspaceOpt
+            = parser.accepts("workspace", "name of the Asana workspace (Asana only)").withRequiredArg();
+        OptionSpec<String> asanaProjectOpt
+            = parser.accepts("project", "name of the Asana project (Asana only)").withRequiredArg();
+        OptionSpec<Path> userMappingOpt = parser.accepts("user-mapping",
+            "path to file with lines of form \"<Asana email>=<YouTrack login name>\" (Asana only)")
+            .withRequiredArg().withValuesConvertedBy(new PathConverter());
+        OptionSpec<Void> noTimeEstimatesInBracketsOpt = parser
+            .accepts("no-estimates", "in task names, do not treat numbers in brackets as time estimates (Asana only)");
+        OptionSpec<Integer> startIdOpt = parser.accepts("start-id", "first number in project (Asana only)")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(1);
+        OptionSpec<Integer> parallelismOpt = parser
+            .accepts("parallelism", "maximum number of Asana tasks whose details are retrieved concurrently")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(4);
+        OptionSpec<Integer> maxDownloadsOpt = parser
+            .accepts("max-downloads", "maximum number of concurrent downloads (Asana only)")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(8);
+        OptionSpec<Integer> maxDownloadsPerHostOpt = parser
+            .accepts("max-downloads-per-host", "maximum number of concurrent downloads from the same host (Asana only)")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(4);
+
+        // Jira
+        OptionSpec<String> jiraInstanceUrlOpt = parser
+            .accepts("jira-url",
+                "URL of the Jira instance (of form https://<name>.atlassian.com/ for Jira Cloud; Jira only)")
+            .withRequiredArg();
+        OptionSpec<Integer> maxJiraRequestsInFlightOpt = parser
+            .accepts("max-jira-requests-in-flight",
+                "maximum number of search-page or per-issue requests sent to Jira concurrently")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(4);
+        OptionSpec<Integer> jiraSearchPageSizeOpt = parser
+            .accepts("jira-search-page-size", "number of issues requested per Jira search page")
+            .withRequiredArg().ofType(Integer.class).defaultsTo(50);
+        OptionSet options = parser.parse(args);
+        if (options.has(helpOption)) {
+            parser.printHelpOn(System.out);
+            System.exit(0);
+            return;
+        }
+
+        String youTrackAccessToken = System.getenv("YOUTRACK_ACCESS_TOKEN");
+        URI youTrackBaseUri = Common.uriFromString(options.valueOf(youTrackInstanceUrlOpt));
+        Source source = options.valueOf(sourceOpt);
+        var updateOptions
+            = new UpdateExecutor.Options(options.valueOf(updateWorkersOpt), options.valueOf(maxRequestsPerSecondOpt));
+        switch (source) {
+            case ASANA:
+                String asanaAccessToken = System.getenv("ASANA_ACCESS_TOKEN");
+                if (asanaAccessToken == null || youTrackAccessToken == null) {
+                    log.error("Environment variables ASANA_ACCESS_TOKEN and YOUTRACK_ACCESS_TOKEN must be defined.");
+                    System.exit(1);
+                    return;
+                }
+                if (!requireOptions(log, options, source, workspaceOpt, asanaProjectOpt, userMappingOpt)) {
+                    System.exit(1);
+                    return;
+                }
+                startAsana(youTrackBaseUri, options.valueOf(youTrackAbbrevOpt), options.valueOf(outputOpt),
+                    options.valueOf(workspaceOpt), options.valueOf(asanaProjectOpt), options.valueOf(userMappingOpt),
+                    !options.has(noTimeEstimatesInBracketsOpt), options.valueOf(startIdOpt),
+                    options.valueOf(parallelismOpt), options.valueOf(maxDownloadsOpt),
+                    options.valueOf(maxDownloadsPerHostOpt), options.valueOf(maxBatchesInFlightOpt),
+                    options.valueOf(maxUploadsInFlightOpt), updateOptions, options.has(dryRunOpt),
+                    options.has(spillOpt), options.valueOf(compressionOpt), asanaAccessToken, youTrackAccessToken);
+                break;
+            case JIRA:
+                String jiraUsername = System.getenv("JIRA_USER_NAME");
+                String jiraPassword = System.getenv("JIRA_PASSWORD");
+                if (jiraUsername == null || jiraPassword == null || youTrackAccessToken == null) {
+                    log.error("Environment variables JIRA_USER_NAME, JIRA_PASSWORD, and YOUTRACK_ACCESS_TOKEN must be "
+                        + "defined.");
+                    System.exit(1);
+                    return;
+                }
+                if (!requireOptions(log, options, source, jiraInstanceUrlOpt)) {
+                    System.exit(1);
+                    return;
+                }
+                startJira(youTrackBaseUri, options.valueOf(youTrackAbbrevOpt), options.valueOf(outputOpt),
+                    Common.uriFromString(options.valueOf(jiraInstanceUrlOpt)),
+                    options.valueOf(maxJiraRequestsInFlightOpt), options.valueOf(jiraSearchPageSizeOpt),
+                    options.valueOf(maxBatchesInFlightOpt), updateOptions, options.has(dryRunOpt),
+                    options.has(spillOpt), options.valueOf(compressionOpt), jiraUsername, jiraPassword,
+                    youTrackAccessToken);
+                break;
+        }
+    }
+}
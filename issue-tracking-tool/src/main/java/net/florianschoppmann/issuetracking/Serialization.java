@@ -1,48 +1,183 @@
 package net.florianschoppmann.issuetracking;
 
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
 import net.florianschoppmann.issuetracking.asana.AsanaExportWarnings;
 import net.florianschoppmann.issuetracking.conversion.ConversionWarnings;
 import net.florianschoppmann.issuetracking.youtrack.Attachments;
+import net.florianschoppmann.issuetracking.youtrack.Attachments.Attachment;
 import net.florianschoppmann.issuetracking.youtrack.CommentUpdates;
 import net.florianschoppmann.issuetracking.youtrack.Events;
+import net.florianschoppmann.issuetracking.youtrack.Events.CustomFieldEvent;
+import net.florianschoppmann.issuetracking.youtrack.Events.Event;
 import net.florianschoppmann.issuetracking.youtrack.IssueUpdates;
+import net.florianschoppmann.issuetracking.youtrack.IssueUpdates.IssueUpdate;
 import net.florianschoppmann.issuetracking.youtrack.restold.ImportReport;
 import net.florianschoppmann.issuetracking.youtrack.restold.Issues;
 import net.florianschoppmann.issuetracking.youtrack.restold.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.persistence.jaxb.JAXBContextFactory;
 import org.eclipse.persistence.jaxb.JAXBContextProperties;
 import org.eclipse.persistence.jaxb.MarshallerProperties;
 import org.eclipse.persistence.jaxb.UnmarshallerProperties;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.FilterWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import javax.ws.rs.core.MediaType;
+import javax.xml.bind.DataBindingException;
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 final class Serialization {
     private static final String XML_SUFFIX = ".xml";
     private static final String JSON_SUFFIX = ".json";
+    private static final String BINARY_SUFFIX = ".bin";
+
+    /**
+     * Factory for creating {@link XMLStreamReader} instances. Once configured, {@link XMLInputFactory} is thread-safe.
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = newXmlInputFactory();
 
     private final Path basePath;
+    private final Compression compression;
+    private final boolean formatted;
+    private final boolean binaryLists;
+    private final JAXBContext jaxbContext;
     private final Marshaller xmlMarshaller;
     private final Marshaller jsonMarshaller;
     private final Unmarshaller xmlUnmarshaller;
     private final Unmarshaller jsonUnmarshaller;
 
-    private Serialization(Path basePath, Marshaller xmlMarshaller, Marshaller jsonMarshaller,
-            Unmarshaller xmlUnmarshaller, Unmarshaller jsonUnmarshaller) {
+    private Serialization(Path basePath, Compression compression, boolean formatted, boolean binaryLists,
+            JAXBContext jaxbContext, Marshaller xmlMarshaller, Marshaller jsonMarshaller, Unmarshaller xmlUnmarshaller,
+            Unmarshaller jsonUnmarshaller) {
         this.basePath = basePath;
+        this.compression = compression;
+        this.formatted = formatted;
+        this.binaryLists = binaryLists;
+        this.jaxbContext = jaxbContext;
         this.xmlMarshaller = xmlMarshaller;
         this.jsonMarshaller = jsonMarshaller;
         this.xmlUnmarshaller = xmlUnmarshaller;
         this.jsonUnmarshaller = jsonUnmarshaller;
     }
 
+    /**
+     * Compression of result files.
+     */
+    enum Compression {
+        NONE(""),
+        GZIP(".gz"),
+        ZSTD(".zst");
+
+        private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+        private static final int ZSTD_LEVEL = 3;
+
+        private final String fileSuffix;
+
+        Compression(String fileSuffix) {
+            this.fileSuffix = fileSuffix;
+        }
+
+        private OutputStream compressedOutputStream(OutputStream outputStream) throws IOException {
+            switch (this) {
+                case GZIP:
+                    return new BufferedOutputStream(new GZIPOutputStream(outputStream, GZIP_BUFFER_SIZE));
+                case ZSTD:
+                    return new BufferedOutputStream(new ZstdOutputStream(outputStream, ZSTD_LEVEL));
+                default:
+                    return new BufferedOutputStream(outputStream);
+            }
+        }
+
+        /**
+         * Returns the compression of the given stream, as determined by its magic number.
+         */
+        private static Compression detect(BufferedInputStream inputStream) throws IOException {
+            inputStream.mark(4);
+            byte[] header = inputStream.readNBytes(4);
+            inputStream.reset();
+            if (header.length >= 2 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b) {
+                return GZIP;
+            } else if (header.length == 4 && (header[0] & 0xff) == 0x28 && (header[1] & 0xff) == 0xb5
+                    && (header[2] & 0xff) == 0x2f && (header[3] & 0xff) == 0xfd) {
+                return ZSTD;
+            } else {
+                return NONE;
+            }
+        }
+
+        private static InputStream decompressedInputStream(InputStream inputStream) throws IOException {
+            var bufferedInputStream = new BufferedInputStream(inputStream);
+            switch (detect(bufferedInputStream)) {
+                case GZIP:
+                    return new GZIPInputStream(bufferedInputStream, GZIP_BUFFER_SIZE);
+                case ZSTD:
+                    return new BufferedInputStream(new ZstdInputStream(bufferedInputStream));
+                default:
+                    return bufferedInputStream;
+            }
+        }
+    }
+
     static Serialization defaultSerialization(Path basePath) {
+        return defaultSerialization(basePath, Compression.NONE, true);
+    }
+
+    /**
+     * Returns a serialization that writes result files with the given compression.
+     *
+     * <p>Compressed files have an additional file-name suffix ({@code .gz} or {@code .zst}). Reading does not depend on
+     * the given compression: Files are read with or without suffix (whichever was written last), and the compression
+     * is detected from the file content.
+     *
+     * @param basePath directory of the result files
+     * @param compression compression of written files
+     * @param formatted whether written XML and JSON is indented; if false, output is more compact
+     */
+    static Serialization defaultSerialization(Path basePath, Compression compression, boolean formatted) {
+        return defaultSerialization(basePath, compression, formatted, false);
+    }
+
+    /**
+     * Returns a serialization that writes result files with the given compression, and result lists in either XML or
+     * the {@link BinaryFormat binary format}.
+     *
+     * @param binaryLists whether {@link #writeResultList(ResultList, Iterable)} uses the binary format for result lists
+     *     that support it; binary files are never compressed
+     * @see #defaultSerialization(Path, Compression, boolean)
+     */
+    static Serialization defaultSerialization(Path basePath, Compression compression, boolean formatted,
+            boolean binaryLists) {
         try {
             Map<String, Object> properties = new HashMap<>();
             properties.put(JAXBContextProperties.JSON_INCLUDE_ROOT, false);
@@ -52,24 +187,86 @@ final class Serialization {
                 ConversionWarnings.class, Events.class, ImportReport.class, ImportSettings.class}, properties);
 
             Marshaller xmlMarshaller = jaxbContext.createMarshaller();
-            xmlMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            xmlMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formatted);
             Marshaller jsonMarshaller = jaxbContext.createMarshaller();
             jsonMarshaller.setProperty(MarshallerProperties.MEDIA_TYPE, MediaType.APPLICATION_JSON);
-            jsonMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            jsonMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formatted);
 
             Unmarshaller xmlUnmarshaller = jaxbContext.createUnmarshaller();
             Unmarshaller jsonUnmarshaller = jaxbContext.createUnmarshaller();
             jsonUnmarshaller.setProperty(UnmarshallerProperties.MEDIA_TYPE, MediaType.APPLICATION_JSON);
 
-            return new Serialization(basePath, xmlMarshaller, jsonMarshaller, xmlUnmarshaller, jsonUnmarshaller);
+            return new Serialization(basePath, compression, formatted, binaryLists, jaxbContext, xmlMarshaller,
+                jsonMarshaller, xmlUnmarshaller, jsonUnmarshaller);
         } catch (JAXBException exception) {
             throw new IllegalStateException(exception);
         }
     }
 
+    /**
+     * Returns the path of the most recently written result file with the given name, with or without compression
+     * suffix. If there is no such file, the path without compression suffix is returned.
+     */
+    private Path pathForReading(String fileName) {
+        Path path = basePath.resolve(fileName);
+        @Nullable FileTime lastModifiedTime = null;
+        for (Compression candidate : Compression.values()) {
+            Path candidatePath = basePath.resolve(fileName + candidate.fileSuffix);
+            @Nullable FileTime candidateTime = lastModifiedTime(candidatePath);
+            if (candidateTime != null && (lastModifiedTime == null || candidateTime.compareTo(lastModifiedTime) > 0)) {
+                path = candidatePath;
+                lastModifiedTime = candidateTime;
+            }
+        }
+        return path;
+    }
+
+    private static @Nullable FileTime lastModifiedTime(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException ignored) {
+            // The file does not exist (or is inaccessible, which will be reported when reading it).
+            return null;
+        }
+    }
+
+    private InputStream newInputStream(String fileName) throws IOException {
+        InputStream inputStream = Files.newInputStream(pathForReading(fileName));
+        try {
+            return Compression.decompressedInputStream(inputStream);
+        } catch (IOException exception) {
+            closeQuietly(inputStream, exception);
+            throw exception;
+        }
+    }
+
+    /**
+     * Opens the result file with the given name for writing, and deletes any previous version of the file that has a
+     * different compression suffix.
+     */
+    private OutputStream newOutputStream(String fileName) throws IOException {
+        for (Compression other : Compression.values()) {
+            if (other != compression) {
+                Files.deleteIfExists(basePath.resolve(fileName + other.fileSuffix));
+            }
+        }
+        OutputStream outputStream = Files.newOutputStream(basePath.resolve(fileName + compression.fileSuffix));
+        try {
+            return compression.compressedOutputStream(outputStream);
+        } catch (IOException exception) {
+            closeQuietly(outputStream, exception);
+            throw exception;
+        }
+    }
+
     private <T> T readResult(Unmarshaller unmarshaller, String fileSuffix, Class<? extends T> clazz)
             throws JAXBException {
-        Object object = unmarshaller.unmarshal(basePath.resolve(clazz.getSimpleName() + fileSuffix).toFile());
+        Object object;
+        try (InputStream inputStream = newInputStream(clazz.getSimpleName() + fileSuffix)) {
+            object = unmarshaller.unmarshal(inputStream);
+        } catch (IOException exception) {
+            throw new JAXBException(exception);
+        }
         if (clazz.isInstance(object)) {
             @SuppressWarnings("unchecked")
             T typedObject = (T) object;
@@ -87,7 +284,11 @@ final class Serialization {
     }
 
     private <T> void writeResult(Marshaller marshaller, String fileSuffix, T result) throws JAXBException {
-        marshaller.marshal(result, basePath.resolve(result.getClass().getSimpleName() + fileSuffix).toFile());
+        try (OutputStream outputStream = newOutputStream(result.getClass().getSimpleName() + fileSuffix)) {
+            marshaller.marshal(result, outputStream);
+        } catch (IOException exception) {
+            throw new JAXBException(exception);
+        }
     }
 
     <T> void writeResultXml(T result) throws JAXBException  {
@@ -97,4 +298,352 @@ final class Serialization {
     <T> void writeResultJson(T result) throws JAXBException  {
         writeResult(jsonMarshaller, JSON_SUFFIX, result);
     }
+
+    private static XMLInputFactory newXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Returns a stream of the elements of the given result list, which are read from the XML file one at a time.
+     *
+     * <p>The file is the same as the one read by {@link #readResultXml(Class)} for the root class of the result list,
+     * but the root object (and thus the complete list) is never held in memory. The returned stream must be closed in
+     * order to close the file. Errors while reading elements are reported as {@link DataBindingException}.
+     */
+    <E> Stream<E> streamResultXml(ResultList<E> resultList) throws JAXBException {
+        String fileName = resultList.getName() + XML_SUFFIX;
+        @Nullable InputStream inputStream = null;
+        try {
+            inputStream = newInputStream(fileName);
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+            reader.nextTag();
+            if (!resultList.rootName.equals(reader.getLocalName())) {
+                throw new JAXBException(String.format("Expected root element <%s> in %s, but found <%s>.",
+                    resultList.rootName, fileName, reader.getLocalName()));
+            }
+            reader.next();
+            InputStream finalInputStream = inputStream;
+            return StreamSupport.stream(new ElementSpliterator<>(resultList, reader), false)
+                .onClose(() -> {
+                    try (finalInputStream) {
+                        reader.close();
+                    } catch (IOException | XMLStreamException exception) {
+                        throw new DataBindingException(exception);
+                    }
+                });
+        } catch (IOException | XMLStreamException exception) {
+            closeQuietly(inputStream, exception);
+            throw new JAXBException(exception);
+        } catch (JAXBException exception) {
+            closeQuietly(inputStream, exception);
+            throw exception;
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable, Exception exception) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException closeException) {
+                exception.addSuppressed(closeException);
+            }
+        }
+    }
+
+    /**
+     * Opens a writer that writes the elements of the given result list to the XML file one at a time.
+     *
+     * <p>Once {@link ResultListWriter#finish()} has been called, the file can be read with
+     * {@link #readResultXml(Class)} for the root class of the result list, as well as with
+     * {@link #streamResultXml(ResultList)}.
+     */
+    <E> ResultListWriter<E> openResultXmlWriter(ResultList<E> resultList) throws JAXBException {
+        @Nullable OutputStream outputStream = null;
+        try {
+            outputStream = newOutputStream(resultList.getName() + XML_SUFFIX);
+            // The root tags are written directly. The list elements are marshaled as fragments into the same writer, so
+            // that they are formatted exactly as when marshaling the root object.
+            var writer = new NonFlushingWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            writer.write(formatted ? "\n<" : "<");
+            writer.write(resultList.rootName);
+            writer.write('>');
+            Marshaller fragmentMarshaller = jaxbContext.createMarshaller();
+            fragmentMarshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+            fragmentMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formatted);
+            return new ResultListWriter<>(resultList, formatted, writer, fragmentMarshaller);
+        } catch (IOException exception) {
+            closeQuietly(outputStream, exception);
+            throw new JAXBException(exception);
+        }
+    }
+
+    /**
+     * Writes the given elements of a result list to the XML file one at a time.
+     *
+     * @see #openResultXmlWriter(ResultList)
+     */
+    <E> void writeResultXml(ResultList<E> resultList, Iterable<? extends E> elements) throws JAXBException {
+        try (ResultListWriter<E> writer = openResultXmlWriter(resultList)) {
+            for (E element : elements) {
+                writer.write(element);
+            }
+            writer.finish();
+        }
+    }
+
+    /**
+     * Writes the given elements of a result list, in the binary format if this serialization was created for binary
+     * lists and the result list supports it, and in XML otherwise.
+     */
+    <E> void writeResultList(ResultList<E> resultList, Iterable<? extends E> elements) throws JAXBException {
+        if (binaryLists && resultList.codec != null) {
+            writeResultBinary(resultList, elements);
+        } else {
+            writeResultXml(resultList, elements);
+        }
+    }
+
+    /**
+     * Returns a stream of the elements of the given result list, read either from the binary or the XML file, whichever
+     * was written last.
+     *
+     * @see #streamResultXml(ResultList)
+     * @see #streamResultBinary(ResultList)
+     */
+    <E> Stream<E> streamResultList(ResultList<E> resultList) throws JAXBException {
+        @Nullable FileTime binaryTime = resultList.codec == null
+            ? null
+            : lastModifiedTime(binaryPath(resultList));
+        @Nullable FileTime xmlTime = lastModifiedTime(pathForReading(resultList.getName() + XML_SUFFIX));
+        return binaryTime != null && (xmlTime == null || binaryTime.compareTo(xmlTime) > 0)
+            ? streamResultBinary(resultList)
+            : streamResultXml(resultList);
+    }
+
+    /**
+     * Returns whether a file for the given result list exists, in the binary format or in XML (with any compression).
+     */
+    boolean hasResultFile(ResultList<?> resultList, boolean binary) {
+        Path path = binary
+            ? binaryPath(resultList)
+            : pathForReading(resultList.getName() + XML_SUFFIX);
+        return Files.exists(path);
+    }
+
+    private Path binaryPath(ResultList<?> resultList) {
+        return basePath.resolve(resultList.getName() + BINARY_SUFFIX);
+    }
+
+    private static <E> BinaryFormat.Codec<E> codec(ResultList<E> resultList) throws JAXBException {
+        if (resultList.codec == null) {
+            throw new JAXBException(String.format("There is no binary format for <%s>.", resultList.rootName));
+        }
+        return resultList.codec;
+    }
+
+    /**
+     * Writes the given elements of a result list to a file in the {@link BinaryFormat binary format}.
+     */
+    <E> void writeResultBinary(ResultList<E> resultList, Iterable<? extends E> elements) throws JAXBException {
+        try (BinaryFormat.RecordWriter<E> writer
+                = BinaryFormat.newRecordWriter(binaryPath(resultList), resultList.rootName, codec(resultList))) {
+            for (E element : elements) {
+                writer.write(element);
+            }
+            writer.finish();
+        } catch (IOException exception) {
+            throw new JAXBException(exception);
+        }
+    }
+
+    /**
+     * Returns a stream of the elements of the given result list, read from a file in the
+     * {@link BinaryFormat binary format}.
+     *
+     * <p>The returned stream must be closed in order to close the file. Errors while reading elements are reported as
+     * {@link UncheckedIOException}.
+     */
+    <E> Stream<E> streamResultBinary(ResultList<E> resultList) throws JAXBException {
+        try {
+            return BinaryFormat.streamRecords(binaryPath(resultList), resultList.rootName, codec(resultList));
+        } catch (IOException exception) {
+            throw new JAXBException(exception);
+        }
+    }
+
+    /**
+     * Result whose root element contains nothing but a list of elements.
+     *
+     * @param <E> type of the list elements
+     */
+    static final class ResultList<E> {
+        static final ResultList<Issues.Issue> ISSUES = new ResultList<>(
+            Issues.class, "issues", Map.of("issue", Issues.Issue.class), BinaryFormat.ISSUE_CODEC);
+        static final ResultList<Attachment> ATTACHMENTS = new ResultList<>(
+            Attachments.class, "attachments", Map.of("attachment", Attachment.class), BinaryFormat.ATTACHMENT_CODEC);
+        static final ResultList<IssueUpdate> ISSUE_UPDATES = new ResultList<>(
+            IssueUpdates.class, "issueUpdates", Map.of("issueUpdate", IssueUpdate.class), null);
+        static final ResultList<Event> EVENTS = new ResultList<>(
+            Events.class, "events", Map.of("customFieldEvent", CustomFieldEvent.class), BinaryFormat.EVENT_CODEC);
+
+        /**
+         * Result lists that can be stored in the binary format.
+         */
+        static final java.util.List<ResultList<?>> BINARY_RESULT_LISTS = java.util.List.of(ISSUES, ATTACHMENTS, EVENTS);
+
+        private final Class<?> rootClass;
+        private final String rootName;
+        private final Map<String, Class<? extends E>> elementClasses;
+        private final BinaryFormat.@Nullable Codec<E> codec;
+
+        private ResultList(Class<?> rootClass, String rootName, Map<String, Class<? extends E>> elementClasses,
+                BinaryFormat.@Nullable Codec<E> codec) {
+            this.rootClass = rootClass;
+            this.rootName = rootName;
+            this.elementClasses = elementClasses;
+            this.codec = codec;
+        }
+
+        String getName() {
+            return rootClass.getSimpleName();
+        }
+
+        String getRootName() {
+            return rootName;
+        }
+
+        private Class<? extends E> elementClass(String elementName) throws JAXBException {
+            @Nullable Class<? extends E> elementClass = elementClasses.get(elementName);
+            if (elementClass == null) {
+                throw new JAXBException(String.format("Unexpected element <%s> in <%s>.", elementName, rootName));
+            }
+            return elementClass;
+        }
+
+        private JAXBElement<?> jaxbElement(E element) throws JAXBException {
+            for (Map.Entry<String, Class<? extends E>> entry : elementClasses.entrySet()) {
+                if (entry.getValue() == element.getClass()) {
+                    return jaxbElement(entry.getKey(), entry.getValue(), element);
+                }
+            }
+            throw new JAXBException(String.format("Unexpected element %s in <%s>.", element, rootName));
+        }
+
+        private static <T> JAXBElement<T> jaxbElement(String elementName, Class<T> clazz, Object element) {
+            return new JAXBElement<>(new QName(elementName), clazz, clazz.cast(element));
+        }
+    }
+
+    private final class ElementSpliterator<E> extends Spliterators.AbstractSpliterator<E> {
+        private final ResultList<E> resultList;
+        private final XMLStreamReader reader;
+
+        private ElementSpliterator(ResultList<E> resultList, XMLStreamReader reader) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.resultList = resultList;
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            try {
+                // Skip whitespace and comments between the elements. After an element has been unmarshaled, the
+                // reader is positioned at the event following its end tag.
+                while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                    if (reader.getEventType() == XMLStreamConstants.END_ELEMENT
+                            || reader.getEventType() == XMLStreamConstants.END_DOCUMENT) {
+                        return false;
+                    }
+                    reader.next();
+                }
+                Class<? extends E> elementClass = resultList.elementClass(reader.getLocalName());
+                action.accept(xmlUnmarshaller.unmarshal(reader, elementClass).getValue());
+                return true;
+            } catch (JAXBException | XMLStreamException exception) {
+                throw new DataBindingException(exception);
+            }
+        }
+    }
+
+    /**
+     * Writer that only flushes when closed.
+     *
+     * <p>The marshaller flushes after each fragment. With zstd, each flush would end a block and hurt compression.
+     */
+    static final class NonFlushingWriter extends FilterWriter {
+        NonFlushingWriter(Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        public void flush() { }
+    }
+
+    /**
+     * Writer for the elements of a result list.
+     *
+     * <p>The file is complete only once {@link #finish()} has been called and this writer has been closed. If the
+     * writer is closed without calling {@link #finish()} (for instance, because obtaining the elements failed), the end
+     * tag of the root element is missing, so that reading the file fails instead of returning only part of the list.
+     */
+    static final class ResultListWriter<E> implements AutoCloseable {
+        private final ResultList<E> resultList;
+        private final boolean formatted;
+        private final Writer writer;
+        private final Marshaller fragmentMarshaller;
+        private boolean finished;
+
+        private ResultListWriter(ResultList<E> resultList, boolean formatted, Writer writer,
+                Marshaller fragmentMarshaller) {
+            this.resultList = resultList;
+            this.formatted = formatted;
+            this.writer = writer;
+            this.fragmentMarshaller = fragmentMarshaller;
+        }
+
+        void write(E element) throws JAXBException {
+            if (finished) {
+                throw new IllegalStateException("Cannot write elements after finish().");
+            }
+            try {
+                if (formatted) {
+                    writer.write('\n');
+                }
+                fragmentMarshaller.marshal(resultList.jaxbElement(element), writer);
+            } catch (IOException exception) {
+                throw new JAXBException(exception);
+            }
+        }
+
+        /**
+         * Writes the end tag of the root element, which marks the file as complete. Calling this method more than once
+         * has no effect.
+         */
+        void finish() throws JAXBException {
+            if (finished) {
+                return;
+            }
+            try {
+                writer.write(formatted ? "\n</" : "</");
+                writer.write(resultList.rootName);
+                writer.write(formatted ? ">\n" : ">");
+            } catch (IOException exception) {
+                throw new JAXBException(exception);
+            }
+            finished = true;
+        }
+
+        @Override
+        public void close() throws JAXBException {
+            try {
+                writer.close();
+            } catch (IOException exception) {
+                throw new JAXBException(exception);
+            }
+        }
+    }
 }
@@ -0,0 +1,140 @@
+package net.florianschoppmann.issuetracking;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.ws.rs.ProcessingException;
+
+/**
+ * Executor for YouTrack requests that are sent one item at a time, such as issue and comment updates.
+ *
+ * <p>The requests are blocking JAX-RS invocations, so each runs on one of {@link Options#workers} threads. If a rate
+ * limit is given, requests are started at most at that rate, across all workers.
+ */
+final class UpdateExecutor implements AutoCloseable {
+    private final ExecutorService executorService;
+    private final long nanosPerRequest;
+    private long nextRequestNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param options options
+     */
+    UpdateExecutor(Options options) {
+        executorService = Executors.newFixedThreadPool(options.workers);
+        nanosPerRequest = options.maxRequestsPerSecond > 0
+            ? (long) (TimeUnit.SECONDS.toNanos(1) / options.maxRequestsPerSecond)
+            : 0;
+        nextRequestNanos = System.nanoTime();
+    }
+
+    /**
+     * Waits until the rate limit permits the next request.
+     */
+    private void acquirePermit() {
+        if (nanosPerRequest == 0) {
+            return;
+        }
+
+        long delayNanos;
+        synchronized (this) {
+            long nowNanos = System.nanoTime();
+            long requestNanos = Math.max(nowNanos, nextRequestNanos);
+            nextRequestNanos = requestNanos + nanosPerRequest;
+            delayNanos = requestNanos - nowNanos;
+        }
+        if (delayNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new ProcessingException("Interrupted while waiting for rate limit.", exception);
+            }
+        }
+    }
+
+    /**
+     * Applies the given request function to all given items concurrently, and returns the results in the order of the
+     * items.
+     *
+     * <p>This method returns only once all requests have completed. If any request failed, the exception of the first
+     * failed item is rethrown, with the exceptions of later items added as suppressed exceptions.
+     */
+    <T, R> List<R> map(List<T> items, Function<? super T, ? extends R> request) {
+        List<CompletableFuture<R>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                acquirePermit();
+                return request.apply(item);
+            }, executorService));
+        }
+
+        List<R> results = new ArrayList<>(items.size());
+        @Nullable RuntimeException exception = null;
+        for (CompletableFuture<R> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException completionException) {
+                @Nullable Throwable cause = completionException.getCause();
+                RuntimeException requestException = cause instanceof RuntimeException
+                    ? (RuntimeException) cause
+                    : new ProcessingException(cause);
+                if (exception == null) {
+                    exception = requestException;
+                } else {
+                    exception.addSuppressed(requestException);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdown();
+    }
+
+    /**
+     * Options for the update executor.
+     */
+    static final class Options {
+        private final int workers;
+        private final double maxRequestsPerSecond;
+
+        /**
+         * Constructor.
+         *
+         * @param workers maximum number of requests in flight
+         * @param maxRequestsPerSecond maximum number of requests started per second, or 0 for no limit
+         * @throws IllegalArgumentException if {@code workers} is less than 1, or if {@code maxRequestsPerSecond} is
+         *     negative or not a number
+         */
+        Options(int workers, double maxRequestsPerSecond) {
+            if (workers < 1) {
+                throw new IllegalArgumentException("Number of workers must be at least 1.");
+            } else if (!(maxRequestsPerSecond >= 0)) {
+                throw new IllegalArgumentException("Maximum number of requests per second must not be negative.");
+            }
+            this.workers = workers;
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+        }
+
+        /**
+         * Returns the maximum number of requests in flight.
+         */
+        int getWorkers() {
+            return workers;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package net.florianschoppmann.issuetracking;
+
+import net.florianschoppmann.issuetracking.youtrack.Attachments.Attachment;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Durable record of the attachments that have been uploaded to YouTrack, so that a rerun of an interrupted or failed
+ * import skips them.
+ *
+ * <p>The record is a text file with one line per uploaded attachment. A line consists of the issue key, the attachment
+ * name, the creation time, and the path of the attachment, each URL-encoded and separated by spaces. Each line is
+ * flushed as soon as the attachment has been uploaded. The file is only created once the first line is added.
+ */
+final class UploadedAttachments implements Closeable {
+    private final Path path;
+    private final String projectAbbrev;
+    private final Set<String> lines;
+    private @Nullable BufferedWriter writer;
+
+    private UploadedAttachments(Path path, String projectAbbrev, Set<String> lines) {
+        this.path = path;
+        this.projectAbbrev = projectAbbrev;
+        this.lines = lines;
+    }
+
+    /**
+     * Reads the record from the given file, if it exists.
+     *
+     * @param path path of the file
+     * @param projectAbbrev abbreviation of the YouTrack project that the attachments are imported into
+     * @throws IOException if an I/O error occurs
+     */
+    static UploadedAttachments read(Path path, String projectAbbrev) throws IOException {
+        Set<String> lines;
+        try (Stream<String> lineStream = Files.lines(path, StandardCharsets.UTF_8)) {
+            lines = lineStream.collect(Collectors.toCollection(HashSet::new));
+        } catch (NoSuchFileException ignored) {
+            lines = new HashSet<>();
+        }
+        return new UploadedAttachments(path, projectAbbrev, lines);
+    }
+
+    private static String encode(@Nullable Object value) {
+        return URLEncoder.encode(String.valueOf(value), StandardCharsets.UTF_8);
+    }
+
+    private String line(Attachment attachment) {
+        return String.join(" ", encode(projectAbbrev + '-' + attachment.taskNumberInProject),
+            encode(attachment.name), encode(attachment.created), encode(attachment.path));
+    }
+
+    /**
+     * Returns whether the given attachment has been uploaded before.
+     */
+    boolean contains(Attachment attachment) {
+        return lines.contains(line(attachment));
+    }
+
+    /**
+     * Records that the given attachment has been uploaded.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void add(Attachment attachment) throws IOException {
+        String line = line(attachment);
+        if (!lines.add(line)) {
+            return;
+        }
+
+        @Nullable BufferedWriter currentWriter = writer;
+        if (currentWriter == null) {
+            currentWriter = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+            writer = currentWriter;
+        }
+        currentWriter.write(line);
+        currentWriter.newLine();
+        currentWriter.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+}
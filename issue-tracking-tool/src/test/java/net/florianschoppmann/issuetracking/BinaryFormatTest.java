@@ -0,0 +1,183 @@
+package net.florianschoppmann.issuetracking;
+
+import net.florianschoppmann.issuetracking.youtrack.Attachments.Attachment;
+import net.florianschoppmann.issuetracking.youtrack.Events.CustomFieldEvent;
+import net.florianschoppmann.issuetracking.youtrack.Events.Event;
+import net.florianschoppmann.issuetracking.youtrack.restold.Issues;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class BinaryFormatTest {
+    /**
+     * Non-ASCII text, including characters outside of the Basic Multilingual Plane.
+     */
+    private static final String NON_ASCII = "\u00e4\u00f6\u00fc \u201cquoted\u201d \u4e2d\u6587 \ud83d\ude00";
+
+    private Path tempDir;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private <E> Path write(String rootName, BinaryFormat.Codec<E> codec, List<E> elements) throws IOException {
+        Path path = tempDir.resolve(rootName + ".bin");
+        try (BinaryFormat.RecordWriter<E> writer = BinaryFormat.newRecordWriter(path, rootName, codec)) {
+            for (E element : elements) {
+                writer.write(element);
+            }
+            writer.finish();
+        }
+        return path;
+    }
+
+    private static <E> List<E> read(Path path, String rootName, BinaryFormat.Codec<E> codec, long windowBytes)
+            throws IOException {
+        try (BinaryFormat.RecordReader<E> reader
+                = BinaryFormat.newRecordReader(path, rootName, codec, windowBytes)) {
+            return StreamSupport.stream(reader, false).collect(Collectors.toList());
+        }
+    }
+
+    private static <E> List<E> read(Path path, String rootName, BinaryFormat.Codec<E> codec) throws IOException {
+        try (Stream<E> records = BinaryFormat.streamRecords(path, rootName, codec)) {
+            return records.collect(Collectors.toList());
+        }
+    }
+
+    private static List<Issues.Issue> issues() {
+        List<Issues.Issue> issues = new ArrayList<>();
+        issues.add(SerializationTest.issue(1));
+
+        Issues.Issue issue = SerializationTest.issue(2);
+        issue.getField().get(1).getValue().set(0, NON_ASCII);
+        var emptyField = new Issues.Issue.Field();
+        emptyField.setName("tags");
+        issue.getField().add(emptyField);
+        Issues.Issue.Comment comment = issue.getComment().get(0);
+        comment.setMarkdown(NON_ASCII);
+        comment.setUpdated("3000");
+        // A comment whose attributes are all null
+        issue.getComment().add(new Issues.Issue.Comment());
+        issues.add(issue);
+
+        issues.add(new Issues.Issue());
+        return issues;
+    }
+
+    @Test
+    public void issueRoundTrip() throws IOException {
+        Path path = write("issues", BinaryFormat.ISSUE_CODEC, issues());
+        Assert.assertTrue(BinaryFormat.isBinaryFile(path));
+        Assert.assertEquals(SerializationTest.toStrings(read(path, "issues", BinaryFormat.ISSUE_CODEC)),
+            SerializationTest.toStrings(issues()));
+    }
+
+    @Test
+    public void attachmentRoundTrip() throws IOException {
+        var attachment = new Attachment();
+        attachment.taskNumberInProject = 7;
+        attachment.authorLogin = "user";
+        attachment.created = Long.MIN_VALUE;
+        attachment.name = NON_ASCII;
+        attachment.path = "attachments/7/" + NON_ASCII;
+        attachment.link = "https://example.com/" + NON_ASCII;
+        List<Attachment> attachments = List.of(attachment, new Attachment());
+
+        Path path = write("attachments", BinaryFormat.ATTACHMENT_CODEC, attachments);
+        Assert.assertEquals(read(path, "attachments", BinaryFormat.ATTACHMENT_CODEC), attachments);
+    }
+
+    @Test
+    public void eventRoundTrip() throws IOException {
+        // Every third event has a null value for "removed"
+        List<Event> events = SerializationTest.events(10);
+        Path path = write("events", BinaryFormat.EVENT_CODEC, events);
+        Assert.assertEquals(read(path, "events", BinaryFormat.EVENT_CODEC), events);
+    }
+
+    @Test
+    public void emptyList() throws IOException {
+        Path path = write("events", BinaryFormat.EVENT_CODEC, List.of());
+        Assert.assertEquals(read(path, "events", BinaryFormat.EVENT_CODEC), List.of());
+    }
+
+    @Test
+    public void recordsAcrossWindowBoundaries() throws IOException {
+        List<Event> events = SerializationTest.events(500);
+        Path path = write("events", BinaryFormat.EVENT_CODEC, events);
+        // Instead of 64 MB, use windows so small that most records straddle a window boundary. Windows of 7 bytes are
+        // even smaller than the header and each record.
+        Assert.assertEquals(read(path, "events", BinaryFormat.EVENT_CODEC, 100), events);
+        Assert.assertEquals(read(path, "events", BinaryFormat.EVENT_CODEC, 7), events);
+    }
+
+    @Test
+    public void recordLargerThanWindow() throws IOException {
+        List<Event> events = SerializationTest.events(3);
+        ((CustomFieldEvent) events.get(1)).added = NON_ASCII.repeat(1000);
+        Path path = write("events", BinaryFormat.EVENT_CODEC, events);
+        Assert.assertEquals(read(path, "events", BinaryFormat.EVENT_CODEC, 1024), events);
+    }
+
+    @Test
+    public void truncatedFile() throws IOException {
+        Path path = write("events", BinaryFormat.EVENT_CODEC, SerializationTest.events(10));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        Assert.assertThrows(UncheckedIOException.class, () -> read(path, "events", BinaryFormat.EVENT_CODEC));
+    }
+
+    @Test
+    public void writerClosedAfterFailure() throws IOException {
+        Path path = tempDir.resolve("events.bin");
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            try (BinaryFormat.RecordWriter<Event> writer
+                    = BinaryFormat.newRecordWriter(path, "events", BinaryFormat.EVENT_CODEC)) {
+                for (Event event : SerializationTest.events(3)) {
+                    writer.write(event);
+                }
+                throw new IllegalStateException("Export failed.");
+            }
+        });
+        // The records written before the failure are readable, but the missing end marker is detected
+        try (Stream<Event> records = BinaryFormat.streamRecords(path, "events", BinaryFormat.EVENT_CODEC)) {
+            Iterator<Event> iterator = records.iterator();
+            for (int i = 0; i < 3; ++i) {
+                iterator.next();
+            }
+            UncheckedIOException exception = Assert.expectThrows(UncheckedIOException.class, iterator::hasNext);
+            Assert.assertTrue(exception.getMessage().contains("Unexpected end of file"), exception.getMessage());
+        }
+    }
+
+    @Test
+    public void unexpectedRootName() throws IOException {
+        Path path = write("events", BinaryFormat.EVENT_CODEC, SerializationTest.events(1));
+        Assert.assertThrows(IOException.class, () -> read(path, "issues", BinaryFormat.EVENT_CODEC));
+    }
+}
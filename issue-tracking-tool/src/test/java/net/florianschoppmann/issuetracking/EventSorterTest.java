@@ -0,0 +1,122 @@
+package net.florianschoppmann.issuetracking;
+
+import net.florianschoppmann.issuetracking.youtrack.Events.CustomFieldEvent;
+import net.florianschoppmann.issuetracking.youtrack.Events.Event;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class EventSorterTest {
+    private Path tempDir;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static CustomFieldEvent event(@Nullable Long numberInProject, @Nullable String field,
+            @Nullable Long timestamp, String added) {
+        var event = new CustomFieldEvent();
+        event.numberInProject = numberInProject;
+        event.field = field;
+        event.timestamp = timestamp;
+        event.author = "user";
+        event.added = added;
+        return event;
+    }
+
+    /**
+     * Returns random events with few distinct keys, so that many events compare equal. Each event has a distinct
+     * value of {@link CustomFieldEvent#added}, which makes the relative order of equal events observable.
+     */
+    private static List<Event> randomEvents(int numEvents) {
+        Random random = new Random(numEvents);
+        List<Event> events = new ArrayList<>(numEvents);
+        for (int i = 0; i < numEvents; ++i) {
+            events.add(event((long) random.nextInt(5), random.nextBoolean() ? "State" : "Assignee",
+                (long) random.nextInt(3), "value " + i));
+        }
+        return events;
+    }
+
+    private List<Event> sort(List<Event> events, int maxEventsInMemory) throws IOException {
+        Path target = tempDir.resolve("sorted.bin");
+        long numEvents = new EventSorter(tempDir, new EventSorter.Options(maxEventsInMemory))
+            .sort(events.iterator(), target);
+        Assert.assertEquals(numEvents, events.size());
+        try (Stream<Path> files = Files.list(tempDir)) {
+            Assert.assertEquals(files.collect(Collectors.toList()), List.of(target),
+                "Temporary runs must be deleted.");
+        }
+        try (Stream<Event> sorted = BinaryFormat.streamRecords(
+                target, Serialization.ResultList.EVENTS.getRootName(), BinaryFormat.EVENT_CODEC)) {
+            return sorted.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void order() throws IOException {
+        List<Event> events = List.of(
+            event(2L, "State", 1L, "a"),
+            event(1L, "State", 2L, "b"),
+            event(1L, "Assignee", 3L, "c"),
+            event(1L, "State", 1L, "d"),
+            event(null, "State", 1L, "e"),
+            event(1L, null, 1L, "f"),
+            event(1L, "State", null, "g")
+        );
+        List<String> added = sort(events, 100).stream()
+            .map(event -> ((CustomFieldEvent) event).added)
+            .collect(Collectors.toList());
+        Assert.assertEquals(added, List.of("e", "f", "c", "g", "d", "b", "a"));
+    }
+
+    @DataProvider
+    public Object[][] runs() {
+        return new Object[][] {
+            // numEvents, maxEventsInMemory
+            {0, 10},
+            {10, 10},
+            {11, 10},
+            {100, 7},
+            {1000, 1},
+        };
+    }
+
+    /**
+     * Verifies that the result is the same as that of the (stable) {@link List#sort(Comparator)}, whether all events
+     * fit into a single run or several runs need to be merged.
+     */
+    @Test(dataProvider = "runs")
+    public void sortIsStable(int numEvents, int maxEventsInMemory) throws IOException {
+        List<Event> events = randomEvents(numEvents);
+        List<Event> expected = new ArrayList<>(events);
+        expected.sort(EventSorter.EVENT_ORDER);
+        Assert.assertEquals(sort(events, maxEventsInMemory), expected);
+    }
+
+    @Test
+    public void invalidOptions() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> new EventSorter.Options(0));
+    }
+}
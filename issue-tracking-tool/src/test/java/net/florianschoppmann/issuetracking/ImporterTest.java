@@ -0,0 +1,396 @@
+package net.florianschoppmann.issuetracking;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.florianschoppmann.issuetracking.youtrack.Attachments.Attachment;
+import net.florianschoppmann.issuetracking.youtrack.CommentUpdates.CommentUpdate;
+import net.florianschoppmann.issuetracking.youtrack.IssueUpdates.IssueUpdate;
+import net.florianschoppmann.issuetracking.youtrack.YouTrackClient;
+import net.florianschoppmann.issuetracking.youtrack.rest.Issue;
+import net.florianschoppmann.issuetracking.youtrack.rest.IssueComment;
+import net.florianschoppmann.issuetracking.youtrack.rest.IssueTag;
+import net.florianschoppmann.issuetracking.youtrack.restold.ImportReport;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import javax.ws.rs.client.Client;
+
+public class ImporterTest {
+    private static final Pattern DESCRIPTION_PATTERN = Pattern.compile("\"description\"\\s*:\\s*\"([^\"]*)\"");
+    private static final Pattern TEXT_PATTERN = Pattern.compile("\"text\"\\s*:\\s*\"([^\"]*)\"");
+    private static final Pattern COMMENT_PATH_PATTERN = Pattern.compile(".*/([^/]+)/comments/([^/]+)");
+    private static final Pattern TAG_ID_PATTERN = Pattern.compile("tagid-");
+    private static final Pattern ISSUE_ID_QUERY_PATTERN = Pattern.compile("(?:^|&)query=issue id: ([^&]*)");
+    private static final int NUM_ISSUES_IN_PROJECT = 150;
+
+    private ExecutorService executorService;
+    private HttpServer httpServer;
+    private Client jaxrsClient;
+    private final AtomicInteger numUpdates = new AtomicInteger();
+    private final AtomicInteger numQueries = new AtomicInteger();
+    private final AtomicInteger numUploads = new AtomicInteger();
+    private Path attachmentBasePath;
+    private final Map<String, String> descriptions = new ConcurrentHashMap<>();
+    private final Map<String, Integer> numTags = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> commentTexts = new ConcurrentHashMap<>();
+    private volatile Set<String> ignoredDescriptions = Set.of();
+    private volatile Set<String> ignoredTags = Set.of();
+    private volatile Set<String> movedIssues = Set.of();
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] responseBytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, responseBytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(responseBytes);
+        }
+    }
+
+    /**
+     * Mock of the YouTrack issue update endpoint, which stores the description and the number of tags of the update
+     * (unless the issue key is in {@link #ignoredDescriptions} or {@link #ignoredTags}, respectively).
+     */
+    private void handleUpdate(HttpExchange exchange, String issueKey) throws IOException {
+        numUpdates.incrementAndGet();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Matcher descriptionMatcher = DESCRIPTION_PATTERN.matcher(body);
+        if (descriptionMatcher.find() && !ignoredDescriptions.contains(issueKey)) {
+            descriptions.put(issueKey, descriptionMatcher.group(1));
+        }
+        if (body.contains("\"tags\"") && !ignoredTags.contains(issueKey)) {
+            numTags.put(issueKey, (int) TAG_ID_PATTERN.matcher(body).results().count());
+        }
+        respond(exchange, "{\"id\":\"2-" + issueKey.substring(2) + "\"}");
+    }
+
+    /**
+     * Mock of the YouTrack comment update endpoint, which stores the text of the update.
+     */
+    private void handleCommentUpdate(HttpExchange exchange, String issueKey, String commentId) throws IOException {
+        numUpdates.incrementAndGet();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Matcher textMatcher = TEXT_PATTERN.matcher(body);
+        Assert.assertTrue(textMatcher.find());
+        commentTexts.computeIfAbsent(issueKey, key -> new ConcurrentHashMap<>()).put(commentId, textMatcher.group(1));
+        respond(exchange, "{\"id\":\"" + commentId + "\"}");
+    }
+
+    /**
+     * Mock of the YouTrack issue search endpoint, for {@code issue id:} queries. Only issues P-1 to
+     * P-{@value #NUM_ISSUES_IN_PROJECT} exist. Issues in {@link #movedIssues} are found by their previous key, but
+     * returned with key Q-n, as if they had been moved to project Q.
+     */
+    private void handleQuery(HttpExchange exchange) throws IOException {
+        numQueries.incrementAndGet();
+        String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8);
+        Matcher issueIdMatcher = ISSUE_ID_QUERY_PATTERN.matcher(query);
+        Assert.assertTrue(issueIdMatcher.find());
+        respond(exchange, Stream.of(issueIdMatcher.group(1).split(", "))
+            .filter(issueKey -> Integer.parseInt(issueKey.substring(2)) <= NUM_ISSUES_IN_PROJECT)
+            .map(issueKey -> {
+                String numberInProject = issueKey.substring(2);
+                StringBuilder issue = new StringBuilder("{\"id\":\"2-").append(numberInProject)
+                    .append("\",\"idReadable\":\"").append(movedIssues.contains(issueKey) ? "Q-" : "P-")
+                    .append(numberInProject).append('"');
+                @Nullable String description = descriptions.get(issueKey);
+                if (description != null) {
+                    issue.append(",\"description\":\"").append(description).append('"');
+                }
+                @Nullable Integer tags = numTags.get(issueKey);
+                if (tags != null) {
+                    issue.append(IntStream.range(0, tags)
+                        .mapToObj(i -> "{\"id\":\"tagid-" + i + "\"}")
+                        .collect(Collectors.joining(",", ",\"tags\":[", "]")));
+                }
+                @Nullable Map<String, String> comments = commentTexts.get(issueKey);
+                if (comments != null) {
+                    issue.append(comments.entrySet().stream()
+                        .map(entry -> "{\"id\":\"" + entry.getKey() + "\",\"text\":\"" + entry.getValue() + "\"}")
+                        .collect(Collectors.joining(",", ",\"comments\":[", "]")));
+                }
+                return issue.append('}').toString();
+            })
+            .collect(Collectors.joining(",", "[", "]")));
+    }
+
+    /**
+     * Mock of the YouTrack attachment import endpoint.
+     */
+    private void handleAttachmentImport(HttpExchange exchange) throws IOException {
+        numUploads.incrementAndGet();
+        exchange.getRequestBody().readAllBytes();
+        byte[] responseBytes
+            = "<importReport><item imported=\"true\"/></importReport>".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(200, responseBytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(responseBytes);
+        }
+    }
+
+    private void handleIssues(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Matcher commentPathMatcher = COMMENT_PATH_PATTERN.matcher(path);
+        if ("POST".equals(exchange.getRequestMethod()) && commentPathMatcher.matches()) {
+            handleCommentUpdate(exchange, commentPathMatcher.group(1), commentPathMatcher.group(2));
+        } else if ("POST".equals(exchange.getRequestMethod())) {
+            handleUpdate(exchange, path.substring(path.lastIndexOf('/') + 1));
+        } else {
+            handleQuery(exchange);
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        numUpdates.set(0);
+        numQueries.set(0);
+        numUploads.set(0);
+        descriptions.clear();
+        numTags.clear();
+        commentTexts.clear();
+        ignoredDescriptions = Set.of();
+        ignoredTags = Set.of();
+        movedIssues = Set.of();
+        executorService = Executors.newCachedThreadPool();
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        httpServer.setExecutor(executorService);
+        httpServer.createContext("/api/issues", this::handleIssues);
+        httpServer.createContext("/rest/import/", this::handleAttachmentImport);
+        httpServer.start();
+        jaxrsClient = Common.newJaxrsClient();
+        attachmentBasePath = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        jaxrsClient.close();
+        httpServer.stop(0);
+        executorService.shutdownNow();
+        try (Stream<Path> paths = Files.walk(attachmentBasePath)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private Importer importer(int workers) {
+        URI baseUri = URI.create(String.format("http://%s:%d/",
+            httpServer.getAddress().getHostString(), httpServer.getAddress().getPort()));
+        return new Importer(new YouTrackClient(jaxrsClient, baseUri, "token"), "P", attachmentBasePath, false,
+            new UpdateExecutor.Options(workers, 0));
+    }
+
+    private static IssueUpdate issueUpdate(int numberInProject, String description, String... tagNames) {
+        var issue = new Issue();
+        issue.description = description;
+        if (tagNames.length > 0) {
+            issue.tags = new ArrayList<>();
+            for (String tagName : tagNames) {
+                var tag = new IssueTag();
+                tag.name = tagName;
+                issue.tags.add(tag);
+            }
+        }
+        var issueUpdate = new IssueUpdate();
+        issueUpdate.issueKey = "P-" + numberInProject;
+        issueUpdate.issue = issue;
+        return issueUpdate;
+    }
+
+    private static SortedMap<String, IssueTag> availableTags() {
+        var tag = new IssueTag();
+        tag.id = "tagid-a";
+        tag.name = "a";
+        return new TreeMap<>(Map.of("a", tag));
+    }
+
+    private static List<String> failedItems(ImportReport report) {
+        return report.getItem().stream()
+            .filter(item -> !item.isImported())
+            .map(item -> item.getId() + ": " + item.getError().stream()
+                .map(ImportReport.Item.Error::getFieldName)
+                .collect(Collectors.joining(", ")))
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    public void updateIssuesReportsEachUpdate() {
+        List<IssueUpdate> issueUpdates = IntStream.rangeClosed(1, 100)
+            .mapToObj(numberInProject -> issueUpdate(numberInProject, "first " + numberInProject))
+            .collect(Collectors.toList());
+        // A second update of the same issue ends the chunk, so it is only sent once the first update was verified
+        issueUpdates.add(issueUpdate(3, "second"));
+        issueUpdates.add(issueUpdate(200, "missing"));
+        ignoredDescriptions = Set.of("P-7");
+
+        var report = new ImportReport();
+        Assert.assertTrue(importer(4).updateIssues(issueUpdates, availableTags(), report));
+        Assert.assertEquals(
+            report.getItem().stream().map(ImportReport.Item::getId).collect(Collectors.toList()),
+            issueUpdates.stream().map(issueUpdate -> issueUpdate.issueKey).collect(Collectors.toList()));
+        Assert.assertEquals(failedItems(report), List.of("P-7: description", "P-200: idReadable"));
+        Assert.assertEquals(descriptions.get("P-3"), "second");
+        Assert.assertEquals(numUpdates.get(), 102);
+        // Chunk of 100 updates verified with 49 + 49 + 2 issues, and chunk of 2 updates verified with a single request
+        Assert.assertEquals(numQueries.get(), 4);
+    }
+
+    @Test
+    public void updateMovedIssues() {
+        List<IssueUpdate> issueUpdates = List.of(
+            issueUpdate(1, "one", "a"),
+            issueUpdate(2, "two"),
+            issueUpdate(3, "three")
+        );
+        movedIssues = Set.of("P-1", "P-2");
+        ignoredDescriptions = Set.of("P-2");
+
+        // Moved issues are verified, even though they have a new key.
+        var report = new ImportReport();
+        Assert.assertTrue(importer(2).updateIssues(issueUpdates, availableTags(), report));
+        Assert.assertEquals(failedItems(report), List.of("P-2: description"));
+    }
+
+    private static CommentUpdate commentUpdate(int numberInProject, String commentId, String text) {
+        var issueComment = new IssueComment();
+        issueComment.text = text;
+        var commentUpdate = new CommentUpdate();
+        commentUpdate.issueKey = "P-" + numberInProject;
+        commentUpdate.commentId = commentId;
+        commentUpdate.issueComment = issueComment;
+        return commentUpdate;
+    }
+
+    @Test
+    public void updateCommentsOfMovedIssues() {
+        List<CommentUpdate> commentUpdates = List.of(
+            commentUpdate(1, "4-1", "first"),
+            commentUpdate(1, "4-2", "second"),
+            commentUpdate(2, "4-3", "third"),
+            commentUpdate(200, "4-4", "missing")
+        );
+        movedIssues = Set.of("P-1");
+
+        var report = new ImportReport();
+        importer(2).updateComments(commentUpdates, report);
+        Assert.assertEquals(
+            report.getItem().stream().map(ImportReport.Item::getId).collect(Collectors.toList()),
+            List.of("P-1/4-1", "P-1/4-2", "P-2/4-3", "P-200/4-4"));
+        Assert.assertEquals(failedItems(report), List.of("P-200/4-4: id"));
+        Assert.assertEquals(numUpdates.get(), 4);
+    }
+
+    @Test
+    public void updateIssuesStopsAfterFailedTagUpdate() {
+        List<IssueUpdate> issueUpdates = List.of(
+            issueUpdate(1, "one"),
+            issueUpdate(2, "two", "a"),
+            issueUpdate(3, "three", "a"),
+            issueUpdate(4, "four"),
+            issueUpdate(5, "five", "a")
+        );
+        ignoredTags = Set.of("P-3");
+
+        var report = new ImportReport();
+        // With 2 workers, a chunk contains at most 2 updates with tags, so the chunk ends after P-3.
+        Assert.assertFalse(importer(2).updateIssues(issueUpdates, availableTags(), report));
+        Assert.assertEquals(report.getItem().size(), 3);
+        Assert.assertEquals(failedItems(report), List.of("P-3: tags"));
+        Assert.assertEquals(numUpdates.get(), 3);
+        Assert.assertEquals(descriptions.keySet(), Set.of("P-1", "P-2", "P-3"));
+    }
+
+    private static Attachment attachment(int taskNumberInProject, String name, String path) {
+        var attachment = new Attachment();
+        attachment.taskNumberInProject = taskNumberInProject;
+        attachment.authorLogin = "user";
+        attachment.name = name;
+        attachment.path = path;
+        attachment.created = 0L;
+        return attachment;
+    }
+
+    @Test
+    public void importAttachmentsRerun() throws IOException {
+        Files.createDirectories(attachmentBasePath.resolve("a"));
+        Files.createDirectories(attachmentBasePath.resolve("b"));
+        Files.writeString(attachmentBasePath.resolve("a/file"), "content");
+        Files.createLink(attachmentBasePath.resolve("b/file"), attachmentBasePath.resolve("a/file"));
+        Files.writeString(attachmentBasePath.resolve("b/other"), "other content");
+        List<Attachment> attachments = List.of(
+            attachment(1, "file.txt", "a/file"),
+            // Same issue, name, and file as the first attachment
+            attachment(1, "file.txt", "b/file"),
+            attachment(1, "other.txt", "b/other"),
+            // Same file, but a different issue
+            attachment(2, "file.txt", "b/file")
+        );
+
+        importer(1).importAttachments(attachments);
+        Assert.assertEquals(numUploads.get(), 3);
+
+        // All attachments were recorded, including the one whose upload was shared with the first attachment
+        numUploads.set(0);
+        importer(1).importAttachments(attachments);
+        Assert.assertEquals(numUploads.get(), 0);
+    }
+
+    private static List<List<String>> chunks(List<String> items, int maxCriticalItems, int maxChunks) {
+        List<List<String>> chunks = new ArrayList<>();
+        boolean allChunks = Importer.forEachChunk(items, item -> item.charAt(0), item -> item.endsWith("!"),
+            maxCriticalItems, chunk -> {
+                chunks.add(new ArrayList<>(chunk));
+                return chunks.size() < maxChunks;
+            });
+        Assert.assertEquals(allChunks, chunks.size() < maxChunks);
+        return chunks;
+    }
+
+    @Test
+    public void forEachChunk() {
+        // Chunks are split before an item whose key (the first letter) is already in the chunk
+        Assert.assertEquals(chunks(List.of("a1", "b1", "a2", "c1", "b2", "a3"), 10, 10),
+            List.of(List.of("a1", "b1"), List.of("a2", "c1", "b2"), List.of("a3")));
+        // Chunks are split after the given number of critical items
+        Assert.assertEquals(chunks(List.of("a!", "b", "c!", "d", "e!", "f"), 2, 10),
+            List.of(List.of("a!", "b", "c!"), List.of("d", "e!", "f")));
+        // No further chunks once the function returns false
+        Assert.assertEquals(chunks(List.of("a1", "a2", "a3"), 10, 2), List.of(List.of("a1"), List.of("a2")));
+        Assert.assertEquals(chunks(List.of(), 10, 10), List.of());
+
+        // Chunks have at most 500 items
+        List<String> items = IntStream.range(0, 1001).mapToObj(i -> i + "-" + i).collect(Collectors.toList());
+        List<Integer> chunkSizes = new ArrayList<>();
+        Assert.assertTrue(Importer.forEachChunk(items, item -> item, item -> false, 1, chunk -> {
+            chunkSizes.add(chunk.size());
+            return true;
+        }));
+        Assert.assertEquals(chunkSizes, List.of(500, 500, 1));
+    }
+}
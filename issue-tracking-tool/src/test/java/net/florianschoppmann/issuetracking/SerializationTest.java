@@ -0,0 +1,233 @@
+package net.florianschoppmann.issuetracking;
+
+import net.florianschoppmann.issuetracking.Serialization.ResultList;
+import net.florianschoppmann.issuetracking.youtrack.Events;
+import net.florianschoppmann.issuetracking.youtrack.Events.CustomFieldEvent;
+import net.florianschoppmann.issuetracking.youtrack.Events.Event;
+import net.florianschoppmann.issuetracking.youtrack.restold.Issues;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.xml.bind.DataBindingException;
+import javax.xml.bind.JAXBException;
+
+public class SerializationTest {
+    private Path tempDir;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    static List<Event> events(int numEvents) {
+        List<Event> events = new ArrayList<>(numEvents);
+        for (int i = 0; i < numEvents; ++i) {
+            var event = new CustomFieldEvent();
+            event.timestamp = 1000L * i;
+            event.numberInProject = (long) (i / 2 + 1);
+            event.field = "State";
+            event.author = "user" + i;
+            event.added = "Fixed <" + i + "> & \u201cclosed\u201d";
+            event.removed = i % 3 == 0
+                ? null
+                : "Open";
+            events.add(event);
+        }
+        return events;
+    }
+
+    static Issues.Issue issue(int numberInProject) {
+        var issue = new Issues.Issue();
+        for (String[] nameAndValue : new String[][] {
+                { "numberInProject", Integer.toString(numberInProject) },
+                { "summary", "Summary \u00e4\u00f6\u00fc " + numberInProject }
+        }) {
+            var field = new Issues.Issue.Field();
+            field.setName(nameAndValue[0]);
+            field.getValue().add(nameAndValue[1]);
+            issue.getField().add(field);
+        }
+        var comment = new Issues.Issue.Comment();
+        comment.setAuthor("user");
+        comment.setText("Comment\nwith two lines");
+        comment.setCreated(Long.toString(numberInProject * 1000L));
+        issue.getComment().add(comment);
+        return issue;
+    }
+
+    /**
+     * Returns a string representation of the given issues, since the generated classes do not override equals().
+     */
+    static List<String> toStrings(List<Issues.Issue> issues) {
+        return issues.stream()
+            .map(issue -> issue.getField().stream()
+                    .map(field -> field.getName() + '=' + field.getValue())
+                    .collect(Collectors.joining(", "))
+                + issue.getComment().stream()
+                    .map(comment -> comment.getAuthor() + '@' + comment.getCreated() + '/' + comment.getUpdated()
+                        + ':' + comment.getText() + '/' + comment.getMarkdown())
+                    .collect(Collectors.joining(", ", " [", "]")))
+            .collect(Collectors.toList());
+    }
+
+    private static List<Issues.Issue> issues(int numIssues) {
+        List<Issues.Issue> issues = new ArrayList<>(numIssues);
+        for (int i = 1; i <= numIssues; ++i) {
+            issues.add(issue(i));
+        }
+        return issues;
+    }
+
+    private static <E> List<E> readAll(Serialization serialization, ResultList<E> resultList) throws JAXBException {
+        try (Stream<E> stream = serialization.streamResultXml(resultList)) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    @DataProvider
+    public Object[][] sizes() {
+        return new Object[][] { { 0, true }, { 1, true }, { 5, true }, { 0, false }, { 5, false } };
+    }
+
+    @Test(dataProvider = "sizes")
+    public void streamedEventsMatchMarshaled(int numEvents, boolean formatted) throws JAXBException {
+        var serialization = Serialization.defaultSerialization(tempDir, Serialization.Compression.NONE, formatted);
+        List<Event> events = events(numEvents);
+
+        serialization.writeResultXml(ResultList.EVENTS, events);
+        Assert.assertEquals(serialization.readResultXml(Events.class).events, events);
+        Assert.assertEquals(readAll(serialization, ResultList.EVENTS), events);
+
+        var root = new Events();
+        root.events.addAll(events);
+        serialization.writeResultXml(root);
+        Assert.assertEquals(readAll(serialization, ResultList.EVENTS), events);
+    }
+
+    @Test(dataProvider = "sizes")
+    public void streamedIssuesMatchMarshaled(int numIssues, boolean formatted) throws JAXBException {
+        var serialization = Serialization.defaultSerialization(tempDir, Serialization.Compression.NONE, formatted);
+        List<String> expected = toStrings(issues(numIssues));
+
+        try (Serialization.ResultListWriter<Issues.Issue> writer
+                = serialization.openResultXmlWriter(ResultList.ISSUES)) {
+            for (Issues.Issue issue : issues(numIssues)) {
+                writer.write(issue);
+            }
+            writer.finish();
+        }
+        Assert.assertEquals(toStrings(serialization.readResultXml(Issues.class).getIssue()), expected);
+        Assert.assertEquals(toStrings(readAll(serialization, ResultList.ISSUES)), expected);
+
+        var root = new Issues();
+        root.getIssue().addAll(issues(numIssues));
+        serialization.writeResultXml(root);
+        Assert.assertEquals(toStrings(readAll(serialization, ResultList.ISSUES)), expected);
+    }
+
+    @Test(dataProvider = "compressions")
+    public void abortedWriteIsIncomplete(Serialization.Compression compression, String fileSuffix, byte[] magicNumber)
+            throws JAXBException {
+        var serialization = Serialization.defaultSerialization(tempDir, compression, true);
+        Iterable<Issues.Issue> failingIssues = () -> Stream.iterate(1, i -> i + 1)
+            .map(i -> {
+                if (i > 3) {
+                    throw new IllegalStateException("Export failed.");
+                }
+                return issue(i);
+            })
+            .iterator();
+        Assert.assertThrows(IllegalStateException.class,
+            () -> serialization.writeResultXml(ResultList.ISSUES, failingIssues));
+        Assert.assertTrue(Files.exists(tempDir.resolve("Issues.xml" + fileSuffix)));
+
+        // Neither way of reading the file must silently return the issues written before the failure
+        Assert.assertThrows(JAXBException.class, () -> serialization.readResultXml(Issues.class));
+        Assert.assertThrows(DataBindingException.class, () -> readAll(serialization, ResultList.ISSUES));
+    }
+
+    @DataProvider
+    public Object[][] compressions() {
+        return new Object[][] {
+            { Serialization.Compression.NONE, "", new byte[] { '<', '?', 'x', 'm' } },
+            { Serialization.Compression.GZIP, ".gz", new byte[] { 0x1f, (byte) 0x8b } },
+            { Serialization.Compression.ZSTD, ".zst", new byte[] { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd } }
+        };
+    }
+
+    @Test(dataProvider = "compressions")
+    public void compressionRoundTrip(Serialization.Compression compression, String fileSuffix, byte[] magicNumber)
+            throws IOException, JAXBException {
+        List<Event> events = events(20);
+        Serialization.defaultSerialization(tempDir, compression, true).writeResultXml(ResultList.EVENTS, events);
+        Path path = tempDir.resolve("Events.xml" + fileSuffix);
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            Assert.assertEquals(inputStream.readNBytes(magicNumber.length), magicNumber);
+        }
+
+        // Reading does not depend on the compression of the serialization, and not even on the file-name suffix
+        var serialization = Serialization.defaultSerialization(tempDir);
+        Assert.assertEquals(serialization.readResultXml(Events.class).events, events);
+        Assert.assertEquals(readAll(serialization, ResultList.EVENTS), events);
+        if (!fileSuffix.isEmpty()) {
+            Files.move(path, tempDir.resolve("Events.xml"));
+            Assert.assertEquals(readAll(serialization, ResultList.EVENTS), events);
+        }
+    }
+
+    @Test
+    public void readsMostRecentlyModifiedVariant() throws IOException, JAXBException {
+        var gzipSerialization = Serialization.defaultSerialization(tempDir, Serialization.Compression.GZIP, true);
+        gzipSerialization.writeResultXml(ResultList.EVENTS, events(2));
+        // Leave behind an uncompressed variant, as if the file had been decompressed manually
+        Path otherDir = Files.createDirectory(tempDir.resolve("other"));
+        Serialization.defaultSerialization(otherDir).writeResultXml(ResultList.EVENTS, events(3));
+        Path plainPath = Files.move(otherDir.resolve("Events.xml"), tempDir.resolve("Events.xml"));
+        Path gzipPath = tempDir.resolve("Events.xml.gz");
+
+        var serialization = Serialization.defaultSerialization(tempDir);
+        Files.setLastModifiedTime(plainPath, FileTime.fromMillis(1_000_000_000_000L));
+        Files.setLastModifiedTime(gzipPath, FileTime.fromMillis(1_000_000_001_000L));
+        Assert.assertEquals(readAll(serialization, ResultList.EVENTS), events(2));
+        Files.setLastModifiedTime(plainPath, FileTime.fromMillis(1_000_000_002_000L));
+        Assert.assertEquals(readAll(serialization, ResultList.EVENTS), events(3));
+
+        // Writing removes the variants with a different suffix
+        gzipSerialization.writeResultXml(ResultList.EVENTS, events(4));
+        Assert.assertFalse(Files.exists(plainPath));
+        Assert.assertEquals(readAll(serialization, ResultList.EVENTS), events(4));
+    }
+
+    @Test
+    public void nonFlushingWriterOnlyFlushesWhenClosed() throws IOException {
+        var stringWriter = new StringWriter();
+        try (var writer = new Serialization.NonFlushingWriter(new BufferedWriter(stringWriter))) {
+            writer.write("fragment");
+            writer.flush();
+            Assert.assertEquals(stringWriter.toString(), "");
+        }
+        Assert.assertEquals(stringWriter.toString(), "fragment");
+    }
+}
@@ -0,0 +1,88 @@
+package net.florianschoppmann.issuetracking;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class UpdateExecutorTest {
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    @Test
+    public void mapKeepsOrder() {
+        List<Integer> items = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+        AtomicInteger requestsInFlight = new AtomicInteger();
+        AtomicInteger maxRequestsInFlight = new AtomicInteger();
+        List<String> results;
+        try (UpdateExecutor executor = new UpdateExecutor(new UpdateExecutor.Options(4, 0))) {
+            results = executor.map(items, item -> {
+                maxRequestsInFlight.accumulateAndGet(requestsInFlight.incrementAndGet(), Math::max);
+                // Later items complete first
+                sleep(2L * (items.size() - item));
+                requestsInFlight.decrementAndGet();
+                return "result " + item;
+            });
+        }
+        Assert.assertEquals(results, items.stream().map(item -> "result " + item).collect(Collectors.toList()));
+        Assert.assertEquals(maxRequestsInFlight.get(), 4);
+    }
+
+    @Test
+    public void mapRethrowsFirstFailure() {
+        List<Integer> items = IntStream.range(0, 10).boxed().collect(Collectors.toList());
+        List<Integer> completed = Collections.synchronizedList(new ArrayList<>());
+        IllegalStateException exception;
+        try (UpdateExecutor executor = new UpdateExecutor(new UpdateExecutor.Options(3, 0))) {
+            exception = Assert.expectThrows(IllegalStateException.class, () -> executor.map(items, item -> {
+                if (item % 4 == 1) {
+                    // Item 1 fails last, but is the first failed item
+                    sleep(item == 1 ? 50 : 0);
+                    throw new IllegalStateException("item " + item);
+                }
+                completed.add(item);
+                return item;
+            }));
+        }
+        Assert.assertEquals(exception.getMessage(), "item 1");
+        Assert.assertEquals(
+            List.of(exception.getSuppressed()).stream().map(Throwable::getMessage).collect(Collectors.toList()),
+            List.of("item 5", "item 9"));
+        // All other requests were still sent
+        Assert.assertEquals(completed.stream().sorted().collect(Collectors.toList()), List.of(0, 2, 3, 4, 6, 7, 8));
+    }
+
+    @Test
+    public void rateLimit() {
+        List<Long> startNanos = Collections.synchronizedList(new ArrayList<>());
+        try (UpdateExecutor executor = new UpdateExecutor(new UpdateExecutor.Options(4, 50))) {
+            executor.map(IntStream.range(0, 11).boxed().collect(Collectors.toList()), item -> {
+                startNanos.add(System.nanoTime());
+                return item;
+            });
+        }
+        Collections.sort(startNanos);
+        // At 50 requests per second, the 11 requests are started at least 10 * 20 ms apart, across all workers
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(startNanos.get(10) - startNanos.get(0));
+        Assert.assertTrue(elapsedMillis >= 190, String.format("Expected at least 190 ms, but got %d.", elapsedMillis));
+    }
+
+    @Test
+    public void invalidOptions() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> new UpdateExecutor.Options(0, 0));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new UpdateExecutor.Options(1, -1));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new UpdateExecutor.Options(1, Double.NaN));
+    }
+}
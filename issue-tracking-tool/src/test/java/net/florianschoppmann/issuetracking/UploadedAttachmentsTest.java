@@ -0,0 +1,89 @@
+package net.florianschoppmann.issuetracking;
+
+import net.florianschoppmann.issuetracking.youtrack.Attachments.Attachment;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class UploadedAttachmentsTest {
+    private Path tempDir;
+    private Path path;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+        path = tempDir.resolve("UploadedAttachments.txt");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static Attachment attachment(int taskNumberInProject, String name, String path) {
+        var attachment = new Attachment();
+        attachment.taskNumberInProject = taskNumberInProject;
+        attachment.authorLogin = "user";
+        attachment.name = name;
+        attachment.path = path;
+        attachment.created = 1_500_000_000_000L;
+        return attachment;
+    }
+
+    @Test
+    public void addAndReread() throws IOException {
+        Attachment withSpaces = attachment(1, "meeting notes (final).txt", "attachments/1/meeting notes.txt");
+        Attachment plain = attachment(2, "file.txt", "attachments/2/file.txt");
+
+        try (UploadedAttachments uploaded = UploadedAttachments.read(path, "P")) {
+            Assert.assertFalse(uploaded.contains(withSpaces));
+            // The file is only created once the first attachment is added
+            Assert.assertFalse(Files.exists(path));
+
+            uploaded.add(withSpaces);
+            uploaded.add(withSpaces);
+            Assert.assertTrue(uploaded.contains(withSpaces));
+            Assert.assertFalse(uploaded.contains(plain));
+            // Each line is flushed immediately, and an attachment is only recorded once
+            Assert.assertEquals(Files.readAllLines(path).size(), 1);
+        }
+
+        try (UploadedAttachments uploaded = UploadedAttachments.read(path, "P")) {
+            Assert.assertTrue(uploaded.contains(withSpaces));
+            Assert.assertFalse(uploaded.contains(plain));
+            uploaded.add(plain);
+        }
+
+        try (UploadedAttachments uploaded = UploadedAttachments.read(path, "P")) {
+            Assert.assertTrue(uploaded.contains(withSpaces));
+            Assert.assertTrue(uploaded.contains(plain));
+            Assert.assertEquals(Files.readAllLines(path).size(), 2);
+        }
+
+        // The record refers to issues of the given project
+        try (UploadedAttachments uploaded = UploadedAttachments.read(path, "Q")) {
+            Assert.assertFalse(uploaded.contains(withSpaces));
+        }
+    }
+
+    @Test
+    public void sameAttachmentCreatedAtDifferentTimes() throws IOException {
+        Attachment attachment = attachment(1, "file.txt", "attachments/1/file.txt");
+        Attachment later = attachment(1, "file.txt", "attachments/1/file.txt");
+        later.created = attachment.created + 1;
+
+        try (UploadedAttachments uploaded = UploadedAttachments.read(path, "P")) {
+            uploaded.add(attachment);
+            Assert.assertFalse(uploaded.contains(later));
+        }
+    }
+}
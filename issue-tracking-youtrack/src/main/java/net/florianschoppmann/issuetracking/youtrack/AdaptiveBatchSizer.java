@@ -0,0 +1,148 @@
+package net.florianschoppmann.issuetracking.youtrack;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Chooses the number of items per import batch.
+ *
+ * <p>The first batch has {@link #INITIAL_BATCH_SIZE} items. Afterwards, batches are sized so that their marshaled
+ * size is close to a target size in bytes. The target starts at the marshaled size of the first batch and grows while
+ * YouTrack responds quickly. It shrinks if responses are slow, or if a batch is rejected as too large or times out. If
+ * a batch is rejected as too large, the target also never grows back to the size of the rejected batch.
+ *
+ * <p>Since the marshaled size of an item is only known after the fact, batches are composed using estimated item sizes.
+ * The ratio between actual and estimated size is learned from completed batches.
+ *
+ * <p>Instances of this class are not thread-safe.
+ */
+final class AdaptiveBatchSizer {
+    static final int INITIAL_BATCH_SIZE = 50;
+    static final int MAX_BATCH_SIZE = 1000;
+    private static final long MIN_TARGET_BYTES = 4L * 1024;
+    private static final long MAX_TARGET_BYTES = 8L * 1024 * 1024;
+    private static final long FAST_RESPONSE_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long SLOW_RESPONSE_NANOS = TimeUnit.SECONDS.toNanos(15);
+    private static final double GROWTH_FACTOR = 1.5;
+
+    private final boolean adaptive;
+
+    /**
+     * Target marshaled size of a batch in bytes, or 0 if no batch has completed yet.
+     */
+    private long targetBytes;
+
+    /**
+     * Upper bound for {@link #targetBytes}.
+     */
+    private long maxTargetBytes = MAX_TARGET_BYTES;
+
+    /**
+     * Exponentially weighted average of the ratio between marshaled and estimated size.
+     */
+    private double marshaledPerEstimatedByte = 1;
+
+    /**
+     * Constructor.
+     *
+     * @param adaptive whether batch sizes are adjusted at all; if false, every batch has {@link #INITIAL_BATCH_SIZE}
+     *     items
+     */
+    AdaptiveBatchSizer(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Returns the (exclusive) end index of the next batch.
+     *
+     * @param start index of the first item of the next batch
+     * @param end index one past the last item that may be included
+     * @param estimatedItemBytes function that returns the estimated marshaled size of the item with the given index
+     * @return index greater than {@code start} and at most {@code end}
+     */
+    int batchEnd(int start, int end, IntToLongFunction estimatedItemBytes) {
+        if (!adaptive || targetBytes == 0) {
+            return Math.min(end, start + INITIAL_BATCH_SIZE);
+        }
+
+        double estimatedBudget = targetBytes / marshaledPerEstimatedByte;
+        int maxEnd = Math.min(end, start + MAX_BATCH_SIZE);
+        long estimatedBytes = estimatedItemBytes.applyAsLong(start);
+        int batchEnd = start + 1;
+        while (batchEnd < maxEnd) {
+            estimatedBytes += estimatedItemBytes.applyAsLong(batchEnd);
+            if (estimatedBytes > estimatedBudget) {
+                break;
+            }
+            ++batchEnd;
+        }
+        return batchEnd;
+    }
+
+    /**
+     * Takes note of a batch that was imported successfully.
+     *
+     * @param estimatedBytes sum of the estimated sizes of the items in the batch
+     * @param marshaledBytes number of bytes in the request body
+     * @param latencyNanos time between sending the request and receiving the response
+     */
+    void batchCompleted(long estimatedBytes, long marshaledBytes, long latencyNanos) {
+        if (!adaptive || estimatedBytes <= 0 || marshaledBytes <= 0) {
+            return;
+        }
+
+        double ratio = (double) marshaledBytes / estimatedBytes;
+        if (targetBytes == 0) {
+            marshaledPerEstimatedByte = ratio;
+            targetBytes = marshaledBytes;
+        } else {
+            marshaledPerEstimatedByte = (marshaledPerEstimatedByte + ratio) / 2;
+        }
+
+        if (latencyNanos < FAST_RESPONSE_NANOS) {
+            targetBytes = Math.min(maxTargetBytes, Math.max(targetBytes, (long) (marshaledBytes * GROWTH_FACTOR)));
+        } else if (latencyNanos > SLOW_RESPONSE_NANOS) {
+            targetBytes = Math.max(MIN_TARGET_BYTES, Math.min(targetBytes, marshaledBytes) / 2);
+        }
+    }
+
+    /**
+     * Takes note of a batch that was rejected as too large.
+     *
+     * <p>The target size is at least halved, so that the items of the batch are sent in smaller batches afterwards.
+     *
+     * @param estimatedBytes sum of the estimated sizes of the items in the batch
+     */
+    void batchTooLarge(long estimatedBytes) {
+        long batchBytes = halveTarget(estimatedBytes);
+        // Stay clear of the size of the rejected batch, since item sizes are only estimates.
+        maxTargetBytes = Math.max(targetBytes, Math.min(maxTargetBytes, batchBytes * 3 / 4));
+    }
+
+    /**
+     * Takes note of a batch whose import timed out.
+     *
+     * <p>The target size is at least halved, but not below a minimum. Unlike after {@link #batchTooLarge(long)}, it
+     * may grow again once responses are fast.
+     *
+     * @param estimatedBytes sum of the estimated sizes of the items in the batch
+     */
+    void batchTimedOut(long estimatedBytes) {
+        if (adaptive) {
+            halveTarget(estimatedBytes);
+        }
+    }
+
+    /**
+     * Sets the target size to at most half the (estimated) marshaled size of the given batch, but not below
+     * {@link #MIN_TARGET_BYTES}, and returns the estimated marshaled size of the batch.
+     */
+    private long halveTarget(long estimatedBytes) {
+        long batchBytes = (long) (estimatedBytes * marshaledPerEstimatedByte);
+        long previousTargetBytes = targetBytes == 0
+            ? batchBytes
+            : Math.min(targetBytes, batchBytes);
+        targetBytes = Math.max(MIN_TARGET_BYTES, previousTargetBytes / 2);
+        return batchBytes;
+    }
+}
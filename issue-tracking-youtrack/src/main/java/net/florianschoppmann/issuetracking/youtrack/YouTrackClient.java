@@ -4,10 +4,12 @@ import static net.florianschoppmann.issuetracking.util.StringNode.node;
 import static net.florianschoppmann.issuetracking.util.StringNode.nodeOfNodes;
 import static net.florianschoppmann.issuetracking.util.StringNode.nodeOfStrings;
 import static net.florianschoppmann.issuetracking.util.StringNode.rootOfNodes;
+import static net.florianschoppmann.issuetracking.util.StringNode.rootOfStrings;
 
 import net.florianschoppmann.issuetracking.util.StringNode;
 import net.florianschoppmann.issuetracking.youtrack.Attachments.Attachment;
 import net.florianschoppmann.issuetracking.youtrack.rest.Issue;
+import net.florianschoppmann.issuetracking.youtrack.rest.IssueAttachment;
 import net.florianschoppmann.issuetracking.youtrack.rest.IssueComment;
 import net.florianschoppmann.issuetracking.youtrack.rest.IssueTag;
 import net.florianschoppmann.issuetracking.youtrack.rest.Project;
@@ -20,22 +22,52 @@ import net.florianschoppmann.issuetracking.youtrack.restold.Search;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.glassfish.jersey.media.multipart.MultiPart;
 import org.glassfish.jersey.media.multipart.file.FileDataBodyPart;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TreeMap;
-import java.util.function.BiFunction;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Client;
@@ -47,71 +79,456 @@ import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
 
 public final class YouTrackClient {
     private static final int BATCH_SIZE = 50;
 
+    /**
+     * Maximum number of keys for which {@link #getIssuesByKey(Collection, StringNode)} sends a single request.
+     *
+     * <p>With fewer keys than the page size, all matching issues fit into the first page, so there is no need to
+     * request a second (empty) page.
+     */
+    public static final int MAX_ISSUE_KEYS_PER_REQUEST = BATCH_SIZE - 1;
+
+    /**
+     * Maximum number of attempts for an attachment upload that fails transiently.
+     *
+     * @see #isUploadNotSent(Throwable)
+     * @see #isTransientUploadFailure(Throwable)
+     */
+    private static final int MAX_UPLOAD_ATTEMPTS = 5;
+
+    /**
+     * Delay before the first retry of an attachment upload. The delay doubles with each attempt.
+     */
+    private static final long UPLOAD_RETRY_DELAY_MILLIS = 1000;
+
+    /**
+     * HTTP status codes for which an attachment upload is sent again: 429 (Too Many Requests), 502 (Bad Gateway), 503
+     * (Service Unavailable), and 504 (Gateway Timeout).
+     */
+    private static final Set<Integer> TRANSIENT_UPLOAD_STATUS_CODES = Set.of(429, 502, 503, 504);
+
+    private static final StringNode ATTACHMENT_FIELDS = rootOfStrings("name", "size", "created");
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
     private final Client jaxrsClient;
     private final URI baseUri;
     private final String accessToken;
+    private final Options options;
 
     public YouTrackClient(Client jaxrsClient, URI baseUri, String accessToken) {
+        this(jaxrsClient, baseUri, accessToken, new Options(1, false, 1));
+    }
+
+    public YouTrackClient(Client jaxrsClient, URI baseUri, String accessToken, Options options) {
         this.jaxrsClient = Objects.requireNonNull(jaxrsClient);
         this.baseUri = Objects.requireNonNull(baseUri);
         this.accessToken = Objects.requireNonNull(accessToken);
+        this.options = Objects.requireNonNull(options);
+    }
+
+    public static final class Options {
+        private final int maxBatchesInFlight;
+        private final boolean adaptiveBatchSize;
+        private final int maxUploadsInFlight;
+
+        /**
+         * Constructor for options with adaptive batch sizes.
+         *
+         * @param maxBatchesInFlight Maximum number of import batches that are uploaded (or pages that are requested)
+         *     concurrently.
+         */
+        public Options(int maxBatchesInFlight) {
+            this(maxBatchesInFlight, true);
+        }
+
+        /**
+         * Constructor for options where the maximum number of attachment uploads in flight is the same as the maximum
+         * number of batches in flight.
+         *
+         * @see #Options(int, boolean, int)
+         */
+        public Options(int maxBatchesInFlight, boolean adaptiveBatchSize) {
+            this(maxBatchesInFlight, adaptiveBatchSize, maxBatchesInFlight);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param maxBatchesInFlight Maximum number of import batches that are uploaded concurrently, and maximum
+         *     number of pages that are requested concurrently when reading paginated lists. If 1, a batch is only sent
+         *     once the import report for the previous batch has been received. The merged import report does not
+         *     depend on this value.
+         * @param adaptiveBatchSize Whether the number of items per import batch is adapted to the marshaled size of
+         *     the items and to the response latency. If false, every batch has 50 items, and a batch that is rejected
+         *     as too large is not retried.
+         * @param maxUploadsInFlight Maximum number of attachments that are uploaded concurrently.
+         */
+        public Options(int maxBatchesInFlight, boolean adaptiveBatchSize, int maxUploadsInFlight) {
+            if (maxBatchesInFlight < 1) {
+                throw new IllegalArgumentException("Maximum number of batches in flight must be at least 1.");
+            } else if (maxUploadsInFlight < 1) {
+                throw new IllegalArgumentException("Maximum number of uploads in flight must be at least 1.");
+            }
+            this.maxBatchesInFlight = maxBatchesInFlight;
+            this.adaptiveBatchSize = adaptiveBatchSize;
+            this.maxUploadsInFlight = maxUploadsInFlight;
+        }
+    }
+
+    private static ImportReport importReportFromException(WebApplicationException exception) {
+        Response response = exception.getResponse();
+        if (response.getStatus() == Response.Status.BAD_REQUEST.getStatusCode()) {
+            // YouTrack 2018.4 returns this status code together with a detailed import report
+            return response.readEntity(ImportReport.class);
+        } else {
+            throw exception;
+        }
     }
 
     private static ImportReport invocationToImportReport(Invocation invocation) {
         try {
             return invocation.invoke(ImportReport.class);
         } catch (WebApplicationException exception) {
-            Response response = exception.getResponse();
-            if (response.getStatus() == Response.Status.BAD_REQUEST.getStatusCode()) {
-                // YouTrack 2018.4 returns this status code together with a detailed import report
-                return response.readEntity(ImportReport.class);
-            } else {
-                throw exception;
+            return importReportFromException(exception);
+        }
+    }
+
+    /**
+     * Returns whether the given exception indicates that the server rejected a batch as too large.
+     *
+     * <p>Only this rejection guarantees that none of the items were imported. After a timeout, on the other hand,
+     * YouTrack may still import the batch, so sending its items again could import them twice.
+     */
+    private static boolean isBatchTooLarge(@Nullable Throwable exception) {
+        return exception instanceof WebApplicationException
+            && ((WebApplicationException) exception).getResponse().getStatus()
+                == Response.Status.REQUEST_ENTITY_TOO_LARGE.getStatusCode();
+    }
+
+    /**
+     * Returns whether the given exception indicates that the import of a batch timed out: status 408 (Request
+     * Timeout), 504 (Gateway Timeout), or a socket timeout.
+     */
+    private static boolean isBatchTimedOut(@Nullable Throwable exception) {
+        if (exception instanceof WebApplicationException) {
+            int status = ((WebApplicationException) exception).getResponse().getStatus();
+            return status == Response.Status.REQUEST_TIMEOUT.getStatusCode()
+                || status == Response.Status.GATEWAY_TIMEOUT.getStatusCode();
+        }
+        return exception instanceof ProcessingException && exception.getCause() instanceof SocketTimeoutException;
+    }
+
+    /**
+     * Writer interceptor that counts the bytes of request bodies, for requests that have the
+     * {@link #BYTE_COUNT_PROPERTY} property set to an {@link AtomicLong}.
+     */
+    private static final class ByteCountingInterceptor implements WriterInterceptor {
+        private static final String BYTE_COUNT_PROPERTY = ByteCountingInterceptor.class.getName() + ".byteCount";
+
+        @Override
+        public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+            @Nullable Object byteCount = context.getProperty(BYTE_COUNT_PROPERTY);
+            if (byteCount instanceof AtomicLong) {
+                context.setOutputStream(new CountingOutputStream(context.getOutputStream(), (AtomicLong) byteCount));
             }
+            context.proceed();
         }
     }
 
-    private <T> ImportReport batchImport(URI targetUri, boolean dryRun, int size,
-            BiFunction<Integer, Integer, T> batchProvider) {
-        ImportReport importReport = new ImportReport();
-        int numBatches = (size - 1) / BATCH_SIZE + 1;
-        for (int i = 0; i < numBatches; ++i) {
-            int start = i * BATCH_SIZE;
-            int end = Math.min(size, start + BATCH_SIZE);
-            T batch = batchProvider.apply(start, end);
-            Invocation invocation = jaxrsClient.target(targetUri)
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final AtomicLong byteCount;
+
+        private CountingOutputStream(OutputStream outputStream, AtomicLong byteCount) {
+            super(outputStream);
+            this.byteCount = byteCount;
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            out.write(value);
+            byteCount.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            byteCount.addAndGet(length);
+        }
+    }
+
+    private static final class Batch {
+        private final int start;
+        private final int end;
+        private final long estimatedBytes;
+        private final AtomicLong marshaledBytes = new AtomicLong();
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+        private @Nullable CompletableFuture<ImportReport> importReportFuture;
+
+        private Batch(int start, int end, long estimatedBytes) {
+            this.start = start;
+            this.end = end;
+            this.estimatedBytes = estimatedBytes;
+        }
+    }
+
+    /**
+     * Import of a sequence of items in batches.
+     *
+     * <p>Batches are sent asynchronously, so the JAX-RS client marshals and uploads a batch while this thread already
+     * prepares the next one. Up to the configured maximum number of batches are in flight at any time. The size of
+     * each batch is chosen by an {@link AdaptiveBatchSizer}. If a batch is rejected as too large, its items are sent
+     * again in smaller batches. If a batch times out, its items are reported as not imported (YouTrack may have
+     * imported them nonetheless, so they are not sent again), and the following batches are smaller. The import reports
+     * are merged in the order of the items.
+     *
+     * <p>Items are taken from an iterator as needed. Only the items of the batches in flight (and of the next batch)
+     * are kept in memory, so the sequence of items may be arbitrarily long.
+     */
+    private final class BatchImport<T> {
+        private final WebTarget webTarget;
+        private final Iterator<? extends T> items;
+        private final Function<List<T>, ?> entityProvider;
+        private final ToLongFunction<T> estimatedItemBytes;
+        private final Function<T, String> itemId;
+        private final AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer(options.adaptiveBatchSize);
+        private final ImportReport importReport = new ImportReport();
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        /**
+         * Items that have been taken from {@link #items}, but that are not yet part of a completed batch.
+         */
+        private final List<T> buffer = new ArrayList<>();
+
+        /**
+         * Index of the first element of {@link #buffer} in the sequence of items.
+         */
+        private int bufferOffset;
+
+        private BatchImport(URI targetUri, boolean dryRun, Iterator<? extends T> items,
+                Function<List<T>, ?> entityProvider, ToLongFunction<T> estimatedItemBytes, Function<T, String> itemId) {
+            webTarget = jaxrsClient.target(targetUri)
                 .queryParam("test", dryRun)
+                .register(ByteCountingInterceptor.class);
+            this.items = items;
+            this.entityProvider = entityProvider;
+            this.estimatedItemBytes = estimatedItemBytes;
+            this.itemId = itemId;
+        }
+
+        private long estimatedItemBytes(int index) {
+            return estimatedItemBytes.applyAsLong(buffer.get(index - bufferOffset));
+        }
+
+        /**
+         * Takes items from the iterator until the buffer extends to the given index (exclusive), or until there are no
+         * more items, and returns the index one past the last buffered item.
+         */
+        private int fill(int end) {
+            while (bufferOffset + buffer.size() < end && items.hasNext()) {
+                buffer.add(items.next());
+            }
+            return bufferOffset + buffer.size();
+        }
+
+        /**
+         * Removes the items before the given index from the buffer.
+         */
+        private void release(int start) {
+            if (start > bufferOffset) {
+                buffer.subList(0, start - bufferOffset).clear();
+                bufferOffset = start;
+            }
+        }
+
+        private Batch send(int start, int end) {
+            long estimatedBytes = 0;
+            for (int i = start; i < end; ++i) {
+                estimatedBytes += estimatedItemBytes(i);
+            }
+            var batch = new Batch(start, end, estimatedBytes);
+            Object entity = entityProvider.apply(
+                new ArrayList<>(buffer.subList(start - bufferOffset, end - bufferOffset)));
+            batch.importReportFuture = webTarget
                 .request(MediaType.APPLICATION_XML_TYPE)
                 .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
-                .buildPut(Entity.xml(batch));
-            ImportReport batchImportReport = invocationToImportReport(invocation);
+                .property(ByteCountingInterceptor.BYTE_COUNT_PROPERTY, batch.marshaledBytes)
+                .rx()
+                .put(Entity.xml(entity), ImportReport.class)
+                .toCompletableFuture()
+                .whenComplete((ignoredReport, ignoredException) -> batch.endNanos = System.nanoTime());
+            batchSizes.add(end - start);
+            return batch;
+        }
+
+        /**
+         * Waits for the import report of the given batch and merges it into {@link #importReport}.
+         */
+        private void collect(Batch batch) {
+            ImportReport batchImportReport;
+            try {
+                batchImportReport = Objects.requireNonNull(batch.importReportFuture).join();
+            } catch (CompletionException exception) {
+                @Nullable Throwable cause = exception.getCause();
+                int numItems = batch.end - batch.start;
+                if (options.adaptiveBatchSize && numItems > 1 && isBatchTooLarge(cause)) {
+                    log.warn("Batch of {} items ({} bytes) was rejected as too large ({}). Sending the items again "
+                        + "in smaller batches.", numItems, batch.marshaledBytes.get(), cause.toString());
+                    batchSizer.batchTooLarge(batch.estimatedBytes);
+                    sendSequentially(batch.start, batch.end, numItems / 2);
+                    return;
+                } else if (options.adaptiveBatchSize && isBatchTimedOut(cause)) {
+                    log.warn("Batch of {} items ({} bytes) timed out ({}). YouTrack may have imported the items "
+                        + "nonetheless, so they are reported as not imported and not sent again.", numItems,
+                        batch.marshaledBytes.get(), cause.toString());
+                    batchSizer.batchTimedOut(batch.estimatedBytes);
+                    importReport.getItem().addAll(timedOutItems(batch));
+                    return;
+                } else if (cause instanceof WebApplicationException) {
+                    batchImportReport = importReportFromException((WebApplicationException) cause);
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else {
+                    throw new ProcessingException(cause);
+                }
+            }
+            long latencyNanos = batch.endNanos - batch.startNanos;
+            log.debug("Batch of {} items ({} bytes) imported in {} ms.", batch.end - batch.start,
+                batch.marshaledBytes.get(), TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+            batchSizer.batchCompleted(batch.estimatedBytes, batch.marshaledBytes.get(), latencyNanos);
             importReport.getItem().addAll(batchImportReport.getItem());
         }
-        return importReport;
+
+        private List<ImportReport.Item> timedOutItems(Batch batch) {
+            List<ImportReport.Item> items = new ArrayList<>(batch.end - batch.start);
+            for (T item : buffer.subList(batch.start - bufferOffset, batch.end - bufferOffset)) {
+                var error = new ImportReport.Item.Error();
+                error.setValue("Import timed out. The item may or may not have been imported.");
+                var reportItem = new ImportReport.Item();
+                reportItem.setId(itemId.apply(item));
+                reportItem.setImported(false);
+                reportItem.getError().add(error);
+                items.add(reportItem);
+            }
+            return items;
+        }
+
+        private void sendSequentially(int start, int end, int maxBatchSize) {
+            int batchStart = start;
+            while (batchStart < end) {
+                int batchEnd = batchSizer.batchEnd(batchStart, Math.min(end, batchStart + maxBatchSize),
+                    this::estimatedItemBytes);
+                collect(send(batchStart, batchEnd));
+                batchStart = batchEnd;
+            }
+        }
+
+        private void collectOldest(Deque<Batch> batchesInFlight) {
+            Batch batch = batchesInFlight.removeFirst();
+            collect(batch);
+            release(batch.end);
+        }
+
+        private ImportReport run() {
+            Deque<Batch> batchesInFlight = new ArrayDeque<>(options.maxBatchesInFlight);
+            int start = 0;
+            int available;
+            while (start < (available = fill(start + AdaptiveBatchSizer.MAX_BATCH_SIZE))) {
+                if (batchesInFlight.size() == options.maxBatchesInFlight) {
+                    collectOldest(batchesInFlight);
+                }
+                int end = batchSizer.batchEnd(start, available, this::estimatedItemBytes);
+                batchesInFlight.addLast(send(start, end));
+                start = end;
+            }
+            while (!batchesInFlight.isEmpty()) {
+                collectOldest(batchesInFlight);
+            }
+            log.info("Imported {} items in {} batches of sizes {}.", start, batchSizes.size(), batchSizes);
+            return importReport;
+        }
+    }
+
+    private static long estimatedXmlBytes(@Nullable String string) {
+        return string == null
+            ? 0
+            : string.length() + 16;
+    }
+
+    private static long estimatedXmlBytes(Issues.Issue issue) {
+        long estimatedBytes = 16;
+        for (Issues.Issue.Field field : issue.getField()) {
+            estimatedBytes += 32 + estimatedXmlBytes(field.getName());
+            for (String value : field.getValue()) {
+                estimatedBytes += estimatedXmlBytes(value);
+            }
+        }
+        for (Issues.Issue.Comment comment : issue.getComment()) {
+            estimatedBytes += 16 + estimatedXmlBytes(comment.getAuthor()) + estimatedXmlBytes(comment.getText())
+                + estimatedXmlBytes(comment.getMarkdown()) + estimatedXmlBytes(comment.getCreated())
+                + estimatedXmlBytes(comment.getUpdated());
+        }
+        return estimatedBytes;
+    }
+
+    private static long estimatedXmlBytes(net.florianschoppmann.issuetracking.youtrack.restold.List.Link link) {
+        return 16 + estimatedXmlBytes(link.getTypeName()) + estimatedXmlBytes(link.getSource())
+            + estimatedXmlBytes(link.getTarget());
+    }
+
+    private static String itemId(Issues.Issue issue) {
+        return issue.getField().stream()
+            .filter(field -> "numberInProject".equals(field.getName()) && !field.getValue().isEmpty())
+            .map(field -> field.getValue().get(0))
+            .findFirst()
+            .orElse("");
+    }
+
+    private static String itemId(net.florianschoppmann.issuetracking.youtrack.restold.List.Link link) {
+        return link.getSource() + " -> " + link.getTarget();
     }
 
     public ImportReport importIssues(Issues issues, String projectAbbrev, boolean dryRun) {
+        return importIssues(issues.getIssue().iterator(), projectAbbrev, dryRun);
+    }
+
+    /**
+     * Imports the given issues in batches.
+     *
+     * <p>Issues are taken from the iterator only as they are needed for the next batch, so the iterator may, for
+     * instance, read them incrementally from a file.
+     *
+     * @param issues iterator over the issues to import
+     * @param projectAbbrev abbreviation of project
+     * @param dryRun whether YouTrack should only validate the issues, but not save them
+     * @return the merged import report
+     */
+    public ImportReport importIssues(Iterator<Issues.Issue> issues, String projectAbbrev, boolean dryRun) {
         URI targetUri = baseUri.resolve(UriBuilder.fromPath("rest/import/{project}/issues")
             .resolveTemplate("project", projectAbbrev)
             .build());
-        return batchImport(targetUri, dryRun, issues.getIssue().size(), (start, end) -> {
+        var batchImport = new BatchImport<Issues.Issue>(targetUri, dryRun, issues, issueList -> {
             var subIssues = new Issues();
-            subIssues.getIssue().addAll(issues.getIssue().subList(start, end));
+            subIssues.getIssue().addAll(issueList);
             return subIssues;
-        });
+        }, YouTrackClient::estimatedXmlBytes, YouTrackClient::itemId);
+        return batchImport.run();
     }
 
     public ImportReport importLinks(net.florianschoppmann.issuetracking.youtrack.restold.List links, boolean dryRun) {
         URI targetUri = baseUri.resolve(URI.create("rest/import/links"));
-        return batchImport(targetUri, dryRun, links.getLink().size(), (start, end) -> {
-            var subLinks = new net.florianschoppmann.issuetracking.youtrack.restold.List();
-            subLinks.getLink().addAll(links.getLink().subList(start, end));
-            return subLinks;
-        });
+        var batchImport = new BatchImport<net.florianschoppmann.issuetracking.youtrack.restold.List.Link>(targetUri,
+            dryRun, links.getLink().iterator(), linkList -> {
+                var subLinks = new net.florianschoppmann.issuetracking.youtrack.restold.List();
+                subLinks.getLink().addAll(linkList);
+                return subLinks;
+            }, YouTrackClient::estimatedXmlBytes, YouTrackClient::itemId);
+        return batchImport.run();
     }
 
     /**
@@ -135,10 +552,7 @@ public final class YouTrackClient {
 
         String issue = projectAbbrev + '-' + attachment.taskNumberInProject;
         try (MultiPart multiPart = new MultiPart(MediaType.MULTIPART_FORM_DATA_TYPE)) {
-            Path sourcePath = Paths.get(attachmentPath);
-            File sourceFile = sourcePath.isAbsolute()
-                ? sourcePath.toFile()
-                : basePath.resolve(sourcePath).toFile();
+            File sourceFile = resolveAttachmentPath(attachmentPath, basePath).toFile();
             multiPart.bodyPart(new FileDataBodyPart(attachmentName, sourceFile));
             URI targetUri = baseUri.resolve(UriBuilder.fromPath("rest/import/{issue}/attachment")
                 .resolveTemplate("issue", issue).build());
@@ -149,20 +563,305 @@ public final class YouTrackClient {
                 .request(MediaType.APPLICATION_XML_TYPE)
                 .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
                 .buildPost(Entity.entity(multiPart, multiPart.getMediaType()));
-            ImportReport importReport = invocationToImportReport(invocation);
-            // Unfortunately, for attachments, the import report returned by YouTrack is a bit scarce...
-            if (importReport.getItem().size() == 1) {
-                ImportReport.Item importReportItem = importReport.getItem().get(0);
-                if (!importReportItem.isImported() && importReportItem.getId() == null) {
-                    importReportItem.setId(issue + ':' + attachmentName);
+            return identifyAttachment(invocationToImportReport(invocation), issue, attachmentName);
+        } catch (IOException exception) {
+            throw new ProcessingException(exception);
+        }
+    }
+
+    private static ImportReport identifyAttachment(ImportReport importReport, String issue, String attachmentName) {
+        // Unfortunately, for attachments, the import report returned by YouTrack is a bit scarce...
+        if (importReport.getItem().size() == 1) {
+            ImportReport.Item importReportItem = importReport.getItem().get(0);
+            if (!importReportItem.isImported() && importReportItem.getId() == null) {
+                importReportItem.setId(issue + ':' + attachmentName);
+            }
+        }
+        return importReport;
+    }
+
+    /**
+     * Returns whether the given exception indicates that an attachment upload failed before the request was sent, so
+     * that the upload can be sent again right away.
+     */
+    private static boolean isUploadNotSent(Throwable exception) {
+        @Nullable Throwable cause = exception.getCause();
+        return exception instanceof ProcessingException
+            && (cause instanceof ConnectException || cause instanceof NoRouteToHostException
+                || cause instanceof UnknownHostException);
+    }
+
+    /**
+     * Returns whether the given exception indicates a server error or a timeout that may be transient.
+     *
+     * <p>YouTrack may have imported the attachment nevertheless. Since YouTrack does not deduplicate attachments, the
+     * issue's attachments need to be checked before the upload is sent again.
+     */
+    private static boolean isTransientUploadFailure(Throwable exception) {
+        return exception instanceof WebApplicationException
+            ? TRANSIENT_UPLOAD_STATUS_CODES.contains(((WebApplicationException) exception).getResponse().getStatus())
+            : exception instanceof ProcessingException && exception.getCause() instanceof SocketTimeoutException;
+    }
+
+    private static Path resolveAttachmentPath(String attachmentPath, Path basePath) {
+        Path sourcePath = Paths.get(attachmentPath);
+        return sourcePath.isAbsolute()
+            ? sourcePath
+            : basePath.resolve(sourcePath);
+    }
+
+    /**
+     * Upload of a single attachment.
+     *
+     * <p>If no connection can be established, or if the upload fails with a server error or a timeout that may be
+     * transient, the upload is sent again after a delay that doubles with each attempt, up to
+     * {@link #MAX_UPLOAD_ATTEMPTS} attempts in total. The thread of the executor is not blocked while waiting for the
+     * next attempt. If a previous attempt may have reached YouTrack, the issue's attachments are listed first, and the
+     * upload is only sent again if the issue does not have an attachment with the same name, size, and creation time.
+     */
+    private final class AttachmentUpload {
+        /**
+         * The attachments that this upload imports: the first attachment with the name and file of this upload, and
+         * all further attachments of the same issue with the same name and file.
+         */
+        private final List<Attachment> attachments = new ArrayList<>();
+        private final Attachment attachment;
+        private final String issue;
+        private final String attachmentName;
+        private final File sourceFile;
+        private final WebTarget webTarget;
+        private final AtomicLong uploadedBytes = new AtomicLong();
+        private final CompletableFuture<ImportReport> importReportFuture = new CompletableFuture<>();
+
+        private AttachmentUpload(Attachment attachment, String projectAbbrev, String attachmentCreator,
+                String attachmentName, Path sourcePath, boolean dryRun) {
+            this.attachment = attachment;
+            attachments.add(attachment);
+            issue = projectAbbrev + '-' + attachment.taskNumberInProject;
+            this.attachmentName = attachmentName;
+            sourceFile = sourcePath.toFile();
+            URI targetUri = baseUri.resolve(UriBuilder.fromPath("rest/import/{issue}/attachment")
+                .resolveTemplate("issue", issue).build());
+            webTarget = jaxrsClient.target(targetUri)
+                .queryParam("authorLogin", attachmentCreator)
+                .queryParam("created", attachment.created)
+                .queryParam("test", dryRun)
+                .register(ByteCountingInterceptor.class);
+        }
+
+        private AttachmentUpload start(Executor executor) {
+            executor.execute(() -> upload(executor, 1, false));
+            return this;
+        }
+
+        /**
+         * Returns whether the issue already has an attachment with the name, size, and creation time of this upload.
+         */
+        private boolean isAlreadyAttached() {
+            long size = sourceFile.length();
+            return getIssueAttachments(issue, ATTACHMENT_FIELDS).stream().anyMatch(
+                existing -> attachmentName.equals(existing.name)
+                    && Objects.equals(existing.size, size)
+                    && Objects.equals(existing.created, attachment.created)
+            );
+        }
+
+        /**
+         * Sends the upload.
+         *
+         * @param attempt number of this attempt, starting at 1
+         * @param mayHaveBeenImported whether a previous attempt may have reached YouTrack
+         */
+        private void upload(Executor executor, int attempt, boolean mayHaveBeenImported) {
+            uploadedBytes.set(0);
+            try (MultiPart multiPart = new MultiPart(MediaType.MULTIPART_FORM_DATA_TYPE)) {
+                if (mayHaveBeenImported && isAlreadyAttached()) {
+                    log.info("Attachment {}:{} was imported although the previous upload failed. Not sending it again.",
+                        issue, attachmentName);
+                    var importReportItem = new ImportReport.Item();
+                    importReportItem.setImported(true);
+                    var importReport = new ImportReport();
+                    importReport.getItem().add(importReportItem);
+                    importReportFuture.complete(importReport);
+                    return;
+                }
+                multiPart.bodyPart(new FileDataBodyPart(attachmentName, sourceFile));
+                ImportReport importReport = webTarget
+                    .request(MediaType.APPLICATION_XML_TYPE)
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                    .property(ByteCountingInterceptor.BYTE_COUNT_PROPERTY, uploadedBytes)
+                    .buildPost(Entity.entity(multiPart, multiPart.getMediaType()))
+                    .invoke(ImportReport.class);
+                importReportFuture.complete(identifyAttachment(importReport, issue, attachmentName));
+            } catch (WebApplicationException | ProcessingException exception) {
+                boolean notSent = isUploadNotSent(exception);
+                if ((notSent || isTransientUploadFailure(exception)) && attempt < MAX_UPLOAD_ATTEMPTS) {
+                    long delayMillis = UPLOAD_RETRY_DELAY_MILLIS << (attempt - 1);
+                    log.warn("Upload of attachment {}:{} failed ({}). Retrying in {} ms.", issue, attachmentName,
+                        exception.toString(), delayMillis);
+                    boolean nextMayHaveBeenImported = mayHaveBeenImported || !notSent;
+                    CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, executor)
+                        .execute(() -> upload(executor, attempt + 1, nextMayHaveBeenImported));
+                } else if (exception instanceof WebApplicationException) {
+                    try {
+                        importReportFuture.complete(identifyAttachment(
+                            importReportFromException((WebApplicationException) exception), issue, attachmentName));
+                    } catch (RuntimeException importReportException) {
+                        importReportFuture.completeExceptionally(importReportException);
+                    }
+                } else {
+                    importReportFuture.completeExceptionally(exception);
+                }
+            } catch (IOException | RuntimeException exception) {
+                // Has no effect if the import report has been received and only closing the multipart entity failed
+                importReportFuture.completeExceptionally(exception);
+            }
+        }
+    }
+
+    /**
+     * Import of a list of attachments, with a bounded number of uploads in flight.
+     *
+     * <p>Each upload in flight runs on its own thread of a fixed thread pool. (Unlike for the XML entities of
+     * {@link BatchImport}, the asynchronous JAX-RS invocation of a multipart request blocks the calling thread until
+     * the response has been received.)
+     *
+     * <p>The import reports are merged in the order of the attachments. No further uploads are started once an upload
+     * has been found to fail, but the uploads already in flight are still awaited, so that all attachments that were
+     * imported are reported.
+     */
+    private final class AttachmentImport {
+        private final Consumer<Attachment> importedAttachmentConsumer;
+        private final ImportReport importReport = new ImportReport();
+        private final Deque<AttachmentUpload> uploadsInFlight = new ArrayDeque<>(options.maxUploadsInFlight);
+        private @Nullable RuntimeException exception;
+        private boolean failed;
+        private int numUploaded;
+        private long uploadedBytes;
+
+        private AttachmentImport(Consumer<Attachment> importedAttachmentConsumer) {
+            this.importedAttachmentConsumer = importedAttachmentConsumer;
+        }
+
+        private void collectOldest() {
+            AttachmentUpload upload = uploadsInFlight.removeFirst();
+            try {
+                ImportReport uploadImportReport = join(upload.importReportFuture);
+                importReport.getItem().addAll(uploadImportReport.getItem());
+                if (uploadImportReport.getItem().stream().allMatch(ImportReport.Item::isImported)) {
+                    ++numUploaded;
+                    uploadedBytes += upload.uploadedBytes.get();
+                    upload.attachments.forEach(importedAttachmentConsumer);
+                } else {
+                    failed = true;
+                }
+            } catch (RuntimeException uploadException) {
+                failed = true;
+                if (exception == null) {
+                    exception = uploadException;
+                } else {
+                    exception.addSuppressed(uploadException);
                 }
             }
+        }
+
+        private ImportReport run(List<AttachmentUpload> uploads) {
+            long startNanos = System.nanoTime();
+            ExecutorService executorService = Executors.newFixedThreadPool(options.maxUploadsInFlight);
+            try {
+                for (AttachmentUpload upload : uploads) {
+                    if (uploadsInFlight.size() == options.maxUploadsInFlight) {
+                        collectOldest();
+                    }
+                    if (failed) {
+                        break;
+                    }
+                    uploadsInFlight.addLast(upload.start(executorService));
+                }
+                while (!uploadsInFlight.isEmpty()) {
+                    collectOldest();
+                }
+            } finally {
+                executorService.shutdown();
+            }
+
+            long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+            log.info("Uploaded {} attachments ({} bytes) in {} ms, that is, {} bytes/s.", numUploaded, uploadedBytes,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                (long) (uploadedBytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos));
+            if (exception != null) {
+                throw exception;
+            }
             return importReport;
-        } catch (IOException exception) {
-            throw new ProcessingException(exception);
         }
     }
 
+    /**
+     * Imports the given attachments, stopping at the first attachment that could not be imported.
+     *
+     * @return the merged import report
+     * @see #importAttachments(List, String, Path, boolean, Consumer)
+     */
+    public ImportReport importAttachments(List<Attachment> attachments, String projectAbbrev, Path basePath,
+            boolean dryRun) {
+        return importAttachments(attachments, projectAbbrev, basePath, dryRun, attachment -> { });
+    }
+
+    /**
+     * Imports the given attachments concurrently, stopping at the first attachment that could not be imported.
+     *
+     * <p>Up to {@link Options#maxUploadsInFlight} attachments are uploaded concurrently. An upload that fails because
+     * no connection could be established, with status 429, 502, 503, or 504, or with a timeout is retried with
+     * exponential backoff. Since the attachment may have been imported despite a server error or a timeout, the
+     * issue's attachments are checked before the upload is sent again. Once an attachment could not be imported, no
+     * further uploads are started, but the uploads in flight are completed. The number of uploaded bytes and the
+     * throughput are logged at the end.
+     *
+     * <p>Attachments of the same issue that have the same name and refer to the same file (for instance, hard links
+     * to the same blob in a content-addressed store) are uploaded only once. YouTrack stores attachments per issue,
+     * so a file attached to several issues still needs to be uploaded once for each of them. Attachments without
+     * author, name, or path are skipped; the assumption is that they have been dealt with before (for instance, by
+     * appending the attachment link to the issue description).
+     *
+     * @param importedAttachmentConsumer consumer that is called, on the calling thread, for each attachment that was
+     *     imported, including the attachments whose upload was skipped because an earlier attachment of the same
+     *     issue has the same name and file; the consumer is called in the order of the uploads, and for each upload
+     *     in the order of the given attachments
+     * @return the merged import report, in the order of the given attachments
+     * @throws ProcessingException if an upload failed for reasons other than YouTrack rejecting the attachment; in
+     *     this case, the consumer has still been called for all attachments that were imported
+     */
+    public ImportReport importAttachments(List<Attachment> attachments, String projectAbbrev, Path basePath,
+            boolean dryRun, Consumer<Attachment> importedAttachmentConsumer) {
+        Map<List<Object>, AttachmentUpload> uploads = new LinkedHashMap<>();
+        for (Attachment attachment : attachments) {
+            @Nullable String attachmentCreator = attachment.authorLogin;
+            @Nullable String attachmentName = attachment.name;
+            @Nullable String attachmentPath = attachment.path;
+            if (attachmentCreator == null || attachmentName == null || attachmentPath == null) {
+                continue;
+            }
+
+            Path sourcePath = resolveAttachmentPath(attachmentPath, basePath);
+            @Nullable Object fileKey;
+            try {
+                fileKey = Files.readAttributes(sourcePath, BasicFileAttributes.class).fileKey();
+            } catch (IOException exception) {
+                throw new ProcessingException(exception);
+            }
+            List<Object> key = List.of(attachment.taskNumberInProject, attachmentName,
+                fileKey == null ? sourcePath.toAbsolutePath().normalize() : fileKey);
+            @Nullable AttachmentUpload upload = uploads.get(key);
+            if (upload == null) {
+                uploads.put(key, new AttachmentUpload(attachment, projectAbbrev, attachmentCreator, attachmentName,
+                    sourcePath, dryRun));
+            } else {
+                upload.attachments.add(attachment);
+            }
+        }
+        return new AttachmentImport(importedAttachmentConsumer).run(new ArrayList<>(uploads.values()));
+    }
+
     /**
      * Subclass of {@link GenericType} in order to pass the generic type argument {@code List<Issue>}.
      *
@@ -178,46 +877,183 @@ public final class YouTrackClient {
         private static final IssueListGenericType INSTANCE = new IssueListGenericType();
     }
 
+    /**
+     * Waits for the given future and rethrows the cause if it completed exceptionally.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException exception) {
+            @Nullable Throwable cause = exception.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new ProcessingException(cause);
+            }
+        }
+    }
+
+    /**
+     * Iterator over the items of a paginated YouTrack listing.
+     *
+     * <p>Only an empty page marks the end of the listing. The first page is requested on its own. Each time a full
+     * page has been received, further pages are requested ahead, so that up to {@link Options#maxBatchesInFlight}
+     * pages are in flight. A listing that fits into a single page therefore takes two requests, regardless of the
+     * options. Since the offsets of the pages are fixed, pages may be requested before the earlier ones have arrived.
+     */
+    private final class PageIterator<T> implements Iterator<T> {
+        private final WebTarget webTarget;
+        private final GenericType<List<T>> genericType;
+        private final Deque<CompletableFuture<List<T>>> pagesInFlight = new ArrayDeque<>(options.maxBatchesInFlight);
+        private int nextSkip = 0;
+        private boolean lastPageReceived = false;
+        private Iterator<T> currentPage = Collections.emptyIterator();
+
+        private PageIterator(URI targetUri, StringNode fields,
+                Function<WebTarget, WebTarget> additionalWebTargetSettings, GenericType<List<T>> genericType) {
+            webTarget = additionalWebTargetSettings.apply(jaxrsClient.target(targetUri).queryParam("fields", fields));
+            this.genericType = genericType;
+        }
+
+        private void requestPages(int maxPagesInFlight) {
+            while (pagesInFlight.size() < maxPagesInFlight) {
+                pagesInFlight.addLast(
+                    webTarget
+                        .queryParam("$skip", nextSkip)
+                        .queryParam("$top", BATCH_SIZE)
+                        .request(MediaType.APPLICATION_JSON_TYPE)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                        .rx()
+                        .get(genericType)
+                        .toCompletableFuture()
+                );
+                nextSkip += BATCH_SIZE;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!currentPage.hasNext()) {
+                if (lastPageReceived) {
+                    return false;
+                }
+                requestPages(1);
+                List<T> page = join(pagesInFlight.removeFirst());
+                if (page.isEmpty()) {
+                    lastPageReceived = true;
+                    cancel();
+                } else if (page.size() >= BATCH_SIZE) {
+                    requestPages(options.maxBatchesInFlight);
+                }
+                currentPage = page.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return currentPage.next();
+        }
+
+        /**
+         * Discards all page requests that are still in flight.
+         *
+         * <p>Jersey cannot abort a request once it has been submitted, so the responses are still received, but they
+         * are ignored.
+         */
+        private void cancel() {
+            for (CompletableFuture<List<T>> page : pagesInFlight) {
+                page.cancel(true);
+            }
+            pagesInFlight.clear();
+        }
+    }
+
     private <T> List<T> batchGet(URI targetUri, StringNode fields,
             Function<WebTarget, WebTarget> additionalWebTargetSettings, GenericType<List<T>> genericType) {
         List<T> items = new ArrayList<>();
-        int startAt = 0;
-        while (true) {
-            WebTarget basicTarget = jaxrsClient.target(targetUri)
-                .queryParam("fields", fields)
-                .queryParam("$skip", startAt)
-                .queryParam("$top", BATCH_SIZE);
-            WebTarget finalTarget = additionalWebTargetSettings.apply(basicTarget);
-            List<T> batchItems = finalTarget
-                .request(MediaType.APPLICATION_JSON_TYPE)
-                .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
-                .buildGet()
-                .invoke(genericType);
-            items.addAll(batchItems);
-            startAt += batchItems.size();
-            if (batchItems.isEmpty()) {
-                break;
-            }
-        }
+        new PageIterator<>(targetUri, fields, additionalWebTargetSettings, genericType).forEachRemaining(items::add);
         return items;
     }
 
+    private <T> Stream<T> batchStream(URI targetUri, StringNode fields,
+            Function<WebTarget, WebTarget> additionalWebTargetSettings, GenericType<List<T>> genericType) {
+        var pageIterator = new PageIterator<>(targetUri, fields, additionalWebTargetSettings, genericType);
+        return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(pageIterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(pageIterator::cancel);
+    }
+
+    private static WebTarget issuesInProject(WebTarget webTarget, String projectAbbrev) {
+        return webTarget
+            // javax.ws.rs.client.WebTarget#queryParam(String, Object...) says:
+            // "Stringified values may contain URI template parameters."
+            .queryParam("query", "order by: {orderBy} asc in: {project}")
+            // Note that "{issue id}" is NOT a template parameter, but instead YouTrack query syntax.
+            .resolveTemplate("orderBy", "{issue id}")
+            .resolveTemplate("project", projectAbbrev);
+    }
+
     public List<Issue> getIssues(String projectAbbrev, StringNode fields) {
         URI targetUri = baseUri.resolve(URI.create("api/issues"));
         return batchGet(
             targetUri,
             fields,
-            webTarget -> webTarget
-                // javax.ws.rs.client.WebTarget#queryParam(String, Object...) says:
-                // "Stringified values may contain URI template parameters."
-                .queryParam("query", "order by: {orderBy} asc in: {project}")
-                // Note that "{issue id}" is NOT a template parameter, but instead YouTrack query syntax.
-                .resolveTemplate("orderBy", "{issue id}")
-                .resolveTemplate("project", projectAbbrev),
+            webTarget -> issuesInProject(webTarget, projectAbbrev),
+            IssueListGenericType.INSTANCE
+        );
+    }
+
+    /**
+     * Returns a stream of the issues in the given project, ordered by issue ID.
+     *
+     * <p>Unlike {@link #getIssues(String, StringNode)}, this method does not keep all issues in memory. Only the pages
+     * currently in flight (see {@link Options}) are held. The stream should be closed if it is not consumed entirely,
+     * in order to cancel outstanding requests.
+     */
+    public Stream<Issue> streamIssues(String projectAbbrev, StringNode fields) {
+        URI targetUri = baseUri.resolve(URI.create("api/issues"));
+        return batchStream(
+            targetUri,
+            fields,
+            webTarget -> issuesInProject(webTarget, projectAbbrev),
             IssueListGenericType.INSTANCE
         );
     }
 
+    /**
+     * Returns the issues with the given keys, using one {@code issue id:} query (and thus one request) per chunk of
+     * {@link #MAX_ISSUE_KEYS_PER_REQUEST} keys.
+     *
+     * <p>Issue keys that do not exist are ignored. Callers that need to match the returned issues with the given keys
+     * should request field {@code idReadable}.
+     */
+    public List<Issue> getIssuesByKey(Collection<String> issueKeys, StringNode fields) {
+        URI targetUri = baseUri.resolve(URI.create("api/issues"));
+        List<String> issueKeyList = new ArrayList<>(issueKeys);
+        List<Issue> issues = new ArrayList<>(issueKeyList.size());
+        for (int start = 0; start < issueKeyList.size(); start += MAX_ISSUE_KEYS_PER_REQUEST) {
+            List<String> chunk = issueKeyList.subList(
+                start, Math.min(issueKeyList.size(), start + MAX_ISSUE_KEYS_PER_REQUEST));
+            issues.addAll(
+                jaxrsClient.target(targetUri)
+                    .queryParam("fields", fields)
+                    .queryParam("query", "issue id: {issueKeys}")
+                    .resolveTemplate("issueKeys", String.join(", ", chunk))
+                    .queryParam("$skip", 0)
+                    .queryParam("$top", BATCH_SIZE)
+                    .request(MediaType.APPLICATION_JSON_TYPE)
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                    .buildGet()
+                    .invoke(IssueListGenericType.INSTANCE)
+            );
+        }
+        return issues;
+    }
+
     public Issue getIssue(String issueKey, StringNode fields) {
         URI targetUri = baseUri.resolve(UriBuilder.fromPath("api/issues/{issueID}")
             .resolveTemplate("issueID", issueKey)
@@ -258,6 +1094,21 @@ public final class YouTrackClient {
             .invoke(new GenericType<List<IssueComment>>() { });
     }
 
+    /**
+     * Returns the attachments of the given issue.
+     */
+    public List<IssueAttachment> getIssueAttachments(String issueKey, StringNode fields) {
+        URI targetUri = baseUri.resolve(UriBuilder.fromPath("api/issues/{issueID}/attachments")
+            .resolveTemplate("issueID", issueKey)
+            .build());
+        return batchGet(
+            targetUri,
+            fields,
+            Function.identity(),
+            new GenericType<List<IssueAttachment>>() { }
+        );
+    }
+
     public IssueComment updateIssueComment(String issueKey, String commentId, IssueComment issueComment,
             StringNode fields) {
         URI targetUri = baseUri.resolve(UriBuilder.fromPath("api/issues/{issueID}/comments/{commentID}")
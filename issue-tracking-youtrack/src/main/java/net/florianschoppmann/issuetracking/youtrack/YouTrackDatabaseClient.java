@@ -1,20 +1,46 @@
 package net.florianschoppmann.issuetracking.youtrack;
 
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
 import jetbrains.exodus.ExodusException;
+import jetbrains.exodus.bindings.StringBinding;
 import jetbrains.exodus.entitystore.Entity;
 import jetbrains.exodus.entitystore.EntityIterable;
 import jetbrains.exodus.entitystore.PersistentEntityStore;
 import jetbrains.exodus.entitystore.PersistentEntityStores;
+import jetbrains.exodus.entitystore.PersistentStoreTransaction;
 import jetbrains.exodus.entitystore.StoreTransaction;
 import jetbrains.exodus.env.Environment;
 import jetbrains.exodus.env.Environments;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.StoreConfig;
+import jetbrains.exodus.env.Transaction;
 import net.florianschoppmann.issuetracking.youtrack.Events.CustomFieldEvent;
 import net.florianschoppmann.issuetracking.youtrack.Events.Event;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 public class YouTrackDatabaseClient {
     /**
@@ -25,45 +51,481 @@ public class YouTrackDatabaseClient {
      */
     private static final String YOUTRACK_STORE_NAME = "teamsysstore";
 
+    /**
+     * Name of the Xodus store that maps project abbreviations to the progress of an import in chunks.
+     *
+     * The store only exists while an import in chunks is incomplete. See {@link Progress}.
+     */
+    static final String PROGRESS_STORE_NAME = "net.florianschoppmann.issuetracking.eventImportProgress";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
     private final Path databasePath;
+    private final Options options;
 
     public YouTrackDatabaseClient(Path databasePath) {
+        this(databasePath, new Options(0));
+    }
+
+    public YouTrackDatabaseClient(Path databasePath, Options options) {
         this.databasePath = databasePath;
+        this.options = options;
+    }
+
+    public static final class Options {
+        private final int eventsPerTransaction;
+        private final int validationParallelism;
+
+        /**
+         * Constructor for options where up to 4 read-only transactions validate events concurrently.
+         *
+         * @param eventsPerTransaction Maximum number of events imported in one transaction, or 0 if all events are
+         *     imported in a single transaction.
+         * @see #Options(int, int)
+         */
+        public Options(int eventsPerTransaction) {
+            this(eventsPerTransaction, 4);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param eventsPerTransaction Maximum number of events imported in one transaction, or 0 if all events are
+         *     imported in a single transaction. If positive, each transaction also records the number of events
+         *     committed so far, so that an interrupted import resumes with the first event that was not committed.
+         * @param validationParallelism maximum number of read-only transactions that concurrently resolve the entities
+         *     referenced by events, in {@link #validateAndImportEvents(Supplier, String)}
+         * @throws IllegalArgumentException if {@code eventsPerTransaction} is negative or {@code validationParallelism}
+         *     is less than 1
+         */
+        public Options(int eventsPerTransaction, int validationParallelism) {
+            if (eventsPerTransaction < 0) {
+                throw new IllegalArgumentException("Number of events per transaction must not be negative.");
+            } else if (validationParallelism < 1) {
+                throw new IllegalArgumentException("Validation parallelism must be at least 1.");
+            }
+            this.eventsPerTransaction = eventsPerTransaction;
+            this.validationParallelism = validationParallelism;
+        }
     }
 
     public void importEvents(Events events, String projectAbbrev) throws YouTrackDatabaseClientException {
+        importEvents(events.events.iterator(), projectAbbrev);
+    }
+
+    /**
+     * Imports the given events, by default in a single transaction.
+     *
+     * <p>Events are taken from the iterator one at a time, so the iterator may, for instance, read them incrementally
+     * from a file. Referenced entities are looked up when the first event referring to them is imported.
+     *
+     * <p>If the options specify a positive number of events per transaction, events are committed in chunks of that
+     * size. If such an import fails or is interrupted, the events committed so far remain in the database. Importing
+     * the same events again then skips the events that were already committed. Since the database only records a
+     * fingerprint of the committed events, the skipped events must be equal to them and in the same order; otherwise,
+     * the import is refused. Once all events have been imported, the progress marker is removed again.
+     *
+     * @param events iterator over the events
+     * @param projectAbbrev abbreviation of project
+     * @throws YouTrackDatabaseClientException if an event is incomplete or refers to unknown entities, if the events
+     *     do not begin with the events committed by a previous incomplete import, or if the database reported an error;
+     *     in this case, no changes are made to the database (except for previously committed chunks, if importing in
+     *     chunks)
+     * @see #validateAndImportEvents(Supplier, String)
+     */
+    public void importEvents(Iterator<? extends Event> events, String projectAbbrev)
+            throws YouTrackDatabaseClientException {
+        try (
+            Environment environment = Environments.newInstance(databasePath.toFile());
+            PersistentEntityStore entityStore = PersistentEntityStores.newInstance(environment, YOUTRACK_STORE_NAME)
+        ) {
+            importEvents(environment, entityStore, events, () -> new EntityLookup(projectAbbrev), projectAbbrev);
+        } catch (ExodusException exception) {
+            throw new YouTrackDatabaseClientException(
+                "Importing events failed because of a problem reported by the Xodus database.", exception);
+        }
+    }
+
+    /**
+     * Validates the given events, and imports them if there are no problems.
+     *
+     * <p>In a first pass, all issues, users, custom fields, and bundle elements referenced by the events are resolved,
+     * in concurrent read-only transactions. All problems (incomplete events and references to unknown entities) are
+     * reported together, and no changes are made to the database in this case. Otherwise, the events are imported in a
+     * second pass as by {@link #importEvents(Iterator, String)}, except that the entities resolved in the first pass
+     * are used instead of looking them up again.
+     *
+     * @param events supplier of streams of the events; called once for each pass, and the returned streams are closed
+     *     after use; both streams must contain the same events
+     * @param projectAbbrev abbreviation of project
+     * @throws YouTrackDatabaseClientException if validation failed, with a message listing the problems, or if the
+     *     database reported an error
+     */
+    public void validateAndImportEvents(Supplier<? extends Stream<? extends Event>> events, String projectAbbrev)
+            throws YouTrackDatabaseClientException {
         try (
             Environment environment = Environments.newInstance(databasePath.toFile());
             PersistentEntityStore entityStore = PersistentEntityStores.newInstance(environment, YOUTRACK_STORE_NAME)
         ) {
-            entityStore.executeInExclusiveTransaction(txn -> new ImportEvents(events, projectAbbrev, txn).run());
+            EntityLookup lookup;
+            try (Stream<? extends Event> stream = events.get()) {
+                lookup = resolveEntities(entityStore, stream.iterator(), projectAbbrev);
+            }
+            try (Stream<? extends Event> stream = events.get()) {
+                importEvents(environment, entityStore, stream.iterator(), () -> lookup, projectAbbrev);
+            }
         } catch (ExodusException exception) {
             throw new YouTrackDatabaseClientException(
                 "Importing events failed because of a problem reported by the Xodus database.", exception);
+        }
+    }
+
+    /**
+     * Imports the given events, using a lookup from the given supplier for each transaction.
+     */
+    private void importEvents(Environment environment, PersistentEntityStore entityStore,
+            Iterator<? extends Event> events, Supplier<EntityLookup> lookupSupplier, String projectAbbrev)
+            throws YouTrackDatabaseClientException {
+        try {
+            Progress previousProgress = entityStore.computeInReadonlyTransaction(
+                txn -> readProgress(environment, txn, projectAbbrev));
+            var progress = new Progress(0, 0);
+            if (previousProgress.committedEvents > 0) {
+                log.info("Resuming import after {} previously committed events.", previousProgress.committedEvents);
+                while (progress.committedEvents < previousProgress.committedEvents) {
+                    if (!events.hasNext()) {
+                        throw new YouTrackDatabaseClientException(String.format(
+                            "Expected at least %d events, because that many were committed previously.",
+                            previousProgress.committedEvents));
+                    }
+                    progress = progress.next(events.next());
+                }
+                if (progress.fingerprint != previousProgress.fingerprint) {
+                    throw new YouTrackDatabaseClientException(String.format(
+                        "The first %d events differ from the events committed previously. To resume the import, "
+                            + "import the same events (in the same order) as before.",
+                        previousProgress.committedEvents));
+                }
+            }
+
+            if (options.eventsPerTransaction == 0) {
+                entityStore.executeInExclusiveTransaction(txn -> {
+                    new ImportEvents(events, txn, lookupSupplier.get()).run();
+                    writeProgress(environment, txn, projectAbbrev, new Progress(0, 0));
+                });
+                return;
+            }
+
+            List<Event> chunk = new ArrayList<>(options.eventsPerTransaction);
+            do {
+                chunk.clear();
+                Progress newProgress = progress;
+                while (chunk.size() < options.eventsPerTransaction && events.hasNext()) {
+                    Event event = events.next();
+                    chunk.add(event);
+                    newProgress = newProgress.next(event);
+                }
+                Progress recordedProgress = events.hasNext()
+                    ? newProgress
+                    : new Progress(0, 0);
+                // The chunk is buffered, so that the transaction could be executed again if flushing it failed.
+                entityStore.executeInExclusiveTransaction(txn -> {
+                    new ImportEvents(chunk.iterator(), txn, lookupSupplier.get()).run();
+                    writeProgress(environment, txn, projectAbbrev, recordedProgress);
+                });
+                progress = newProgress;
+                log.info("Committed {} events.", progress.committedEvents);
+            } while (events.hasNext());
         } catch (InternalException exception) {
             //noinspection ThrowInsideCatchBlockWhichIgnoresCaughtException
             throw exception.getCause();
         }
     }
 
+    /**
+     * Resolves all entities referenced by the given events, in concurrent read-only transactions.
+     *
+     * @return lookup that contains all referenced entities
+     * @throws YouTrackDatabaseClientException if there were problems, with a message listing them
+     */
+    private EntityLookup resolveEntities(PersistentEntityStore entityStore, Iterator<? extends Event> events,
+            String projectAbbrev) throws YouTrackDatabaseClientException {
+        var problems = new ValidationProblems();
+        SortedSet<Long> issueNumbers = new TreeSet<>();
+        SortedSet<String> logins = new TreeSet<>();
+        SortedMap<String, SortedSet<String>> fieldToValuesMap = new TreeMap<>();
+        long numberOfEvents = 0;
+        while (events.hasNext()) {
+            Event event = events.next();
+            if (!hasRequireFields(event)) {
+                problems.add(String.format("Incomplete event (#%d): %s", numberOfEvents, event));
+            } else if (event instanceof CustomFieldEvent) {
+                CustomFieldEvent customFieldEvent = (CustomFieldEvent) event;
+                assert customFieldEvent.numberInProject != null && customFieldEvent.field != null
+                    && customFieldEvent.author != null;
+                issueNumbers.add(customFieldEvent.numberInProject);
+                logins.add(customFieldEvent.author);
+                SortedSet<String> values = fieldToValuesMap.computeIfAbsent(customFieldEvent.field,
+                    field -> new TreeSet<>());
+                if (customFieldEvent.added != null) {
+                    values.add(customFieldEvent.added);
+                }
+                if (customFieldEvent.removed != null) {
+                    values.add(customFieldEvent.removed);
+                }
+            } else {
+                problems.add(unsupportedEventMessage(event));
+            }
+            ++numberOfEvents;
+        }
+
+        var lookup = new EntityLookup(projectAbbrev);
+        try {
+            entityStore.executeInReadonlyTransaction(txn -> {
+                lookup.project(txn);
+                lookup.eventType(txn);
+            });
+        } catch (InternalException exception) {
+            // Nothing else can be resolved without the project.
+            problems.add(exception.getCause().getMessage());
+            throw problems.exception(numberOfEvents);
+        }
+
+        List<ResolutionTask> tasks = new ArrayList<>();
+        for (List<Long> slice : slices(issueNumbers, options.validationParallelism)) {
+            tasks.add((txn, taskLookup, taskProblems) -> {
+                for (long numberInProject : slice) {
+                    taskProblems.resolve(() -> taskLookup.issue(txn, numberInProject));
+                }
+            });
+        }
+        for (List<String> slice : slices(logins, options.validationParallelism)) {
+            tasks.add((txn, taskLookup, taskProblems) -> {
+                for (String login : slice) {
+                    taskProblems.resolve(() -> taskLookup.user(txn, login));
+                }
+            });
+        }
+        for (Map.Entry<String, SortedSet<String>> entry : fieldToValuesMap.entrySet()) {
+            tasks.add((txn, taskLookup, taskProblems) -> {
+                String fieldName = entry.getKey();
+                @Nullable CustomField customField = taskProblems.resolve(() -> taskLookup.customField(txn, fieldName));
+                if (customField == null) {
+                    return;
+                }
+                @Nullable Map<String, Entity> nameToBundleElementMap = customField.nameToBundleElementMap;
+                for (String value : entry.getValue()) {
+                    if (nameToBundleElementMap == null) {
+                        taskProblems.resolve(() -> taskLookup.user(txn, value));
+                    } else if (!nameToBundleElementMap.containsKey(value)) {
+                        taskProblems.add(String.format("Could not find value '%s' of custom field '%s' in project "
+                            + "'%s'.", value, fieldName, projectAbbrev));
+                    }
+                }
+            });
+        }
+
+        // Each task has its own lookup (initialized with the project and event type) and problems. They are merged
+        // once all tasks have completed.
+        List<EntityLookup> taskLookups = new ArrayList<>(tasks.size());
+        List<ValidationProblems> taskProblemsList = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); ++i) {
+            var taskLookup = new EntityLookup(projectAbbrev);
+            taskLookup.putAll(lookup);
+            taskLookups.add(taskLookup);
+            taskProblemsList.add(new ValidationProblems());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(options.validationParallelism);
+        try {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks.size()];
+            for (int i = 0; i < tasks.size(); ++i) {
+                ResolutionTask task = tasks.get(i);
+                EntityLookup taskLookup = taskLookups.get(i);
+                ValidationProblems taskProblems = taskProblemsList.get(i);
+                futures[i] = CompletableFuture.runAsync(
+                    () -> entityStore.executeInReadonlyTransaction(txn -> task.resolve(txn, taskLookup, taskProblems)),
+                    executor
+                );
+            }
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException exception) {
+            @Nullable Throwable cause = exception.getCause();
+            throw cause instanceof RuntimeException
+                ? (RuntimeException) cause
+                : exception;
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < tasks.size(); ++i) {
+            lookup.putAll(taskLookups.get(i));
+            problems.addAll(taskProblemsList.get(i));
+        }
+
+        if (problems.count > 0) {
+            throw problems.exception(numberOfEvents);
+        }
+        log.info("Validated {} events referring to {} issues, {} users, and {} custom fields.", numberOfEvents,
+            issueNumbers.size(), lookup.loginToUserMap.size(), fieldToValuesMap.size());
+        return lookup;
+    }
+
+    /**
+     * Splits the given collection into at most the given number of slices of (nearly) equal size, in iteration order.
+     */
+    static <T> List<List<T>> slices(Collection<T> collection, int numberOfSlices) {
+        List<T> list = new ArrayList<>(collection);
+        int sliceSize = Math.max(1, (list.size() + numberOfSlices - 1) / numberOfSlices);
+        List<List<T>> slices = new ArrayList<>();
+        for (int start = 0; start < list.size(); start += sliceSize) {
+            slices.add(list.subList(start, Math.min(list.size(), start + sliceSize)));
+        }
+        return slices;
+    }
+
+    /**
+     * Task that resolves entities in a read-only transaction.
+     */
+    @FunctionalInterface
+    private interface ResolutionTask {
+        void resolve(StoreTransaction txn, EntityLookup lookup, ValidationProblems problems);
+    }
+
+    /**
+     * Problems found during validation. Only the first {@link #MAX_REPORTED_PROBLEMS} problems are kept.
+     */
+    private static final class ValidationProblems {
+        private static final int MAX_REPORTED_PROBLEMS = 100;
+
+        private final List<String> messages = new ArrayList<>();
+        private long count;
+
+        private void add(String message) {
+            if (messages.size() < MAX_REPORTED_PROBLEMS) {
+                messages.add(message);
+            }
+            ++count;
+        }
+
+        private void addAll(ValidationProblems other) {
+            for (String message : other.messages) {
+                add(message);
+            }
+            count += other.count - other.messages.size();
+        }
+
+        /**
+         * Returns the result of the given lookup, or {@code null} (after recording the problem) if the lookup failed.
+         */
+        private <T> @Nullable T resolve(Supplier<T> lookup) {
+            try {
+                return lookup.get();
+            } catch (InternalException exception) {
+                add(exception.getCause().getMessage());
+                return null;
+            }
+        }
+
+        private YouTrackDatabaseClientException exception(long numberOfEvents) {
+            var stringBuilder = new StringBuilder(String.format(
+                "Validation of %d events found %d problems. No changes were made to the database.",
+                numberOfEvents, count));
+            for (String message : messages) {
+                stringBuilder.append("\n- ").append(message);
+            }
+            if (count > messages.size()) {
+                stringBuilder.append("\n- ... (").append(count - messages.size()).append(" more)");
+            }
+            return new YouTrackDatabaseClientException(stringBuilder.toString());
+        }
+    }
+
+    private static Transaction environmentTransaction(StoreTransaction txn) {
+        return ((PersistentStoreTransaction) txn).getEnvironmentTransaction();
+    }
+
+    /**
+     * Progress of an import in chunks: the number of committed events and a fingerprint of these events.
+     *
+     * <p>The fingerprint is a polynomial hash of the {@link Event#hashCode()} values of the committed events, in the
+     * order they were imported. Event hash codes only depend on strings and numbers, so they are the same in every
+     * run. A changed or reordered input (for instance, an input sorted in a different order) therefore leads to a
+     * different fingerprint.
+     */
+    private static final class Progress {
+        private final long committedEvents;
+        private final long fingerprint;
+
+        private Progress(long committedEvents, long fingerprint) {
+            this.committedEvents = committedEvents;
+            this.fingerprint = fingerprint;
+        }
+
+        private Progress next(Event event) {
+            return new Progress(committedEvents + 1, 31 * fingerprint + event.hashCode());
+        }
+    }
+
+    private static Progress readProgress(Environment environment, StoreTransaction txn, String projectAbbrev) {
+        Transaction environmentTxn = environmentTransaction(txn);
+        if (!environment.storeExists(PROGRESS_STORE_NAME, environmentTxn)) {
+            return new Progress(0, 0);
+        }
+        @Nullable ByteIterable value = environment
+            .openStore(PROGRESS_STORE_NAME, StoreConfig.WITHOUT_DUPLICATES, environmentTxn)
+            .get(environmentTxn, StringBinding.stringToEntry(projectAbbrev));
+        if (value == null) {
+            return new Progress(0, 0);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(value.getBytesUnsafe(), 0, value.getLength());
+        return new Progress(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Records the progress for the given project, or removes the record if the number of committed events is 0.
+     *
+     * <p>Since this happens within the transaction that imports events, the record is always consistent with the
+     * database.
+     */
+    private static void writeProgress(Environment environment, StoreTransaction txn, String projectAbbrev,
+            Progress progress) {
+        Transaction environmentTxn = environmentTransaction(txn);
+        if (progress.committedEvents == 0 && !environment.storeExists(PROGRESS_STORE_NAME, environmentTxn)) {
+            return;
+        }
+
+        Store store = environment.openStore(PROGRESS_STORE_NAME, StoreConfig.WITHOUT_DUPLICATES, environmentTxn);
+        ByteIterable key = StringBinding.stringToEntry(projectAbbrev);
+        if (progress.committedEvents > 0) {
+            byte[] value = ByteBuffer.allocate(2 * Long.BYTES)
+                .putLong(progress.committedEvents)
+                .putLong(progress.fingerprint)
+                .array();
+            store.put(environmentTxn, key, new ArrayByteIterable(value));
+        } else {
+            store.delete(environmentTxn, key);
+            if (store.count(environmentTxn) == 0) {
+                environment.removeStore(PROGRESS_STORE_NAME, environmentTxn);
+            }
+        }
+    }
+
+    /**
+     * Import of events within a single transaction.
+     */
     private static class ImportEvents {
-        private final Events events;
-        private final String projectAbbrev;
+        private final Iterator<? extends Event> events;
         private final StoreTransaction txn;
+        private final EntityLookup lookup;
 
-        private ImportEvents(Events events, String projectAbbrev, StoreTransaction txn) {
+        private ImportEvents(Iterator<? extends Event> events, StoreTransaction txn, EntityLookup lookup) {
             this.events = events;
-            this.projectAbbrev = projectAbbrev;
             this.txn = txn;
+            this.lookup = lookup;
         }
 
         private void run() {
-            Entity project = find("Project", "shortName", projectAbbrev);
-            Entity eventType = find("EventType", "__ENUM_CONST_NAME__", "MODIFY_LINK");
-            EntityIterable projectCustomFields = project.getLinks("fields");
-            EntityIterable customFieldPrototypes = projectCustomFields.selectDistinct("prototype");
-            EntityIterable projectIssues = txn.findLinks("Issue", project, "project");
-            for (Event event : events.events) {
+            Entity eventType = lookup.eventType(txn);
+            while (events.hasNext()) {
+                Event event = events.next();
                 if (!hasRequireFields(event)) {
                     throw new InternalException(String.format("Incomplete event: %s", event));
                 } else if (event instanceof CustomFieldEvent) {
@@ -73,52 +535,109 @@ public class YouTrackDatabaseClient {
                         && customFieldEvent.field != null && customFieldEvent.author != null
                         && (customFieldEvent.added != null || customFieldEvent.removed != null);
 
-                    Entity issue = findWithin(
-                        projectIssues, "Issue", "numberInProject", customFieldEvent.numberInProject,
-                        String.format("issue '%s-%s'", projectAbbrev, customFieldEvent.numberInProject)
-                    );
-
-                    Entity author = find("User", "login", customFieldEvent.author);
-
-                    Entity customFieldPrototype = findWithin(
-                        customFieldPrototypes, "CustomFieldPrototype", "name", customFieldEvent.field,
-                        String.format("custom field '%s' in project '%s'", customFieldEvent.field, projectAbbrev)
-                    );
+                    Entity issue = lookup.issue(txn, customFieldEvent.numberInProject);
+                    Entity author = lookup.user(txn, customFieldEvent.author);
+                    CustomField customField = lookup.customField(txn, customFieldEvent.field);
                     @Nullable Entity @NonNull [] addedAndRemoved
-                        = findAddedAndRemovedEntities(customFieldPrototype, customFieldEvent);
+                        = findAddedAndRemovedEntities(customField, customFieldEvent);
 
-                    var customFieldPrototypeId = (String) customFieldPrototype.getProperty("id");
-                    assert customFieldPrototypeId != null : "Entity always has property 'id'.";
-                    storePersistentEvent(customFieldPrototypeId, customFieldEvent.timestamp, author, eventType,
+                    storePersistentEvent(customField.prototypeId, customFieldEvent.timestamp, author, eventType,
                         issue, addedAndRemoved);
                 } else {
-                    throw new InternalException(String.format(
-                        "Unsupported event type: %s", event.getClass().getName()));
+                    throw new InternalException(unsupportedEventMessage(event));
                 }
             }
         }
 
-        private static boolean hasRequireFields(Event event) {
-            boolean[] hasRequiredFields = {true};
-            Consumer<Object> test = value -> {
-                if (value == null) {
-                    hasRequiredFields[0] = false;
+        private @Nullable Entity @NonNull [] findAddedAndRemovedEntities(CustomField customField,
+                CustomFieldEvent event) {
+            @Nullable Entity addedEntity = null;
+            @Nullable Entity removedEntity = null;
+            @Nullable Map<String, Entity> nameToBundleElementMap = customField.nameToBundleElementMap;
+            if (nameToBundleElementMap != null) {
+                if (event.added != null) {
+                    addedEntity = nameToBundleElementMap.get(event.added);
                 }
-            };
-            test.accept(event.timestamp);
-            if (event instanceof CustomFieldEvent) {
-                CustomFieldEvent customFieldEvent = (CustomFieldEvent) event;
-                test.accept(customFieldEvent.numberInProject);
-                test.accept(customFieldEvent.field);
-                test.accept(customFieldEvent.author);
-                if (customFieldEvent.added == null && customFieldEvent.removed == null) {
-                    hasRequiredFields[0] = false;
+                // An element cannot be both added and removed.
+                if (event.removed != null && !event.removed.equals(event.added)) {
+                    removedEntity = nameToBundleElementMap.get(event.removed);
+                }
+            } else {
+                if (event.added != null) {
+                    addedEntity = lookup.user(txn, event.added);
                 }
+                if (event.removed != null) {
+                    removedEntity = lookup.user(txn, event.removed);
+                }
+            }
+            return new Entity[]{addedEntity, removedEntity};
+        }
+
+        private void storePersistentEvent(String memberName, long timestamp, Entity author, Entity type,
+                Entity targetIssue, @Nullable Entity @NonNull [] addedAndRemoved) {
+            Entity persistentEvent = txn.newEntity("PersistentEvent");
+            persistentEvent.setProperty("memberName", memberName);
+            persistentEvent.setProperty("timestamp", timestamp);
+            persistentEvent.setLink("author", author);
+            persistentEvent.setLink("type", type);
+            persistentEvent.setLink("target_Issue", targetIssue);
+            if (addedAndRemoved[0] != null) {
+                persistentEvent.setLink("added_" + memberName, addedAndRemoved[0]);
+            }
+            if (addedAndRemoved[1] != null) {
+                persistentEvent.setLink("removed_" + memberName, addedAndRemoved[1]);
+            }
+        }
+    }
+
+    private static boolean hasRequireFields(Event event) {
+        boolean[] hasRequiredFields = {true};
+        Consumer<Object> test = value -> {
+            if (value == null) {
+                hasRequiredFields[0] = false;
             }
-            return hasRequiredFields[0];
+        };
+        test.accept(event.timestamp);
+        if (event instanceof CustomFieldEvent) {
+            CustomFieldEvent customFieldEvent = (CustomFieldEvent) event;
+            test.accept(customFieldEvent.numberInProject);
+            test.accept(customFieldEvent.field);
+            test.accept(customFieldEvent.author);
+            if (customFieldEvent.added == null && customFieldEvent.removed == null) {
+                hasRequiredFields[0] = false;
+            }
+        }
+        return hasRequiredFields[0];
+    }
+
+    private static String unsupportedEventMessage(Event event) {
+        return String.format("Unsupported event type: %s", event.getClass().getName());
+    }
+
+    /**
+     * Cache of the entities referenced by events.
+     *
+     * <p>Consecutive events typically refer to the same users, issues, and custom fields. Therefore, entities are
+     * looked up only once and then cached, so that the import time grows (nearly) linearly with the number of events.
+     * Xodus entities are bound to the entity store and not to a transaction, so the cached entities can also be used in
+     * a later transaction (as long as they have not been deleted in the meantime).
+     *
+     * <p>Instances of this class are not thread-safe.
+     */
+    private static final class EntityLookup {
+        private final String projectAbbrev;
+        private @Nullable Entity project;
+        private @Nullable Entity eventType;
+        private final Map<String, Entity> loginToUserMap = new HashMap<>();
+        private final Map<Long, Entity> numberInProjectToIssueMap = new HashMap<>();
+        private final Map<String, CustomField> nameToCustomFieldMap = new HashMap<>();
+
+        private EntityLookup(String projectAbbrev) {
+            this.projectAbbrev = projectAbbrev;
         }
 
-        private Entity find(String entityType, String propertyName, Comparable<?> value) {
+        private static Entity find(StoreTransaction txn, String entityType, String propertyName,
+                Comparable<?> value) {
             @Nullable Entity entity = txn.find(entityType, propertyName, value).getFirst();
             if (entity == null) {
                 throw new InternalException(String.format(
@@ -128,8 +647,8 @@ public class YouTrackDatabaseClient {
             return entity;
         }
 
-        private Entity findWithin(EntityIterable entities, String entityType, String propertyName, Comparable<?> value,
-                String error) {
+        private static Entity findWithin(StoreTransaction txn, EntityIterable entities, String entityType,
+                String propertyName, Comparable<?> value, String error) {
             @Nullable Entity entity = entities.intersect(txn.find(entityType, propertyName, value)).getFirst();
             if (entity == null) {
                 throw new InternalException("Could not find " + error + '.');
@@ -137,61 +656,114 @@ public class YouTrackDatabaseClient {
             return entity;
         }
 
-        private @Nullable Entity @NonNull [] findAddedAndRemovedEntities(Entity customFieldPrototype,
-                CustomFieldEvent event) {
+        private Entity project(StoreTransaction txn) {
+            @Nullable Entity currentProject = project;
+            if (currentProject == null) {
+                currentProject = find(txn, "Project", "shortName", projectAbbrev);
+                project = currentProject;
+            }
+            return currentProject;
+        }
+
+        private Entity eventType(StoreTransaction txn) {
+            @Nullable Entity currentEventType = eventType;
+            if (currentEventType == null) {
+                currentEventType = find(txn, "EventType", "__ENUM_CONST_NAME__", "MODIFY_LINK");
+                eventType = currentEventType;
+            }
+            return currentEventType;
+        }
+
+        private Entity issue(StoreTransaction txn, long numberInProject) {
+            return numberInProjectToIssueMap.computeIfAbsent(numberInProject, key -> findIssue(txn, key));
+        }
+
+        /**
+         * Finds the issue with the given number in this project.
+         *
+         * <p>The property index yields at most one issue per project, so only these few candidates are compared with
+         * the project. Intersecting with all issues of the project instead would take time proportional to the size
+         * of the project for each lookup.
+         */
+        private Entity findIssue(StoreTransaction txn, long numberInProject) {
+            Entity currentProject = project(txn);
+            for (Entity issue : txn.find("Issue", "numberInProject", numberInProject)) {
+                if (currentProject.equals(issue.getLink("project"))) {
+                    return issue;
+                }
+            }
+            throw new InternalException(
+                String.format("Could not find issue '%s-%s'.", projectAbbrev, numberInProject));
+        }
+
+        private Entity user(StoreTransaction txn, String login) {
+            return loginToUserMap.computeIfAbsent(login, key -> find(txn, "User", "login", key));
+        }
+
+        private CustomField customField(StoreTransaction txn, String fieldName) {
+            return nameToCustomFieldMap.computeIfAbsent(fieldName, key -> newCustomField(txn, key));
+        }
+
+        private CustomField newCustomField(StoreTransaction txn, String fieldName) {
+            EntityIterable customFieldPrototypes = project(txn).getLinks("fields").selectDistinct("prototype");
+            Entity customFieldPrototype = findWithin(
+                txn, customFieldPrototypes, "CustomFieldPrototype", "name", fieldName,
+                String.format("custom field '%s' in project '%s'", fieldName, projectAbbrev)
+            );
+            var customFieldPrototypeId = (String) customFieldPrototype.getProperty("id");
+            assert customFieldPrototypeId != null : "Entity always has property 'id'.";
+
             @Nullable Entity bundleProjectCustomField = txn.findLinks(
                 "BundleProjectCustomField", customFieldPrototype, "prototype").getFirst();
-            @Nullable Entity userProjectCustomField = null;
             if (bundleProjectCustomField == null) {
-                userProjectCustomField = txn.findLinks(
+                @Nullable Entity userProjectCustomField = txn.findLinks(
                     "UserProjectCustomField", customFieldPrototype, "prototype").getFirst();
-            }
-            if (bundleProjectCustomField == null && userProjectCustomField == null) {
-                throw new InternalException(String.format("Custom field '%s' in project '%s' "
-                    + "is not of type user or of a bundle type (enum, state, ...).",
-                    event.field, projectAbbrev));
+                if (userProjectCustomField == null) {
+                    throw new InternalException(String.format("Custom field '%s' in project '%s' "
+                        + "is not of type user or of a bundle type (enum, state, ...).",
+                        fieldName, projectAbbrev));
+                }
+                return new CustomField(customFieldPrototypeId, null);
             }
 
-            @Nullable Entity addedEntity = null;
-            @Nullable Entity removedEntity = null;
-            if (bundleProjectCustomField != null) {
-                Entity bundle = bundleProjectCustomField.getLink("bundle");
-                assert bundle != null : "Entity of type 'BundleProjectCustomField' always has property 'bundle'.";
-                EntityIterable bundleElements = bundle.getLinks("children");
-                for (Entity bundleElement: bundleElements) {
-                    var name = (String) bundleElement.getProperty("name");
-                    assert name != null : "Every bundle element has a name.";
-                    if (name.equals(event.added)) {
-                        addedEntity = bundleElement;
-                    } else if (name.equals(event.removed)) {
-                        removedEntity = bundleElement;
-                    }
-                }
-            } else {
-                if (event.added != null) {
-                    addedEntity = find("User", "login", event.added);
-                }
-                if (event.removed != null) {
-                    removedEntity = find("User", "login", event.removed);
-                }
+            Entity bundle = bundleProjectCustomField.getLink("bundle");
+            assert bundle != null : "Entity of type 'BundleProjectCustomField' always has property 'bundle'.";
+            Map<String, Entity> nameToBundleElementMap = new HashMap<>();
+            for (Entity bundleElement: bundle.getLinks("children")) {
+                var elementName = (String) bundleElement.getProperty("name");
+                assert elementName != null : "Every bundle element has a name.";
+                nameToBundleElementMap.put(elementName, bundleElement);
             }
-            return new Entity[]{addedEntity, removedEntity};
+            return new CustomField(customFieldPrototypeId, nameToBundleElementMap);
         }
 
-        private void storePersistentEvent(String memberName, long timestamp, Entity author, Entity type,
-                Entity targetIssue, @Nullable Entity @NonNull [] addedAndRemoved) {
-            Entity persistentEvent = txn.newEntity("PersistentEvent");
-            persistentEvent.setProperty("memberName", memberName);
-            persistentEvent.setProperty("timestamp", timestamp);
-            persistentEvent.setLink("author", author);
-            persistentEvent.setLink("type", type);
-            persistentEvent.setLink("target_Issue", targetIssue);
-            if (addedAndRemoved[0] != null) {
-                persistentEvent.setLink("added_" + memberName, addedAndRemoved[0]);
+        private void putAll(EntityLookup other) {
+            if (project == null) {
+                project = other.project;
             }
-            if (addedAndRemoved[1] != null) {
-                persistentEvent.setLink("removed_" + memberName, addedAndRemoved[1]);
+            if (eventType == null) {
+                eventType = other.eventType;
             }
+            loginToUserMap.putAll(other.loginToUserMap);
+            numberInProjectToIssueMap.putAll(other.numberInProjectToIssueMap);
+            nameToCustomFieldMap.putAll(other.nameToCustomFieldMap);
+        }
+    }
+
+    /**
+     * Custom field of a project, as needed for storing events.
+     */
+    private static final class CustomField {
+        private final String prototypeId;
+
+        /**
+         * Map from names to bundle elements, or {@code null} if this is a user field.
+         */
+        private final @Nullable Map<String, Entity> nameToBundleElementMap;
+
+        private CustomField(String prototypeId, @Nullable Map<String, Entity> nameToBundleElementMap) {
+            this.prototypeId = prototypeId;
+            this.nameToBundleElementMap = nameToBundleElementMap;
         }
     }
 
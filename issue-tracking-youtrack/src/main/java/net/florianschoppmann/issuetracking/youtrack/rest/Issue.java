@@ -9,6 +9,7 @@ import javax.xml.bind.annotation.XmlElementWrapper;
 
 public class Issue {
     public @Nullable String id;
+    public @Nullable String idReadable;
     public @Nullable String description;
     public @Nullable Integer numberInProject;
     public @Nullable String summary;
@@ -17,6 +18,10 @@ public class Issue {
     @XmlElement(name = "tag")
     public @Nullable List<IssueTag> tags;
 
+    @XmlElementWrapper
+    @XmlElement(name = "comment")
+    public @Nullable List<IssueComment> comments;
+
     @Override
     public boolean equals(Object otherObject) {
         if (this == otherObject) {
@@ -27,14 +32,16 @@ public class Issue {
 
         Issue other = (Issue) otherObject;
         return Objects.equals(id, other.id)
+            && Objects.equals(idReadable, other.idReadable)
             && Objects.equals(description, other.description)
             && Objects.equals(numberInProject, other.numberInProject)
             && Objects.equals(summary, other.summary)
-            && Objects.equals(tags, other.tags);
+            && Objects.equals(tags, other.tags)
+            && Objects.equals(comments, other.comments);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, description, numberInProject, summary, tags);
+        return Objects.hash(id, idReadable, description, numberInProject, summary, tags, comments);
     }
 }
@@ -0,0 +1,32 @@
+package net.florianschoppmann.issuetracking.youtrack.rest;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Objects;
+
+public class IssueAttachment {
+    public @Nullable String id;
+    public @Nullable String name;
+    public @Nullable Long size;
+    public @Nullable Long created;
+
+    @Override
+    public boolean equals(Object otherObject) {
+        if (this == otherObject) {
+            return true;
+        } else if (otherObject == null || getClass() != otherObject.getClass()) {
+            return false;
+        }
+
+        IssueAttachment other = (IssueAttachment) otherObject;
+        return Objects.equals(id, other.id)
+            && Objects.equals(name, other.name)
+            && Objects.equals(size, other.size)
+            && Objects.equals(created, other.created);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, name, size, created);
+    }
+}
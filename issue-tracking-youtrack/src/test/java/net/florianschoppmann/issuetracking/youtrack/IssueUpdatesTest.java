@@ -1,6 +1,7 @@
 package net.florianschoppmann.issuetracking.youtrack;
 
 import net.florianschoppmann.issuetracking.youtrack.rest.Issue;
+import net.florianschoppmann.issuetracking.youtrack.rest.IssueComment;
 import net.florianschoppmann.issuetracking.youtrack.rest.IssueTag;
 import org.testng.annotations.Factory;
 
@@ -24,6 +25,11 @@ public class IssueUpdatesTest {
             firstIssue.tags = new ArrayList<>();
             firstIssue.tags.add(issueTag);
         }
+        var issueComment = new IssueComment();
+        issueComment.id = "4-2";
+        issueComment.text = "Some comment.";
+        firstIssue.comments = new ArrayList<>();
+        firstIssue.comments.add(issueComment);
         firstIssueUpdate.issue = firstIssue;
         issueUpdates.issueUpdates.add(firstIssueUpdate);
 
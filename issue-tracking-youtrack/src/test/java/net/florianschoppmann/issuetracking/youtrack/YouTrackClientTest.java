@@ -0,0 +1,558 @@
+package net.florianschoppmann.issuetracking.youtrack;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.florianschoppmann.issuetracking.util.StringNode;
+import net.florianschoppmann.issuetracking.youtrack.Attachments.Attachment;
+import net.florianschoppmann.issuetracking.youtrack.rest.Issue;
+import net.florianschoppmann.issuetracking.youtrack.restold.ImportReport;
+import net.florianschoppmann.issuetracking.youtrack.restold.Issues;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.media.multipart.MultiPartFeature;
+import org.glassfish.jersey.moxy.json.MoxyJsonConfig;
+import org.glassfish.jersey.moxy.json.MoxyJsonFeature;
+import org.glassfish.jersey.moxy.xml.MoxyXmlFeature;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+
+public class YouTrackClientTest {
+    private static final Pattern VALUE_PATTERN = Pattern.compile("<value>([^<]*)</value>");
+    private static final Pattern SKIP_PATTERN = Pattern.compile("(?:^|&)\\$skip=([0-9]+)");
+    private static final Pattern TOP_PATTERN = Pattern.compile("(?:^|&)\\$top=([0-9]+)");
+    private static final Pattern ISSUE_ID_QUERY_PATTERN = Pattern.compile("(?:^|&)query=issue id: ([^&]*)");
+    private static final Pattern CREATED_PATTERN = Pattern.compile("(?:^|&)created=([0-9]+)");
+    private static final Pattern PART_NAME_PATTERN = Pattern.compile("[; ]name=\"([^\"]*)\"");
+    private static final Pattern CONTENT_PATTERN = Pattern.compile("content [0-9]+");
+    private static final int RESPONSE_DELAY_MILLIS = 100;
+
+    private ExecutorService executorService;
+    private HttpServer httpServer;
+    private Client jaxrsClient;
+    private final AtomicInteger requestsInFlight = new AtomicInteger();
+    private final AtomicInteger maxRequestsInFlight = new AtomicInteger();
+    private volatile boolean rejectImports;
+    private volatile boolean timeOutImports;
+    private volatile int timedOutRequest;
+    private final List<Integer> requestSizes = Collections.synchronizedList(new ArrayList<>());
+    private volatile int maxRequestBytes;
+    private final AtomicInteger numRequests = new AtomicInteger();
+    private volatile int numIssuesInProject;
+    private volatile int hiddenNumberInProject;
+    private final AtomicInteger numFailingUploads = new AtomicInteger();
+    private volatile int failingUploadStatus;
+    private final AtomicInteger numLostUploadResponses = new AtomicInteger();
+    private final Map<String, List<String>> uploadedAttachments = new ConcurrentHashMap<>();
+    private final AtomicInteger numRefusedUploads = new AtomicInteger();
+    private Path attachmentBasePath;
+
+    /**
+     * Mock of the YouTrack import endpoint that responds with one import report item per issue (using the single
+     * field value as ID), after a delay. Requests larger than {@link #maxRequestBytes} are rejected with status 413.
+     * If {@link #timeOutImports} is set, all requests fail with status 504, otherwise only the request with (1-based)
+     * number {@link #timedOutRequest} does. The number of issues of each request is added to {@link #requestSizes}.
+     */
+    private void handleImport(HttpExchange exchange) throws IOException {
+        int currentRequestsInFlight = requestsInFlight.incrementAndGet();
+        maxRequestsInFlight.accumulateAndGet(currentRequestsInFlight, Math::max);
+        int requestNumber = numRequests.incrementAndGet();
+        try {
+            byte[] bodyBytes = exchange.getRequestBody().readAllBytes();
+            String body = new String(bodyBytes, StandardCharsets.UTF_8);
+            requestSizes.add((int) VALUE_PATTERN.matcher(body).results().count());
+            Thread.sleep(RESPONSE_DELAY_MILLIS);
+            boolean timeOut = timeOutImports || requestNumber == timedOutRequest;
+            if (timeOut || bodyBytes.length > maxRequestBytes) {
+                exchange.sendResponseHeaders(timeOut ? 504 : 413, -1);
+                exchange.close();
+                return;
+            }
+            StringBuilder response = new StringBuilder("<importReport>");
+            Matcher matcher = VALUE_PATTERN.matcher(body);
+            while (matcher.find()) {
+                response.append("<item id=\"").append(matcher.group(1)).append("\" imported=\"")
+                    .append(!rejectImports).append("\"/>");
+            }
+            byte[] responseBytes = response.append("</importReport>").toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(rejectImports ? 400 : 200, responseBytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(responseBytes);
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            requestsInFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Mock of the YouTrack issue listing that returns {@link #numIssuesInProject} issues, paginated, after a delay.
+     * If the query is of form {@code issue id: P-1, P-2, ...}, only the issues with the given keys are returned. The
+     * issue with number {@link #hiddenNumberInProject} is left out of its page, as if the user could not see it.
+     */
+    private void handleIssues(HttpExchange exchange) throws IOException {
+        int currentRequestsInFlight = requestsInFlight.incrementAndGet();
+        maxRequestsInFlight.accumulateAndGet(currentRequestsInFlight, Math::max);
+        numRequests.incrementAndGet();
+        try {
+            Thread.sleep(RESPONSE_DELAY_MILLIS);
+            String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8);
+            Matcher skipMatcher = SKIP_PATTERN.matcher(query);
+            Matcher topMatcher = TOP_PATTERN.matcher(query);
+            Assert.assertTrue(skipMatcher.find() && topMatcher.find());
+            int skip = Integer.parseInt(skipMatcher.group(1));
+            int end = Math.min(numIssuesInProject, skip + Integer.parseInt(topMatcher.group(1)));
+            Matcher issueIdMatcher = ISSUE_ID_QUERY_PATTERN.matcher(query);
+            String response = issueIdMatcher.find()
+                ? Stream.of(issueIdMatcher.group(1).split(", "))
+                    .skip(skip)
+                    .limit(end - skip)
+                    .filter(issueKey -> Integer.parseInt(issueKey.substring(2)) <= numIssuesInProject)
+                    .map(issueKey -> "{\"idReadable\":\"" + issueKey + "\"}")
+                    .collect(Collectors.joining(",", "[", "]"))
+                : IntStream.rangeClosed(skip + 1, end)
+                    .filter(numberInProject -> numberInProject != hiddenNumberInProject)
+                    .mapToObj(numberInProject -> "{\"numberInProject\":" + numberInProject + '}')
+                    .collect(Collectors.joining(",", "[", "]"));
+            byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, responseBytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(responseBytes);
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            requestsInFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Mock of the YouTrack attachment import endpoint that stores the attachment in {@link #uploadedAttachments} and
+     * responds with a single import report item, after a delay. The first {@link #numFailingUploads} requests fail
+     * with status {@link #failingUploadStatus} before the attachment is stored. The next
+     * {@link #numLostUploadResponses} requests fail with status 504 after the attachment has been stored.
+     */
+    private void handleAttachmentImport(HttpExchange exchange) throws IOException {
+        int currentRequestsInFlight = requestsInFlight.incrementAndGet();
+        maxRequestsInFlight.accumulateAndGet(currentRequestsInFlight, Math::max);
+        numRequests.incrementAndGet();
+        try {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            Thread.sleep(RESPONSE_DELAY_MILLIS);
+            if (numFailingUploads.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(failingUploadStatus, -1);
+                exchange.close();
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            String issueKey = path.substring("/rest/import/".length(), path.lastIndexOf('/'));
+            Matcher nameMatcher = PART_NAME_PATTERN.matcher(body);
+            Matcher contentMatcher = CONTENT_PATTERN.matcher(body);
+            Matcher createdMatcher = CREATED_PATTERN.matcher(exchange.getRequestURI().getRawQuery());
+            Assert.assertTrue(nameMatcher.find() && contentMatcher.find() && createdMatcher.find());
+            uploadedAttachments.computeIfAbsent(issueKey, ignored -> Collections.synchronizedList(new ArrayList<>()))
+                .add(String.format("{\"name\":\"%s\",\"size\":%d,\"created\":%s}", nameMatcher.group(1),
+                    contentMatcher.group().length(), createdMatcher.group(1)));
+            if (numLostUploadResponses.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(504, -1);
+                exchange.close();
+                return;
+            }
+            byte[] responseBytes = "<importReport><item imported=\"true\"/></importReport>"
+                .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(200, responseBytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(responseBytes);
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            requestsInFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Mock of the YouTrack listing of an issue's attachments, which returns the attachments in
+     * {@link #uploadedAttachments} on the first page.
+     */
+    private void handleAttachmentListing(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String issueKey = path.substring("/api/issues/".length(), path.lastIndexOf('/'));
+        Matcher skipMatcher = SKIP_PATTERN.matcher(
+            URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8));
+        Assert.assertTrue(path.endsWith("/attachments") && skipMatcher.find());
+        List<String> attachments = Integer.parseInt(skipMatcher.group(1)) == 0
+            ? new ArrayList<>(uploadedAttachments.getOrDefault(issueKey, List.of()))
+            : List.of();
+        byte[] responseBytes = ('[' + String.join(",", attachments) + ']').getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, responseBytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(responseBytes);
+        }
+    }
+
+    /**
+     * Client-side filter that fails the first {@link #numRefusedUploads} attachment uploads as if the connection had
+     * been refused, so that the requests never reach the server.
+     */
+    private void refuseUploads(ClientRequestContext requestContext) throws IOException {
+        if (requestContext.getUri().getPath().endsWith("/attachment") && numRefusedUploads.getAndDecrement() > 0) {
+            throw new ConnectException("Connection refused");
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        maxRequestsInFlight.set(0);
+        rejectImports = false;
+        timeOutImports = false;
+        timedOutRequest = 0;
+        requestSizes.clear();
+        maxRequestBytes = Integer.MAX_VALUE;
+        numRequests.set(0);
+        hiddenNumberInProject = 0;
+        numFailingUploads.set(0);
+        failingUploadStatus = 503;
+        numLostUploadResponses.set(0);
+        uploadedAttachments.clear();
+        numRefusedUploads.set(0);
+        attachmentBasePath = Files.createTempDirectory(getClass().getSimpleName());
+        executorService = Executors.newCachedThreadPool();
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        httpServer.setExecutor(executorService);
+        httpServer.createContext("/rest/import/", this::handleImport);
+        httpServer.createContext("/api/issues", this::handleIssues);
+        httpServer.createContext("/rest/import/P-", this::handleAttachmentImport);
+        httpServer.createContext("/api/issues/P-", this::handleAttachmentListing);
+        httpServer.start();
+        jaxrsClient = ClientBuilder.newClient(
+            new ClientConfig()
+                .register(new MoxyXmlFeature(Issues.class, ImportReport.class))
+                .register(MoxyJsonFeature.class)
+                .register(MultiPartFeature.class)
+                .register(new MoxyJsonConfig().setIncludeRoot(false).resolver())
+                .register((ClientRequestFilter) this::refuseUploads));
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        jaxrsClient.close();
+        httpServer.stop(0);
+        executorService.shutdownNow();
+        try (Stream<Path> files = Files.list(attachmentBasePath)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(attachmentBasePath);
+    }
+
+    private static Issues issues(int numIssues) {
+        Issues issues = new Issues();
+        for (int i = 1; i <= numIssues; ++i) {
+            var field = new Issues.Issue.Field();
+            field.setName("numberInProject");
+            field.getValue().add(Integer.toString(i));
+            var issue = new Issues.Issue();
+            issue.getField().add(field);
+            issues.getIssue().add(issue);
+        }
+        return issues;
+    }
+
+    private YouTrackClient youTrackClient(YouTrackClient.Options options) {
+        URI baseUri = URI.create("http://" + httpServer.getAddress().getHostString() + ':'
+            + httpServer.getAddress().getPort() + '/');
+        return new YouTrackClient(jaxrsClient, baseUri, "token", options);
+    }
+
+    private static List<String> expectedIds(int numIssues) {
+        return IntStream.rangeClosed(1, numIssues)
+            .mapToObj(Integer::toString)
+            .collect(Collectors.toList());
+    }
+
+    private void importIssues(YouTrackClient.Options options, int numIssues) {
+        ImportReport importReport = youTrackClient(options).importIssues(issues(numIssues), "P", false);
+
+        List<String> actualIds = new ArrayList<>();
+        for (ImportReport.Item item : importReport.getItem()) {
+            Assert.assertTrue(item.isImported());
+            actualIds.add(item.getId());
+        }
+        Assert.assertEquals(actualIds, expectedIds(numIssues));
+    }
+
+    @Test
+    public void importIssuesSequentially() {
+        importIssues(new YouTrackClient.Options(1, false), 420);
+        Assert.assertEquals(maxRequestsInFlight.get(), 1);
+    }
+
+    @Test
+    public void importIssuesPipelined() {
+        // 8 batches, each of which takes 100 ms on the server. The order of the report must not depend on the order
+        // in which the responses arrive.
+        importIssues(new YouTrackClient.Options(4, false), 400);
+        Assert.assertEquals(numRequests.get(), 8);
+        Assert.assertTrue(maxRequestsInFlight.get() > 1 && maxRequestsInFlight.get() <= 4,
+            String.format("Expected between 2 and 4 requests in flight, but there were %d.",
+                maxRequestsInFlight.get()));
+    }
+
+    @Test
+    public void importIssuesFromIterator() {
+        ImportReport emptyReport = youTrackClient(new YouTrackClient.Options(4))
+            .importIssues(Collections.emptyIterator(), "P", false);
+        Assert.assertTrue(emptyReport.getItem().isEmpty());
+        Assert.assertEquals(numRequests.get(), 0);
+
+        // Three batches of at most 50 issues, taken from the iterator in order
+        Iterator<Issues.Issue> issues = issues(120).getIssue().iterator();
+        ImportReport importReport
+            = youTrackClient(new YouTrackClient.Options(2, false)).importIssues(issues, "P", false);
+        Assert.assertEquals(
+            importReport.getItem().stream().map(ImportReport.Item::getId).collect(Collectors.toList()),
+            expectedIds(120)
+        );
+        Assert.assertFalse(issues.hasNext());
+        Assert.assertEquals(numRequests.get(), 3);
+    }
+
+    @Test
+    public void importIssuesRejected() {
+        rejectImports = true;
+        ImportReport importReport
+            = youTrackClient(new YouTrackClient.Options(3, false)).importIssues(issues(120), "P", false);
+        Assert.assertEquals(
+            importReport.getItem().stream().map(ImportReport.Item::getId).collect(Collectors.toList()),
+            expectedIds(120)
+        );
+        Assert.assertTrue(importReport.getItem().stream().noneMatch(ImportReport.Item::isImported));
+    }
+
+    @Test
+    public void importIssuesAdaptive() {
+        // The first batches of 50 issues grow quickly (responses are fast), until YouTrack rejects them.
+        maxRequestBytes = 16 * 1024;
+        importIssues(new YouTrackClient.Options(2), 2000);
+        Assert.assertTrue(numRequests.get() < 2000 / 50,
+            String.format("Expected fewer than 40 requests, but there were %d.", numRequests.get()));
+    }
+
+    @Test
+    public void importIssuesTimedOutNotSentAgain() {
+        timeOutImports = true;
+        ImportReport importReport
+            = youTrackClient(new YouTrackClient.Options(1)).importIssues(issues(50), "P", false);
+        // YouTrack may have imported the batch despite the timeout, so it must not be split and sent again.
+        Assert.assertEquals(numRequests.get(), 1);
+        Assert.assertEquals(
+            importReport.getItem().stream().map(ImportReport.Item::getId).collect(Collectors.toList()),
+            expectedIds(50)
+        );
+        Assert.assertTrue(importReport.getItem().stream().noneMatch(ImportReport.Item::isImported));
+
+        // Without adaptive batch sizes, a timeout ends the import.
+        numRequests.set(0);
+        YouTrackClient youTrackClient = youTrackClient(new YouTrackClient.Options(1, false));
+        Assert.assertThrows(WebApplicationException.class, () -> youTrackClient.importIssues(issues(50), "P", false));
+        Assert.assertEquals(numRequests.get(), 1);
+    }
+
+    @Test
+    public void importIssuesTimedOutMinimumBatchSize() {
+        timeOutImports = true;
+        ImportReport importReport
+            = youTrackClient(new YouTrackClient.Options(1)).importIssues(issues(500), "P", false);
+        Assert.assertTrue(importReport.getItem().stream().noneMatch(ImportReport.Item::isImported));
+        // Every timeout halves the target size, but not below 4 KiB (about 40 issues, by estimated size).
+        List<Integer> sizes = new ArrayList<>(requestSizes);
+        Assert.assertEquals(sizes.stream().mapToInt(Integer::intValue).sum(), 500);
+        Assert.assertTrue(sizes.subList(0, sizes.size() - 1).stream().allMatch(size -> size >= 40),
+            String.format("Expected batches of at least 40 issues, but sizes were %s.", sizes));
+    }
+
+    @Test
+    public void importIssuesTimedOutHalvesBatchSize() {
+        // Batches grow while responses are fast, until the fourth batch times out.
+        timedOutRequest = 4;
+        ImportReport importReport
+            = youTrackClient(new YouTrackClient.Options(1)).importIssues(issues(1000), "P", false);
+        Assert.assertEquals(
+            importReport.getItem().stream().map(ImportReport.Item::getId).collect(Collectors.toList()),
+            expectedIds(1000)
+        );
+        List<Integer> sizes = new ArrayList<>(requestSizes);
+        Assert.assertTrue(sizes.get(3) > sizes.get(2) && sizes.get(2) > sizes.get(1),
+            String.format("Expected growing batch sizes, but they were %s.", sizes));
+        Assert.assertTrue(sizes.get(4) <= sizes.get(3) / 2 + 1,
+            String.format("Expected the batch after the timeout to be at most half as large, but sizes were %s.",
+                sizes));
+        // The items of the timed-out batch are not sent again.
+        Assert.assertEquals(sizes.stream().mapToInt(Integer::intValue).sum(), 1000);
+        int timedOutStart = sizes.get(0) + sizes.get(1) + sizes.get(2);
+        Assert.assertEquals(
+            importReport.getItem().stream()
+                .filter(item -> !item.isImported())
+                .map(ImportReport.Item::getId)
+                .collect(Collectors.toList()),
+            expectedIds(1000).subList(timedOutStart, timedOutStart + sizes.get(3))
+        );
+    }
+
+    @Test
+    public void getIssuesSequentially() {
+        numIssuesInProject = 100;
+        List<Issue> issues = youTrackClient(new YouTrackClient.Options(1))
+            .getIssues("P", StringNode.rootOfStrings("numberInProject"));
+        Assert.assertEquals(
+            issues.stream().map(issue -> issue.numberInProject).collect(Collectors.toList()),
+            IntStream.rangeClosed(1, 100).boxed().collect(Collectors.toList())
+        );
+        // Two full pages, and one empty page. There is no way to tell that the second page is the last one.
+        Assert.assertEquals(numRequests.get(), 3);
+    }
+
+    @Test
+    public void getIssuesWithShortPage() {
+        numIssuesInProject = 120;
+        hiddenNumberInProject = 10;
+        List<Issue> issues = youTrackClient(new YouTrackClient.Options(4))
+            .getIssues("P", StringNode.rootOfStrings("numberInProject"));
+        Assert.assertEquals(
+            issues.stream().map(issue -> issue.numberInProject).collect(Collectors.toList()),
+            IntStream.rangeClosed(1, 120).filter(number -> number != 10).boxed().collect(Collectors.toList())
+        );
+    }
+
+    @Test
+    public void streamIssuesPrefetched() {
+        numIssuesInProject = 230;
+        List<Integer> numbersInProject;
+        try (Stream<Issue> issues = youTrackClient(new YouTrackClient.Options(4))
+                .streamIssues("P", StringNode.rootOfStrings("numberInProject"))) {
+            numbersInProject = issues.map(issue -> issue.numberInProject).collect(Collectors.toList());
+        }
+        Assert.assertEquals(numbersInProject, IntStream.rangeClosed(1, 230).boxed().collect(Collectors.toList()));
+        Assert.assertTrue(maxRequestsInFlight.get() <= 4);
+        // Page 1 alone, then pages 2 to 5 ahead of the consumer, then pages 6 to 8 after the full pages 2 to 4. Only
+        // the empty page 6 ends the listing, and pages 7 and 8 are discarded.
+        Assert.assertEquals(numRequests.get(), 8);
+    }
+
+    @Test
+    public void getIssuesByKey() {
+        numIssuesInProject = 100;
+        List<String> issueKeys = IntStream.rangeClosed(1, 120)
+            .mapToObj(number -> "P-" + number)
+            .collect(Collectors.toList());
+        List<Issue> issues = youTrackClient(new YouTrackClient.Options(1))
+            .getIssuesByKey(issueKeys, StringNode.rootOfStrings("idReadable"));
+        Assert.assertEquals(
+            issues.stream().map(issue -> issue.idReadable).collect(Collectors.toList()),
+            issueKeys.subList(0, 100)
+        );
+        // Three chunks of keys, each of which needs only a single request (even though the last one is not full)
+        Assert.assertEquals(numRequests.get(), 3);
+    }
+
+    private List<Attachment> attachments(int numAttachments) throws IOException {
+        List<Attachment> attachments = new ArrayList<>();
+        for (int i = 1; i <= numAttachments; ++i) {
+            Files.writeString(attachmentBasePath.resolve("file" + i), "content " + i);
+            var attachment = new Attachment();
+            attachment.taskNumberInProject = i;
+            attachment.authorLogin = "user";
+            attachment.name = "file" + i + ".txt";
+            attachment.path = "file" + i;
+            attachment.created = 0L;
+            attachments.add(attachment);
+        }
+        return attachments;
+    }
+
+    @Test
+    public void importAttachmentsConcurrentlyWithRetries() throws IOException {
+        List<Attachment> attachments = attachments(6);
+        numRefusedUploads.set(2);
+
+        List<Attachment> importedAttachments = new ArrayList<>();
+        ImportReport importReport = youTrackClient(new YouTrackClient.Options(1, false, 3))
+            .importAttachments(attachments, "P", attachmentBasePath, false, importedAttachments::add);
+        Assert.assertEquals(importReport.getItem().size(), 6);
+        Assert.assertTrue(importReport.getItem().stream().allMatch(ImportReport.Item::isImported));
+        Assert.assertEquals(importedAttachments, attachments);
+        Assert.assertTrue(maxRequestsInFlight.get() > 1 && maxRequestsInFlight.get() <= 3,
+            String.format("Expected between 2 and 3 requests in flight, but got %d.", maxRequestsInFlight.get()));
+        // Two uploads were refused before reaching the server and were sent again
+        Assert.assertEquals(numRequests.get(), 6);
+    }
+
+    @Test
+    public void importAttachmentsTransientServerErrorRetried() throws IOException {
+        List<Attachment> attachments = attachments(1);
+        // The first upload fails before the attachment is stored, the second one after
+        numFailingUploads.set(1);
+        numLostUploadResponses.set(1);
+
+        List<Attachment> importedAttachments = new ArrayList<>();
+        ImportReport importReport = youTrackClient(new YouTrackClient.Options(1))
+            .importAttachments(attachments, "P", attachmentBasePath, false, importedAttachments::add);
+        Assert.assertEquals(importReport.getItem().size(), 1);
+        Assert.assertTrue(importReport.getItem().get(0).isImported());
+        Assert.assertEquals(importedAttachments, attachments);
+        // The third attempt found the attachment stored by the second one, so the upload was not sent a third time
+        Assert.assertEquals(numRequests.get(), 2);
+        Assert.assertEquals(uploadedAttachments.get("P-1"),
+            List.of("{\"name\":\"file1.txt\",\"size\":9,\"created\":0}"));
+    }
+
+    @Test
+    public void importAttachmentsInternalServerErrorNotRetried() throws IOException {
+        List<Attachment> attachments = attachments(1);
+        numFailingUploads.set(1);
+        failingUploadStatus = 500;
+
+        List<Attachment> importedAttachments = new ArrayList<>();
+        Assert.assertThrows(WebApplicationException.class, () -> youTrackClient(new YouTrackClient.Options(1))
+            .importAttachments(attachments, "P", attachmentBasePath, false, importedAttachments::add));
+        Assert.assertEquals(numRequests.get(), 1);
+        Assert.assertEquals(importedAttachments, List.of());
+    }
+}
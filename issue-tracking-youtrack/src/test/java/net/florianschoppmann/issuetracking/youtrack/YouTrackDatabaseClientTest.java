@@ -0,0 +1,334 @@
+package net.florianschoppmann.issuetracking.youtrack;
+
+import jetbrains.exodus.entitystore.Entity;
+import jetbrains.exodus.entitystore.PersistentEntityStore;
+import jetbrains.exodus.entitystore.PersistentEntityStores;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Environments;
+import net.florianschoppmann.issuetracking.youtrack.Events.CustomFieldEvent;
+import net.florianschoppmann.issuetracking.youtrack.Events.Event;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+public class YouTrackDatabaseClientTest {
+    private static final String PROJECT_ABBREV = "P";
+    private static final int NUM_ISSUES = 3;
+
+    private Path databasePath;
+
+    /**
+     * Creates a database with the (few) entities that a YouTrack database needs for importing events: a project with
+     * issues, users, a state field, and a user field.
+     */
+    @BeforeMethod
+    public void setup() throws IOException {
+        databasePath = Files.createTempDirectory(getClass().getSimpleName());
+        try (
+            Environment environment = Environments.newInstance(databasePath.toFile());
+            PersistentEntityStore entityStore = PersistentEntityStores.newInstance(environment, "teamsysstore")
+        ) {
+            entityStore.executeInTransaction(txn -> {
+                Entity project = txn.newEntity("Project");
+                project.setProperty("shortName", PROJECT_ABBREV);
+                txn.newEntity("EventType").setProperty("__ENUM_CONST_NAME__", "MODIFY_LINK");
+                for (long numberInProject = 1; numberInProject <= NUM_ISSUES; ++numberInProject) {
+                    Entity issue = txn.newEntity("Issue");
+                    issue.setProperty("numberInProject", numberInProject);
+                    issue.setLink("project", project);
+                }
+                for (String login : List.of("alice", "bob")) {
+                    txn.newEntity("User").setProperty("login", login);
+                }
+
+                Entity statePrototype = txn.newEntity("CustomFieldPrototype");
+                statePrototype.setProperty("name", "State");
+                statePrototype.setProperty("id", "state-id");
+                Entity bundle = txn.newEntity("StateBundle");
+                for (String name : List.of("Open", "In Progress", "Fixed")) {
+                    Entity element = txn.newEntity("StateBundleElement");
+                    element.setProperty("name", name);
+                    bundle.addLink("children", element);
+                }
+                Entity stateField = txn.newEntity("BundleProjectCustomField");
+                stateField.setLink("prototype", statePrototype);
+                stateField.setLink("bundle", bundle);
+                project.addLink("fields", stateField);
+
+                Entity assigneePrototype = txn.newEntity("CustomFieldPrototype");
+                assigneePrototype.setProperty("name", "Assignee");
+                assigneePrototype.setProperty("id", "assignee-id");
+                Entity assigneeField = txn.newEntity("UserProjectCustomField");
+                assigneeField.setLink("prototype", assigneePrototype);
+                project.addLink("fields", assigneeField);
+            });
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(databasePath)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static CustomFieldEvent event(long timestamp) {
+        var event = new CustomFieldEvent();
+        event.timestamp = timestamp;
+        event.numberInProject = 1 + timestamp % NUM_ISSUES;
+        event.field = "State";
+        event.author = "alice";
+        event.added = "In Progress";
+        event.removed = "Open";
+        return event;
+    }
+
+    private static List<Event> events(int numEvents) {
+        return LongStream.range(0, numEvents)
+            .mapToObj(YouTrackDatabaseClientTest::event)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns an iterator over the given events that fails (as if the import was interrupted) once the given number of
+     * events have been returned.
+     */
+    private static Iterator<Event> failingAfter(List<Event> events, int numEvents) {
+        Iterator<Event> iterator = events.iterator();
+        return new Iterator<>() {
+            private int returned;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Event next() {
+                if (returned == numEvents) {
+                    throw new IllegalStateException("Interrupted.");
+                }
+                ++returned;
+                return iterator.next();
+            }
+        };
+    }
+
+    private List<Long> importedTimestamps() {
+        try (
+            Environment environment = Environments.newInstance(databasePath.toFile());
+            PersistentEntityStore entityStore = PersistentEntityStores.newInstance(environment, "teamsysstore")
+        ) {
+            return entityStore.computeInReadonlyTransaction(txn -> {
+                List<Long> timestamps = new ArrayList<>();
+                for (Entity event : txn.getAll("PersistentEvent")) {
+                    timestamps.add((Long) event.getProperty("timestamp"));
+                }
+                Collections.sort(timestamps);
+                return timestamps;
+            });
+        }
+    }
+
+    /**
+     * Returns, for each imported event, the names of the entities linked as added and removed values.
+     */
+    private List<String> importedValues() {
+        try (
+            Environment environment = Environments.newInstance(databasePath.toFile());
+            PersistentEntityStore entityStore = PersistentEntityStores.newInstance(environment, "teamsysstore")
+        ) {
+            return entityStore.computeInReadonlyTransaction(txn -> {
+                List<String> values = new ArrayList<>();
+                for (Entity event : txn.sort("PersistentEvent", "timestamp", true)) {
+                    var memberName = (String) event.getProperty("memberName");
+                    values.add(memberName + ": " + name(event.getLink("added_" + memberName)) + " / "
+                        + name(event.getLink("removed_" + memberName)));
+                }
+                return values;
+            });
+        }
+    }
+
+    private static @Nullable Comparable<?> name(@Nullable Entity entity) {
+        if (entity == null) {
+            return null;
+        }
+        @Nullable Comparable<?> name = entity.getProperty("name");
+        return name == null
+            ? entity.getProperty("login")
+            : name;
+    }
+
+    private boolean hasProgressStore() {
+        try (Environment environment = Environments.newInstance(databasePath.toFile())) {
+            return environment.computeInReadonlyTransaction(
+                txn -> environment.storeExists(YouTrackDatabaseClient.PROGRESS_STORE_NAME, txn));
+        }
+    }
+
+    private static List<Long> timestamps(int numEvents) {
+        return LongStream.range(0, numEvents).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    public void interruptedImportResumes() throws YouTrackDatabaseClientException {
+        var client = new YouTrackDatabaseClient(databasePath, new YouTrackDatabaseClient.Options(10));
+        List<Event> events = events(35);
+        Assert.assertThrows(IllegalStateException.class,
+            () -> client.importEvents(failingAfter(events, 25), PROJECT_ABBREV));
+        Assert.assertEquals(importedTimestamps(), timestamps(20));
+        Assert.assertTrue(hasProgressStore());
+
+        client.importEvents(events.iterator(), PROJECT_ABBREV);
+        Assert.assertEquals(importedTimestamps(), timestamps(35));
+        Assert.assertFalse(hasProgressStore());
+    }
+
+    @Test
+    public void resumeRefusedForDifferentEvents() throws YouTrackDatabaseClientException {
+        var client = new YouTrackDatabaseClient(databasePath, new YouTrackDatabaseClient.Options(10));
+        List<Event> events = events(35);
+        Assert.assertThrows(IllegalStateException.class,
+            () -> client.importEvents(failingAfter(events, 25), PROJECT_ABBREV));
+
+        // Same number of events, but in a different order (as if sorted differently)
+        List<Event> reordered = new ArrayList<>(events);
+        Collections.reverse(reordered);
+        Assert.assertThrows(YouTrackDatabaseClientException.class,
+            () -> client.importEvents(reordered.iterator(), PROJECT_ABBREV));
+        // Fewer events than committed before
+        Assert.assertThrows(YouTrackDatabaseClientException.class,
+            () -> client.importEvents(events.subList(0, 15).iterator(), PROJECT_ABBREV));
+        Assert.assertEquals(importedTimestamps(), timestamps(20));
+
+        client.importEvents(events.iterator(), PROJECT_ABBREV);
+        Assert.assertEquals(importedTimestamps(), timestamps(35));
+    }
+
+    private static Supplier<Stream<Event>> supplier(List<Event> events) {
+        return events::stream;
+    }
+
+    private YouTrackDatabaseClientException validationFailure(List<Event> events) {
+        var client = new YouTrackDatabaseClient(databasePath);
+        YouTrackDatabaseClientException exception = Assert.expectThrows(YouTrackDatabaseClientException.class,
+            () -> client.validateAndImportEvents(supplier(events), PROJECT_ABBREV));
+        Assert.assertEquals(importedTimestamps(), List.of(), "No changes must be made if validation fails.");
+        return exception;
+    }
+
+    @Test
+    public void validateAndImportEvents() throws YouTrackDatabaseClientException {
+        CustomFieldEvent stateEvent = event(0);
+        CustomFieldEvent assigneeEvent = event(1);
+        assigneeEvent.field = "Assignee";
+        assigneeEvent.added = "bob";
+        assigneeEvent.removed = null;
+        // An element cannot be both added and removed, so only the added element is linked.
+        CustomFieldEvent sameValueEvent = event(2);
+        sameValueEvent.added = "Fixed";
+        sameValueEvent.removed = "Fixed";
+
+        var client = new YouTrackDatabaseClient(databasePath, new YouTrackDatabaseClient.Options(0, 2));
+        client.validateAndImportEvents(supplier(List.of(stateEvent, assigneeEvent, sameValueEvent)), PROJECT_ABBREV);
+        Assert.assertEquals(importedValues(), List.of(
+            "state-id: In Progress / Open",
+            "assignee-id: bob / null",
+            "state-id: Fixed / null"
+        ));
+    }
+
+    @Test
+    public void validationReportsDanglingReferences() {
+        // Issue 99 exists, but in a different project.
+        try (
+            Environment environment = Environments.newInstance(databasePath.toFile());
+            PersistentEntityStore entityStore = PersistentEntityStores.newInstance(environment, "teamsysstore")
+        ) {
+            entityStore.executeInTransaction(txn -> {
+                Entity otherProject = txn.newEntity("Project");
+                otherProject.setProperty("shortName", "Q");
+                Entity issue = txn.newEntity("Issue");
+                issue.setProperty("numberInProject", 99L);
+                issue.setLink("project", otherProject);
+            });
+        }
+
+        List<Event> events = events(6);
+        ((CustomFieldEvent) events.get(1)).numberInProject = 99L;
+        ((CustomFieldEvent) events.get(2)).author = "carol";
+        ((CustomFieldEvent) events.get(3)).field = "Priority";
+        ((CustomFieldEvent) events.get(4)).added = "Closed";
+        CustomFieldEvent assigneeEvent = (CustomFieldEvent) events.get(5);
+        assigneeEvent.field = "Assignee";
+        assigneeEvent.added = "dave";
+        assigneeEvent.removed = "bob";
+        CustomFieldEvent incompleteEvent = event(6);
+        incompleteEvent.author = null;
+        events.add(incompleteEvent);
+
+        String message = validationFailure(events).getMessage();
+        Assert.assertTrue(message.startsWith("Validation of 7 events found 6 problems."), message);
+        for (String expected : List.of(
+                "Incomplete event (#6)",
+                "Could not find issue 'P-99'.",
+                "Could not find entity type 'User' with 'login' = carol",
+                "Could not find custom field 'Priority' in project 'P'.",
+                "Could not find value 'Closed' of custom field 'State' in project 'P'.",
+                "Could not find entity type 'User' with 'login' = dave")) {
+            Assert.assertTrue(message.contains("\n- " + expected), message);
+        }
+    }
+
+    @Test
+    public void validationReportsUnknownProject() {
+        var client = new YouTrackDatabaseClient(databasePath);
+        YouTrackDatabaseClientException exception = Assert.expectThrows(YouTrackDatabaseClientException.class,
+            () -> client.validateAndImportEvents(supplier(events(3)), "UNKNOWN"));
+        Assert.assertEquals(exception.getMessage(), "Validation of 3 events found 1 problems. No changes were made "
+            + "to the database.\n- Could not find entity type 'Project' with 'shortName' = UNKNOWN");
+    }
+
+    @Test
+    public void validationLimitsReportedProblems() {
+        // Each event refers to a different unknown issue, so problems are found by all concurrent tasks.
+        List<Event> events = events(150);
+        for (Event event : events) {
+            ((CustomFieldEvent) event).numberInProject = 1000 + event.timestamp;
+        }
+
+        String message = validationFailure(events).getMessage();
+        Assert.assertTrue(message.startsWith("Validation of 150 events found 150 problems."), message);
+        Assert.assertEquals(message.split("\n- ").length - 1, 101, message);
+        Assert.assertTrue(message.endsWith("\n- ... (50 more)"), message);
+    }
+
+    @Test
+    public void slices() {
+        List<Integer> ten = IntStream.rangeClosed(1, 10).boxed().collect(Collectors.toList());
+        Assert.assertEquals(YouTrackDatabaseClient.slices(ten, 4),
+            List.of(List.of(1, 2, 3), List.of(4, 5, 6), List.of(7, 8, 9), List.of(10)));
+        Assert.assertEquals(YouTrackDatabaseClient.slices(ten.subList(0, 8), 4),
+            List.of(List.of(1, 2), List.of(3, 4), List.of(5, 6), List.of(7, 8)));
+        Assert.assertEquals(YouTrackDatabaseClient.slices(ten.subList(0, 2), 4), List.of(List.of(1), List.of(2)));
+        Assert.assertEquals(YouTrackDatabaseClient.slices(ten, 1), List.of(ten));
+        Assert.assertEquals(YouTrackDatabaseClient.slices(List.of(), 4), List.of());
+    }
+}